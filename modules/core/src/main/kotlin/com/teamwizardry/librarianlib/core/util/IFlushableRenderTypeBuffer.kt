@@ -0,0 +1,15 @@
+package com.teamwizardry.librarianlib.core.util
+
+import net.minecraft.client.renderer.IRenderTypeBuffer
+
+/**
+ * A render type buffer that defers drawing its vertices, such as one batching vertices from multiple sources. Code
+ * passed one of these that needs to draw by other means can [flush] it first so the pending vertices aren't drawn out
+ * of order.
+ */
+interface IFlushableRenderTypeBuffer: IRenderTypeBuffer {
+    /**
+     * Draws any pending vertices
+     */
+    fun flush()
+}
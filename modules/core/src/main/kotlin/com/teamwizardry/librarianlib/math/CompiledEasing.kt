@@ -0,0 +1,83 @@
+package com.teamwizardry.librarianlib.math
+
+import kotlin.math.abs
+import kotlin.math.max
+
+/**
+ * An easing backed by a lookup table of [samples] evenly spaced values of the [source] easing, which are linearly
+ * interpolated between. Created using [Easing.compile].
+ *
+ * Looking up a value costs two array reads, regardless of how expensive the source easing is, which makes compiled
+ * easings well suited to easings that are evaluated very often, such as [BezierEasing]s (which run a Newton-Raphson
+ * solver on every call) and compound easings (which search their keyframes). Since the table is built by sampling the
+ * source easing as a whole, compound easings are flattened into a single table. Discontinuities, such as compound
+ * easing jumps, become ramps one sample wide, which shows up as a large [maxError].
+ *
+ * Progress values outside the 0–1 range are passed directly to the source easing.
+ */
+class CompiledEasing(
+    /**
+     * The easing this table was sampled from
+     */
+    @JvmField val source: Easing,
+    /**
+     * The number of entries in the lookup table
+     */
+    @JvmField val samples: Int
+) : Easing {
+    private val table: FloatArray
+    private val lastIndex: Int = samples - 1
+
+    /**
+     * The largest difference between this easing and the [source] easing, measured at [ERROR_SUBSAMPLES] points
+     * between each pair of table entries. Interpolating across a discontinuity in the source easing (e.g. a
+     * [jump][CompoundEasingBuilder.jump]) will result in a large error near it.
+     */
+    val maxError: Float
+
+    init {
+        if (samples < 2)
+            throw IllegalArgumentException("A compiled easing needs at least 2 samples, not $samples")
+        table = FloatArray(samples) { source.ease(it / lastIndex.toFloat()) }
+
+        var error = 0f
+        for (index in 0 until lastIndex) {
+            for (subsample in 1 until ERROR_SUBSAMPLES) {
+                val progress = (index + subsample / ERROR_SUBSAMPLES.toFloat()) / lastIndex
+                error = max(error, abs(ease(progress) - source.ease(progress)))
+            }
+        }
+        maxError = error
+    }
+
+    override fun ease(progress: Float): Float {
+        if (!(progress >= 0f && progress <= 1f))
+            return source.ease(progress)
+        val position = progress * lastIndex
+        val index = position.toInt()
+        if (index >= lastIndex)
+            return table[lastIndex]
+        val start = table[index]
+        return start + (table[index + 1] - start) * (position - index)
+    }
+
+    /**
+     * Returns this easing if it already has the passed number of samples, otherwise compiles the [source] easing.
+     */
+    override fun compile(samples: Int): CompiledEasing {
+        return if (samples == this.samples) this else source.compile(samples)
+    }
+
+    companion object {
+        /**
+         * The number of samples used by [Easing.compile] when none is specified. With this many samples most of the
+         * built-in Bézier easings are accurate to within 1/1000th.
+         */
+        const val DEFAULT_SAMPLES: Int = 256
+
+        /**
+         * The number of points per table entry the [maxError] is measured at
+         */
+        const val ERROR_SUBSAMPLES: Int = 8
+    }
+}
@@ -84,8 +84,11 @@ class CompoundEasingBuilder(private val initialValue: Float) {
             if(progress >= 1)
                 return keyframes.last().value
 
+            // read the cached index once so concurrent callers can't swap it out from under us
+            var index = this.index
             if(progress !in keyframes[index]) {
                 index = keyframes.indexOfFirst { it.duration != 0f && progress in it }
+                this.index = index
             }
 
             return keyframes[index].ease(progress)
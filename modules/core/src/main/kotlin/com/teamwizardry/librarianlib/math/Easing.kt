@@ -13,6 +13,25 @@ interface Easing {
      */
     fun ease(progress: Float): Float
 
+    /**
+     * Creates a copy of this easing backed by a lookup table with [CompiledEasing.DEFAULT_SAMPLES] entries, which is
+     * much cheaper to evaluate than most easings at the cost of some accuracy.
+     *
+     * @see CompiledEasing
+     */
+    @JvmDefault
+    fun compile(): CompiledEasing = compile(CompiledEasing.DEFAULT_SAMPLES)
+
+    /**
+     * Creates a copy of this easing backed by a lookup table with [samples] entries, which is much cheaper to evaluate
+     * than most easings at the cost of some accuracy. The resulting easing's [maxError][CompiledEasing.maxError]
+     * gives the accuracy of the table.
+     *
+     * @see CompiledEasing
+     */
+    @JvmDefault
+    fun compile(samples: Int): CompiledEasing = CompiledEasing(this, samples)
+
     @JvmDefault
     val reversed: Easing
         get() = object : Easing {
@@ -288,4 +288,54 @@ class EasingTests {
             0.9472213f, 0.83385926f, 0.62652534f, 0.31946987f, 0.0f)
     }
 
-}
\ No newline at end of file
+    @Test
+    fun compiledSamplePoints() {
+        val compiled = Easing.easeInOutCubic.compile(21)
+        steps.forEach {
+            assertEquals(Easing.easeInOutCubic.ease(it), compiled.ease(it), 1e-6f)
+        }
+    }
+
+    @Test
+    fun compiledMaxError() {
+        val compiled = Easing.easeOutBack.compile()
+        assertTrue(compiled.maxError < 1e-3f)
+        (0 .. 1000).map { it / 1000f }.forEach {
+            assertEquals(Easing.easeOutBack.ease(it), compiled.ease(it), compiled.maxError * 1.1f + 1e-6f)
+        }
+    }
+
+    @Test
+    fun compiledOutsideRange() {
+        val compiled = Easing.easeInBack.compile()
+        assertEquals(Easing.easeInBack.ease(-0.5f), compiled.ease(-0.5f))
+        assertEquals(Easing.easeInBack.ease(1.5f), compiled.ease(1.5f))
+    }
+
+    @Test
+    fun compiledCompoundEasing() {
+        val compound = Easing.compound(0f)
+            .add(1f, Easing.easeInQuad, 1f)
+            .hold(2f)
+            .add(1f, Easing.easeInQuad, 0f)
+            .build()
+        val compiled = compound.compile(401)
+        steps.forEach {
+            assertEquals(compound.ease(it), compiled.ease(it), 1e-4f)
+        }
+    }
+
+    @Test
+    fun compiledRecompile() {
+        val compiled = Easing.easeInSine.compile(64)
+        assertTrue(compiled.compile(64) === compiled)
+        assertEquals(128, compiled.compile(128).samples)
+    }
+
+    @Test
+    fun compiledTooFewSamples() {
+        assertThrows<IllegalArgumentException> {
+            Easing.linear.compile(1)
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.teamwizardry.librarianlib.etcetera.benchmark;
+
+import com.teamwizardry.librarianlib.etcetera.eventbus.Event;
+import com.teamwizardry.librarianlib.etcetera.eventbus.EventBus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Measures {@link EventBus#fire} throughput with a varying number of hooks. Half of the hooks are registered for the
+ * event's superclass, so the dispatch has to cover the event's class hierarchy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBusBenchmark {
+    @Param({"0", "1", "10"})
+    public int hooks;
+
+    private EventBus bus;
+    private TestEvent event;
+    private TestEvent reversedEvent;
+
+    @Setup
+    public void setup() {
+        // explicitly typed to pick the Consumer overload instead of the Kotlin function one
+        Consumer<TestEvent> testHook = e -> e.count++;
+        Consumer<BaseEvent> baseHook = e -> e.count++;
+        bus = new EventBus();
+        for (int i = 0; i < hooks; i++) {
+            if (i % 2 == 0) {
+                bus.hook(TestEvent.class, testHook);
+            } else {
+                bus.hook(BaseEvent.class, baseHook);
+            }
+        }
+        event = new TestEvent(false);
+        reversedEvent = new TestEvent(true);
+    }
+
+    @Benchmark
+    public TestEvent fire() {
+        return bus.fire(event);
+    }
+
+    @Benchmark
+    public TestEvent fireReversed() {
+        return bus.fire(reversedEvent);
+    }
+
+    public static class BaseEvent extends Event {
+        public int count;
+
+        public BaseEvent(boolean reversed) {
+            super(reversed);
+        }
+    }
+
+    public static class TestEvent extends BaseEvent {
+        public TestEvent(boolean reversed) {
+            super(reversed);
+        }
+    }
+}
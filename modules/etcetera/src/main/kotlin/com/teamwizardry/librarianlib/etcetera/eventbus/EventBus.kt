@@ -1,32 +1,71 @@
 package com.teamwizardry.librarianlib.etcetera.eventbus
 
+import java.util.IdentityHashMap
 import java.util.function.Consumer
 
+/**
+ * Fires events to the hooks registered for their class or any of their superclasses.
+ *
+ * Each concrete event class fired is compiled into a flat array of the hooks that receive it, which is reused until a
+ * hook is added, so firing an event doesn't allocate. Hooks added while an event is being fired won't receive that
+ * event.
+ */
 class EventBus {
     private var hooks = mutableMapOf<Class<*>, MutableList<EventHook>>()
+    private val dispatchTables = IdentityHashMap<Class<*>, DispatchTable>()
+    private val hookListeners = mutableListOf<Runnable>()
 
     fun hasHooks(clazz: Class<*>): Boolean {
         return hooks[clazz]?.size ?: 0 > 0
     }
 
+    /**
+     * Returns true if firing an event of the passed class would call any hooks, including hooks for its superclasses
+     */
+    fun handles(clazz: Class<*>): Boolean {
+        if(hooks.isEmpty())
+            return false
+        for(c in getEventClassList(clazz)) {
+            if(hasHooks(c))
+                return true
+        }
+        return false
+    }
+
+    /**
+     * Adds a callback that's run whenever a hook is added to this bus, allowing code that skips firing events with no
+     * hooks to stay up to date.
+     */
+    fun addHookListener(listener: Runnable) {
+        hookListeners.add(listener)
+    }
+
     fun <E : Event> fire(event: E): E {
-        getEventClassList(event.javaClass).forEach { clazz ->
-            fire(event, clazz)
+        if(hooks.isEmpty())
+            return event
+        val table = dispatchTables[event.javaClass] ?: compile(event.javaClass)
+        val dispatch = if(event.reversed) table.reversed else table.forward
+        for(i in dispatch.indices) {
+            dispatch[i].fire(event)
         }
         return event
     }
 
-    private fun fire(event: Event, clazz: Class<*>) {
-        if (clazz in hooks) {
-            if (event.reversed)
-                hooks[clazz]?.asReversed()?.forEach {
-                    it.fire(event)
-                }
-            else
-                hooks[clazz]?.forEach {
-                    it.fire(event)
-                }
+    /**
+     * Builds the dispatch table for the passed event class. Hooks are called starting with the ones for the event's
+     * own class, then its superclass, and so on. Reversed events call each class's hooks in reverse order.
+     */
+    private fun compile(clazz: Class<*>): DispatchTable {
+        val forward = mutableListOf<EventHook>()
+        val reversed = mutableListOf<EventHook>()
+        for(c in getEventClassList(clazz)) {
+            val classHooks = hooks[c] ?: continue
+            forward.addAll(classHooks)
+            reversed.addAll(classHooks.asReversed())
         }
+        val table = DispatchTable(forward.toTypedArray(), reversed.toTypedArray())
+        dispatchTables[clazz] = table
+        return table
     }
 
     inline fun <reified  E : Event> hook(noinline hook: (E) -> Unit) {
@@ -42,12 +81,17 @@ class EventBus {
         if (!hooks.containsKey(clazz))
             hooks.put(clazz, mutableListOf())
         hooks[clazz]?.add(EventHook(hook as Consumer<Event>))
+        // any table could include the new hook, since it may be for a superclass of the tables' event classes
+        dispatchTables.clear()
+        hookListeners.forEach { it.run() }
     }
 
     fun register(obj: Any) {
         EventHookAnnotationReflector.apply(this, obj)
     }
 
+    private class DispatchTable(val forward: Array<EventHook>, val reversed: Array<EventHook>)
+
     private class EventHook(val callback: Consumer<Event>) {
         var data: Any? = null
 
@@ -62,21 +106,26 @@ class EventBus {
     }
 
     companion object {
-        private val classLists = mutableMapOf<Class<*>, List<Class<*>>>()
-
-        private fun getEventClassList(clazz: Class<*>): Iterable<Class<*>> {
-            return classLists.getOrPut(clazz) {
+        /**
+         * The event class and each of its superclasses that are events, starting with the event class itself.
+         * [ClassValue] is thread safe, so buses on different threads can share the cache.
+         */
+        private val classLists = object: ClassValue<Array<Class<*>>>() {
+            override fun computeValue(type: Class<*>): Array<Class<*>> {
                 val list = mutableListOf<Class<*>>()
 
-                var c = clazz
+                var c: Class<*> = type
                 while(Event::class.java.isAssignableFrom(c)) {
                     list.add(c)
                     c = c.superclass ?: break
                 }
 
-                list
+                return list.toTypedArray()
             }
         }
+
+        private fun getEventClassList(clazz: Class<*>): Array<Class<*>> {
+            return classLists.get(clazz)
+        }
     }
 }
-
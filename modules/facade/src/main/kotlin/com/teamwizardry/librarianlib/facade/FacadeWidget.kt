@@ -7,6 +7,7 @@ import com.teamwizardry.librarianlib.facade.input.Cursor
 import com.teamwizardry.librarianlib.facade.layer.GuiLayer
 import com.teamwizardry.librarianlib.facade.layer.GuiLayerEvents
 import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
+import com.teamwizardry.librarianlib.facade.layer.supporting.GuiDrawBatch
 import com.teamwizardry.librarianlib.facade.provided.SafetyNetErrorScreen
 import com.teamwizardry.librarianlib.math.Matrix3dStack
 import com.teamwizardry.librarianlib.math.vec
@@ -37,6 +38,7 @@ open class FacadeWidget(
     private var mouseX = 0.0
     private var mouseY = 0.0
     private var mouseOver: GuiLayer? = null
+    private val mouseOverPath = mutableListOf<GuiLayer>()
 
     fun mouseMoved(_xPos: Double, _yPos: Double) {
         val s = Client.guiScaleFactor // rescale to absolute screen coordinates
@@ -99,9 +101,17 @@ open class FacadeWidget(
 
     private fun computeMouseOver(xPos: Double, yPos: Double) {
         safetyNet {
-            mouseOver = root.computeMouseInfo(vec(xPos, yPos), Matrix3dStack())
+            val rootPos = vec(xPos, yPos)
+            root.rootMousePos = rootPos
+            // only the previously hovered layers need to be reset, since those are the only ones with the flag set
+            mouseOverPath.forEach {
+                it.mouseOver = false
+            }
+            mouseOverPath.clear()
+            mouseOver = root.hitTest(rootPos)
             generateSequence(mouseOver) { it.parent }.forEach {
                 it.mouseOver = true
+                mouseOverPath.add(it)
             }
         }
     }
@@ -169,8 +179,12 @@ open class FacadeWidget(
             StencilUtil.enable()
             RenderSystem.pushMatrix()
             RenderSystem.scaled(1 / guiScale, 1 / guiScale, 1.0)
+            GuiDrawBatch.beginFrame()
             val context = GuiDrawContext(Matrix3dStack(), Client.minecraft.renderManager.isDebugBoundingBox, false)
             root.renderLayer(context)
+            GuiDrawBatch.flush(GuiDrawBatch.FlushReason.FRAME_END)
+            if(GuiLayer.showBatchFlushes)
+                GuiDrawBatch.drawFlushPoints(context.matrix)
             RenderSystem.popMatrix()
             StencilUtil.disable()
         }
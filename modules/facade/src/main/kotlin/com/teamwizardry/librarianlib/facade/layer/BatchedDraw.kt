@@ -0,0 +1,14 @@
+package com.teamwizardry.librarianlib.facade.layer
+
+/**
+ * Marks a layer class whose [draw][GuiLayer.draw] method supports the frame-level draw batch, meaning it only draws
+ * using the context's [buffer][GuiDrawContext.buffer] and [flushes][GuiDrawContext.flush] it before drawing by any
+ * other means.
+ *
+ * Layers that override [draw][GuiLayer.draw] without this annotation have the batch flushed before each call, so they
+ * can safely draw using their own buffers or GL calls. The annotation applies to the class that declares the `draw`
+ * method, so subclasses that override it again need to be annotated as well.
+ */
+@Target(AnnotationTarget.CLASS)
+@Retention(AnnotationRetention.RUNTIME)
+annotation class BatchedDraw
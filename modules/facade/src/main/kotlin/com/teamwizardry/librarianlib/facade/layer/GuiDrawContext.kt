@@ -1,10 +1,13 @@
 package com.teamwizardry.librarianlib.facade.layer
 
 import com.mojang.blaze3d.systems.RenderSystem
+import com.teamwizardry.librarianlib.facade.layer.supporting.GuiDrawBatch
+import com.teamwizardry.librarianlib.facade.layer.supporting.GuiDrawBatch.FlushReason
 import com.teamwizardry.librarianlib.math.Matrix3d
 import com.teamwizardry.librarianlib.math.Matrix3dStack
 import com.teamwizardry.librarianlib.math.Matrix4d
 import com.teamwizardry.librarianlib.math.MutableMatrix4d
+import net.minecraft.client.renderer.IRenderTypeBuffer
 
 class GuiDrawContext(
     val matrix: Matrix3dStack,
@@ -18,16 +21,40 @@ class GuiDrawContext(
         @JvmSynthetic
         internal set
 
+    /**
+     * The buffer layers should draw into. Vertices are batched across layers for the whole frame, so the buffer must
+     * not be [finished][IRenderTypeBuffer.Impl.finish] by the caller. Consecutive layers that use the same render type
+     * are merged into a single draw call.
+     *
+     * Since the vertices are drawn later, [batched][BatchedDraw] layers that draw using any other means (direct GL
+     * calls, vanilla rendering methods, or their own buffers) must call [flush] first so they aren't drawn out of order.
+     * [pushGlMatrix] does this automatically, and the batch is always flushed before drawing layers that aren't batched.
+     */
+    val buffer: IRenderTypeBuffer
+        get() = GuiDrawBatch
+
+    /**
+     * Draws any vertices pending in the [buffer]. This is needed before drawing by any means other than the [buffer]
+     * or changing the GL state the pending vertices should be drawn with.
+     */
+    fun flush() {
+        GuiDrawBatch.flush(FlushReason.EXPLICIT)
+    }
+
     private var glMatrix = false
 
     /**
      * Pushes the current matrix to the GL transform. This matrix can be popped using [popGlMatrix] or, if it isn't, it
      * will be popped after the component is drawn. Calling this multiple times will not push the matrix multiple times.
+     *
+     * Any vertices pending in the [buffer] are drawn first, and again when the matrix is popped, so they aren't drawn
+     * using the wrong transform.
      */
     @Suppress("CAST_NEVER_SUCCEEDS")
     fun pushGlMatrix() {
         if(glMatrix) return
         glMatrix = true
+        GuiDrawBatch.flush(FlushReason.GL_MATRIX)
         RenderSystem.pushMatrix()
         RenderSystem.multMatrix(create3dTransform(matrix).toMatrix4f())
     }
@@ -38,6 +65,7 @@ class GuiDrawContext(
     fun popGlMatrix() {
         if(!glMatrix) return
         glMatrix = false
+        GuiDrawBatch.flush(FlushReason.GL_MATRIX)
         RenderSystem.popMatrix()
     }
 
@@ -16,6 +16,7 @@ import com.teamwizardry.librarianlib.core.util.lerp.Lerper
 import com.teamwizardry.librarianlib.core.util.lerp.Lerpers
 import com.teamwizardry.librarianlib.etcetera.StencilUtil
 import com.teamwizardry.librarianlib.facade.layer.supporting.*
+import com.teamwizardry.librarianlib.facade.layer.supporting.GuiDrawBatch.FlushReason
 import com.teamwizardry.librarianlib.facade.logger
 import com.teamwizardry.librarianlib.facade.value.IMValue
 import com.teamwizardry.librarianlib.facade.value.IMValueBoolean
@@ -56,6 +57,7 @@ import org.lwjgl.opengl.GL13
 import org.lwjgl.util.yoga.Yoga.*
 import java.awt.Color
 import java.lang.Exception
+import java.util.BitSet
 import java.util.ConcurrentModificationException
 import java.util.PriorityQueue
 import java.util.function.BooleanSupplier
@@ -66,6 +68,7 @@ import java.util.function.LongSupplier
 import kotlin.math.PI
 import kotlin.math.floor
 import kotlin.math.max
+import kotlin.math.min
 
 /**
  * The fundamental building block of a LibrarianLib GUI. Generally a single unit of visual or organizational design.
@@ -137,6 +140,10 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
      * state guarantees made before every call to [draw]. The authoritative list is provided as a "sample" in these
      * docs.
      *
+     * Layers annotated with [BatchedDraw] should draw using the context's [buffer][GuiDrawContext.buffer], which
+     * batches vertices across layers, and must [flush][GuiDrawContext.flush] the batch before drawing by other means or
+     * changing GL state. For layers without the annotation the batch is flushed before this method is called.
+     *
      * @sample glStateGuarantees
      */
     open fun draw(context: GuiDrawContext) {
@@ -527,6 +534,9 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
             component.BUS.fire(GuiLayerEvents.AddToParentEvent(this))
             _children.add(component)
             markLayoutDirty()
+            invalidateRenderCache()
+            invalidateHitBounds()
+            invalidateEventInterest()
             component.parent = this
         }
     }
@@ -559,6 +569,9 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
             _maskLayer = null
         _children.remove(layer)
         markLayoutDirty()
+        invalidateRenderCache()
+        invalidateHitBounds()
+        invalidateEventInterest()
     }
 
     /**
@@ -650,6 +663,8 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
             markLayoutDirty()
             parent?.markLayoutDirty()
             matrixDirty = true
+            invalidateRenderCache()
+            invalidateHitBounds()
         }
     }
     /**
@@ -664,6 +679,8 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
         if(old != new) {
             parent?.markLayoutDirty()
             matrixDirty = true
+            parent?.invalidateRenderCache()
+            invalidateHitBounds()
         }
     }
     /**
@@ -679,6 +696,8 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
         if(old != new) {
             parent?.markLayoutDirty()
             matrixDirty = true
+            parent?.invalidateRenderCache()
+            invalidateHitBounds()
         }
     }
     /**
@@ -700,6 +719,8 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
         if(old != new) {
             parent?.markLayoutDirty()
             matrixDirty = true
+            parent?.invalidateRenderCache()
+            invalidateHitBounds()
         }
     }
     /**
@@ -722,6 +743,8 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
         if(old != new) {
             parent?.markLayoutDirty()
             matrixDirty = true
+            parent?.invalidateRenderCache()
+            invalidateHitBounds()
         }
     }
     /**
@@ -1030,6 +1053,10 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
      * Clip the contents of this layer to its bounding box
      */
     var clipToBounds: Boolean = false
+        set(value) {
+            field = value
+            invalidateHitBounds()
+        }
 
     /**
      * If nonnull, this sprite is used for clipping. Any pixels that are completely transparent will be masked out.
@@ -1038,12 +1065,21 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
      * If [clippingSprite] is nonnull, it will override this sprite.
      */
     var clippingSprite: ISprite? = null
+        set(value) {
+            field = value
+            invalidateHitBounds()
+        }
 
     /**
      * An opacity value in the range [0, 1]. If this is not equal to 1 the layer will be rendered to an FBO and drawn
      * to a texture. This process clips the layer to its bounds.
      */
-    val opacity_rm: RMValueDouble = rmDouble(1.0)
+    val opacity_rm: RMValueDouble = rmDouble(1.0) { old, new ->
+        if(old != new) {
+            // the opacity is applied when drawing the layer, so only a cache containing this layer is affected
+            parent?.invalidateRenderCache()
+        }
+    }
     /**
      * An opacity value in the range [0, 1]. If this is not equal to 1 the layer will be rendered to an FBO and drawn
      * to a texture. This process clips the layer to its bounds.
@@ -1087,6 +1123,52 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
      * What scaling factor to use when rasterizing this layer using [RenderMode.RENDER_TO_QUAD]
      */
     var rasterizationScale: Int = 1
+        set(value) {
+            if(field != value) {
+                field = value
+                invalidateRenderCache()
+            }
+        }
+
+    private var renderCache: LayerRenderCache? = null
+
+    /**
+     * Whether to cache the rendering of this layer and its children. When enabled, the layer is rasterized into a
+     * texture using [RenderMode.RENDER_TO_QUAD] and the texture is drawn as a single quad each frame, only rendering
+     * the layer again once the cache has been invalidated. This is useful for large, mostly static layers, such as
+     * inventories or pages of text.
+     *
+     * The cache is invalidated automatically when this layer or a descendant changes size, position, scale, rotation,
+     * anchor, or opacity, when children are added or removed, and when the layout is marked dirty. Any other change to
+     * what a layer draws (e.g. a change in [draw] output, [isVisible], or hover effects) must be followed by a call to
+     * [invalidateRenderCache], otherwise the cached image will be out of date.
+     *
+     * Each cached layer keeps its own framebuffer the size of the window, which is deleted when caching is disabled.
+     */
+    var cacheRendering: Boolean = false
+        set(value) {
+            if(field != value) {
+                field = value
+                if(value) {
+                    invalidateRenderCache()
+                } else {
+                    renderCache?.delete()
+                    renderCache = null
+                }
+            }
+        }
+
+    /**
+     * Marks the render cache of this layer and every ancestor with [cacheRendering] enabled as out of date, so they'll
+     * be rendered again next frame.
+     */
+    fun invalidateRenderCache() {
+        var layer: GuiLayer? = this
+        while(layer != null) {
+            layer.renderCache?.isDirty = true
+            layer = layer.parent
+        }
+    }
     /**
      * Whether this layer is being used as a mask by its parent.
      */
@@ -1094,6 +1176,8 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
         get() = parent?.maskLayer === this
 
     private fun actualRenderMode(): RenderMode {
+        if(cacheRendering)
+            return RenderMode.RENDER_TO_QUAD
         if(renderMode != RenderMode.DIRECT)
             return renderMode
         if(opacity < 1.0 || maskMode != MaskMode.NONE || blendMode != BlendMode.NORMAL)
@@ -1108,16 +1192,21 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
     fun renderLayer(context: GuiDrawContext) {
         context.matrix.push()
         context.matrix *= transform
+        val parentLayer = GuiDrawBatch.currentLayer
+        GuiDrawBatch.currentLayer = this
 
         if(!isVisible) {
             renderSkeleton(context)
+            GuiDrawBatch.currentLayer = parentLayer
             context.matrix.pop()
             return
         }
 
         val enableClipping = clipToBounds
-        if(enableClipping)
+        if(enableClipping) {
+            GuiDrawBatch.flush(FlushReason.STENCIL)
             StencilUtil.push { stencil(context) }
+        }
 
         val renderMode = actualRenderMode()
         if(renderMode == RenderMode.DIRECT) {
@@ -1130,13 +1219,25 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
             } else {
                 context
             }
+            val renderCache = if(cacheRendering) {
+                renderCache ?: LayerRenderCache().also { this.renderCache = it }
+            } else {
+                null
+            }
             var maskFBO: Framebuffer? = null
             var layerFBO: Framebuffer? = null
             try {
 
-                layerFBO = FramebufferPool.renderToFramebuffer {
-                    clearBounds(flatContext)
-                    renderDirect(flatContext)
+                layerFBO = if(renderCache != null) {
+                    renderCache.render {
+                        clearBounds(flatContext)
+                        renderDirect(flatContext)
+                    }
+                } else {
+                    FramebufferPool.renderToFramebuffer {
+                        clearBounds(flatContext)
+                        renderDirect(flatContext)
+                    }
                 }
                 val maskLayer = maskLayer
                 if(maskMode != MaskMode.NONE && maskLayer != null) {
@@ -1159,6 +1260,8 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
                 val maxU = (size.xf * rasterizationScale) / Client.window.framebufferWidth
                 val maxV = (size.yf * rasterizationScale) / Client.window.framebufferHeight
 
+                // cached layers may not have switched framebuffers, so earlier layers could still be pending
+                GuiDrawBatch.flush(FlushReason.FLAT_LAYER)
                 val buffer = IRenderTypeBuffer.getImpl(Client.tessellator.buffer)
                 val vb = buffer.getBuffer(flatLayerRenderType)
                 // why 1-maxV?
@@ -1171,23 +1274,30 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
                 GlStateManager.disableTexture()
                 GlStateManager.enableTexture()
             } finally {
-                layerFBO?.also { FramebufferPool.releaseFramebuffer(it) }
+                // the cache owns its framebuffer
+                if(renderCache == null)
+                    layerFBO?.also { FramebufferPool.releaseFramebuffer(it) }
                 maskFBO?.also { FramebufferPool.releaseFramebuffer(it) }
             }
         }
 
-        if(enableClipping)
+        if(enableClipping) {
+            GuiDrawBatch.flush(FlushReason.STENCIL)
             StencilUtil.pop { stencil(context) }
+        }
 
         if (context.showDebugBoundingBox) {
+            GuiDrawBatch.flush(FlushReason.DEBUG)
             RenderSystem.lineWidth(1f)
             drawDebugBoundingBox(context, if(mouseOver) Color.WHITE else Color(.75f, 0f, .75f, 1f))
         }
         if (didLayout /*&& !isInMask*/) {
+            GuiDrawBatch.flush(FlushReason.DEBUG)
             drawLayerOverlay(context)
         }
         didLayout = false
 
+        GuiDrawBatch.currentLayer = parentLayer
         context.matrix.pop()
     }
 
@@ -1198,6 +1308,8 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
         context.matrix.assertEvenDepth {
             glStateGuarantees()
             context.matrix.push()
+            if(unbatchedDraws.get(javaClass))
+                GuiDrawBatch.flush(FlushReason.UNBATCHED)
             context.matrix.assertEvenDepth {
                 draw(context)
             }
@@ -1251,6 +1363,7 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
 
         if (context.showDebugBoundingBox && //!isInMask && TODO: isInMask (or a better system?)
             GuiLayer.showDebugTilt && shouldDrawSkeleton()) {
+            GuiDrawBatch.flush(FlushReason.DEBUG)
             RenderSystem.lineWidth(1f)
             GL11.glEnable(GL11.GL_LINE_STIPPLE)
             GL11.glLineStipple(2, 0b0011_0011_0011_0011.toShort())
@@ -1385,13 +1498,20 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
      * calculations, however its children will be considered as usual.
      */
     var ignoreMouseOverBounds: Boolean = false
+        set(value) {
+            field = value
+            invalidateHitBounds()
+        }
 
     /**
      * True if the current [mousePos] is inside the bounds of component. This ignores components that may be covering
      * this component.
      */
-    var mouseInside: Boolean = false
-        private set
+    val mouseInside: Boolean
+        get() {
+            val mousePos = mousePos
+            return isPointInBounds(mousePos) && !isPointClipped(mousePos)
+        }
 
     /**
      * True if this component is [interactive] and the mouse is hovering over it or one of its children.
@@ -1399,101 +1519,275 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
     var mouseOver: Boolean = false
         internal set
 
+    /**
+     * The mouse position in the parent space of a root layer, set by the [FacadeWidget]
+     */
+    @JvmSynthetic
+    internal var rootMousePos: Vec2d = vec(0, 0)
+
     /**
      * The mouse position within this component
      */
-    var mousePos: Vec2d = vec(0, 0)
-        private set
+    val mousePos: Vec2d
+        get() = inverseTransform * (parent?.mousePos ?: rootMousePos)
 
     /**
-     * Computes the mouse position, resets the `mouseOver` flag, and returns the component with the mouse over it, if
-     * any.
+     * Returns the layer the mouse is over, given the mouse position in this layer's parent space, or null if the mouse
+     * isn't over this layer or any of its descendants. Children are checked from the top down, and any subtree whose
+     * [hit bounds][updateHitBounds] don't contain the point is skipped without being transformed.
      */
-    internal fun computeMouseInfo(rootPos: Vec2d, stack: Matrix3dStack): GuiLayer? {
-        stack.push()
-        stack.reverseMul(inverseTransform)
-        mousePos = stack.transform(rootPos)
-        val clipped = isPointClipped(mousePos)
-        mouseInside = isPointInBounds(mousePos) && !clipped
-        mouseOver = false
-        var mouseOverChild: GuiLayer? = null
-        forEachChild { child ->
-            mouseOverChild = child.computeMouseInfo(rootPos, stack) ?: mouseOverChild
-        }
-        stack.pop()
-        if(!interactive || !isVisible || clipped)
+    @JvmSynthetic
+    internal fun hitTest(parentPos: Vec2d): GuiLayer? {
+        updateHitBounds()
+        if(!hitBoundsUnbounded && (parentPos.x < hitMinX || parentPos.x > hitMaxX ||
+                parentPos.y < hitMinY || parentPos.y > hitMaxY))
             return null
-        return when {
-            mouseOverChild != null -> mouseOverChild
-            mouseInside && !ignoreMouseOverBounds -> this
-            else -> null
+        if(!interactive || !isVisible)
+            return null
+        val pos = inverseTransform * parentPos
+        if(isPointClipped(pos))
+            return null
+        for(i in _children.indices.reversed()) {
+            _children[i].hitTest(pos)?.also { return it }
+        }
+        return if(!ignoreMouseOverBounds && isPointInBounds(pos)) this else null
+    }
+
+    private var hitBoundsDirty = true
+    private var hitBoundsUnbounded = false
+    private var hitMinX = 0.0
+    private var hitMinY = 0.0
+    private var hitMaxX = 0.0
+    private var hitMaxY = 0.0
+
+    /**
+     * Marks this layer's hit bounds, and those of its ancestors, as needing to be recomputed. A dirty layer's ancestors
+     * are always dirty, so this stops at the first layer that's already dirty.
+     */
+    private fun invalidateHitBounds() {
+        var layer: GuiLayer? = this
+        while(layer != null && !layer.hitBoundsDirty) {
+            layer.hitBoundsDirty = true
+            layer = layer.parent
         }
     }
 
+    /**
+     * Recomputes this layer's hit bounds if they're dirty. The hit bounds are the bounding box, in the parent's
+     * coordinate space, of every point where this layer or one of its descendants could be hit. They're stored in the
+     * parent's space so moving a layer doesn't affect the cached bounds of its descendants.
+     *
+     * Visibility and [interactive] aren't factored in, since they're checked while hit testing. Layers that override
+     * [isPointInBounds] may be hit outside their bounds, so they make the hit bounds unbounded unless they're clipped.
+     */
+    private fun updateHitBounds() {
+        if(!hitBoundsDirty)
+            return
+        hitBoundsDirty = false
+
+        val clipped = clipToBounds && clippingSprite == null
+        var unbounded = !clipped && !ignoreMouseOverBounds && customHitShapes.get(javaClass)
+        // clipped layers can only be hit inside their bounds, and layers ignoring their bounds can only be hit through
+        // their children
+        val includeSelf = clipped || !ignoreMouseOverBounds
+        val size = this.size
+        var minX = if(includeSelf) min(0.0, size.x) else Double.POSITIVE_INFINITY
+        var minY = if(includeSelf) min(0.0, size.y) else Double.POSITIVE_INFINITY
+        var maxX = if(includeSelf) max(0.0, size.x) else Double.NEGATIVE_INFINITY
+        var maxY = if(includeSelf) max(0.0, size.y) else Double.NEGATIVE_INFINITY
+        for(child in _children) {
+            // children are updated even when clipped, so a clean layer never has dirty descendants
+            child.updateHitBounds()
+            if(!clipped) {
+                if(child.hitBoundsUnbounded)
+                    unbounded = true
+                minX = min(minX, child.hitMinX)
+                minY = min(minY, child.hitMinY)
+                maxX = max(maxX, child.hitMaxX)
+                maxY = max(maxY, child.hitMaxY)
+            }
+        }
+
+        hitBoundsUnbounded = unbounded
+        if(unbounded)
+            return
+        if(minX > maxX || minY > maxY) {
+            // nothing can be hit
+            hitMinX = Double.POSITIVE_INFINITY
+            hitMinY = Double.POSITIVE_INFINITY
+            hitMaxX = Double.NEGATIVE_INFINITY
+            hitMaxY = Double.NEGATIVE_INFINITY
+            return
+        }
+
+        val transform = this.transform
+        hitMinX = Double.POSITIVE_INFINITY
+        hitMinY = Double.POSITIVE_INFINITY
+        hitMaxX = Double.NEGATIVE_INFINITY
+        hitMaxY = Double.NEGATIVE_INFINITY
+        for(corner in 0 until 4) {
+            val x = if(corner and 1 == 0) minX else maxX
+            val y = if(corner and 2 == 0) minY else maxY
+            val parentX = transform.transformX(x, y)
+            val parentY = transform.transformY(x, y)
+            hitMinX = min(hitMinX, parentX - HIT_BOUNDS_MARGIN)
+            hitMinY = min(hitMinY, parentY - HIT_BOUNDS_MARGIN)
+            hitMaxX = max(hitMaxX, parentX + HIT_BOUNDS_MARGIN)
+            hitMaxY = max(hitMaxY, parentY + HIT_BOUNDS_MARGIN)
+        }
+        // a degenerate transform can produce NaN corners, in which case we can't rule anything out
+        if(hitMinX.isNaN() || hitMinY.isNaN() || hitMaxX.isNaN() || hitMaxY.isNaN())
+            hitBoundsUnbounded = true
+    }
+
     /**
      * The set of buttons with a potential click in progress (when the button is pressed down while inside this layer)
      */
     private var clickingButtons = mutableSetOf<Int>()
 
+    /**
+     * Fires the passed event on this layer and its descendants, skipping any subtrees that have no interest in it
+     */
     internal fun triggerEvent(event: Event) {
+        val index = eventIndex(event.javaClass)
+        if(hasSubtreeInterest(index))
+            dispatchEvent(event, index)
+    }
+
+    private fun dispatchEvent(event: Event, index: Int) {
+        val interested = ownEventInterest.get(index)
         when(event) {
             is GuiLayerEvents.MouseEvent -> {
                 if(!interactive)
                     return
                 event.stack.push()
                 event.stack.reverseMul(inverseTransform)
-                BUS.fire(event)
+                if(interested) {
+                    BUS.fire(event)
 
-                if(event is GuiLayerEvents.MouseDown && mouseOver) {
-                    clickingButtons.add(event.button)
-                }
-                if(event is GuiLayerEvents.MouseUp && event.button in clickingButtons) {
-                    clickingButtons.remove(event.button)
-                    if(mouseOver) {
-                        BUS.fire(when(event.button) {
-                            0 -> GuiLayerEvents.MouseClick(event.rootPos)
-                            1 -> GuiLayerEvents.MouseRightClick(event.rootPos)
-                            else -> GuiLayerEvents.MouseOtherClick(event.rootPos, event.button)
-                        })
+                    if(event is GuiLayerEvents.MouseDown && mouseOver) {
+                        clickingButtons.add(event.button)
+                    }
+                    if(event is GuiLayerEvents.MouseUp && event.button in clickingButtons) {
+                        clickingButtons.remove(event.button)
+                        if(mouseOver) {
+                            BUS.fire(when(event.button) {
+                                0 -> GuiLayerEvents.MouseClick(event.rootPos)
+                                1 -> GuiLayerEvents.MouseRightClick(event.rootPos)
+                                else -> GuiLayerEvents.MouseOtherClick(event.rootPos, event.button)
+                            })
+                        }
                     }
                 }
 
-                this.forEachChild {
-                    it.triggerEvent(event)
-                }
+                dispatchToChildren(event, index)
                 event.stack.pop()
             }
             is GuiLayerEvents.KeyEvent -> {
                 if(!interactive)
                     return
-                BUS.fire(event)
-                this.forEachChild {
-                    it.triggerEvent(event)
-                }
+                if(interested)
+                    BUS.fire(event)
+                dispatchToChildren(event, index)
             }
             is GuiLayerEvents.Update -> {
-                this.update()
-                BUS.fire(event)
-                this.forEachChild {
-                    it.triggerEvent(event)
+                if(interested) {
+                    this.update()
+                    BUS.fire(event)
                 }
+                dispatchToChildren(event, index)
             }
             is GuiLayerEvents.PrepareLayout -> {
-                this.prepareLayout()
-                BUS.fire(event)
-                this.forEachChild {
-                    it.triggerEvent(event)
+                if(interested) {
+                    this.prepareLayout()
+                    BUS.fire(event)
                 }
+                dispatchToChildren(event, index)
             }
             else -> {
-                BUS.fire(event)
-                this.forEachChild {
-                    it.triggerEvent(event)
-                }
+                if(interested)
+                    BUS.fire(event)
+                dispatchToChildren(event, index)
             }
         }
     }
 
+    private fun dispatchToChildren(event: Event, index: Int) {
+        this.forEachChild {
+            if(it.hasSubtreeInterest(index))
+                it.dispatchEvent(event, index)
+        }
+    }
+
+    /**
+     * The events, by [eventIndex], that this layer handles
+     */
+    private val ownEventInterest = BitSet()
+    /**
+     * The events, by [eventIndex], that this layer or any of its descendants handle
+     */
+    private val subtreeEventInterest = BitSet()
+    /**
+     * The number of event classes [ownEventInterest] and [subtreeEventInterest] were computed with. When new event
+     * classes are indexed every layer's interest is out of date.
+     */
+    private var eventInterestClassCount = 0
+    private var eventInterestDirty = true
+
+    init {
+        BUS.addHookListener(Runnable { invalidateEventInterest() })
+    }
+
+    /**
+     * Marks the event interest of this layer and its ancestors as needing to be recomputed. A dirty layer's ancestors
+     * are always dirty, so this stops at the first layer that's already dirty.
+     */
+    private fun invalidateEventInterest() {
+        var layer: GuiLayer? = this
+        while(layer != null && !layer.eventInterestDirty) {
+            layer.eventInterestDirty = true
+            layer = layer.parent
+        }
+    }
+
+    private fun hasSubtreeInterest(index: Int): Boolean {
+        updateEventInterest()
+        return subtreeEventInterest.get(index)
+    }
+
+    /**
+     * Recomputes which events this layer and its descendants are interested in, if they're out of date. A layer is
+     * interested in an event if it has hooks that would receive it or if the event calls a method the layer
+     * overrides. Mouse down and up events are needed to detect clicks, so hooks for clicks count toward them.
+     */
+    private fun updateEventInterest() {
+        val classCount = eventClasses.size
+        if(!eventInterestDirty && eventInterestClassCount == classCount)
+            return
+        eventInterestDirty = false
+        eventInterestClassCount = classCount
+
+        val overrides = eventMethodOverrides.get(javaClass)
+        val handlesClicks = BUS.handles(GuiLayerEvents.MouseClick::class.java) ||
+            BUS.handles(GuiLayerEvents.MouseRightClick::class.java) ||
+            BUS.handles(GuiLayerEvents.MouseOtherClick::class.java)
+        ownEventInterest.clear()
+        for(i in 0 until classCount) {
+            val eventClass = eventClasses[i]
+            if(BUS.handles(eventClass) || eventClass in overrides ||
+                (handlesClicks && (eventClass == GuiLayerEvents.MouseDown::class.java ||
+                    eventClass == GuiLayerEvents.MouseUp::class.java)))
+                ownEventInterest.set(i)
+        }
+
+        subtreeEventInterest.clear()
+        subtreeEventInterest.or(ownEventInterest)
+        for(child in _children) {
+            child.updateEventInterest()
+            subtreeEventInterest.or(child.subtreeEventInterest)
+        }
+    }
+
     //endregion
 
     //region Tooltips
@@ -1567,6 +1861,7 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
      */
     fun markLayoutDirty() {
         isLayoutDirty = true
+        invalidateRenderCache()
         parent?.also {
             if(it.dependsOnChildLayout)
                 it.markLayoutDirty()
@@ -1707,6 +2002,72 @@ open class GuiLayer(posX: Int, posY: Int, width: Int, height: Int): CoordinateSp
         @JvmStatic
         var showDebugTilt = false
 
+        /**
+         * The margin added around each layer's hit bounds to account for rounding errors in the transforms
+         */
+        private const val HIT_BOUNDS_MARGIN = 1e-3
+
+        /**
+         * Whether each layer class overrides [isPointInBounds], in which case it may be hit outside its bounds
+         */
+        private val customHitShapes = object: ClassValue<Boolean>() {
+            override fun computeValue(type: Class<*>): Boolean {
+                return type.getMethod("isPointInBounds", Vec2d::class.java).declaringClass != GuiLayer::class.java
+            }
+        }
+
+        /**
+         * The event classes that have been fired using [triggerEvent], in the order they were assigned their indices
+         */
+        private val eventClasses = mutableListOf<Class<*>>()
+        private val eventIndices = mutableMapOf<Class<*>, Int>()
+
+        /**
+         * Gets the index of the passed event class in every layer's event interest bitsets, assigning it a new index if
+         * it doesn't have one.
+         */
+        private fun eventIndex(clazz: Class<*>): Int {
+            return eventIndices.getOrPut(clazz) {
+                eventClasses.add(clazz)
+                eventClasses.size - 1
+            }
+        }
+
+        /**
+         * The events that call a method each layer class overrides, which it's interested in regardless of its hooks
+         */
+        private val eventMethodOverrides = object: ClassValue<Set<Class<*>>>() {
+            override fun computeValue(type: Class<*>): Set<Class<*>> {
+                val events = mutableSetOf<Class<*>>()
+                if(type.getMethod("update").declaringClass != GuiLayer::class.java)
+                    events.add(GuiLayerEvents.Update::class.java)
+                if(type.getMethod("prepareLayout").declaringClass != GuiLayer::class.java)
+                    events.add(GuiLayerEvents.PrepareLayout::class.java)
+                return events
+            }
+        }
+
+        /**
+         * Whether each layer class overrides [draw] without supporting the draw batch
+         */
+        private val unbatchedDraws = object: ClassValue<Boolean>() {
+            override fun computeValue(type: Class<*>): Boolean {
+                val declaringClass = type.getMethod("draw", GuiDrawContext::class.java).declaringClass
+                return declaringClass != GuiLayer::class.java &&
+                    !declaringClass.isAnnotationPresent(BatchedDraw::class.java)
+            }
+        }
+
+        /**
+         * Whether to outline the layers that caused [draw batches][GuiDrawContext.buffer] to be flushed each frame.
+         * The outline colors indicate the reason for the flush: red for a render type change, orange for a render type
+         * that can't be merged, green for a stencil change, blue for a framebuffer change, cyan for a GL matrix push or
+         * pop, yellow for a flattened layer, pink for a layer that isn't [batched][BatchedDraw], and magenta for an
+         * explicit [flush][GuiDrawContext.flush].
+         */
+        @JvmStatic
+        var showBatchFlushes = false
+
         /**
          * The z index of tooltips. Overlays should not go above this level.
          */
@@ -21,14 +21,31 @@ internal object FramebufferPool {
      */
     fun getFramebuffer(): Framebuffer {
         val fbo = bufferPool.pollFirst() ?: createFramebuffer()
+        fitToWindow(fbo)
+        return fbo
+    }
+
+    /**
+     * Creates a framebuffer that isn't part of the pool and doesn't count toward its limit. The caller owns the returned
+     * buffer and is responsible for deleting it.
+     */
+    fun createUnpooledFramebuffer(): Framebuffer {
+        return newFramebuffer()
+    }
+
+    /**
+     * Resizes the passed framebuffer to match the window if necessary, returning true if it was resized. Resizing
+     * clears the framebuffer's contents.
+     */
+    fun fitToWindow(framebuffer: Framebuffer): Boolean {
         if(
-            fbo.framebufferWidth != Client.window.framebufferWidth ||
-            fbo.framebufferHeight != Client.window.framebufferHeight
+            framebuffer.framebufferWidth == Client.window.framebufferWidth &&
+            framebuffer.framebufferHeight == Client.window.framebufferHeight
         ) {
-            fbo.resize(Client.window.framebufferWidth, Client.window.framebufferHeight, Minecraft.IS_RUNNING_ON_MAC)
+            return false
         }
-
-        return fbo
+        framebuffer.resize(Client.window.framebufferWidth, Client.window.framebufferHeight, Minecraft.IS_RUNNING_ON_MAC)
+        return true
     }
 
     fun releaseFramebuffer(framebuffer: Framebuffer) {
@@ -42,10 +59,16 @@ internal object FramebufferPool {
      * Note: there is a hard limit of 16 framebuffers currently in use.
      */
     fun renderToFramebuffer(callback: (Framebuffer) -> Unit): Framebuffer {
+        return renderToFramebuffer(getFramebuffer(), callback)
+    }
+
+    /**
+     * Renders to the passed framebuffer, which doesn't need to be from the pool, and returns it.
+     */
+    fun renderToFramebuffer(framebuffer: Framebuffer, callback: (Framebuffer) -> Unit): Framebuffer {
         val stencilLevel = StencilUtil.currentStencil
         val existing = current // store the current framebuffer so we can reset it later
 
-        val framebuffer = getFramebuffer()
         useFramebuffer(framebuffer)
         try {
 
@@ -60,6 +83,8 @@ internal object FramebufferPool {
     }
 
     private fun useFramebuffer(framebuffer: Framebuffer?) {
+        // anything batched so far belongs in the current framebuffer
+        GuiDrawBatch.flush(GuiDrawBatch.FlushReason.FRAMEBUFFER)
         if(framebuffer == null) {
             Client.minecraft.framebuffer.bindFramebuffer(true)
         } else {
@@ -71,10 +96,15 @@ internal object FramebufferPool {
     private fun createFramebuffer(): Framebuffer {
         if(createdBuffers == maxFramebufferCount)
             throw IllegalStateException("Exceeded maximum of $maxFramebufferCount nested framebuffers")
+        val fbo = newFramebuffer()
+        createdBuffers++
+        return fbo
+    }
+
+    private fun newFramebuffer(): Framebuffer {
         val fbo = Framebuffer(Client.window.framebufferWidth, Client.window.framebufferHeight, true, Minecraft.IS_RUNNING_ON_MAC)
         fbo.enableStencil()
         fbo.setFramebufferColor(0f, 0f, 0f, 0f)
-        createdBuffers++
         return fbo
     }
 }
@@ -0,0 +1,162 @@
+package com.teamwizardry.librarianlib.facade.layer.supporting
+
+import com.mojang.blaze3d.vertex.IVertexBuilder
+import com.teamwizardry.librarianlib.core.util.IFlushableRenderTypeBuffer
+import com.teamwizardry.librarianlib.core.util.SimpleRenderTypes
+import com.teamwizardry.librarianlib.core.util.kotlin.color
+import com.teamwizardry.librarianlib.core.util.kotlin.pos2d
+import com.teamwizardry.librarianlib.facade.layer.GuiLayer
+import com.teamwizardry.librarianlib.math.Matrix3d
+import com.teamwizardry.librarianlib.math.Vec2d
+import net.minecraft.client.renderer.BufferBuilder
+import net.minecraft.client.renderer.RenderType
+import org.lwjgl.opengl.GL11
+import java.awt.Color
+
+/**
+ * The frame-level vertex batch behind [GuiDrawContext.buffer][com.teamwizardry.librarianlib.facade.layer.GuiDrawContext.buffer].
+ *
+ * Layers draw in order without depth testing, so vertices can only be merged into a single draw call while
+ * consecutive layers use the same [RenderType]. Requesting a different render type draws the pending vertices first,
+ * as does anything else that changes what the pending vertices would be drawn with: stencil changes, framebuffer
+ * switches, GL matrix pushes, flattened layers, layers that aren't
+ * [batched][com.teamwizardry.librarianlib.facade.layer.BatchedDraw], and explicit [flush]es. Strips, fans, and loops
+ * connect every vertex in a draw call, so render types using them are never merged.
+ *
+ * When [GuiLayer.showBatchFlushes] is enabled, the layer and reason for each flush are recorded so they can be
+ * outlined at the end of the frame using [drawFlushPoints].
+ */
+internal object GuiDrawBatch: IFlushableRenderTypeBuffer {
+    private val builder = BufferBuilder(262144)
+    private var currentType: RenderType? = null
+
+    /**
+     * The layer currently being rendered, which flush points are attributed to
+     */
+    var currentLayer: GuiLayer? = null
+
+    /**
+     * The number of draw calls made so far this frame
+     */
+    var drawCalls: Int = 0
+        private set
+
+    private val flushPoints = mutableListOf<FlushPoint>()
+
+    override fun getBuffer(renderType: RenderType): IVertexBuilder {
+        val current = currentType
+        if(current != null) {
+            if(current == renderType && renderType.drawMode in mergeableModes)
+                return builder
+            flush(if(current == renderType) FlushReason.UNMERGEABLE else FlushReason.RENDER_TYPE)
+        }
+        currentType = renderType
+        builder.begin(renderType.drawMode, renderType.vertexFormat)
+        return builder
+    }
+
+    /**
+     * Draws any pending vertices on behalf of code that only knows this is an [IFlushableRenderTypeBuffer], such as
+     * sprites that don't support batching
+     */
+    override fun flush() {
+        flush(FlushReason.EXPLICIT)
+    }
+
+    /**
+     * Draws any pending vertices
+     */
+    fun flush(reason: FlushReason) {
+        val type = currentType ?: return
+        currentType = null
+        type.finish(builder, 0, 0, 0)
+        drawCalls++
+
+        val layer = currentLayer
+        if(GuiLayer.showBatchFlushes && reason.isShown && layer != null) {
+            val root = layer.root
+            flushPoints.add(FlushPoint(root.transform * layer.conversionMatrixTo(root), layer.size, reason))
+        }
+    }
+
+    /**
+     * Resets the batch at the start of a frame. Anything left over from a frame that was interrupted is drawn.
+     */
+    fun beginFrame() {
+        flush(FlushReason.FRAME_END)
+        currentLayer = null
+        drawCalls = 0
+        flushPoints.clear()
+    }
+
+    /**
+     * Outlines the layers that caused flushes this frame, colored by the reason for the flush
+     */
+    fun drawFlushPoints(matrix: Matrix3d) {
+        if(flushPoints.isEmpty())
+            return
+        flush(FlushReason.FRAME_END)
+        val vb = getBuffer(flushPointRenderType)
+        for(point in flushPoints) {
+            val m = matrix * point.matrix
+            val color = point.reason.color
+            val corners = listOf(Vec2d(0.0, 0.0), Vec2d(point.size.x, 0.0), point.size, Vec2d(0.0, point.size.y))
+            for(i in corners.indices) {
+                vb.pos2d(m, corners[i]).color(color).endVertex()
+                vb.pos2d(m, corners[(i + 1) % corners.size]).color(color).endVertex()
+            }
+        }
+        flush(FlushReason.FRAME_END)
+    }
+
+    private class FlushPoint(val matrix: Matrix3d, val size: Vec2d, val reason: FlushReason)
+
+    enum class FlushReason(val color: Color) {
+        /**
+         * A different render type was requested
+         */
+        RENDER_TYPE(Color.RED),
+        /**
+         * The render type uses a primitive that can't be merged
+         */
+        UNMERGEABLE(Color.ORANGE),
+        /**
+         * The stencil is about to change
+         */
+        STENCIL(Color.GREEN),
+        /**
+         * The framebuffer is about to change
+         */
+        FRAMEBUFFER(Color.BLUE),
+        /**
+         * The GL matrix is about to change
+         */
+        GL_MATRIX(Color.CYAN),
+        /**
+         * A flattened layer is about to be drawn from its texture
+         */
+        FLAT_LAYER(Color.YELLOW),
+        /**
+         * A layer that doesn't support batching is about to draw
+         */
+        UNBATCHED(Color.PINK),
+        /**
+         * A layer flushed the batch before drawing by other means
+         */
+        EXPLICIT(Color.MAGENTA),
+        /**
+         * Debug overlays are about to be drawn. These aren't shown.
+         */
+        DEBUG(Color.WHITE),
+        /**
+         * The frame ended. These aren't shown.
+         */
+        FRAME_END(Color.WHITE);
+
+        val isShown: Boolean
+            get() = this != DEBUG && this != FRAME_END
+    }
+
+    private val mergeableModes = setOf(GL11.GL_QUADS, GL11.GL_TRIANGLES, GL11.GL_LINES, GL11.GL_POINTS)
+    private val flushPointRenderType: RenderType = SimpleRenderTypes.flat(GL11.GL_LINES)
+}
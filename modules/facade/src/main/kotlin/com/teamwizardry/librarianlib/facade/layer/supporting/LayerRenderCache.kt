@@ -0,0 +1,55 @@
+package com.teamwizardry.librarianlib.facade.layer.supporting
+
+import com.teamwizardry.librarianlib.core.util.GlResourceGc
+import net.minecraft.client.shader.Framebuffer
+
+/**
+ * The retained rasterization of a layer with [cacheRendering][com.teamwizardry.librarianlib.facade.layer.GuiLayer.cacheRendering]
+ * enabled. The framebuffer is owned by the cache rather than the [FramebufferPool], and is deleted when the cache is
+ * [deleted][delete] or garbage collected.
+ */
+internal class LayerRenderCache {
+    private val framebuffer = GlResourceGc.Value<Framebuffer?>(null)
+
+    /**
+     * Whether the cached image is out of date and needs to be rendered again
+     */
+    var isDirty: Boolean = true
+
+    init {
+        val framebuffer = framebuffer
+        GlResourceGc.track(this) {
+            framebuffer.value?.deleteFramebuffer()
+        }
+    }
+
+    /**
+     * Gets the cached framebuffer, first rendering it using [callback] if it's dirty or the window has been resized.
+     */
+    fun render(callback: (Framebuffer) -> Unit): Framebuffer {
+        var fbo = framebuffer.value
+        if(fbo == null) {
+            fbo = FramebufferPool.createUnpooledFramebuffer()
+            framebuffer.value = fbo
+            isDirty = true
+        }
+        if(FramebufferPool.fitToWindow(fbo))
+            isDirty = true
+
+        if(isDirty) {
+            // clear the flag first, so anything invalidated while rendering is rendered again next frame
+            isDirty = false
+            FramebufferPool.renderToFramebuffer(fbo, callback)
+        }
+        return fbo
+    }
+
+    /**
+     * Deletes the cached framebuffer. The cache will create a new one if it's rendered again.
+     */
+    fun delete() {
+        framebuffer.value?.deleteFramebuffer()
+        framebuffer.value = null
+        isDirty = true
+    }
+}
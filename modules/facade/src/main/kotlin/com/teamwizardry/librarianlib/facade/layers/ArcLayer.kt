@@ -1,16 +1,15 @@
 package com.teamwizardry.librarianlib.facade.layers
 
-import com.teamwizardry.librarianlib.core.util.Client
 import com.teamwizardry.librarianlib.core.util.SimpleRenderTypes
 import com.teamwizardry.librarianlib.core.util.kotlin.color
 import com.teamwizardry.librarianlib.core.util.kotlin.pos2d
 import com.teamwizardry.librarianlib.facade.value.IMValue
 import com.teamwizardry.librarianlib.facade.value.IMValueDouble
+import com.teamwizardry.librarianlib.facade.layer.BatchedDraw
 import com.teamwizardry.librarianlib.facade.layer.GuiLayer
 import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
 import com.teamwizardry.librarianlib.math.Vec2d
 import com.teamwizardry.librarianlib.math.vec
-import net.minecraft.client.renderer.IRenderTypeBuffer
 import org.lwjgl.opengl.GL11
 import java.awt.Color
 import java.lang.Math.PI
@@ -20,6 +19,7 @@ import kotlin.math.max
 import kotlin.math.min
 import kotlin.math.sin
 
+@BatchedDraw
 class ArcLayer(color: Color, x: Int, y: Int, width: Int, height: Int): GuiLayer(x, y, width, height) {
     constructor(color: Color, x: Int, y: Int): this(color, x, y, 0, 0)
     constructor(color: Color): this(color, 0, 0, 0, 0)
@@ -80,8 +80,7 @@ class ArcLayer(color: Color, x: Int, y: Int, width: Int, height: Int): GuiLayer(
         val c = color
 
 
-        val buffer = IRenderTypeBuffer.getImpl(Client.tessellator.buffer)
-        val vb = buffer.getBuffer(renderType)
+        val vb = context.buffer.getBuffer(renderType)
 
         context.matrix.translate(size.x/2, size.y/2)
 
@@ -102,9 +101,6 @@ class ArcLayer(color: Color, x: Int, y: Int, width: Int, height: Int): GuiLayer(
             val sin = sin(start)
             vb.pos2d(context.matrix, rX * sin, rY * -cos).color(c).endVertex()
         }
-
-        buffer.finish()
-
     }
 
     companion object {
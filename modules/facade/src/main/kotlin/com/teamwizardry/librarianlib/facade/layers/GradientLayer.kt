@@ -1,18 +1,18 @@
 package com.teamwizardry.librarianlib.facade.layers
 
-import com.teamwizardry.librarianlib.core.util.Client
 import com.teamwizardry.librarianlib.core.util.SimpleRenderTypes
 import com.teamwizardry.librarianlib.core.util.kotlin.color
 import com.teamwizardry.librarianlib.core.util.kotlin.pos2d
 import com.teamwizardry.librarianlib.facade.value.RMValue
 import com.teamwizardry.librarianlib.facade.value.RMValueDouble
+import com.teamwizardry.librarianlib.facade.layer.BatchedDraw
 import com.teamwizardry.librarianlib.facade.layer.GuiLayer
 import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
 import com.teamwizardry.librarianlib.math.Axis2d
-import net.minecraft.client.renderer.IRenderTypeBuffer
 import org.lwjgl.opengl.GL11
 import java.awt.Color
 
+@BatchedDraw
 class GradientLayer(val axis: Axis2d, posX: Int, posY: Int, width: Int, height: Int): GuiLayer(posX, posY, width, height) {
     constructor(axis: Axis2d, min: Color, max: Color, posX: Int, posY: Int, width: Int, height: Int)
         : this(axis, posX, posY, width, height) {
@@ -39,8 +39,7 @@ class GradientLayer(val axis: Axis2d, posX: Int, posY: Int, width: Int, height:
 
 
         if(stops.isNotEmpty()) {
-            val buffer = IRenderTypeBuffer.getImpl(Client.tessellator.buffer)
-            val vb = buffer.getBuffer(GradientLayer.renderType)
+            val vb = context.buffer.getBuffer(GradientLayer.renderType)
 
             if (axis == Axis2d.X) {
                 if (stops.first().location != 0.0) {
@@ -73,8 +72,6 @@ class GradientLayer(val axis: Axis2d, posX: Int, posY: Int, width: Int, height:
                     vb.pos2d(context.matrix, maxX, maxY).color(stops.last().color).endVertex()
                 }
             }
-
-            buffer.finish()
         }
 
     }
@@ -107,6 +104,6 @@ class GradientLayer(val axis: Axis2d, posX: Int, posY: Int, width: Int, height:
     }
 
     companion object {
-        private val renderType = SimpleRenderTypes.flat(GL11.GL_QUADS)
+        private val renderType = SimpleRenderTypes.flat(GL11.GL_QUAD_STRIP)
     }
 }
\ No newline at end of file
@@ -1,16 +1,16 @@
 package com.teamwizardry.librarianlib.facade.layers
 
-import com.teamwizardry.librarianlib.core.util.Client
 import com.teamwizardry.librarianlib.core.util.SimpleRenderTypes
 import com.teamwizardry.librarianlib.core.util.kotlin.color
 import com.teamwizardry.librarianlib.core.util.kotlin.pos2d
+import com.teamwizardry.librarianlib.facade.layer.BatchedDraw
 import com.teamwizardry.librarianlib.facade.layer.GuiLayer
 import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
 import com.teamwizardry.librarianlib.facade.value.IMValue
-import net.minecraft.client.renderer.IRenderTypeBuffer
 import org.lwjgl.opengl.GL11
 import java.awt.Color
 
+@BatchedDraw
 class RectLayer(color: Color, x: Int, y: Int, width: Int, height: Int): GuiLayer(x, y, width, height) {
     constructor(color: Color, x: Int, y: Int): this(color, x, y, 0, 0)
     constructor(x: Int, y: Int): this(Color.white, x, y)
@@ -28,15 +28,12 @@ class RectLayer(color: Color, x: Int, y: Int, width: Int, height: Int): GuiLayer
 
         val c = color
 
-        val buffer = IRenderTypeBuffer.getImpl(Client.tessellator.buffer)
-        val vb = buffer.getBuffer(renderType)
+        val vb = context.buffer.getBuffer(renderType)
 
         vb.pos2d(context.matrix, minX, maxY).color(c).endVertex()
         vb.pos2d(context.matrix, maxX, maxY).color(c).endVertex()
         vb.pos2d(context.matrix, maxX, minY).color(c).endVertex()
         vb.pos2d(context.matrix, minX, minY).color(c).endVertex()
-
-        buffer.finish()
     }
 
     companion object {
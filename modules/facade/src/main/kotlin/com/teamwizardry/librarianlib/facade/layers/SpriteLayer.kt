@@ -1,5 +1,6 @@
 package com.teamwizardry.librarianlib.facade.layers
 
+import com.teamwizardry.librarianlib.facade.layer.BatchedDraw
 import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
 import com.teamwizardry.librarianlib.facade.layer.GuiLayer
 import com.teamwizardry.librarianlib.facade.value.IMValue
@@ -10,6 +11,7 @@ import java.awt.Color
 /**
  * Displays a sprite
  */
+@BatchedDraw
 class SpriteLayer(var sprite: ISprite?, x: Int, y: Int, width: Int, height: Int) : GuiLayer(x, y, width, height) {
     constructor(sprite: ISprite?, x: Int, y: Int): this(sprite, x, y, sprite?.width ?: 16, sprite?.height ?: 16)
     constructor(sprite: ISprite?): this(sprite, 0, 0)
@@ -23,6 +25,6 @@ class SpriteLayer(var sprite: ISprite?, x: Int, y: Int, width: Int, height: Int)
     override fun draw(context: GuiDrawContext) {
         val sp = sprite ?: return
 
-        sp.draw(context.matrix, 0f, 0f, size.xi.toFloat(), size.yi.toFloat(), animationFrame, tint)
+        sp.draw(context.matrix, context.buffer, 0f, 0f, size.xi.toFloat(), size.yi.toFloat(), animationFrame, tint)
     }
 }
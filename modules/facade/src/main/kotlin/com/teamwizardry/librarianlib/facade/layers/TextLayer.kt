@@ -1,5 +1,6 @@
 package com.teamwizardry.librarianlib.facade.layers
 
+import com.teamwizardry.librarianlib.facade.layer.BatchedDraw
 import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
 import com.teamwizardry.librarianlib.facade.layer.GuiLayer
 import com.teamwizardry.librarianlib.facade.text.BitfontRenderer
@@ -17,6 +18,7 @@ import java.awt.Color
 import kotlin.math.max
 import kotlin.math.min
 
+@BatchedDraw
 open class TextLayer(posX: Int, posY: Int, width: Int, height: Int, text: String): GuiLayer(posX, posY, width, height) {
     constructor(posX: Int, posY: Int, text: String): this(posX, posY, 0, 0, text) {
     }
@@ -131,7 +133,10 @@ open class TextLayer(posX: Int, posY: Int, width: Int, height: Int, text: String
 
     override fun draw(context: GuiDrawContext) {
         context.matrix.translate(textMargins.left, textMargins.top)
-        BitfontRenderer.draw(context.matrix, container, color)
+        // adding glyphs to the atlas can resize it, which would break the texture coordinates of batched text
+        if(!BitfontRenderer.hasGlyphs(container))
+            context.flush()
+        BitfontRenderer.draw(context.matrix, context.buffer, container, color)
     }
 
     data class Margins(val left: Double, val top: Double, val right: Double, val bottom: Double) {
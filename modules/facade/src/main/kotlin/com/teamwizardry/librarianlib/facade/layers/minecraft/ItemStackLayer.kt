@@ -1,12 +1,14 @@
 package com.teamwizardry.librarianlib.facade.layers.minecraft
 
 import com.teamwizardry.librarianlib.core.util.Client
+import com.teamwizardry.librarianlib.facade.layer.BatchedDraw
 import com.teamwizardry.librarianlib.facade.layer.GuiLayer
 import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
 import com.teamwizardry.librarianlib.facade.value.IMValue
 import com.teamwizardry.librarianlib.etcetera.eventbus.Event
 import net.minecraft.item.ItemStack
 
+@BatchedDraw
 class ItemStackLayer(stack: ItemStack, x: Int, y: Int): GuiLayer(x, y, 16, 16) {
     constructor(stack: ItemStack): this(stack, 0, 0)
     constructor(x: Int, y: Int): this(ItemStack.EMPTY, x, y)
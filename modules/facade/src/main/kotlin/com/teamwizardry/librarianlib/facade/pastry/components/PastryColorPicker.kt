@@ -9,6 +9,7 @@ import com.teamwizardry.librarianlib.core.util.kotlin.pos2d
 import com.teamwizardry.librarianlib.core.util.kotlin.toRl
 import com.teamwizardry.librarianlib.etcetera.eventbus.Event
 import com.teamwizardry.librarianlib.facade.EnumMouseButton
+import com.teamwizardry.librarianlib.facade.layer.BatchedDraw
 import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
 import com.teamwizardry.librarianlib.facade.layer.GuiLayer
 import com.teamwizardry.librarianlib.facade.layer.GuiLayerEvents
@@ -18,7 +19,6 @@ import com.teamwizardry.librarianlib.facade.pastry.BackgroundTexture
 import com.teamwizardry.librarianlib.facade.pastry.layers.PastryBackground
 import com.teamwizardry.librarianlib.math.vec
 import com.teamwizardry.librarianlib.mosaic.Mosaic
-import net.minecraft.client.renderer.IRenderTypeBuffer
 import net.minecraft.client.renderer.RenderState
 import net.minecraft.client.renderer.RenderType
 import net.minecraft.client.renderer.Tessellator
@@ -129,6 +129,7 @@ class PastryColorPicker: GuiLayer() {
             square.size -= vec(2, 2)
         }
 
+        @BatchedDraw
         inner class ColorSquare: GuiLayer(0, 0, 0, 0) {
             override fun draw(context: GuiDrawContext) {
                 super.draw(context)
@@ -140,21 +141,22 @@ class PastryColorPicker: GuiLayer() {
                 val maxX = size.xi.toDouble()
                 val maxY = size.yi.toDouble()
 
-                val buffer = IRenderTypeBuffer.getImpl(Client.tessellator.buffer)
-                val vb = buffer.getBuffer(flatRenderType)
+                var vb = context.buffer.getBuffer(flatRenderType)
 
                 vb.pos2d(context.matrix, minX, minY).color(Color.WHITE).endVertex()
                 vb.pos2d(context.matrix, minX, maxY).color(Color.WHITE).endVertex()
                 vb.pos2d(context.matrix, maxX, maxY).color(color).endVertex()
                 vb.pos2d(context.matrix, maxX, minY).color(color).endVertex()
-                buffer.finish()
+                // the brightness gradient is multiplied over everything drawn so far, so the batch has to be drawn first
+                context.flush()
 
                 RenderSystem.blendFunc(GL11.GL_DST_COLOR, GL11.GL_ZERO)
+                vb = context.buffer.getBuffer(flatRenderType)
                 vb.pos2d(context.matrix, minX, minY).color(Color.WHITE).endVertex()
                 vb.pos2d(context.matrix, minX, maxY).color(Color.BLACK).endVertex()
                 vb.pos2d(context.matrix, maxX, maxY).color(Color.BLACK).endVertex()
                 vb.pos2d(context.matrix, maxX, minY).color(Color.WHITE).endVertex()
-                buffer.finish()
+                context.flush()
 
                 RenderSystem.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA)
             }
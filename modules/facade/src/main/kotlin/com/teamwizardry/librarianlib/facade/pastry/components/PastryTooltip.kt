@@ -3,6 +3,7 @@ package com.teamwizardry.librarianlib.facade.pastry.components
 import com.mojang.blaze3d.systems.RenderSystem
 import com.teamwizardry.librarianlib.core.util.Client
 import com.teamwizardry.librarianlib.etcetera.eventbus.Hook
+import com.teamwizardry.librarianlib.facade.layer.BatchedDraw
 import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
 import com.teamwizardry.librarianlib.facade.layer.GuiLayer
 import com.teamwizardry.librarianlib.facade.layer.GuiLayerEvents
@@ -84,6 +85,7 @@ class PastryBasicTooltip: PastryTooltip() {
     }
 }
 
+@BatchedDraw
 class ItemStackTooltip: GuiLayer() {
     val stack_im: IMValue<ItemStack?> = imValue()
     var stack: ItemStack? by stack_im
@@ -92,11 +94,13 @@ class ItemStackTooltip: GuiLayer() {
         val rootMousePos = root.mousePos
 
         stack?.also { stack ->
+            context.flush()
             TooltipProvider.renderTooltip(stack, rootMousePos.xi, rootMousePos.yi)
         }
     }
 }
 
+@BatchedDraw
 class VanillaTooltip: GuiLayer() {
     val text_im: IMValue<String?> = imValue()
     var text: String? by text_im
@@ -111,6 +115,7 @@ class VanillaTooltip: GuiLayer() {
         val rootMousePos = root.mousePos
 
         (lines ?: text?.let { listOf(it) })?.also { lines ->
+            context.flush()
             TooltipProvider.renderTooltip(lines, rootMousePos.xi, rootMousePos.yi, font)
         }
     }
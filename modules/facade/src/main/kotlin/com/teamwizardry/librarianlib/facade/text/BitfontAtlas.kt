@@ -54,6 +54,8 @@ object BitfontAtlas: Texture() {
         return rect(rect.x/width, rect.y/height, rect.width/width, rect.height/height)
     }
 
+    operator fun contains(image: BitGrid): Boolean = image in rects
+
     fun load(images: List<BitGrid>) {
         images.forEach { insert(it) }
     }
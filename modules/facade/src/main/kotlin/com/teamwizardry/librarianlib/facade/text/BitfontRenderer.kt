@@ -20,8 +20,16 @@ import java.awt.Color
 object BitfontRenderer {
     fun draw(matrix: Matrix3d, container: TextContainer, defaultColor: Color) {
         val buffer = IRenderTypeBuffer.getImpl(Client.tessellator.buffer)
-        val vb = buffer.getBuffer(renderType)
+        draw(matrix, buffer, container, defaultColor)
+        buffer.finish()
+    }
 
+    /**
+     * Draws the text into the passed buffer without finishing it. Any glyphs missing from the [BitfontAtlas] are added
+     * first, which may resize it and invalidate the texture coordinates of text already in the buffer, so check
+     * [hasGlyphs] and draw any pending text beforehand.
+     */
+    fun draw(matrix: Matrix3d, buffer: IRenderTypeBuffer, container: TextContainer, defaultColor: Color) {
         for(line in container.lines) {
             for(glyph in line.glyphs) {
                 BitfontAtlas.insert(glyph.glyph.image)
@@ -29,6 +37,8 @@ object BitfontRenderer {
             }
         }
 
+        val vb = buffer.getBuffer(renderType)
+
         for (line in container.lines) {
             for(glyph in line.glyphs) {
                 draw(matrix, vb, glyph, line.posX + glyph.posX, line.posY + glyph.posY, defaultColor)
@@ -37,8 +47,17 @@ object BitfontRenderer {
                 }
             }
         }
+    }
 
-        buffer.finish()
+    /**
+     * Whether every glyph in the passed container is already in the [BitfontAtlas]
+     */
+    fun hasGlyphs(container: TextContainer): Boolean {
+        return container.lines.all { line ->
+            line.glyphs.all { glyph ->
+                glyph.glyph.image in BitfontAtlas && glyph.attachments?.all { it.glyph.image in BitfontAtlas } != false
+            }
+        }
     }
 
     fun draw(matrix: Matrix3d, vb: IVertexBuilder, typesetGlyph: TypesetGlyph, posX: Int, posY: Int, defaultColor: Color) {
@@ -109,6 +109,9 @@ object LibrarianLibSpritesTestMod: TestMod("facade", "Facade", logger) {
         +FacadeScreenConfig("blend", "Blending", ::BlendingTestScreen)
         +FacadeScreenConfig("render_fbo_scale", "Render to FBO Scale", ::RenderFBOScaleTest)
         +FacadeScreenConfig("render_quad_scale", "Render to Quad Scale", ::RenderQuadScaleTest)
+        +FacadeScreenConfig("render_cache", "Render Cache", ::RenderCacheTestScreen)
+        +FacadeScreenConfig("draw_batching", "Draw Batching", ::DrawBatchingTestScreen)
+        +FacadeScreenConfig("hit_testing", "Hit Testing", ::HitTestingTestScreen)
         +FacadeScreenConfig("simple_yoga", "Yoga Simple Flex", ::SimpleYogaScreen)
         +FacadeScreenConfig("yoga_list", "Yoga List", ::YogaListScreen)
         +FacadeScreenConfig("pastry", "Pastry", ::PastryTestScreen)
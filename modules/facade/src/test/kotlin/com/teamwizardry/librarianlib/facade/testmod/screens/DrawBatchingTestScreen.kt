@@ -0,0 +1,79 @@
+package com.teamwizardry.librarianlib.facade.testmod.screens
+
+import com.teamwizardry.librarianlib.core.util.Client
+import com.teamwizardry.librarianlib.core.util.SimpleRenderTypes
+import com.teamwizardry.librarianlib.core.util.kotlin.color
+import com.teamwizardry.librarianlib.core.util.kotlin.pos2d
+import com.teamwizardry.librarianlib.facade.layer.GuiDrawContext
+import com.teamwizardry.librarianlib.facade.layer.GuiLayer
+import com.teamwizardry.librarianlib.facade.layer.GuiLayerEvents
+import com.teamwizardry.librarianlib.facade.layers.ArcLayer
+import com.teamwizardry.librarianlib.facade.layers.RectLayer
+import com.teamwizardry.librarianlib.facade.layers.TextLayer
+import com.teamwizardry.librarianlib.facade.testmod.FacadeTestScreen
+import net.minecraft.client.renderer.IRenderTypeBuffer
+import org.lwjgl.opengl.GL11
+import java.awt.Color
+
+class DrawBatchingTestScreen: FacadeTestScreen("Draw Batching") {
+    init {
+        val bg = RectLayer(Color.WHITE, 0, 0, 200, 140)
+        main.size = bg.size
+        main.add(bg)
+
+        // clicking the toggle outlines the layers that cause flushes
+        val toggle = RectLayer(Color.RED, 5, 5, 10, 10)
+        toggle.BUS.hook<GuiLayerEvents.MouseDown> {
+            if(toggle.mouseOver) {
+                GuiLayer.showBatchFlushes = !GuiLayer.showBatchFlushes
+                toggle.color = if(GuiLayer.showBatchFlushes) Color.GREEN else Color.RED
+            }
+        }
+        main.add(toggle)
+
+        // consecutive rects are merged into a single draw call
+        for(x in 0 until 36) {
+            for(y in 0 until 8) {
+                main.add(RectLayer(if((x + y) % 2 == 0) Color.BLACK else Color.GRAY, 10 + x * 5, 20 + y * 5, 5, 5))
+            }
+        }
+
+        // text interleaved with rects flushes at every switch
+        for(i in 0 until 4) {
+            main.add(RectLayer(Color.LIGHT_GRAY, 10 + i * 45, 65, 40, 12))
+            main.add(TextLayer(12 + i * 45, 67, "Text $i"))
+        }
+
+        // fans can't be merged, so each arc is drawn separately
+        for(i in 0 until 4) {
+            main.add(ArcLayer(Color.BLUE, 10 + i * 45, 85, 30, 30).also { it.endAngle = Math.PI * (i + 1) / 2 })
+        }
+
+        // clipping flushes at the stencil changes
+        val clip = GuiLayer(190, 85, 5, 30)
+        clip.clipToBounds = true
+        clip.add(RectLayer(Color.MAGENTA, -5, 0, 15, 30))
+        main.add(clip)
+
+        // a layer drawing with its own buffer has the batch flushed first, so it isn't covered by its parent
+        val unbatchedParent = RectLayer(Color.LIGHT_GRAY, 10, 120, 40, 15)
+        unbatchedParent.add(UnbatchedLayer(5, 3, 30, 9))
+        main.add(unbatchedParent)
+    }
+
+    private class UnbatchedLayer(x: Int, y: Int, width: Int, height: Int): GuiLayer(x, y, width, height) {
+        override fun draw(context: GuiDrawContext) {
+            val buffer = IRenderTypeBuffer.getImpl(Client.tessellator.buffer)
+            val vb = buffer.getBuffer(renderType)
+            vb.pos2d(context.matrix, 0, size.y).color(Color.RED).endVertex()
+            vb.pos2d(context.matrix, size.x, size.y).color(Color.RED).endVertex()
+            vb.pos2d(context.matrix, size.x, 0).color(Color.RED).endVertex()
+            vb.pos2d(context.matrix, 0, 0).color(Color.RED).endVertex()
+            buffer.finish()
+        }
+
+        companion object {
+            private val renderType = SimpleRenderTypes.flat(GL11.GL_QUADS)
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.teamwizardry.librarianlib.facade.testmod.screens
+
+import com.teamwizardry.librarianlib.facade.layer.GuiLayer
+import com.teamwizardry.librarianlib.facade.layers.RectLayer
+import com.teamwizardry.librarianlib.facade.testmod.FacadeTestScreen
+import com.teamwizardry.librarianlib.math.vec
+import java.awt.Color
+
+class HitTestingTestScreen: FacadeTestScreen("Hit Testing") {
+    init {
+        val bg = RectLayer(Color.WHITE, 0, 0, 300, 200)
+        main.size = bg.size
+        main.add(bg)
+
+        // thousands of hoverable cells, most of which are skipped by the hit test
+        val grid = GuiLayer(0, 0, 300, 150)
+        for(x in 0 until 100) {
+            for(y in 0 until 50) {
+                val cell = RectLayer(Color.GRAY, x * 3, y * 3, 2, 2)
+                cell.color_im.set { if(cell.mouseOver) Color.RED else Color.GRAY }
+                grid.add(cell)
+            }
+        }
+        main.add(grid)
+
+        // a rotated, clipped container, where children outside the clip shouldn't be hoverable
+        val clip = GuiLayer(200, 160, 30, 30)
+        clip.anchor = vec(0.5, 0.5)
+        clip.rotation = Math.toRadians(30.0)
+        clip.clipToBounds = true
+        for(i in 0 until 4) {
+            val cell = RectLayer(Color.GRAY, i * 12 - 6, i * 12 - 6, 10, 10)
+            cell.color_im.set { if(cell.mouseOver) Color.RED else Color.GRAY }
+            clip.add(cell)
+        }
+        main.add(clip)
+
+        // a container that ignores its own bounds is only hoverable through its children
+        val passthrough = GuiLayer(20, 160, 60, 30)
+        passthrough.ignoreMouseOverBounds = true
+        val child = RectLayer(Color.GRAY, 70, 5, 20, 20)
+        child.color_im.set { if(passthrough.mouseOver) Color.RED else Color.GRAY }
+        passthrough.add(child)
+        main.add(passthrough)
+    }
+}
@@ -0,0 +1,38 @@
+package com.teamwizardry.librarianlib.facade.testmod.screens
+
+import com.teamwizardry.librarianlib.facade.layer.GuiLayer
+import com.teamwizardry.librarianlib.facade.layer.GuiLayerEvents
+import com.teamwizardry.librarianlib.facade.layers.RectLayer
+import com.teamwizardry.librarianlib.facade.testmod.FacadeTestScreen
+import java.awt.Color
+
+class RenderCacheTestScreen: FacadeTestScreen("Render Cache") {
+    init {
+        val bg = RectLayer(Color.WHITE, 0, 0, 200, 100)
+        main.size = bg.size
+        main.add(bg)
+
+        // drawn before the grid, so only the corner sticking out from under it should be visible once the grid's cache
+        // is clean
+        val behind = RectLayer(Color.GREEN, 5, 5, 20, 20)
+        main.add(behind)
+
+        // clicking a cell toggles its color, which requires an explicit invalidation
+        val grid = GuiLayer(10, 10, 180, 80)
+        grid.cacheRendering = true
+        for(x in 0 until 36) {
+            for(y in 0 until 16) {
+                val cell = RectLayer(if((x + y) % 2 == 0) Color.BLACK else Color.GRAY, x * 5, y * 5, 5, 5)
+                cell.BUS.hook<GuiLayerEvents.MouseDown> {
+                    if(cell.mouseOver) {
+                        cell.color = if(cell.color == Color.RED) Color.BLUE else Color.RED
+                        cell.invalidateRenderCache()
+                    }
+                }
+                grid.add(cell)
+            }
+        }
+
+        main.add(grid)
+    }
+}
@@ -0,0 +1,35 @@
+package com.teamwizardry.librarianlib.glitter.benchmark;
+
+import com.teamwizardry.librarianlib.glitter.ReadWriteParticleBinding;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A minimal binding backed by a range of the particle array. {@link com.teamwizardry.librarianlib.glitter.bindings.StoredBinding}
+ * can only be created by a particle system, which would have to be
+ * {@link com.teamwizardry.librarianlib.glitter.ParticleSystem#getHeadless headless} to avoid bootstrapping Minecraft.
+ */
+public class ArrayBinding implements ReadWriteParticleBinding {
+    private final int index;
+    private final double[] contents;
+
+    public ArrayBinding(int index, int size) {
+        this.index = index;
+        this.contents = new double[size];
+    }
+
+    @NotNull
+    @Override
+    public double[] getContents() {
+        return contents;
+    }
+
+    @Override
+    public void load(@NotNull double[] particle) {
+        System.arraycopy(particle, index, contents, 0, contents.length);
+    }
+
+    @Override
+    public void store(@NotNull double[] particle) {
+        System.arraycopy(contents, 0, particle, index, contents.length);
+    }
+}
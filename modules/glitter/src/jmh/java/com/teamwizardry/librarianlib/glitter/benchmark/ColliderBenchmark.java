@@ -0,0 +1,79 @@
+package com.teamwizardry.librarianlib.glitter.benchmark;
+
+import com.teamwizardry.librarianlib.glitter.GlitterWorldCollider;
+import com.teamwizardry.librarianlib.glitter.RayHitBatch;
+import com.teamwizardry.librarianlib.glitter.RayHitResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link GlitterWorldCollider} queries against a {@link MockCollisionSource}, comparing individual
+ * {@link GlitterWorldCollider#collide collide} calls with a single {@link GlitterWorldCollider#collideBatch
+ * collideBatch} call. The rays start in a cluster above the floor and move at particle-like speeds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColliderBenchmark {
+    @Param({"1000", "10000"})
+    public int count;
+
+    /**
+     * The width of the cube the rays start in
+     */
+    @Param({"8", "64"})
+    public double spread;
+
+    private double[] posX, posY, posZ, velX, velY, velZ;
+    private RayHitResult result;
+    private RayHitBatch batch;
+
+    @Setup
+    public void setup() {
+        GlitterWorldCollider.setCollisionSource(new MockCollisionSource(4, 6));
+        Random random = new Random(0);
+        posX = new double[count];
+        posY = new double[count];
+        posZ = new double[count];
+        velX = new double[count];
+        velY = new double[count];
+        velZ = new double[count];
+        for (int i = 0; i < count; i++) {
+            posX[i] = random.nextDouble() * spread;
+            posY[i] = random.nextDouble() * 8;
+            posZ[i] = random.nextDouble() * spread;
+            velX[i] = random.nextGaussian() * 0.5;
+            velY[i] = random.nextGaussian() * 0.5;
+            velZ[i] = random.nextGaussian() * 0.5;
+        }
+        result = new RayHitResult();
+        batch = new RayHitBatch(count);
+    }
+
+    @TearDown
+    public void tearDown() {
+        GlitterWorldCollider.setCollisionSource(null);
+    }
+
+    @Benchmark
+    public void collideEach(Blackhole blackhole) {
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            GlitterWorldCollider.INSTANCE.collide(result, posX[i], posY[i], posZ[i], velX[i], velY[i], velZ[i]);
+            total += result.getCollisionFraction();
+        }
+        blackhole.consume(total);
+    }
+
+    @Benchmark
+    public void collideBatch(Blackhole blackhole) {
+        GlitterWorldCollider.INSTANCE.collideBatch(batch, count, posX, posY, posZ, velX, velY, velZ);
+        blackhole.consume(batch.getCollisionFraction());
+    }
+}
@@ -0,0 +1,80 @@
+package com.teamwizardry.librarianlib.glitter.benchmark;
+
+import com.teamwizardry.librarianlib.glitter.ParticleSystem;
+import com.teamwizardry.librarianlib.glitter.bindings.StoredBinding;
+import com.teamwizardry.librarianlib.glitter.modules.DepthSortModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link DepthSortModule} sorting particles from a fixed viewpoint. Shuffled particles measure the full
+ * sort, while the nearly sorted particles, which have been slightly jittered since the last sort, measure the common
+ * case of a sort shortly after the previous tick's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DepthSortBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int count;
+
+    @Param({"false", "true"})
+    public boolean nearlySorted;
+
+    private List<double[]> particles;
+    private DepthSortModule sort;
+    private StoredBinding position;
+    private Random random;
+
+    @Setup
+    public void setup() {
+        // the system is only used to lay out the bindings
+        ParticleSystem layout = new ParticleSystem(true) {
+            @Override
+            public void configure() {
+                position = bind(3);
+                sort = new DepthSortModule(position, bind(1));
+            }
+        };
+        layout.reload();
+
+        random = new Random(0);
+        particles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double[] particle = new double[6];
+            particle[position.getIndex()] = random.nextGaussian() * 16;
+            particle[position.getIndex() + 1] = random.nextGaussian() * 16;
+            particle[position.getIndex() + 2] = random.nextGaussian() * 16;
+            particles.add(particle);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void shuffle() {
+        if (nearlySorted) {
+            // the last invocation left the particles sorted, so just nudge them a little
+            int index = position.getIndex();
+            for (int i = 0; i < count; i++) {
+                double[] particle = particles.get(i);
+                particle[index] += random.nextGaussian() * 0.05;
+                particle[index + 1] += random.nextGaussian() * 0.05;
+                particle[index + 2] += random.nextGaussian() * 0.05;
+            }
+        } else {
+            Collections.shuffle(particles, random);
+        }
+    }
+
+    @Benchmark
+    public void sort() {
+        sort.update(particles, 0, 0, -64, 0, 0, 1);
+    }
+}
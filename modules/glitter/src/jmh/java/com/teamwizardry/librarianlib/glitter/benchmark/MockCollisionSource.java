@@ -0,0 +1,41 @@
+package com.teamwizardry.librarianlib.glitter.benchmark;
+
+import com.teamwizardry.librarianlib.glitter.GlitterWorldCollider;
+import net.minecraft.util.math.AxisAlignedBB;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A stand-in for the client world made of a solid floor below y = 0 and a grid of pillars, so rays traveling in any
+ * direction have a realistic chance of hitting something.
+ */
+public class MockCollisionSource implements GlitterWorldCollider.CollisionSource {
+    private static final List<AxisAlignedBB> FULL_BLOCK = Collections.singletonList(new AxisAlignedBB(0, 0, 0, 1, 1, 1));
+    private static final List<AxisAlignedBB> EMPTY = Collections.emptyList();
+
+    /**
+     * The distance between pillars along each horizontal axis
+     */
+    private final int pillarSpacing;
+    /**
+     * The height of the pillars above the floor
+     */
+    private final int pillarHeight;
+
+    public MockCollisionSource(int pillarSpacing, int pillarHeight) {
+        this.pillarSpacing = pillarSpacing;
+        this.pillarHeight = pillarHeight;
+    }
+
+    @NotNull
+    @Override
+    public List<AxisAlignedBB> getBoundingBoxes(int x, int y, int z) {
+        if (y < 0)
+            return FULL_BLOCK;
+        if (y < pillarHeight && Math.floorMod(x, pillarSpacing) == 0 && Math.floorMod(z, pillarSpacing) == 0)
+            return FULL_BLOCK;
+        return EMPTY;
+    }
+}
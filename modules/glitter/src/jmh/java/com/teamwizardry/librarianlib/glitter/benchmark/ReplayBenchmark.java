@@ -0,0 +1,114 @@
+package com.teamwizardry.librarianlib.glitter.benchmark;
+
+import com.teamwizardry.librarianlib.glitter.GlitterWorldCollider;
+import com.teamwizardry.librarianlib.glitter.ParticleReplay;
+import com.teamwizardry.librarianlib.glitter.ParticleSpawnTrace;
+import com.teamwizardry.librarianlib.glitter.ParticleSystem;
+import com.teamwizardry.librarianlib.glitter.bindings.StoredBinding;
+import com.teamwizardry.librarianlib.glitter.modules.BasicPhysicsUpdateModule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a spawn trace through a {@link BasicPhysicsUpdateModule}, colliding with a {@link MockCollisionSource}.
+ *
+ * By default this uses a synthetic fountain trace. A trace recorded from a live system using
+ * {@link com.teamwizardry.librarianlib.glitter.ParticleSystem#startRecording startRecording} can be used instead by
+ * passing its path, e.g. `-p traceFile=run/fountain.trace`. The recorded system must use the same layout as this
+ * benchmark: lifetime, age, position, previous position, velocity, and color.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+    private static final int FIELD_COUNT = 15;
+    private static final int TICKS = 200;
+
+    /**
+     * The path of a recorded trace, or an empty string to use the synthetic trace
+     */
+    @Param({""})
+    public String traceFile;
+
+    /**
+     * The number of particles spawned each tick of the synthetic trace
+     */
+    @Param({"50", "500"})
+    public int spawnsPerTick;
+
+    @Param({"false", "true"})
+    public boolean collision;
+
+    private ParticleReplay replay;
+
+    @Setup
+    public void setup() throws IOException {
+        GlitterWorldCollider.setCollisionSource(new MockCollisionSource(4, 6));
+        ParticleSpawnTrace trace;
+        if (traceFile.isEmpty()) {
+            trace = fountain();
+        } else {
+            try (InputStream stream = new FileInputStream(traceFile)) {
+                trace = ParticleSpawnTrace.read(stream);
+            }
+        }
+
+        replay = new ParticleReplay(trace, new ParticleSystem(true) {
+            @Override
+            public void configure() {
+                StoredBinding position = bind(3);
+                StoredBinding previousPosition = bind(3);
+                StoredBinding velocity = bind(3);
+                bind(4); // color
+                getUpdateModules().add(new BasicPhysicsUpdateModule(position, previousPosition, velocity, collision));
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        GlitterWorldCollider.setCollisionSource(null);
+    }
+
+    /**
+     * A fountain spraying particles upward from just above the floor
+     */
+    private ParticleSpawnTrace fountain() {
+        Random random = new Random(0);
+        ParticleSpawnTrace trace = new ParticleSpawnTrace(FIELD_COUNT);
+        double[] particle = new double[FIELD_COUNT];
+        for (int tick = 0; tick < TICKS; tick++) {
+            if (tick != 0)
+                trace.endTick();
+            for (int i = 0; i < spawnsPerTick; i++) {
+                particle[0] = 40 + random.nextInt(40); // lifetime
+                particle[1] = 0; // age
+                particle[2] = particle[5] = 0.5;
+                particle[3] = particle[6] = 1;
+                particle[4] = particle[7] = 0.5;
+                particle[8] = random.nextGaussian() * 0.1;
+                particle[9] = 0.5 + random.nextDouble() * 0.3;
+                particle[10] = random.nextGaussian() * 0.1;
+                particle[11] = particle[12] = particle[13] = particle[14] = 1;
+                trace.addSpawn(particle);
+            }
+        }
+        return trace;
+    }
+
+    @Benchmark
+    public void replay(Blackhole blackhole) {
+        replay.reset();
+        replay.run();
+        blackhole.consume(replay.getSystem().getParticleCount());
+    }
+}
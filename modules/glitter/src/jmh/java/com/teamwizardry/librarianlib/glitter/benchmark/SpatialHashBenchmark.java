@@ -0,0 +1,90 @@
+package com.teamwizardry.librarianlib.glitter.benchmark;
+
+import com.teamwizardry.librarianlib.glitter.modules.SpatialHashModule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building and querying a {@link SpatialHashModule}. The particles are spread at a constant density, so each
+ * query finds roughly the same number of neighbors regardless of the particle count, and the time per particle should
+ * stay flat as the count grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialHashBenchmark {
+    /**
+     * The average number of particles in each cubic block
+     */
+    private static final double DENSITY = 2;
+    private static final double RADIUS = 1;
+
+    @Param({"1000", "10000", "50000"})
+    public int count;
+
+    private List<double[]> particles;
+    private SpatialHashModule hash;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        double extent = Math.cbrt(count / DENSITY);
+        particles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            particles.add(new double[]{
+                    random.nextDouble() * extent,
+                    random.nextDouble() * extent,
+                    random.nextDouble() * extent
+            });
+        }
+        hash = new SpatialHashModule(new ArrayBinding(0, 3), RADIUS);
+        hash.update(particles);
+    }
+
+    @Benchmark
+    public void build() {
+        hash.update(particles);
+    }
+
+    @Benchmark
+    public void queryAll(Blackhole blackhole) {
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            double[] particle = particles.get(i);
+            SpatialHashModule.Neighbors neighbors = hash.neighbors(particle[0], particle[1], particle[2], RADIUS);
+            while (neighbors.next()) {
+                found++;
+            }
+        }
+        blackhole.consume(found);
+    }
+
+    /**
+     * The naive all-pairs search the spatial hash replaces, for comparison
+     */
+    @Benchmark
+    public void queryAllBruteForce(Blackhole blackhole) {
+        int found = 0;
+        double radiusSq = RADIUS * RADIUS;
+        for (int i = 0; i < count; i++) {
+            double[] a = particles.get(i);
+            for (int j = 0; j < count; j++) {
+                double[] b = particles.get(j);
+                double dx = a[0] - b[0];
+                double dy = a[1] - b[1];
+                double dz = a[2] - b[2];
+                if (dx * dx + dy * dy + dz * dz <= radiusSq)
+                    found++;
+            }
+        }
+        blackhole.consume(found);
+    }
+}
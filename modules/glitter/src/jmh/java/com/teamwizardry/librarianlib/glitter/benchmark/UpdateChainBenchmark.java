@@ -0,0 +1,72 @@
+package com.teamwizardry.librarianlib.glitter.benchmark;
+
+import com.teamwizardry.librarianlib.glitter.ParticleReplay;
+import com.teamwizardry.librarianlib.glitter.ParticleSpawnTrace;
+import com.teamwizardry.librarianlib.glitter.ParticleSystem;
+import com.teamwizardry.librarianlib.glitter.bindings.StoredBinding;
+import com.teamwizardry.librarianlib.glitter.modules.AccelerationUpdateModule;
+import com.teamwizardry.librarianlib.glitter.modules.VelocityUpdateModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single update of an acceleration and velocity module chain, with and without
+ * {@link com.teamwizardry.librarianlib.glitter.ParticleSystem#setCompiledUpdates compiled updates}. The particles never
+ * die, so each invocation updates every particle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateChainBenchmark {
+    // lifetime, age, position, previous position, velocity, acceleration
+    private static final int FIELD_COUNT = 14;
+
+    @Param({"1000", "10000", "100000"})
+    public int count;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private ParticleReplay replay;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        ParticleSpawnTrace trace = new ParticleSpawnTrace(FIELD_COUNT);
+        double[] particle = new double[FIELD_COUNT];
+        particle[0] = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            for (int j = 2; j < FIELD_COUNT; j++) {
+                particle[j] = random.nextGaussian();
+            }
+            trace.addSpawn(particle);
+        }
+
+        replay = new ParticleReplay(trace, new ParticleSystem(true) {
+            @Override
+            public void configure() {
+                StoredBinding position = bind(3);
+                StoredBinding previousPosition = bind(3);
+                StoredBinding velocity = bind(3);
+                StoredBinding acceleration = bind(3);
+                getUpdateModules().add(new AccelerationUpdateModule(velocity, acceleration));
+                getUpdateModules().add(new VelocityUpdateModule(position, velocity, previousPosition));
+                setCompiledUpdates(compiled);
+            }
+        });
+        // the particles never die, so don't let the budget evict them
+        replay.setBudget(false);
+        // spawn the particles
+        replay.step();
+    }
+
+    @Benchmark
+    public void update() {
+        replay.step();
+    }
+}
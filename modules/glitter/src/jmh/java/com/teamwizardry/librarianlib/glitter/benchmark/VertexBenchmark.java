@@ -0,0 +1,81 @@
+package com.teamwizardry.librarianlib.glitter.benchmark;
+
+import com.teamwizardry.librarianlib.glitter.modules.SpriteRenderModule;
+import net.minecraft.client.renderer.RenderType;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link SpriteRenderModule}'s render preparation and vertex generation, writing the vertices into a plain
+ * direct {@link ByteBuffer} instead of the game's buffers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexBenchmark {
+    // position, previous position, color, size
+    private static final int FIELD_COUNT = 11;
+    // POSITION_COLOR_TEX
+    private static final int VERTEX_SIZE = 24;
+
+    @Param({"1000", "10000", "100000"})
+    public int count;
+
+    private List<double[]> particles;
+    private SpriteRenderModule module;
+    private SpriteRenderModule.Records records;
+    private SpriteRenderModule.View view;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        particles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double[] particle = new double[FIELD_COUNT];
+            for (int j = 0; j < 6; j++) {
+                particle[j] = random.nextGaussian() * 16;
+            }
+            for (int j = 6; j < 10; j++) {
+                particle[j] = random.nextDouble();
+            }
+            particle[10] = 0.1 + random.nextDouble() * 0.2;
+            particles.add(particle);
+        }
+
+        module = new SpriteRenderModule(
+                RenderType.getTranslucent(),
+                new ArrayBinding(0, 3),
+                new ArrayBinding(3, 3),
+                new ArrayBinding(6, 4),
+                new ArrayBinding(10, 1)
+        );
+        records = module.prepare(particles, Collections.emptyList(), null);
+        view = new SpriteRenderModule.View();
+        view.partialTicks = 0.5;
+        view.m23 = -32;
+        buffer = ByteBuffer.allocateDirect(count * 4 * VERTEX_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public SpriteRenderModule.Records prepare() {
+        return module.prepare(particles, Collections.emptyList(), records);
+    }
+
+    @Benchmark
+    public ByteBuffer writeVertices() {
+        buffer.clear();
+        module.writeVertices(records, view, buffer);
+        return buffer;
+    }
+}
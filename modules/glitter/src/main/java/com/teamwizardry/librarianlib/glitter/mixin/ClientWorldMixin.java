@@ -0,0 +1,18 @@
+package com.teamwizardry.librarianlib.glitter.mixin;
+
+import com.teamwizardry.librarianlib.glitter.GlitterWorldCollider;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.BlockPos;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ClientWorld.class)
+public class ClientWorldMixin {
+    @Inject(method = "notifyBlockUpdate", at = @At("HEAD"))
+    public void invalidateGlitterCollider(BlockPos pos, BlockState oldState, BlockState newState, int flags, CallbackInfo ci) {
+        GlitterWorldCollider.INSTANCE.invalidateBlock(pos.getX(), pos.getY(), pos.getZ());
+    }
+}
@@ -0,0 +1,263 @@
+package com.teamwizardry.librarianlib.glitter
+
+import com.teamwizardry.librarianlib.glitter.modules.CurlAccelerationUpdateModule
+import java.util.Random
+import kotlin.math.floor
+import kotlin.math.pow
+import kotlin.math.sqrt
+
+/**
+ * A precomputed, tileable field of divergence-free "curl noise", which produces swirling, fluid-like motion when used
+ * to accelerate particles (see [CurlAccelerationUpdateModule]).
+ *
+ * Computing curl noise directly requires evaluating the gradient of three noise functions at every particle, every
+ * tick. Instead, this field computes the curl of a random vector potential once, on a lattice of [resolution]³ points
+ * covering a [size]-block cube, and then [sample]s it with trilinear interpolation. The field tiles seamlessly, so
+ * the cube repeats infinitely in every direction.
+ *
+ * The field can optionally evolve over time by precomputing several [frames] of noise, which are smoothly blended
+ * between when sampling. The time axis loops too, so a field with 8 frames repeats every 8 frames.
+ *
+ * Fields are immutable once created and can be sampled from any thread, so a single field can be shared between any
+ * number of modules and systems.
+ */
+class CurlNoiseField @JvmOverloads constructor(
+    /**
+     * The size of the field in blocks, after which it repeats
+     */
+    @JvmField val size: Double,
+    /**
+     * The number of lattice points along each axis. This must be a power of two and at least twice the frequency of
+     * the highest octave, though four times the frequency gives noticeably smoother results.
+     */
+    @JvmField val resolution: Int = 32,
+    /**
+     * The number of noise features along each axis of the field in the first octave
+     */
+    @JvmField val frequency: Int = 4,
+    /**
+     * The number of octaves of noise. Each octave doubles the frequency of the last.
+     */
+    @JvmField val octaves: Int = 1,
+    /**
+     * The amplitude of each octave relative to the previous one
+     */
+    @JvmField val persistence: Double = 0.5,
+    /**
+     * The number of frames of noise in the time axis. A field with one frame is static.
+     */
+    @JvmField val frames: Int = 1,
+    /**
+     * The seed for the random noise
+     */
+    @JvmField val seed: Long = 0
+) {
+    private val mask = resolution - 1
+    private val frameSize = resolution * resolution * resolution * 3
+    private val latticePerBlock = resolution / size
+
+    // the curl, laid out as [frame][z][y][x][component]
+    private val curl: FloatArray
+
+    init {
+        if (size <= 0 || !size.isFinite())
+            throw IllegalArgumentException("Size must be positive and finite, not $size")
+        if (resolution < 2 || resolution and (resolution - 1) != 0)
+            throw IllegalArgumentException("Resolution must be a power of two greater than one, not $resolution")
+        if (frequency < 1)
+            throw IllegalArgumentException("Frequency must be at least 1, not $frequency")
+        if (octaves < 1)
+            throw IllegalArgumentException("Octave count must be at least 1, not $octaves")
+        if (frames < 1)
+            throw IllegalArgumentException("Frame count must be at least 1, not $frames")
+        val maxFrequency = frequency shl (octaves - 1)
+        if (maxFrequency * 2 > resolution)
+            throw IllegalArgumentException("Resolution ($resolution) must be at least twice the frequency of the " +
+                "highest octave ($maxFrequency)")
+
+        curl = FloatArray(frameSize * frames)
+        val potential = FloatArray(frameSize)
+        for (frame in 0 until frames) {
+            potential.fill(0f)
+            for (octave in 0 until octaves) {
+                addOctave(potential, frame, octave)
+            }
+            computeCurl(potential, frame * frameSize)
+        }
+        normalize()
+    }
+
+    /**
+     * Samples the field at the passed position and time, storing the result in the first three elements of [output].
+     * The field is normalized so the average magnitude of its vectors is approximately 1.
+     *
+     * @param time the time in frames. Only the fractional part has an effect if the field only has one frame.
+     */
+    fun sample(x: Double, y: Double, z: Double, time: Double, output: DoubleArray) {
+        output[0] = 0.0
+        output[1] = 0.0
+        output[2] = 0.0
+
+        if (frames == 1) {
+            sampleFrame(0, x, y, z, 1.0, output)
+            return
+        }
+
+        val frameTime = floor(time)
+        val frame = Math.floorMod(frameTime.toLong(), frames.toLong()).toInt()
+        val nextFrame = if (frame == frames - 1) 0 else frame + 1
+        val blend = smoothstep(time - frameTime)
+        sampleFrame(frame * frameSize, x, y, z, 1 - blend, output)
+        sampleFrame(nextFrame * frameSize, x, y, z, blend, output)
+    }
+
+    /**
+     * Adds the trilinearly interpolated value of the frame starting at [offset] to [output], multiplied by [weight]
+     */
+    private fun sampleFrame(offset: Int, x: Double, y: Double, z: Double, weight: Double, output: DoubleArray) {
+        val u = x * latticePerBlock
+        val v = y * latticePerBlock
+        val w = z * latticePerBlock
+        val uFloor = floor(u)
+        val vFloor = floor(v)
+        val wFloor = floor(w)
+        val fx = u - uFloor
+        val fy = v - vFloor
+        val fz = w - wFloor
+
+        // the mask wraps negative values correctly since the resolution is a power of two
+        val x0 = uFloor.toInt() and mask
+        val y0 = vFloor.toInt() and mask
+        val z0 = wFloor.toInt() and mask
+        val x1 = (x0 + 1) and mask
+        val y1 = (y0 + 1) and mask
+        val z1 = (z0 + 1) and mask
+
+        val row00 = offset + (z0 * resolution + y0) * resolution * 3
+        val row01 = offset + (z0 * resolution + y1) * resolution * 3
+        val row10 = offset + (z1 * resolution + y0) * resolution * 3
+        val row11 = offset + (z1 * resolution + y1) * resolution * 3
+        val ix0 = x0 * 3
+        val ix1 = x1 * 3
+
+        val curl = curl
+        for (component in 0 until 3) {
+            val c000 = curl[row00 + ix0 + component]
+            val c100 = curl[row00 + ix1 + component]
+            val c010 = curl[row01 + ix0 + component]
+            val c110 = curl[row01 + ix1 + component]
+            val c001 = curl[row10 + ix0 + component]
+            val c101 = curl[row10 + ix1 + component]
+            val c011 = curl[row11 + ix0 + component]
+            val c111 = curl[row11 + ix1 + component]
+
+            val c00 = c000 + (c100 - c000) * fx
+            val c10 = c010 + (c110 - c010) * fx
+            val c01 = c001 + (c101 - c001) * fx
+            val c11 = c011 + (c111 - c011) * fx
+            val c0 = c00 + (c10 - c00) * fy
+            val c1 = c01 + (c11 - c01) * fy
+            output[component] += (c0 + (c1 - c0) * fz) * weight
+        }
+    }
+
+    /**
+     * Adds one octave of tileable value noise to each component of the vector potential
+     */
+    private fun addOctave(potential: FloatArray, frame: Int, octave: Int) {
+        val cells = frequency shl octave
+        val amplitude = persistence.pow(octave).toFloat()
+        val random = Random(seed * 31 + (frame.toLong() shl 32) + octave)
+        val values = FloatArray(cells * cells * cells * 3) { random.nextFloat() * 2 - 1 }
+
+        val cellsPerPoint = cells.toDouble() / resolution
+        for (z in 0 until resolution) {
+            val w = z * cellsPerPoint
+            val z0 = w.toInt()
+            val z1 = (z0 + 1) % cells
+            val fz = smoothstep(w - z0).toFloat()
+            for (y in 0 until resolution) {
+                val v = y * cellsPerPoint
+                val y0 = v.toInt()
+                val y1 = (y0 + 1) % cells
+                val fy = smoothstep(v - y0).toFloat()
+                for (x in 0 until resolution) {
+                    val u = x * cellsPerPoint
+                    val x0 = u.toInt()
+                    val x1 = (x0 + 1) % cells
+                    val fx = smoothstep(u - x0).toFloat()
+
+                    val index = ((z * resolution + y) * resolution + x) * 3
+                    for (component in 0 until 3) {
+                        fun value(cx: Int, cy: Int, cz: Int) = values[((cz * cells + cy) * cells + cx) * 3 + component]
+                        val c00 = lerp(value(x0, y0, z0), value(x1, y0, z0), fx)
+                        val c10 = lerp(value(x0, y1, z0), value(x1, y1, z0), fx)
+                        val c01 = lerp(value(x0, y0, z1), value(x1, y0, z1), fx)
+                        val c11 = lerp(value(x0, y1, z1), value(x1, y1, z1), fx)
+                        val c = lerp(lerp(c00, c10, fy), lerp(c01, c11, fy), fz)
+                        potential[index + component] += c * amplitude
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the curl of the vector potential using central differences and stores it in the frame starting at
+     * [offset]
+     */
+    private fun computeCurl(potential: FloatArray, offset: Int) {
+        fun index(x: Int, y: Int, z: Int) = (((z and mask) * resolution + (y and mask)) * resolution + (x and mask)) * 3
+
+        for (z in 0 until resolution) {
+            for (y in 0 until resolution) {
+                for (x in 0 until resolution) {
+                    val xPos = index(x + 1, y, z)
+                    val xNeg = index(x - 1, y, z)
+                    val yPos = index(x, y + 1, z)
+                    val yNeg = index(x, y - 1, z)
+                    val zPos = index(x, y, z + 1)
+                    val zNeg = index(x, y, z - 1)
+
+                    // curl = (dC/dy - dB/dz, dA/dz - dC/dx, dB/dx - dA/dy), where the potential is (A, B, C)
+                    val dAdy = potential[yPos] - potential[yNeg]
+                    val dAdz = potential[zPos] - potential[zNeg]
+                    val dBdx = potential[xPos + 1] - potential[xNeg + 1]
+                    val dBdz = potential[zPos + 1] - potential[zNeg + 1]
+                    val dCdx = potential[xPos + 2] - potential[xNeg + 2]
+                    val dCdy = potential[yPos + 2] - potential[yNeg + 2]
+
+                    // the differences span two lattice points, but the field is normalized later anyway
+                    val target = offset + index(x, y, z)
+                    curl[target] = dCdy - dBdz
+                    curl[target + 1] = dAdz - dCdx
+                    curl[target + 2] = dBdx - dAdy
+                }
+            }
+        }
+    }
+
+    /**
+     * Scales the curl so its root mean square magnitude is 1
+     */
+    private fun normalize() {
+        var sumSq = 0.0
+        for (value in curl) {
+            sumSq += value * value
+        }
+        if (sumSq == 0.0)
+            return
+        val scale = (1 / sqrt(sumSq / (curl.size / 3))).toFloat()
+        for (i in curl.indices) {
+            curl[i] *= scale
+        }
+    }
+
+    private companion object {
+        @JvmStatic
+        fun smoothstep(t: Double): Double = t * t * (3 - 2 * t)
+
+        @JvmStatic
+        fun lerp(a: Float, b: Float, t: Float): Float = a + (b - a) * t
+    }
+}
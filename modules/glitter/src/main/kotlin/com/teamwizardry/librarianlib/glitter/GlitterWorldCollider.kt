@@ -5,9 +5,10 @@ import com.teamwizardry.librarianlib.core.util.SidedRunnable
 import com.teamwizardry.librarianlib.core.util.kotlin.threadLocal
 import com.teamwizardry.librarianlib.etcetera.DirectRaycaster
 import com.teamwizardry.librarianlib.etcetera.IntersectingBlocksIterator
+import it.unimi.dsi.fastutil.ints.IntArrays
+import it.unimi.dsi.fastutil.ints.IntComparator
 import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet
 import it.unimi.dsi.fastutil.longs.LongSet
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap
 import net.minecraft.block.Blocks
@@ -17,6 +18,7 @@ import net.minecraft.client.world.ClientWorld
 import net.minecraft.util.math.AxisAlignedBB
 import net.minecraft.util.math.BlockPos
 import net.minecraft.util.math.ChunkPos
+import net.minecraft.util.math.SectionPos
 import net.minecraft.util.math.Vec3d
 import net.minecraft.util.math.shapes.VoxelShape
 import net.minecraft.world.World
@@ -24,12 +26,14 @@ import net.minecraft.world.chunk.ChunkSection
 import net.minecraft.world.chunk.ChunkStatus
 import net.minecraftforge.api.distmarker.Dist
 import net.minecraftforge.api.distmarker.OnlyIn
+import net.minecraftforge.event.world.ChunkEvent
 import net.minecraftforge.event.world.WorldEvent
 import net.minecraftforge.eventbus.api.SubscribeEvent
 import net.minecraftforge.fml.common.Mod
 import net.minecraftforge.event.TickEvent
 import java.lang.ref.WeakReference
 import java.util.*
+import java.util.concurrent.locks.StampedLock
 import kotlin.math.floor
 import kotlin.math.max
 import kotlin.math.min
@@ -38,36 +42,123 @@ import kotlin.math.min
  * A class designed to efficiently raytrace collisions with the world. This class uses custom raytracing code to
  * eliminate short-lived objects such as [Vec3d]s.
  *
- * This class makes two main sacrifices in the name of speed:
+ * The collider is thread-safe, so it can be used by modules in [parallel updates][ParticleSystem.parallel].
  *
- * 1. It doesn't clear its cache every tick. [requestRefresh] can be used cause the cache to be cleared immediately.
- * 2. It doesn't properly handle collision boxes that extend outside the bounds of their block. This is because, unlike
- * Minecraft's collision handling it doesn't check any blocks outside of those the velocity vector moves through.
+ * Collision boxes are cached per chunk section, and the caches are invalidated when the client world reports a block
+ * change or when chunks are loaded or unloaded, so once the caches are warm collisions never have to query the world.
+ * Changes that bypass the world's notifications (e.g. mods modifying chunk sections directly) can be reported using
+ * [invalidateBlock] and [invalidateChunk], or handled by enabling periodic clearing with the cache managers.
+ *
+ * This class makes one main sacrifice in the name of speed: It doesn't properly handle collision boxes that extend
+ * outside the bounds of their block. This is because, unlike Minecraft's collision handling it doesn't check any
+ * blocks outside of those the velocity vector moves through.
  */
 @OnlyIn(Dist.CLIENT)
 @Mod.EventBusSubscriber(Dist.CLIENT)
 object GlitterWorldCollider {
 
-    private val blockCache = Long2ObjectOpenHashMap<List<AxisAlignedBB>>()
+    /**
+     * The collision caches for each chunk section, keyed by [SectionPos.asLong]. Sections that are empty or in unloaded
+     * chunks map to [EMPTY_SECTION].
+     */
+    private val sectionCaches = Long2ObjectOpenHashMap<SectionCache>()
     private val shapeCache = Object2ObjectOpenHashMap<VoxelShape, List<AxisAlignedBB>>()
-    private val airCache = LongOpenHashSet()
+    private val cacheLock = StampedLock()
     private val intersectingIterator: IntersectingBlocksIterator by threadLocal { IntersectingBlocksIterator() }
     private val raycaster: DirectRaycaster by threadLocal { DirectRaycaster() }
+    private val mutablePos: BlockPos.Mutable by threadLocal { BlockPos.Mutable() }
+    private val lookup: SectionLookup by threadLocal { SectionLookup() }
+
+    /**
+     * The collision boxes for each block in a chunk section, indexed by `y << 8 | z << 4 | x`. A null entry hasn't been
+     * computed yet.
+     */
+    private class SectionCache {
+        val boxes = arrayOfNulls<List<AxisAlignedBB>>(4096)
+
+        /**
+         * Incremented each time a block in the section is invalidated, so a collision that started computing a block's
+         * boxes before it was invalidated doesn't store the stale result. Only modified while synchronized on the
+         * section.
+         */
+        @Volatile
+        var version = 0
+    }
+
+    private val EMPTY_SECTION = SectionCache()
 
     /**
-     * The cache of block collision AABBs. Refreshes every 10 ticks (0.5 seconds) by default
+     * Remembers the last section that was looked up, so consecutive lookups in the same section (e.g. the blocks along
+     * a short ray, or rays grouped by section in [collideBatch]) don't have to probe the section map. This is reset
+     * at the start of each [collide] call and each batch, so it never outlives an invalidation.
      */
-    val blockCacheManager: CacheManager = CacheManager(10) { blockCache.clear() }
+    private class SectionLookup {
+        var sectionLong: Long = 0
+        var section: SectionCache? = null
+
+        // scratch space for batches
+        val hit = RayHitResult()
+        var keys = LongArray(0)
+        var order = IntArray(0)
+
+        fun reset() {
+            section = null
+        }
+
+        fun set(sectionLong: Long, section: SectionCache) {
+            this.sectionLong = sectionLong
+            this.section = section
+        }
+    }
+
+    /**
+     * A fallback policy for the cache of block collision AABBs. The cache is invalidated whenever blocks change, so
+     * this is disabled by default.
+     */
+    val blockCacheManager: CacheManager = CacheManager(-1) { writeCache { sectionCaches.clear() } }
 
     /**
      * The cache of [VoxelShapes][VoxelShape] to AABBs. Refreshes every 1200 ticks (60 seconds) by default
      */
-    val shapeCacheManager: CacheManager = CacheManager(1200) { shapeCache.clear() }
+    val shapeCacheManager: CacheManager = CacheManager(1200) { writeCache { shapeCache.clear() } }
+
+    /**
+     * A replacement for the client world as the source of collision boxes, or null to use the client world. This is
+     * intended for running particle systems without a game, e.g. in tests and benchmarks.
+     *
+     * The collision source is queried directly, bypassing the collider's caches, and must be thread-safe if it's used
+     * by modules in [parallel updates][ParticleSystem.parallel].
+     */
+    @JvmStatic
+    @Volatile
+    var collisionSource: CollisionSource? = null
+
+    /**
+     * A source of block collision boxes
+     *
+     * @see collisionSource
+     */
+    interface CollisionSource {
+        /**
+         * Gets the collision boxes of the block at the passed position, relative to the block's minimum corner. This
+         * will be called often, so the returned lists should be cached rather than created for each call.
+         */
+        fun getBoundingBoxes(x: Int, y: Int, z: Int): List<AxisAlignedBB>
+    }
 
     /**
-     * The cache of chunk sections' empty status. Refreshes every 40 ticks (2 seconds) by default
+     * A fallback policy for the cache of chunk sections' empty status. The cache is invalidated whenever blocks change
+     * or chunks load, so this is disabled by default.
      */
-    val airCacheManager: CacheManager = CacheManager(40) { airCache.clear() }
+    val airCacheManager: CacheManager = CacheManager(-1) {
+        writeCache {
+            val iter = sectionCaches.long2ObjectEntrySet().fastIterator()
+            while (iter.hasNext()) {
+                if (iter.next().value === EMPTY_SECTION)
+                    iter.remove()
+            }
+        }
+    }
 
     /**
      * Request that the cache be cleared. Use this sparingly as it can negatively impact performance. Individual caches
@@ -77,9 +168,47 @@ object GlitterWorldCollider {
      * severely impact performance.
      */
     fun clearCache() {
-        blockCache.clear()
-        shapeCache.clear()
-        airCache.clear()
+        writeCache {
+            sectionCaches.clear()
+            shapeCache.clear()
+        }
+    }
+
+    /**
+     * Invalidates the cached collision boxes for the passed block. This is called automatically when the client world
+     * reports a block change.
+     */
+    fun invalidateBlock(x: Int, y: Int, z: Int) {
+        val sectionLong = SectionPos.asLong(x shr 4, y shr 4, z shr 4)
+        val section = readCache { sectionCaches.get(sectionLong) } ?: return
+        if (section === EMPTY_SECTION) {
+            // the section may not be empty anymore
+            writeCache {
+                if (sectionCaches.get(sectionLong) === EMPTY_SECTION)
+                    sectionCaches.remove(sectionLong)
+            }
+            return
+        }
+        synchronized(section) {
+            section.version++
+            section.boxes[blockIndex(x, y, z)] = null
+        }
+    }
+
+    /**
+     * Invalidates the cached collision boxes for every block in the passed chunk. This is called automatically when
+     * chunks are loaded or unloaded.
+     */
+    fun invalidateChunk(chunkX: Int, chunkZ: Int) {
+        writeCache {
+            for (i in 0 until 16) {
+                sectionCaches.remove(SectionPos.asLong(chunkX, i, chunkZ))
+            }
+        }
+    }
+
+    private fun blockIndex(x: Int, y: Int, z: Int): Int {
+        return ((y and 15) shl 8) or ((z and 15) shl 4) or (x and 15)
     }
 
     /**
@@ -99,6 +228,82 @@ object GlitterWorldCollider {
         velY: Double,
         velZ: Double,
         maxBounds: Double = 5.0
+    ) {
+        val lookup = this.lookup
+        lookup.reset()
+        collide(result, lookup, posX, posY, posZ, velX, velY, velZ, maxBounds)
+    }
+
+    /**
+     * Traces a batch of collisions with the world, storing the result for the ray at index `i` in index `i` of the
+     * [results]. This is equivalent to calling [collide] for each ray, however the rays are grouped by the chunk section
+     * they start in, so each section's cached collision data is only looked up once per batch.
+     *
+     * @param count the number of rays in the batch
+     * @param results the buffer to store the results in. It will grow if it can't hold [count] results
+     * @throws IllegalArgumentException if any of the arrays are shorter than [count]
+     */
+    @JvmOverloads
+    fun collideBatch(
+        results: RayHitBatch,
+        count: Int,
+        posX: DoubleArray,
+        posY: DoubleArray,
+        posZ: DoubleArray,
+        velX: DoubleArray,
+        velY: DoubleArray,
+        velZ: DoubleArray,
+        maxBounds: Double = 5.0
+    ) {
+        if (posX.size < count || posY.size < count || posZ.size < count ||
+            velX.size < count || velY.size < count || velZ.size < count)
+            throw IllegalArgumentException("The position and velocity arrays must contain at least $count elements")
+        results.ensureCapacity(count)
+
+        val lookup = this.lookup
+        if (lookup.keys.size < count) {
+            lookup.keys = LongArray(count)
+            lookup.order = IntArray(count)
+        }
+        val keys = lookup.keys
+        val order = lookup.order
+        for (i in 0 until count) {
+            keys[i] = SectionPos.asLong(
+                floor(posX[i]).toInt() shr 4, floor(posY[i]).toInt() shr 4, floor(posZ[i]).toInt() shr 4
+            )
+            order[i] = i
+        }
+        IntArrays.quickSort(order, 0, count, IntComparator { a, b -> keys[a].compareTo(keys[b]) })
+
+        val hit = lookup.hit
+        lookup.reset()
+        try {
+            for (n in 0 until count) {
+                val i = order[n]
+                collide(hit, lookup, posX[i], posY[i], posZ[i], velX[i], velY[i], velZ[i], maxBounds)
+                results.collisionFraction[i] = hit.collisionFraction
+                results.collisionNormalX[i] = hit.collisionNormalX
+                results.collisionNormalY[i] = hit.collisionNormalY
+                results.collisionNormalZ[i] = hit.collisionNormalZ
+                results.collisionBlockX[i] = hit.collisionBlockX
+                results.collisionBlockY[i] = hit.collisionBlockY
+                results.collisionBlockZ[i] = hit.collisionBlockZ
+            }
+        } finally {
+            lookup.reset()
+        }
+    }
+
+    private fun collide(
+        result: RayHitResult,
+        lookup: SectionLookup,
+        posX: Double,
+        posY: Double,
+        posZ: Double,
+        velX: Double,
+        velY: Double,
+        velZ: Double,
+        maxBounds: Double
     ) {
         result.collisionFraction = 1.0
         result.collisionNormalX = 0.0
@@ -135,7 +340,7 @@ object GlitterWorldCollider {
 
         if (minTestX == maxTestX && minTestY == maxTestY && minTestZ == maxTestZ) {
             // the entire ray is within a single block. No need to go through the iterator
-            val boxes = getBoundingBoxes(minTestX, minTestY, minTestZ)
+            val boxes = getBoundingBoxes(minTestX, minTestY, minTestZ, lookup)
             for (i in boxes.indices) {
                 val bb = boxes[i]
                 if (raycaster.cast(
@@ -161,7 +366,7 @@ object GlitterWorldCollider {
             intersectingBlocksIterator.reset(posX, posY, posZ, posX + velX, posY + velY, posZ + velZ)
 
             for (block in intersectingBlocksIterator) {
-                val boxes = getBoundingBoxes(block.x, block.y, block.z)
+                val boxes = getBoundingBoxes(block.x, block.y, block.z, lookup)
                 for (i in boxes.indices) {
                     val bb = boxes[i]
                     if (raycaster.cast(
@@ -187,58 +392,108 @@ object GlitterWorldCollider {
         }
     }
 
-    private val sectionPos = BlockPos.Mutable()
-    private val mutablePos = BlockPos.Mutable()
+    /**
+     * Reads from the caches. Reads are optimistic, since writes are rare once the caches are warm, and if a write
+     * occurs during the read (which may cause the read to fail or return garbage) it's retried with a full read lock.
+     */
+    private inline fun <T> readCache(block: () -> T): T {
+        val stamp = cacheLock.tryOptimisticRead()
+        if (stamp != 0L) {
+            try {
+                val result = block()
+                if (cacheLock.validate(stamp))
+                    return result
+            } catch (e: RuntimeException) {
+                // a concurrent write corrupted our view of the map. Fall through and retry with a read lock
+            }
+        }
+        val readStamp = cacheLock.readLock()
+        try {
+            return block()
+        } finally {
+            cacheLock.unlockRead(readStamp)
+        }
+    }
 
-    @Suppress("ReplacePutWithAssignment")
-    private fun getBoundingBoxes(x: Int, y: Int, z: Int): List<AxisAlignedBB> {
+    private inline fun <T> writeCache(block: () -> T): T {
+        val stamp = cacheLock.writeLock()
+        try {
+            return block()
+        } finally {
+            cacheLock.unlockWrite(stamp)
+        }
+    }
+
+    private fun getBoundingBoxes(x: Int, y: Int, z: Int, lookup: SectionLookup): List<AxisAlignedBB> {
+        collisionSource?.let { return it.getBoundingBoxes(x, y, z) }
         val world = Client.minecraft.world ?: return emptyList()
 
         // blocks outside the world never have collision
         if (y < 0 || y > world.actualHeight)
             return emptyList()
 
-        // check if the sub-chunk is known to be empty
-        sectionPos.setPos(x shr 4, y shr 4, z shr 4)
-        if (airCache.contains(sectionPos.toLong()))
-            return emptyList()
+        val sectionLong = SectionPos.asLong(x shr 4, y shr 4, z shr 4)
+        val blockIndex = blockIndex(x, y, z)
 
-        mutablePos.setPos(x, y, z)
-        val toLong = mutablePos.toLong()
-        // we can't use getOrPut because it uses the boxed Long
-        blockCache.get(toLong)?.let { return it }
+        val cachedSection = lookup.section.takeIf { lookup.sectionLong == sectionLong }
+            ?: readCache { sectionCaches.get(sectionLong) }?.also { lookup.set(sectionLong, it) }
+        if (cachedSection === EMPTY_SECTION)
+            return emptyList()
+        cachedSection?.boxes?.get(blockIndex)?.let { return it }
 
         // get the chunk without trying to load or generate it
         val chunk = world.getChunk(x shr 4, z shr 4, ChunkStatus.EMPTY, false)
         if(chunk == null) {
-            // the entire chunk is unloaded. Mark all its sub-chunks as empty
-            for(i in 0 until 16) {
-                sectionPos.setPos(x shr 4, i, z shr 4)
-                airCache.add(sectionPos.toLong())
+            // the entire chunk is unloaded. Mark all its sub-chunks as empty until it's loaded
+            writeCache {
+                for(i in 0 until 16) {
+                    sectionCaches.put(SectionPos.asLong(x shr 4, i, z shr 4), EMPTY_SECTION)
+                }
             }
+            lookup.set(sectionLong, EMPTY_SECTION)
             return emptyList()
         }
 
         val section = chunk.sections[y shr 4]
         if (ChunkSection.isEmpty(section)) {
             // if the section is empty, make note of that for future calls
-            airCache.add(sectionPos.toLong())
+            writeCache {
+                sectionCaches.put(sectionLong, EMPTY_SECTION)
+            }
+            lookup.set(sectionLong, EMPTY_SECTION)
             return emptyList()
         }
 
+        val sectionCache = cachedSection ?: writeCache {
+            sectionCaches.get(sectionLong)?.takeIf { it !== EMPTY_SECTION }
+                ?: SectionCache().also { sectionCaches.put(sectionLong, it) }
+        }
+        lookup.set(sectionLong, sectionCache)
+        val version = sectionCache.version
+
+        val mutablePos = this.mutablePos
+        mutablePos.setPos(x, y, z)
         val state = section.getBlockState(x and 15, y and 15, z and 15)
 
-        val boxes = if (state == Blocks.AIR.defaultState || state.isAir(world, mutablePos)
+        val shape = if (state == Blocks.AIR.defaultState || state.isAir(world, mutablePos)
             || state.material.let { !it.blocksMovement() || it.isLiquid }) {
             // ignore air, non-solid, and liquid blocks
+            null
+        } else {
+            state.getCollisionShape(world, mutablePos)
+        }
+
+        val boxes = if(shape == null) {
             emptyList()
         } else {
-            val shape = state.getCollisionShape(world, mutablePos)
-            shapeCache.getOrPut(shape) { shape.toBoundingBoxList() }
+            readCache { shapeCache.get(shape) } ?: writeCache { shapeCache.getOrPut(shape) { shape.toBoundingBoxList() } }
         }
 
-        // we survived the gauntlet, now cache the resulting list for next time
-        blockCache.put(toLong, boxes)
+        // we survived the gauntlet, now cache the resulting list for next time, unless the block changed in the meantime
+        synchronized(sectionCache) {
+            if (sectionCache.version == version)
+                sectionCache.boxes[blockIndex] = boxes
+        }
         return boxes
     }
 
@@ -257,6 +512,20 @@ object GlitterWorldCollider {
         clearCache()
     }
 
+    @SubscribeEvent
+    @JvmStatic
+    fun loadChunk(e: ChunkEvent.Load) {
+        if (e.world?.isRemote == true)
+            invalidateChunk(e.chunk.pos.x, e.chunk.pos.z)
+    }
+
+    @SubscribeEvent
+    @JvmStatic
+    fun unloadChunk(e: ChunkEvent.Unload) {
+        if (e.world?.isRemote == true)
+            invalidateChunk(e.chunk.pos.x, e.chunk.pos.z)
+    }
+
     class CacheManager(var interval: Int, private val clearFunction: () -> Unit) {
         private var age = 0
 
@@ -279,6 +548,50 @@ object GlitterWorldCollider {
     }
 }
 
+/**
+ * The results of a [batch collision][GlitterWorldCollider.collideBatch], stored as parallel arrays. See
+ * [RayHitResult] for the meaning of each value.
+ */
+class RayHitBatch @JvmOverloads constructor(initialCapacity: Int = 0) {
+    /**
+     * The number of results the arrays can hold
+     */
+    var capacity: Int = initialCapacity
+        private set
+
+    var collisionFraction: DoubleArray = DoubleArray(initialCapacity)
+        private set
+    var collisionNormalX: DoubleArray = DoubleArray(initialCapacity)
+        private set
+    var collisionNormalY: DoubleArray = DoubleArray(initialCapacity)
+        private set
+    var collisionNormalZ: DoubleArray = DoubleArray(initialCapacity)
+        private set
+    var collisionBlockX: IntArray = IntArray(initialCapacity)
+        private set
+    var collisionBlockY: IntArray = IntArray(initialCapacity)
+        private set
+    var collisionBlockZ: IntArray = IntArray(initialCapacity)
+        private set
+
+    /**
+     * Grows the arrays, if necessary, so they can hold at least [minCapacity] results. Existing results aren't kept.
+     */
+    fun ensureCapacity(minCapacity: Int) {
+        if (minCapacity <= capacity)
+            return
+        val newCapacity = max(minCapacity, capacity + (capacity shr 1))
+        collisionFraction = DoubleArray(newCapacity)
+        collisionNormalX = DoubleArray(newCapacity)
+        collisionNormalY = DoubleArray(newCapacity)
+        collisionNormalZ = DoubleArray(newCapacity)
+        collisionBlockX = IntArray(newCapacity)
+        collisionBlockY = IntArray(newCapacity)
+        collisionBlockZ = IntArray(newCapacity)
+        capacity = newCapacity
+    }
+}
+
 class RayHitResult {
     /**
      * The fraction along the raytrace that an impact occurred, or 1.0 if no impact occurred
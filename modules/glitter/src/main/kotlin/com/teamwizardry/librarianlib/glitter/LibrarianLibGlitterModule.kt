@@ -1,7 +1,13 @@
 package com.teamwizardry.librarianlib.glitter
 
 import com.teamwizardry.librarianlib.LibrarianLibModule
+import net.minecraftforge.fml.client.registry.ClientRegistry
+import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent
 import org.apache.logging.log4j.LogManager
 
-object LibrarianLibGlitterModule : LibrarianLibModule("glitter", logger)
+object LibrarianLibGlitterModule : LibrarianLibModule("glitter", logger) {
+    override fun clientSetup(event: FMLClientSetupEvent) {
+        ClientRegistry.registerKeyBinding(ParticleSystemManager.metricsKey)
+    }
+}
 internal val logger = LogManager.getLogger("LibrarianLib: Glitter")
@@ -27,6 +27,16 @@ interface ReadParticleBinding: ParticleBinding {
      * Loads the value into [contents].
      */
     fun load(particle: DoubleArray)
+
+    /**
+     * Loads the value of the particle at [index] in [columns] into [contents]. The default implementation gathers the
+     * particle into a scratch row and calls [load], so implementations backed by the particle's storage should
+     * override this to read the columns directly.
+     */
+    @JvmDefault
+    fun load(columns: ParticleColumns, index: Int) {
+        load(columns.gather(index))
+    }
 }
 
 /**
@@ -39,6 +49,18 @@ interface WriteParticleBinding: ParticleBinding {
      * Commits the current [contents] into storage
      */
     fun store(particle: DoubleArray)
+
+    /**
+     * Commits the current [contents] into the particle at [index] in [columns]. The default implementation gathers
+     * the particle into a scratch row, calls [store], and writes the row back, so implementations backed by the
+     * particle's storage should override this to write the columns directly.
+     */
+    @JvmDefault
+    fun store(columns: ParticleColumns, index: Int) {
+        val row = columns.gather(index)
+        store(row)
+        columns.write(index, row)
+    }
 }
 
 /**
@@ -68,6 +90,15 @@ interface WriteParticleBinding: ParticleBinding {
 interface ParticleBinding {
     val contents: DoubleArray
 
+    /**
+     * Whether this binding can be used from multiple threads at once. Thread-safe bindings must give each thread its
+     * own [contents] (e.g. using [PerThread]) and must not have any other shared mutable state. Only systems whose
+     * modules and bindings are all thread-safe can use [parallel updates][ParticleSystem.parallel].
+     */
+    @JvmDefault
+    val isThreadSafe: Boolean
+        get() = false
+
     @JvmDefault
     fun require(size: Int) {
         if (this.contents.size != size)
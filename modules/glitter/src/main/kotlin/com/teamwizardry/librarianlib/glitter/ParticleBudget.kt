@@ -0,0 +1,295 @@
+package com.teamwizardry.librarianlib.glitter
+
+import kotlin.math.ceil
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * A limit on the total number of particles across every particle system, which keeps simultaneous spikes in several
+ * systems from stalling the client.
+ *
+ * The budget is enforced at the start of every tick:
+ * - Once the total particle count passes [throttleThreshold] of the [limit], systems that have more than their share of
+ * the budget (based on their [weight][ParticleSystem.budgetWeight]) start randomly dropping spawns, reaching a spawn
+ * chance of zero at the limit. This is applied on top of the client's particle setting, and affects
+ * [ParticleSystem.addParticle] and [ParticleSystem.spawnBatch] even in systems that
+ * [ignore the particle setting][ParticleSystem.ignoreParticleSetting]. Those systems leave it out of
+ * [ParticleSystem.adjustParticleCount] so it isn't applied twice.
+ * - If the total is over the limit, the oldest particles are evicted, starting with the systems with the lowest
+ * [priority][ParticleSystem.priority]. Systems with the same priority give up particles in proportion to their particle
+ * count divided by their weight.
+ *
+ * When [adaptive] is enabled, the limit is also lowered while the measured update or render time is over its target and
+ * raised back toward [limit] once there's time to spare.
+ */
+object ParticleBudget {
+    /**
+     * The maximum number of particles across every system. When [adaptive] is enabled this is the upper bound of the
+     * [effectiveLimit].
+     */
+    @JvmStatic
+    var limit: Int = 100_000
+        set(value) {
+            if (value < 0)
+                throw IllegalArgumentException("Particle limit must be non-negative, not $value")
+            field = value
+        }
+
+    /**
+     * The fraction of the [effectiveLimit] past which systems over their share of the budget start dropping spawns
+     */
+    @JvmStatic
+    var throttleThreshold: Double = 0.8
+        set(value) {
+            if (value < 0 || value > 1)
+                throw IllegalArgumentException("Throttle threshold must be in the range [0, 1], not $value")
+            field = value
+        }
+
+    /**
+     * Whether to adjust the [effectiveLimit] based on the measured update and render times
+     */
+    @JvmStatic
+    var adaptive: Boolean = false
+
+    /**
+     * The target time in nanoseconds to spend updating every particle system each tick when [adaptive] is enabled
+     */
+    @JvmStatic
+    var targetUpdateTime: Long = 4_000_000
+
+    /**
+     * The target time in nanoseconds to spend rendering every particle system each frame when [adaptive] is enabled
+     */
+    @JvmStatic
+    var targetRenderTime: Long = 4_000_000
+
+    /**
+     * The lowest the [effectiveLimit] will go when [adaptive] is enabled
+     */
+    @JvmStatic
+    var minimumLimit: Int = 5_000
+
+    /**
+     * The limit currently being enforced. This is equal to [limit] unless [adaptive] is enabled.
+     */
+    @JvmStatic
+    var effectiveLimit: Int = limit
+        private set
+
+    /**
+     * A moving average of the time in nanoseconds spent updating every particle system each tick
+     */
+    @JvmStatic
+    var averageUpdateTime: Double = 0.0
+        private set
+
+    /**
+     * A moving average of the time in nanoseconds spent rendering every particle system each frame
+     */
+    @JvmStatic
+    var averageRenderTime: Double = 0.0
+        private set
+
+    private const val AVERAGE_FACTOR = 0.1
+    private const val SHRINK_FACTOR = 0.95
+    private const val GROW_FACTOR = 1.02
+    private const val GROW_LOAD = 0.75
+
+    private val evictionOrder = mutableListOf<ParticleSystem>()
+
+    internal fun recordUpdate(nanos: Long) {
+        averageUpdateTime += (nanos - averageUpdateTime) * AVERAGE_FACTOR
+    }
+
+    internal fun recordRender(nanos: Long) {
+        averageRenderTime += (nanos - averageRenderTime) * AVERAGE_FACTOR
+    }
+
+    /**
+     * Computes each system's spawn chance and evictions for the upcoming tick
+     */
+    internal fun plan(systems: List<ParticleSystem>) {
+        adapt()
+        val limit = effectiveLimit
+
+        var total = 0
+        var totalWeight = 0.0
+        for (system in systems) {
+            val count = system.particleCount
+            total += count
+            if (count != 0)
+                totalWeight += system.budgetWeight
+        }
+
+        val throttleStart = limit * throttleThreshold
+        val headroom = if (total <= throttleStart || limit <= throttleStart)
+            if (total < limit) 1.0 else 0.0
+        else
+            ((limit - total) / (limit - throttleStart)).coerceIn(0.0, 1.0)
+        for (system in systems) {
+            val share = if (totalWeight == 0.0) limit.toDouble() else limit * system.budgetWeight / totalWeight
+            system.budgetSpawnChance = if (system.particleCount <= share) 1.0 else headroom
+            system.budgetEvictions = 0
+        }
+
+        var excess = total - limit
+        if (excess <= 0)
+            return
+
+        evictionOrder.clear()
+        systems.filterTo(evictionOrder) { it.particleCount != 0 }
+        evictionOrder.sortBy { it.priority }
+        var start = 0
+        while (excess > 0 && start < evictionOrder.size) {
+            val priority = evictionOrder[start].priority
+            var end = start
+            var groupCount = 0
+            while (end < evictionOrder.size && evictionOrder[end].priority == priority) {
+                groupCount += evictionOrder[end].particleCount
+                end++
+            }
+
+            if (groupCount <= excess) {
+                for (i in start until end) {
+                    evictionOrder[i].budgetEvictions = evictionOrder[i].particleCount
+                }
+                excess -= groupCount
+            } else {
+                distributeEvictions(start, end, excess)
+                excess = 0
+            }
+            start = end
+        }
+        evictionOrder.clear()
+    }
+
+    /**
+     * Spreads [excess] evictions across the systems in `evictionOrder[start, end)`, which have more than [excess]
+     * particles in total
+     */
+    private fun distributeEvictions(start: Int, end: Int, excess: Int) {
+        var remaining = excess
+        while (remaining > 0) {
+            var totalRatio = 0.0
+            for (i in start until end) {
+                val system = evictionOrder[i]
+                totalRatio += (system.particleCount - system.budgetEvictions) / system.budgetWeight
+            }
+            val pass = remaining
+            for (i in start until end) {
+                if (remaining == 0)
+                    break
+                val system = evictionOrder[i]
+                val available = system.particleCount - system.budgetEvictions
+                if (available == 0)
+                    continue
+                // rounding up guarantees each pass makes progress
+                val share = ceil(pass * (available / system.budgetWeight) / totalRatio).toInt()
+                val evictions = min(min(share, available), remaining)
+                system.budgetEvictions += evictions
+                remaining -= evictions
+            }
+        }
+    }
+
+    private fun adapt() {
+        if (!adaptive) {
+            effectiveLimit = limit
+            return
+        }
+        val load = max(averageUpdateTime / targetUpdateTime, averageRenderTime / targetRenderTime)
+        val minimum = min(minimumLimit, limit)
+        if (load > 1) {
+            effectiveLimit = max(minimum, (effectiveLimit * SHRINK_FACTOR).toInt())
+        } else if (load < GROW_LOAD) {
+            effectiveLimit = min(limit, (effectiveLimit * GROW_FACTOR).toInt() + 1)
+        }
+        effectiveLimit = effectiveLimit.coerceIn(minimum, limit)
+    }
+}
+
+/**
+ * Selects the oldest live particles in a system for [ParticleBudget] evictions
+ */
+internal class ParticleEvictionSelector {
+    private var ages = DoubleArray(0)
+    private var cutoff = Double.POSITIVE_INFINITY
+    private var ties = 0
+
+    /**
+     * Gets a scratch array with room for at least [count] ages, which should be filled with the ages of the live
+     * particles before calling [select]
+     */
+    fun reserve(count: Int): DoubleArray {
+        if (ages.size < count)
+            ages = DoubleArray(max(count, ages.size * 2))
+        return ages
+    }
+
+    /**
+     * Selects the [evictions] oldest particles out of the first [count] ages in the scratch array. After this,
+     * [shouldEvict] will return true for exactly that many of the particles, as long as it's called once for each of
+     * them.
+     */
+    fun select(count: Int, evictions: Int) {
+        ties = 0
+        when {
+            evictions <= 0 || count == 0 -> cutoff = Double.POSITIVE_INFINITY
+            evictions >= count -> cutoff = Double.NEGATIVE_INFINITY
+            else -> {
+                cutoff = selectDescending(count, evictions - 1)
+                var greater = 0
+                for (i in 0 until count) {
+                    if (ages[i] > cutoff)
+                        greater++
+                }
+                ties = evictions - greater
+            }
+        }
+    }
+
+    /**
+     * Whether the particle with the passed age should be evicted
+     */
+    fun shouldEvict(age: Double): Boolean {
+        if (age > cutoff)
+            return true
+        if (age == cutoff && ties > 0) {
+            ties--
+            return true
+        }
+        return false
+    }
+
+    /**
+     * Finds the value that would be at index [k] if the first [count] ages were sorted in descending order
+     */
+    private fun selectDescending(count: Int, k: Int): Double {
+        val ages = ages
+        var low = 0
+        var high = count - 1
+        while (low < high) {
+            val pivot = ages[(low + high) ushr 1]
+            var i = low
+            var j = high
+            while (i <= j) {
+                while (ages[i] > pivot) i++
+                while (ages[j] < pivot) j--
+                if (i <= j) {
+                    val swap = ages[i]
+                    ages[i] = ages[j]
+                    ages[j] = swap
+                    i++
+                    j--
+                }
+            }
+            when {
+                k <= j -> high = j
+                k >= i -> low = i
+                else -> return ages[k]
+            }
+        }
+        return ages[k]
+    }
+}
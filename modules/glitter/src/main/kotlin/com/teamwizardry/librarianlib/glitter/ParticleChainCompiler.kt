@@ -0,0 +1,280 @@
+package com.teamwizardry.librarianlib.glitter
+
+import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+import com.teamwizardry.librarianlib.glitter.bindings.StoredBinding
+import com.teamwizardry.librarianlib.glitter.modules.AccelerationUpdateModule
+import com.teamwizardry.librarianlib.glitter.modules.SetValueUpdateModule
+import com.teamwizardry.librarianlib.glitter.modules.VelocityUpdateModule
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes.*
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A system's update module chain compiled into a single class. Generated by [ParticleChainCompiler].
+ */
+internal interface CompiledParticleChain {
+    /**
+     * Runs the chain on the passed particle
+     */
+    fun update(particle: DoubleArray)
+
+    /**
+     * Runs the chain on the particle at [index] in [columns]
+     */
+    fun update(columns: ParticleColumns, index: Int)
+}
+
+/**
+ * Compiles a list of update modules into a [CompiledParticleChain] whose methods run the whole chain inline.
+ *
+ * Modules the compiler understands are translated into direct reads and writes of the particle array, with
+ * [StoredBinding]s becoming array indices and [ConstantBinding]s becoming literals. This removes the interface calls
+ * and `contents` copies of the interpreted chain and lets the JIT optimize across modules. Any other modules are
+ * called normally from the generated code, so a chain can be partially compiled.
+ *
+ * The compiled modules are:
+ * - [AccelerationUpdateModule]
+ * - [VelocityUpdateModule] without a previous position
+ * - [SetValueUpdateModule]
+ *
+ * as long as their bindings are all stored or constant bindings.
+ */
+internal object ParticleChainCompiler {
+    private val classCounter = AtomicInteger()
+
+    private const val CHAIN = "com/teamwizardry/librarianlib/glitter/CompiledParticleChain"
+    private const val MODULE = "com/teamwizardry/librarianlib/glitter/ParticleUpdateModule"
+    private const val COLUMNS = "com/teamwizardry/librarianlib/glitter/ParticleColumns"
+
+    /**
+     * Compiles the passed modules, returning null if none of them could be compiled or if compilation failed.
+     *
+     * Constant bindings are baked into the compiled chain, so changes to their contents after the chain is compiled
+     * won't have any effect.
+     *
+     * @param name the name of the system, used to name the generated class and in log messages
+     */
+    fun compile(modules: List<ParticleUpdateModule>, name: String): CompiledParticleChain? {
+        val steps = modules.mapIndexed { i, module -> translate(module) ?: Step.Fallback(i) }
+        if (steps.none { it is Step.Compiled }) {
+            logger.warn("$name requested compiled updates, however none of its update modules can be compiled. " +
+                "The system will be updated normally.")
+            return null
+        }
+        val fallbackModules = steps.filterIsInstance<Step.Fallback>().map { modules[it.module] }
+        if (fallbackModules.isNotEmpty()) {
+            logger.debug("$name has update modules that can't be compiled " +
+                "(${fallbackModules.joinToString { it.javaClass.simpleName }}). They will be called normally.")
+        }
+
+        return try {
+            val className = "com/teamwizardry/librarianlib/glitter/generated/" +
+                "${name.replace(Regex("[^\\w$]"), "_")}\$Chain${classCounter.incrementAndGet()}"
+            val bytes = generate(className, steps)
+            // each chain gets its own loader so the class can be unloaded when the system is reloaded
+            val loader = ChainClassLoader(ParticleChainCompiler::class.java.classLoader)
+            val chainClass = loader.define(className.replace('/', '.'), bytes)
+            val fallbacks = modules.toTypedArray()
+            chainClass.getConstructor(Array<ParticleUpdateModule>::class.java)
+                .newInstance(fallbacks) as CompiledParticleChain
+        } catch (e: Exception) {
+            logger.error("Error compiling the update modules for $name. The system will be updated normally.", e)
+            null
+        } catch (e: LinkageError) {
+            logger.error("Error compiling the update modules for $name. The system will be updated normally.", e)
+            null
+        }
+    }
+
+    /**
+     * Where an element of a binding is read from
+     */
+    private sealed class Source {
+        class Stored(val field: Int): Source()
+        class Constant(val value: Double): Source()
+    }
+
+    /**
+     * Stores `reads[left]`, or `reads[left] + reads[right]` if [right] isn't -1, into the passed [field]
+     */
+    private class Assign(val field: Int, val left: Int, val right: Int = -1)
+
+    private sealed class Step {
+        /**
+         * A compiled module, which reads all its inputs into locals before assigning any outputs. This mirrors the
+         * interpreted modules loading their bindings before storing them, so overlapping bindings behave the same.
+         */
+        class Compiled(val reads: List<Source>, val writes: List<Assign>): Step()
+
+        /**
+         * A module that's called normally. [module] is the index in the fallback array.
+         */
+        class Fallback(val module: Int): Step()
+    }
+
+    private fun translate(module: ParticleUpdateModule): Step? {
+        return when (module) {
+            is AccelerationUpdateModule -> {
+                val velocity = stored(module.velocity) ?: return null
+                val acceleration = sources(module.acceleration) ?: return null
+                Step.Compiled(
+                    velocity.map { Source.Stored(it) } + acceleration,
+                    List(3) { Assign(velocity[it], it, 3 + it) }
+                )
+            }
+            is VelocityUpdateModule -> {
+                // the previous position is only written to the binding's contents, which isn't observable once compiled
+                if (module.previousPosition != null)
+                    return null
+                val position = stored(module.position) ?: return null
+                val velocity = sources(module.velocity) ?: return null
+                Step.Compiled(
+                    position.map { Source.Stored(it) } + velocity,
+                    List(3) { Assign(position[it], it, 3 + it) }
+                )
+            }
+            is SetValueUpdateModule -> {
+                val target = stored(module.target) ?: return null
+                val source = sources(module.source) ?: return null
+                Step.Compiled(source, List(target.size) { Assign(target[it], it) })
+            }
+            else -> null
+        }
+    }
+
+    /**
+     * Gets the particle fields of the passed binding, or null if it isn't a [StoredBinding]
+     */
+    private fun stored(binding: ParticleBinding): List<Int>? {
+        if (binding !is StoredBinding)
+            return null
+        return List(binding.size) { binding.index + it }
+    }
+
+    /**
+     * Gets the sources of the passed binding's elements, or null if it isn't a [StoredBinding] or [ConstantBinding]
+     */
+    private fun sources(binding: ParticleBinding): List<Source>? {
+        return when (binding) {
+            is StoredBinding -> List(binding.size) { Source.Stored(binding.index + it) }
+            is ConstantBinding -> binding.contents.map { Source.Constant(it) }
+            else -> null
+        }
+    }
+
+    private fun generate(className: String, steps: List<Step>): ByteArray {
+        // the generated code doesn't branch, so there are no stack map frames to compute
+        val writer = ClassWriter(ClassWriter.COMPUTE_MAXS)
+        writer.visit(V1_8, ACC_PUBLIC or ACC_FINAL or ACC_SUPER, className, null, "java/lang/Object", arrayOf(CHAIN))
+        writer.visitField(ACC_PRIVATE or ACC_FINAL, "fallback", "[L$MODULE;", null, null).visitEnd()
+
+        writer.visitMethod(ACC_PUBLIC, "<init>", "([L$MODULE;)V", null, null).apply {
+            visitCode()
+            visitVarInsn(ALOAD, 0)
+            visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false)
+            visitVarInsn(ALOAD, 0)
+            visitVarInsn(ALOAD, 1)
+            visitFieldInsn(PUTFIELD, className, "fallback", "[L$MODULE;")
+            visitInsn(RETURN)
+            visitMaxs(0, 0)
+            visitEnd()
+        }
+
+        writer.visitMethod(ACC_PUBLIC, "update", "([D)V", null, null).apply {
+            visitCode()
+            generateBody(this, className, steps, columnar = false)
+            visitInsn(RETURN)
+            visitMaxs(0, 0)
+            visitEnd()
+        }
+
+        writer.visitMethod(ACC_PUBLIC, "update", "(L$COLUMNS;I)V", null, null).apply {
+            visitCode()
+            generateBody(this, className, steps, columnar = true)
+            visitInsn(RETURN)
+            visitMaxs(0, 0)
+            visitEnd()
+        }
+
+        writer.visitEnd()
+        return writer.toByteArray()
+    }
+
+    /**
+     * Generates the body of one of the update methods. The list method's locals are `(this, particle)` and the
+     * columnar method's locals are `(this, columns, index)`.
+     */
+    private fun generateBody(method: MethodVisitor, className: String, steps: List<Step>, columnar: Boolean) {
+        val firstLocal = if (columnar) 3 else 2
+        for (step in steps) {
+            when (step) {
+                is Step.Fallback -> {
+                    method.visitVarInsn(ALOAD, 0)
+                    method.visitFieldInsn(GETFIELD, className, "fallback", "[L$MODULE;")
+                    pushInt(method, step.module)
+                    method.visitInsn(AALOAD)
+                    method.visitVarInsn(ALOAD, 1)
+                    if (columnar) {
+                        method.visitVarInsn(ILOAD, 2)
+                        method.visitMethodInsn(INVOKEINTERFACE, MODULE, "update", "(L$COLUMNS;I)V", true)
+                    } else {
+                        method.visitMethodInsn(INVOKEINTERFACE, MODULE, "update", "([D)V", true)
+                    }
+                }
+                is Step.Compiled -> {
+                    // doubles take two local slots
+                    step.reads.forEachIndexed { i, source ->
+                        when (source) {
+                            is Source.Stored -> {
+                                pushElement(method, source.field, columnar)
+                                method.visitInsn(DALOAD)
+                            }
+                            is Source.Constant -> method.visitLdcInsn(source.value)
+                        }
+                        method.visitVarInsn(DSTORE, firstLocal + i * 2)
+                    }
+                    for (write in step.writes) {
+                        pushElement(method, write.field, columnar)
+                        method.visitVarInsn(DLOAD, firstLocal + write.left * 2)
+                        if (write.right != -1) {
+                            method.visitVarInsn(DLOAD, firstLocal + write.right * 2)
+                            method.visitInsn(DADD)
+                        }
+                        method.visitInsn(DASTORE)
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Pushes the array and index of the passed field of the current particle
+     */
+    private fun pushElement(method: MethodVisitor, field: Int, columnar: Boolean) {
+        if (columnar) {
+            method.visitVarInsn(ALOAD, 1)
+            pushInt(method, field)
+            method.visitMethodInsn(INVOKEVIRTUAL, COLUMNS, "column", "(I)[D", false)
+            method.visitVarInsn(ILOAD, 2)
+        } else {
+            method.visitVarInsn(ALOAD, 1)
+            pushInt(method, field)
+        }
+    }
+
+    private fun pushInt(method: MethodVisitor, value: Int) {
+        when (value) {
+            in -1..5 -> method.visitInsn(ICONST_0 + value)
+            in Byte.MIN_VALUE..Byte.MAX_VALUE -> method.visitIntInsn(BIPUSH, value)
+            in Short.MIN_VALUE..Short.MAX_VALUE -> method.visitIntInsn(SIPUSH, value)
+            else -> method.visitLdcInsn(value)
+        }
+    }
+
+    private class ChainClassLoader(parent: ClassLoader): ClassLoader(parent) {
+        fun define(name: String, bytes: ByteArray): Class<*> {
+            return defineClass(name, bytes, 0, bytes.size)
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.teamwizardry.librarianlib.glitter
+
+/**
+ * Column-oriented ("structure of arrays") storage for the particles in a [ParticleSystem].
+ *
+ * Instead of allocating one array per particle, each field in the particle layout is stored in its own contiguous
+ * primitive array. Field `f` of the particle at index `i` is stored in `column(f)[i]`, so iterating over a single field
+ * of every particle touches memory sequentially and spawning or killing a particle never allocates.
+ *
+ * Particles are addressed by their index, which is only stable until the end of the current update. Use
+ * [ReadParticleBinding.load] and [WriteParticleBinding.store] with a column storage and index to access a particle's
+ * values. Bindings that aren't column-aware will transparently fall back to gathering the particle into a scratch row.
+ *
+ * @see ParticleSystem.columnar
+ */
+class ParticleColumns @JvmOverloads constructor(
+    /**
+     * The number of fields in each particle. This is the [ParticleSystem.fieldCount] at the time the storage was
+     * created.
+     */
+    val fieldCount: Int,
+    initialCapacity: Int = 64
+) {
+    /**
+     * The number of particles currently stored
+     */
+    var size: Int = 0
+        private set
+
+    /**
+     * The number of particles that can be stored before the columns need to grow
+     */
+    var capacity: Int = initialCapacity
+        private set
+
+    private val columns: Array<DoubleArray> = Array(fieldCount) { DoubleArray(initialCapacity) }
+    private val scratch = ThreadLocal.withInitial { DoubleArray(fieldCount) }
+    private var permuteScratch = DoubleArray(0)
+    private val rowPool = ArrayList<DoubleArray>()
+    private val rowList = ArrayList<DoubleArray>()
+
+    /**
+     * A read-only view of the particles as rows. Each call to [List.get] gathers the particle into a scratch array that
+     * is reused between calls on the same thread, so the returned array must not be retained or modified.
+     */
+    val rows: List<DoubleArray> = object: AbstractList<DoubleArray>() {
+        override val size: Int
+            get() = this@ParticleColumns.size
+
+        override fun get(index: Int): DoubleArray {
+            return gather(index)
+        }
+    }
+
+    /**
+     * A read-only view of the particles at the first [count] indices in [indices], in order. Like [rows], each call to
+     * [List.get] gathers the particle into a scratch array that is reused between calls on the same thread.
+     */
+    fun rows(indices: IntArray, count: Int): List<DoubleArray> {
+        if (count > indices.size)
+            throw IndexOutOfBoundsException("Count $count is larger than the ${indices.size} indices")
+        return object: AbstractList<DoubleArray>() {
+            override val size: Int
+                get() = count
+
+            override fun get(index: Int): DoubleArray {
+                if (index >= count)
+                    throw IndexOutOfBoundsException("Index $index is outside the range [0, $count)")
+                return gather(indices[index])
+            }
+        }
+    }
+
+    /**
+     * Gets the backing array for the passed field. Only the first [size] elements are meaningful, and the returned
+     * array is replaced whenever the storage grows or is [permuted][permute], so it shouldn't be retained across
+     * particle additions.
+     */
+    fun column(field: Int): DoubleArray {
+        return columns[field]
+    }
+
+    /**
+     * Gets the value of the passed field for the particle at the passed index
+     */
+    operator fun get(field: Int, index: Int): Double {
+        return columns[field][index]
+    }
+
+    /**
+     * Sets the value of the passed field for the particle at the passed index
+     */
+    operator fun set(field: Int, index: Int, value: Double) {
+        columns[field][index] = value
+    }
+
+    /**
+     * Copies the particle at [index] into [row], which must have at least [fieldCount] elements.
+     */
+    fun read(index: Int, row: DoubleArray) {
+        for (field in 0 until fieldCount) {
+            row[field] = columns[field][index]
+        }
+    }
+
+    /**
+     * Copies [row], which must have at least [fieldCount] elements, into the particle at [index].
+     */
+    fun write(index: Int, row: DoubleArray) {
+        for (field in 0 until fieldCount) {
+            columns[field][index] = row[field]
+        }
+    }
+
+    /**
+     * Copies the particle at [index] into this thread's scratch row and returns it. The returned array is reused by
+     * subsequent calls on the same thread.
+     */
+    fun gather(index: Int): DoubleArray {
+        val row = scratch.get()
+        read(index, row)
+        return row
+    }
+
+    /**
+     * Appends a particle initialized from [row], returning its index.
+     */
+    fun add(row: DoubleArray): Int {
+        ensureCapacity(size + 1)
+        val index = size++
+        write(index, row)
+        return index
+    }
+
+    /**
+     * Appends a particle initialized from the [fieldCount] elements of [source] starting at [offset], returning its
+     * index.
+     */
+    fun add(source: DoubleArray, offset: Int): Int {
+        ensureCapacity(size + 1)
+        val index = size++
+        for (field in 0 until fieldCount) {
+            columns[field][index] = source[offset + field]
+        }
+        return index
+    }
+
+    /**
+     * Copies every particle into a list of rows, for code that only operates on particle lists. The list and its arrays
+     * are pooled and reused by the next call, so neither should be retained. Use [setRows] to copy the list back into
+     * the columns once it has been modified.
+     */
+    fun copyRows(): MutableList<DoubleArray> {
+        while (rowPool.size < size)
+            rowPool.add(DoubleArray(fieldCount))
+        rowList.clear()
+        for (index in 0 until size) {
+            val row = rowPool[index]
+            read(index, row)
+            rowList.add(row)
+        }
+        return rowList
+    }
+
+    /**
+     * Replaces every particle with the passed rows, which must each have at least [fieldCount] elements.
+     */
+    fun setRows(rows: List<DoubleArray>) {
+        size = 0
+        ensureCapacity(rows.size)
+        for (row in rows) {
+            write(size++, row)
+        }
+    }
+
+    /**
+     * Copies the particle at index [from] over the particle at index [to]
+     */
+    fun move(from: Int, to: Int) {
+        for (field in 0 until fieldCount) {
+            val column = columns[field]
+            column[to] = column[from]
+        }
+    }
+
+    /**
+     * Reorders the particles so the particle previously at index `order[i]` ends up at index `i`. [order] must contain
+     * each index in `[0, size)` exactly once in its first [size] elements.
+     */
+    fun permute(order: IntArray) {
+        if (order.size < size)
+            throw IllegalArgumentException("Order has ${order.size} elements, but there are $size particles")
+        for (field in 0 until fieldCount) {
+            if (permuteScratch.size != capacity)
+                permuteScratch = DoubleArray(capacity)
+            val column = columns[field]
+            val permuted = permuteScratch
+            for (index in 0 until size) {
+                permuted[index] = column[order[index]]
+            }
+            // swap the backing arrays instead of copying the permuted values back
+            columns[field] = permuted
+            permuteScratch = column
+        }
+    }
+
+    /**
+     * Discards every particle at or after [newSize].
+     */
+    fun truncate(newSize: Int) {
+        if (newSize < 0 || newSize > size)
+            throw IndexOutOfBoundsException("New size $newSize is outside the range [0, $size]")
+        size = newSize
+    }
+
+    /**
+     * Removes all the particles. The columns retain their capacity.
+     */
+    fun clear() {
+        size = 0
+    }
+
+    /**
+     * Grows the columns, if necessary, so they can hold at least [minCapacity] particles.
+     */
+    fun ensureCapacity(minCapacity: Int) {
+        if (minCapacity <= capacity)
+            return
+        var newCapacity = capacity + (capacity shr 1)
+        if (newCapacity < minCapacity)
+            newCapacity = minCapacity
+        for (field in 0 until fieldCount) {
+            columns[field] = columns[field].copyOf(newCapacity)
+        }
+        capacity = newCapacity
+    }
+}
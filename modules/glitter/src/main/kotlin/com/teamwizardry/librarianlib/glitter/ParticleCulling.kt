@@ -0,0 +1,234 @@
+package com.teamwizardry.librarianlib.glitter
+
+import com.mojang.blaze3d.matrix.MatrixStack
+import com.teamwizardry.librarianlib.core.bridge.IMatrix4f
+import com.teamwizardry.librarianlib.core.util.Client
+import com.teamwizardry.librarianlib.glitter.bindings.StoredBinding
+import net.minecraft.client.renderer.Matrix4f
+import kotlin.math.sqrt
+
+/**
+ * The cull stage of a [ParticleSystem], which removes particles that won't be visible before they're passed to the
+ * render modules. Culled particles don't run any [render prep modules][ParticleSystem.renderPrepModules] and don't
+ * emit any vertices.
+ *
+ * Particles are culled when a sphere of [radius] blocks around their [position] is completely outside the view
+ * frustum, and particles far from the camera are then handled based on the [lodMode]:
+ *
+ * * [LodMode.NONE] - Far particles are rendered normally
+ * * [LodMode.SKIP] - Particles farther than [lodEnd] are culled
+ * * [LodMode.DECIMATE] - The fraction of particles that are rendered falls from 1 at [lodStart] to 0 at [lodEnd]
+ * * [LodMode.SHRINK] - The value written to [lodScale] falls from 1 at [lodStart] to 0 at [lodEnd], and particles
+ * farther than [lodEnd] are culled. Pass [lodScale] to a render module's size multiplier (e.g.
+ * [SpriteRenderModule.sizeMultiplier][com.teamwizardry.librarianlib.glitter.modules.SpriteRenderModule.sizeMultiplier])
+ * to actually shrink the particles.
+ *
+ * @see ParticleSystem.culling
+ */
+class ParticleCulling @JvmOverloads constructor(
+    /**
+     * The position of the particle. This should be the position that the render modules will draw the particle at.
+     */
+    @JvmField val position: ReadParticleBinding,
+    /**
+     * The radius of the particle's bounding sphere in blocks. This should be large enough to include the particle's
+     * size and any movement caused by interpolation.
+     */
+    @JvmField val radius: Double = 1.0,
+    /**
+     * Whether to cull particles outside the view frustum
+     */
+    @JvmField val frustum: Boolean = true,
+    /**
+     * How to handle particles far from the camera
+     */
+    @JvmField val lodMode: LodMode = LodMode.NONE,
+    /**
+     * The distance at which the [lodMode] starts to take effect
+     */
+    @JvmField val lodStart: Double = 64.0,
+    /**
+     * The distance at which the [lodMode] culls particles
+     */
+    @JvmField val lodEnd: Double = 128.0,
+    /**
+     * A one-element binding the [LodMode.SHRINK] mode writes each particle's scale into. Required when using
+     * [LodMode.SHRINK].
+     */
+    @JvmField val lodScale: StoredBinding? = null,
+    /**
+     * A per-particle random value in the range `[0, 1)` that [LodMode.DECIMATE] uses to pick which particles to drop.
+     * If this is null, particles are picked based on their identity, or their index when using columnar storage.
+     * Since indices shift as particles die, columnar systems using [LodMode.DECIMATE] should provide a seed.
+     */
+    @JvmField val seed: ReadParticleBinding? = null
+) {
+    enum class LodMode {
+        NONE, SKIP, DECIMATE, SHRINK
+    }
+
+    init {
+        position.require(3)
+        lodScale?.require(1)
+        seed?.require(1)
+        if (lodMode == LodMode.SHRINK && lodScale == null)
+            throw IllegalArgumentException("The SHRINK LOD mode requires a lodScale binding")
+        if (lodEnd < lodStart)
+            throw IllegalArgumentException("The LOD end distance ($lodEnd) is less than the start distance ($lodStart)")
+    }
+
+    /**
+     * The number of particles that survived the last cull
+     */
+    var visibleCount: Int = 0
+        private set
+
+    private val visibleParticles = ArrayList<DoubleArray>()
+    private var visibleIndices = IntArray(0)
+
+    // the left, right, bottom, top, and near planes, four elements each
+    private val planes = DoubleArray(20)
+    private var cameraX = 0.0
+    private var cameraY = 0.0
+    private var cameraZ = 0.0
+
+    /**
+     * Culls the passed particles, returning a list of the visible particles. The returned list is reused between calls.
+     */
+    internal fun cull(matrixStack: MatrixStack, projectionMatrix: Matrix4f, particles: List<DoubleArray>): List<DoubleArray> {
+        setup(matrixStack, projectionMatrix)
+        val visible = visibleParticles
+        visible.clear()
+        for (i in particles.indices) {
+            val particle = particles[i]
+            position.load(particle)
+            val scale = test(System.identityHashCode(particle)) { seed?.load(particle) }
+            if (scale <= 0)
+                continue
+            if (lodScale != null) {
+                lodScale.contents[0] = scale
+                lodScale.store(particle)
+            }
+            visible.add(particle)
+        }
+        visibleCount = visible.size
+        return visible
+    }
+
+    /**
+     * Culls the passed particles, returning an array whose first [visibleCount] elements are the indices of the
+     * visible particles, in order. The returned array is reused between calls.
+     */
+    internal fun cull(matrixStack: MatrixStack, projectionMatrix: Matrix4f, columns: ParticleColumns): IntArray {
+        setup(matrixStack, projectionMatrix)
+        var visible = visibleIndices
+        if (visible.size < columns.size) {
+            visible = IntArray(columns.capacity)
+            visibleIndices = visible
+        }
+        var count = 0
+        for (i in 0 until columns.size) {
+            position.load(columns, i)
+            val scale = test(i) { seed?.load(columns, i) }
+            if (scale <= 0)
+                continue
+            if (lodScale != null)
+                columns[lodScale.index, i] = scale
+            visible[count++] = i
+        }
+        visibleCount = count
+        return visible
+    }
+
+    /**
+     * Extracts the frustum planes from the combined projection and model view matrices
+     */
+    private fun setup(matrixStack: MatrixStack, projectionMatrix: Matrix4f) {
+        val camera = Client.minecraft.gameRenderer.activeRenderInfo.projectedView
+        cameraX = camera.x
+        cameraY = camera.y
+        cameraZ = camera.z
+        if (!frustum)
+            return
+
+        val combined = projectionMatrix.copy()
+        combined.mul(matrixStack.last.matrix)
+        @Suppress("CAST_NEVER_SUCCEEDS")
+        val m = combined as IMatrix4f
+        setPlane(0, m.m30 + m.m00, m.m31 + m.m01, m.m32 + m.m02, m.m33 + m.m03) // left
+        setPlane(1, m.m30 - m.m00, m.m31 - m.m01, m.m32 - m.m02, m.m33 - m.m03) // right
+        setPlane(2, m.m30 + m.m10, m.m31 + m.m11, m.m32 + m.m12, m.m33 + m.m13) // bottom
+        setPlane(3, m.m30 - m.m10, m.m31 - m.m11, m.m32 - m.m12, m.m33 - m.m13) // top
+        setPlane(4, m.m30 + m.m20, m.m31 + m.m21, m.m32 + m.m22, m.m33 + m.m23) // near
+    }
+
+    private fun setPlane(plane: Int, a: Float, b: Float, c: Float, d: Float) {
+        // normalize the plane so its equation gives the true distance, which we can compare against the radius
+        val invLength = 1 / sqrt((a * a + b * b + c * c).toDouble())
+        planes[plane * 4] = a * invLength
+        planes[plane * 4 + 1] = b * invLength
+        planes[plane * 4 + 2] = c * invLength
+        planes[plane * 4 + 3] = d * invLength
+    }
+
+    /**
+     * Tests the position currently loaded in [position], returning the particle's LOD scale, or 0 if the particle
+     * should be culled. [loadSeed] is only called if the particle's seed is needed.
+     */
+    private inline fun test(key: Int, loadSeed: () -> Unit): Double {
+        val x = position.contents[0]
+        val y = position.contents[1]
+        val z = position.contents[2]
+
+        if (frustum) {
+            for (plane in 0 until 5) {
+                val offset = plane * 4
+                val distance = planes[offset] * x + planes[offset + 1] * y + planes[offset + 2] * z + planes[offset + 3]
+                if (distance < -radius)
+                    return 0.0
+            }
+        }
+
+        if (lodMode == LodMode.NONE)
+            return 1.0
+
+        val dx = x - cameraX
+        val dy = y - cameraY
+        val dz = z - cameraZ
+        val distance = sqrt(dx * dx + dy * dy + dz * dz) - radius
+        if (distance >= lodEnd)
+            return 0.0
+        if (distance <= lodStart)
+            return 1.0
+        val fraction = 1 - (distance - lodStart) / (lodEnd - lodStart)
+
+        return when (lodMode) {
+            LodMode.SKIP -> 1.0
+            LodMode.SHRINK -> fraction
+            LodMode.DECIMATE -> {
+                val seedValue = if (seed != null) {
+                    loadSeed()
+                    seed.contents[0]
+                } else {
+                    scramble(key)
+                }
+                if (seedValue < fraction) 1.0 else 0.0
+            }
+            LodMode.NONE -> 1.0
+        }
+    }
+
+    private companion object {
+        /**
+         * Scrambles the passed key into a pseudo-random value in the range `[0, 1)`
+         */
+        @JvmStatic
+        fun scramble(key: Int): Double {
+            var h = key * -0x61c88647
+            h = h xor (h ushr 16)
+            h *= -0x7a143595
+            h = h xor (h ushr 13)
+            return (h ushr 8) / (1 shl 24).toDouble()
+        }
+    }
+}
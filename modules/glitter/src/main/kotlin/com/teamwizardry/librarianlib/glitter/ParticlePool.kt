@@ -0,0 +1,137 @@
+package com.teamwizardry.librarianlib.glitter
+
+import java.util.*
+import kotlin.math.ceil
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * A pool of dead particle arrays that a [ParticleSystem] reuses when spawning new particles, reducing memory churn.
+ *
+ * The pool is keyed by a layout generation, which the system increments each time it's reloaded. Changing the
+ * generation discards every pooled array, and arrays of the wrong length are never accepted, so particles that were
+ * alive across a reload can't leak stale-sized arrays into the pool.
+ *
+ * Rather than always retaining up to the system's [ParticleSystem.poolSize] arrays, the pool tracks the recent peak
+ * number of particles spawned and killed per tick and only retains enough arrays to cover the next tick's spawns.
+ * When a system stops spawning, its pool shrinks and the unused arrays are released to the garbage collector.
+ *
+ * The pool is only accessed from the client thread.
+ */
+internal class ParticlePool {
+    /**
+     * The layout generation of the arrays in the pool
+     */
+    var generation: Int = -1
+        private set
+    /**
+     * The length of the arrays in the pool
+     */
+    var fieldCount: Int = 0
+        private set
+    /**
+     * The number of arrays the pool will currently retain. This is recomputed at the end of each tick.
+     */
+    var capacity: Int = 0
+        private set
+
+    /**
+     * The number of spawns that reused a pooled array
+     */
+    var hits: Long = 0
+        private set
+    /**
+     * The number of spawns that had to allocate a new array
+     */
+    var misses: Long = 0
+        private set
+
+    /**
+     * The decaying peak number of particles spawned per tick
+     */
+    var spawnRate: Double = 0.0
+        private set
+    /**
+     * The decaying peak number of particles killed per tick
+     */
+    var deathRate: Double = 0.0
+        private set
+
+    private val arrays = ArrayDeque<DoubleArray>()
+    private var spawnsThisTick = 0
+    private var deathsThisTick = 0
+
+    /**
+     * The number of arrays currently in the pool
+     */
+    val size: Int
+        get() = arrays.size
+
+    /**
+     * Switches the pool to the passed layout, discarding every pooled array if the generation has changed.
+     */
+    fun reset(generation: Int, fieldCount: Int) {
+        if (generation == this.generation)
+            return
+        this.generation = generation
+        this.fieldCount = fieldCount
+        arrays.clear()
+    }
+
+    /**
+     * Takes an array from the pool, or allocates a new one if the pool is empty. The contents of the returned array
+     * are undefined.
+     */
+    fun take(): DoubleArray {
+        spawnsThisTick++
+        val particle = arrays.pollFirst()
+        if (particle == null) {
+            misses++
+            return DoubleArray(fieldCount)
+        }
+        hits++
+        return particle
+    }
+
+    /**
+     * Returns a dead particle's array to the pool, unless the pool is full or the array is the wrong length.
+     */
+    fun release(particle: DoubleArray) {
+        deathsThisTick++
+        if (particle.size == fieldCount && arrays.size < capacity)
+            arrays.addFirst(particle)
+    }
+
+    /**
+     * Updates the spawn and death rates from the last tick, resizes the pool to cover the peak spawn rate, and
+     * releases any excess arrays.
+     */
+    fun endTick(maxSize: Int) {
+        spawnRate = max(spawnsThisTick.toDouble(), spawnRate * RATE_DECAY)
+        deathRate = max(deathsThisTick.toDouble(), deathRate * RATE_DECAY)
+        spawnsThisTick = 0
+        deathsThisTick = 0
+
+        // there's no point in retaining more arrays than we'll spawn, or more than will die to refill the pool
+        val demand = min(spawnRate, max(deathRate, arrays.size.toDouble()))
+        capacity = min(maxSize, ceil(demand).toInt())
+        while (arrays.size > capacity) {
+            arrays.pollLast()
+        }
+    }
+
+    /**
+     * Resets the [hits] and [misses] counters
+     */
+    fun resetStats() {
+        hits = 0
+        misses = 0
+    }
+
+    private companion object {
+        /**
+         * How much the peak rates decay each tick. With a decay of 0.95 the peak halves after about 14 ticks.
+         */
+        const val RATE_DECAY = 0.95
+    }
+}
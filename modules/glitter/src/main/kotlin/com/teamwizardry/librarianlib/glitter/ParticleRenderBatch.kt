@@ -0,0 +1,56 @@
+package com.teamwizardry.librarianlib.glitter
+
+import com.teamwizardry.librarianlib.core.util.Client
+import net.minecraft.client.renderer.RenderType
+
+/**
+ * Collects the vertices emitted by the render modules of every particle system in a frame, grouped by [RenderType],
+ * so each render type is only set up and drawn once per frame instead of once per system.
+ *
+ * Render modules should check [ParticleSystemManager.currentBatch] and, if it isn't null, write their vertices into
+ * the [buffer] for their render type instead of drawing them. Render types that aren't supported by
+ * [ParticleVertexBuffer] can be batched by writing into the vanilla buffer source without finishing it, since the
+ * batch finishes the buffer source when it's flushed.
+ *
+ * @see ParticleSystem.batchRendering
+ */
+internal class ParticleRenderBatch {
+    private val buffers = LinkedHashMap<RenderType, Entry>()
+
+    private class Entry {
+        val buffer = ParticleVertexBuffer()
+        var idleFrames = 0
+    }
+
+    /**
+     * Gets the vertex buffer for the passed render type, which must be [supported][ParticleVertexBuffer.supports].
+     * Vertices should be appended to the buffer after [reserving][ParticleVertexBuffer.reserve] space for them.
+     */
+    fun buffer(renderType: RenderType): ParticleVertexBuffer {
+        return buffers.getOrPut(renderType) { Entry() }.buffer
+    }
+
+    /**
+     * Draws each render type's vertices in the order the render types were first used, then resets the buffers.
+     * Buffers that haven't been used in [MAX_IDLE_FRAMES] frames are discarded, since render types are often recreated
+     * when resources are reloaded.
+     */
+    fun flush() {
+        val iter = buffers.entries.iterator()
+        for ((renderType, entry) in iter) {
+            if (entry.buffer.vertexCount == 0) {
+                if (++entry.idleFrames > MAX_IDLE_FRAMES)
+                    iter.remove()
+                continue
+            }
+            entry.idleFrames = 0
+            entry.buffer.draw(renderType)
+            entry.buffer.reset()
+        }
+        Client.minecraft.renderTypeBuffers.bufferSource.finish()
+    }
+
+    private companion object {
+        const val MAX_IDLE_FRAMES = 200
+    }
+}
@@ -13,4 +13,25 @@ interface ParticleRenderModule {
      * GL transformation matrix has been set up such that raw world coordinates can be used.
      */
     fun render(matrixStack: MatrixStack, projectionMatrix: Matrix4f, particles: List<DoubleArray>, prepModules: List<ParticleUpdateModule>)
+
+    /**
+     * Renders the particles in the passed column storage into the world. This is used instead of the list-based
+     * [render] by systems using [columnar storage][ParticleSystem.columnar]. The default implementation passes
+     * [ParticleColumns.rows] to the list-based [render], which gathers each particle into a reused scratch row.
+     */
+    @JvmDefault
+    fun render(matrixStack: MatrixStack, projectionMatrix: Matrix4f, columns: ParticleColumns, prepModules: List<ParticleUpdateModule>) {
+        render(matrixStack, projectionMatrix, columns.rows, prepModules)
+    }
+
+    /**
+     * Renders the particles at the first [count] of the passed [indices] in the column storage into the world. This is
+     * used by columnar systems with a [culling][ParticleSystem.culling] stage, which passes the indices of the visible
+     * particles. The default implementation passes the [rows][ParticleColumns.rows] at those indices to the list-based
+     * [render].
+     */
+    @JvmDefault
+    fun render(matrixStack: MatrixStack, projectionMatrix: Matrix4f, columns: ParticleColumns, indices: IntArray, count: Int, prepModules: List<ParticleUpdateModule>) {
+        render(matrixStack, projectionMatrix, columns.rows(indices, count), prepModules)
+    }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.teamwizardry.librarianlib.glitter
+
+import net.minecraft.client.settings.ParticleStatus
+
+/**
+ * Plays back a [ParticleSpawnTrace] without a running game by spawning the recorded particles into a
+ * [headless][ParticleSystem.headless] particle system and updating it the same way the game does. Since the system's
+ * own update is used, its storage, [compiled][ParticleSystem.compiledUpdates] and [parallel][ParticleSystem.parallel]
+ * updates, and [ParticleBudget] evictions are all played back. Replays are deterministic as long as the modules are
+ * and the system isn't updated in parallel, which makes them suitable for tests and benchmarks.
+ *
+ * The system should be configured just like the one the trace was recorded from, binding the same fields in the same
+ * order. Modules that need the game (e.g. world collisions) should be pointed at stand-ins, such as a
+ * [GlitterWorldCollider.collisionSource].
+ */
+class ParticleReplay(
+    /**
+     * The trace to play back
+     */
+    val trace: ParticleSpawnTrace,
+    /**
+     * The system to play the trace back into. It must be [headless][ParticleSystem.headless] so the game doesn't also
+     * update it.
+     */
+    val system: ParticleSystem
+) {
+    init {
+        if (!system.headless)
+            throw IllegalArgumentException("Only headless systems can be replayed")
+    }
+
+    /**
+     * The particle setting to play the trace back with. Spawns dropped because of the particle setting aren't
+     * recorded, so recorded traces should generally be played back using [ParticleStatus.ALL].
+     */
+    var particleStatus: ParticleStatus
+        get() = system.headlessParticleStatus
+        set(value) {
+            system.headlessParticleStatus = value
+        }
+
+    /**
+     * Whether to run the [ParticleBudget] before each tick, as the game does. The budget is shared with the game, so
+     * this shouldn't be enabled while a game is running.
+     */
+    var budget: Boolean = true
+
+    /**
+     * The seed for the system's spawn chance rolls, which is applied each time the replay is [reset]
+     */
+    var seed: Long = 0
+
+    /**
+     * The number of ticks that have been played back
+     */
+    var tick: Int = 0
+        private set
+
+    private var started = false
+    private val systems = listOf(system)
+    private val spawn = DoubleArray(trace.fieldCount)
+
+    /**
+     * Whether every tick in the trace has been played back. Particles spawned in the last tick may still be alive.
+     */
+    val isFinished: Boolean
+        get() = tick >= trace.ticks
+
+    /**
+     * Plays back a single tick: spawns the particles recorded in it, then updates the system. Once the trace has
+     * finished this only updates the remaining particles.
+     *
+     * @throws IllegalStateException if the system's field count doesn't match the trace's
+     */
+    fun step() {
+        if (!started) {
+            system.initialize()
+            if (system.fieldCount != trace.fieldCount)
+                throw IllegalStateException("The system has ${system.fieldCount} fields bound, but the trace has " +
+                    "${trace.fieldCount} fields")
+            system.rand.setSeed(seed)
+            started = true
+        }
+
+        if (tick < trace.ticks) {
+            for (n in 0 until trace.spawnCount(tick)) {
+                trace.getSpawn(tick, n, spawn)
+                system.addRecordedParticle(spawn)
+            }
+        }
+        tick++
+
+        if (budget)
+            ParticleBudget.plan(systems)
+        system.update()
+        // there's no frame to wait for pipelined render records or drain the spawn queue, so do it here
+        system.detach()
+    }
+
+    /**
+     * Plays back the rest of the trace
+     */
+    fun run() {
+        while (!isFinished) {
+            step()
+        }
+    }
+
+    /**
+     * Removes every particle and rewinds to the start of the trace. The system's configuration is kept.
+     */
+    fun reset() {
+        system.clearParticles()
+        system.rand.setSeed(seed)
+        tick = 0
+    }
+}
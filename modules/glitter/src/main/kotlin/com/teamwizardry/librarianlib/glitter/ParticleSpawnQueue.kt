@@ -0,0 +1,113 @@
+package com.teamwizardry.librarianlib.glitter
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer queue of particles waiting to be added to a [ParticleSystem].
+ *
+ * Particles are written directly into preallocated slots in a flat array, so queueing a particle doesn't allocate.
+ * Producers claim a contiguous run of slots with a single CAS, copy their particles in, then publish each slot by
+ * updating its sequence number. The consumer (the client thread) drains published slots in order, stopping at the
+ * first slot that has been claimed but not yet published.
+ *
+ * If the ring is full, particles spill into an unbounded overflow queue, which allocates a copy of each particle.
+ */
+internal class ParticleSpawnQueue(val fieldCount: Int, val capacity: Int) {
+    /**
+     * The particle slots. Slot `i` occupies the range `[i * fieldCount, (i + 1) * fieldCount)`.
+     */
+    val slots: DoubleArray = DoubleArray(capacity * fieldCount)
+
+    /**
+     * The sequence number of each slot. A slot is ready to be consumed at position `p` when its sequence is `p + 1`.
+     */
+    private val sequences = AtomicLongArray(capacity)
+    private val tail = AtomicLong(0)
+    @Volatile
+    private var head: Long = 0
+    private val overflow = ConcurrentLinkedQueue<DoubleArray>()
+
+    /**
+     * Claims [count] consecutive positions, returning the first position, or -1 if there isn't enough free space.
+     * Every claimed position must be [published][publish] or the consumer will stall at the first unpublished one.
+     */
+    fun claim(count: Int): Long {
+        while (true) {
+            val tail = this.tail.get()
+            if (tail + count - head > capacity)
+                return -1
+            if (this.tail.compareAndSet(tail, tail + count))
+                return tail
+        }
+    }
+
+    /**
+     * Gets the offset into [slots] of the passed position.
+     */
+    fun offset(position: Long): Int {
+        return (position % capacity).toInt() * fieldCount
+    }
+
+    /**
+     * Publishes the particle at the passed claimed position, making it visible to the consumer.
+     */
+    fun publish(position: Long) {
+        // the ordered write guarantees the slot contents are visible before the sequence number is
+        sequences.lazySet((position % capacity).toInt(), position + 1)
+    }
+
+    /**
+     * Publishes an empty particle at the passed claimed position, which the consumer will skip. Used when a producer
+     * fails after claiming positions so the consumer doesn't stall.
+     */
+    fun abandon(position: Long) {
+        slots[offset(position)] = Double.NaN
+        publish(position)
+    }
+
+    /**
+     * Queues a particle by copying it into a slot, or into the overflow queue if the ring is full.
+     */
+    fun offer(particle: DoubleArray) {
+        val position = claim(1)
+        if (position < 0) {
+            overflow.add(particle.copyOf(fieldCount))
+        } else {
+            System.arraycopy(particle, 0, slots, offset(position), fieldCount)
+            publish(position)
+        }
+    }
+
+    /**
+     * Adds a particle directly to the overflow queue. Used when the ring is full and the particle has already been
+     * copied.
+     */
+    fun offerOverflow(particle: DoubleArray) {
+        overflow.add(particle)
+    }
+
+    /**
+     * Passes each published particle to [consumer] in order, along with the offset of its first field. The particle
+     * contents are only valid until [consumer] returns. May only be called from one thread at a time.
+     */
+    fun drain(consumer: (source: DoubleArray, offset: Int) -> Unit) {
+        var position = head
+        while (true) {
+            val index = (position % capacity).toInt()
+            if (sequences.get(index) != position + 1)
+                break
+            val offset = index * fieldCount
+            // abandoned slots have a NaN lifetime
+            if (!slots[offset].isNaN())
+                consumer(slots, offset)
+            position++
+        }
+        head = position
+
+        while (true) {
+            consumer(overflow.poll() ?: break, 0)
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.teamwizardry.librarianlib.glitter
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import kotlin.math.max
+
+/**
+ * A recording of every particle a [ParticleSystem] spawned, grouped by the tick they were spawned in. Traces are
+ * recorded from a live system using [ParticleSystem.startRecording] and can be saved with [write], then loaded with
+ * [read] and played back without a running game using a [ParticleReplay]. Synthetic traces can be built using
+ * [addSpawn] and [endTick].
+ *
+ * Each spawn is recorded as the particle's full initial array (the lifetime, the age, and the params passed to
+ * [ParticleSystem.addParticle]) before the update modules' [init][ParticleUpdateModule.init] methods are run, so
+ * replaying the trace runs them again. Spawns dropped because of the client's particle setting or the
+ * [ParticleBudget] aren't recorded.
+ */
+class ParticleSpawnTrace(
+    /**
+     * The [field count][ParticleSystem.fieldCount] of the particles in this trace
+     */
+    val fieldCount: Int
+) {
+    init {
+        if (fieldCount < 2)
+            throw IllegalArgumentException("Field count must be at least 2, not $fieldCount")
+    }
+
+    private var values = DoubleArray(fieldCount * 64)
+    private var spawnCount = 0
+    // the index of the first spawn in each tick
+    private var tickStarts = IntArray(64)
+    private var tickCount = 1
+
+    /**
+     * The number of ticks in this trace
+     */
+    val ticks: Int
+        get() = tickCount
+
+    /**
+     * The total number of particles spawned in this trace
+     */
+    val spawns: Int
+        get() = spawnCount
+
+    /**
+     * Gets the number of particles spawned in the passed tick
+     */
+    fun spawnCount(tick: Int): Int {
+        checkTick(tick)
+        return tickEnd(tick) - tickStarts[tick]
+    }
+
+    /**
+     * Copies the [n]th particle spawned in the passed tick into [particle], which must be at least [fieldCount] long
+     */
+    fun getSpawn(tick: Int, n: Int, particle: DoubleArray) {
+        checkTick(tick)
+        val index = tickStarts[tick] + n
+        if (n < 0 || index >= tickEnd(tick))
+            throw IndexOutOfBoundsException("Spawn $n is out of bounds for tick $tick, which has ${spawnCount(tick)} spawns")
+        System.arraycopy(values, index * fieldCount, particle, 0, fieldCount)
+    }
+
+    /**
+     * Adds a particle spawned in the current tick. [particle] must be at least [fieldCount] long.
+     */
+    @Synchronized
+    fun addSpawn(particle: DoubleArray) {
+        if (particle.size < fieldCount)
+            throw IllegalArgumentException("Particle has ${particle.size} fields, but the trace has $fieldCount")
+        if ((spawnCount + 1) * fieldCount > values.size)
+            values = values.copyOf(max((spawnCount + 1) * fieldCount, values.size * 2))
+        System.arraycopy(particle, 0, values, spawnCount * fieldCount, fieldCount)
+        spawnCount++
+    }
+
+    /**
+     * Ends the current tick and starts adding spawns to the next one
+     */
+    @Synchronized
+    fun endTick() {
+        if (tickCount + 1 > tickStarts.size)
+            tickStarts = tickStarts.copyOf(tickStarts.size * 2)
+        tickStarts[tickCount] = spawnCount
+        tickCount++
+    }
+
+    private fun tickEnd(tick: Int): Int {
+        return if (tick == tickCount - 1) spawnCount else tickStarts[tick + 1]
+    }
+
+    private fun checkTick(tick: Int) {
+        if (tick < 0 || tick >= tickCount)
+            throw IndexOutOfBoundsException("Tick $tick is out of bounds for a trace with $tickCount ticks")
+    }
+
+    /**
+     * Writes this trace to the passed stream. The stream isn't closed.
+     */
+    @Synchronized
+    fun write(stream: OutputStream) {
+        val output = DataOutputStream(stream)
+        output.writeInt(MAGIC)
+        output.writeInt(VERSION)
+        output.writeInt(fieldCount)
+        output.writeInt(tickCount)
+        for (tick in 0 until tickCount) {
+            output.writeInt(tickEnd(tick) - tickStarts[tick])
+        }
+        for (i in 0 until spawnCount * fieldCount) {
+            output.writeDouble(values[i])
+        }
+        output.flush()
+    }
+
+    companion object {
+        private const val MAGIC = 0x474C5452 // "GLTR"
+        private const val VERSION = 1
+
+        /**
+         * Reads a trace written by [write]. The stream isn't closed.
+         *
+         * @throws IOException if the stream doesn't contain a valid trace
+         */
+        @JvmStatic
+        fun read(stream: InputStream): ParticleSpawnTrace {
+            val input = DataInputStream(stream)
+            if (input.readInt() != MAGIC)
+                throw IOException("Not a particle spawn trace")
+            val version = input.readInt()
+            if (version != VERSION)
+                throw IOException("Unsupported particle spawn trace version $version")
+            val fieldCount = input.readInt()
+            val tickCount = input.readInt()
+            if (fieldCount < 2 || tickCount < 1)
+                throw IOException("Invalid particle spawn trace header: $fieldCount fields, $tickCount ticks")
+
+            val trace = ParticleSpawnTrace(fieldCount)
+            val counts = IntArray(tickCount) { input.readInt() }
+            val particle = DoubleArray(fieldCount)
+            for (tick in 0 until tickCount) {
+                if (tick != 0)
+                    trace.endTick()
+                for (n in 0 until counts[tick]) {
+                    for (i in 0 until fieldCount) {
+                        particle[i] = input.readDouble()
+                    }
+                    trace.addSpawn(particle)
+                }
+            }
+            return trace
+        }
+    }
+}
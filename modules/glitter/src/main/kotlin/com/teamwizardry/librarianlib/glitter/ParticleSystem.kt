@@ -9,8 +9,11 @@ import net.minecraft.client.renderer.Matrix4f
 import net.minecraft.client.settings.ParticleStatus
 import org.magicwerk.brownies.collections.GapList
 import java.util.*
-import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.RecursiveAction
 import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.math.max
+import kotlin.math.min
 
 /**
  * A system of particles with similar behavior.
@@ -32,16 +35,24 @@ import java.util.concurrent.atomic.AtomicBoolean
  *
  * When creating particle systems it is highly recommended to spawn enough to cause a moderate amount of lag and run
  * sampling to find which hotspots are slowing down the game. It is often surprising what small things have a large
- * impact.
+ * impact. The system's [metrics] give a quick per-module breakdown, which can also be viewed in the debug screen.
  *
  * After creating a particle system, [addToGame] will add the system the game for rendering and updates directly. Calling
  * [removeFromGame] will, as the name implies, remove the particle system from the game, at which point it will no
  * longer render or receive updates
  */
-abstract class ParticleSystem {
+abstract class ParticleSystem @JvmOverloads constructor(
+    /**
+     * Whether this system runs without the game, e.g. when it's being played back by a [ParticleReplay]. Headless
+     * systems aren't added to the game when they're created and use [ParticleReplay.particleStatus] in place of the
+     * client's particle setting.
+     */
+    val headless: Boolean = false
+) {
 
     init {
-        addToGame()
+        if (!headless)
+            addToGame()
     }
 
     /**
@@ -73,14 +84,76 @@ abstract class ParticleSystem {
     /**
      * The maximum number of particles in the particle reuse pool. The reuse pool is used to reduce the amount of memory
      * churn by retaining dead particle arrays and reusing them in [addParticle] as opposed to creating new ones each
-     * time.
+     * time. The pool only retains as many arrays as the system has recently been spawning per tick, up to this limit.
+     *
+     * Use [poolHitRatio] to check how effective the pool is. The pool isn't used with [columnar] storage.
      */
     var poolSize: Int = 1000
 
     /**
-     * Whether to ignore the client's particle density setting when spawning particles. If this is true, spawns will be
-     * randomly ignored based on [decreasedSpawnChance] and [minimalSpawnChance]. If a particle is ignored,
+     * The number of spawned particles that reused an array from the particle pool
+     */
+    val poolHits: Long
+        get() = particlePool.hits
+
+    /**
+     * The number of spawned particles that had to allocate a new array because the particle pool was empty
+     */
+    val poolMisses: Long
+        get() = particlePool.misses
+
+    /**
+     * The fraction of spawned particles that reused an array from the particle pool, or NaN if no particles have been
+     * spawned since the stats were last [reset][resetPoolStats]
+     */
+    val poolHitRatio: Double
+        get() = poolHits.toDouble() / (poolHits + poolMisses)
+
+    /**
+     * Resets the [poolHits] and [poolMisses] counters
+     */
+    fun resetPoolStats() {
+        particlePool.resetStats()
+    }
+
+    /**
+     * The performance metrics for this system, which are collected while [ParticleSystemMetrics.enabled] is true
+     */
+    val metrics: ParticleSystemMetrics = ParticleSystemMetrics()
+
+    /**
+     * The trace currently being recorded, if any
+     */
+    @Volatile
+    private var trace: ParticleSpawnTrace? = null
+
+    /**
+     * Starts recording every particle spawned by this system into a new [ParticleSpawnTrace], replacing any trace
+     * currently being recorded. The trace ends a tick each time the system is updated, and can be played back using a
+     * [ParticleReplay]. Recording stops when [stopRecording] is called or the system is [reloaded][reload].
+     */
+    fun startRecording(): ParticleSpawnTrace {
+        initialize()
+        val trace = ParticleSpawnTrace(fieldCount)
+        this.trace = trace
+        return trace
+    }
+
+    /**
+     * Stops recording spawns, returning the trace that was being recorded, if any
+     */
+    fun stopRecording(): ParticleSpawnTrace? {
+        val trace = this.trace
+        this.trace = null
+        return trace
+    }
+
+    /**
+     * Whether to ignore the client's particle density setting when spawning particles. Unless this is true, spawns will
+     * be randomly ignored based on [decreasedSpawnChance] and [minimalSpawnChance]. If a particle is ignored,
      * [addParticle] will return a placeholder array.
+     *
+     * Spawns are still throttled by the [ParticleBudget] when this is true.
      */
     var ignoreParticleSetting: Boolean = false
 
@@ -95,16 +168,150 @@ abstract class ParticleSystem {
      */
     var minimalSpawnChance: Double = 0.0
 
-    private val rand = Random()
-    private var currentSpawnChance: Double = 1.0
+    /**
+     * The priority of this system's particles when the [global particle budget][ParticleBudget] is exceeded. Particles
+     * are evicted from lower priority systems first.
+     */
+    var priority: Int = 0
+
+    /**
+     * The relative share of the [global particle budget][ParticleBudget] this system gets. Systems over their share
+     * start dropping spawns as the budget fills up, and systems with a higher weight give up fewer particles when
+     * evicting systems of equal [priority].
+     *
+     * @throws IllegalArgumentException if set to a value that isn't positive
+     */
+    var budgetWeight: Double = 1.0
+        set(value) {
+            if (value <= 0 || !value.isFinite())
+                throw IllegalArgumentException("Budget weight must be positive and finite, not $value")
+            field = value
+        }
+
+    /**
+     * Whether to store particles in contiguous per-field columns (see [ParticleColumns]) instead of one array per
+     * particle. This should be set in [configure], and changing it discards any existing particles.
+     *
+     * Columnar storage eliminates the per-particle allocations and pointer chasing of the default storage, but is only
+     * fast when the modules and bindings in use are column-aware. Modules that aren't will still work, however they
+     * will be passed particles gathered into temporary arrays.
+     *
+     * When using columnar storage, the array returned by [addParticle] is a copy of the particle's initial values that
+     * may be reused by subsequent calls, and modifying it has no effect on the particle.
+     */
+    var columnar: Boolean = false
+
+    /**
+     * Whether to split the particles into chunks and run the [updateModules] for each chunk in parallel. This should
+     * be set in [configure].
+     *
+     * Parallel updates are only used when every update module is [thread-safe][ParticleUpdateModule.isThreadSafe],
+     * otherwise the system falls back to updating serially. Aging and removing dead particles, adding queued particles,
+     * and the [globalUpdateModules] always run serially on the client thread.
+     */
+    var parallel: Boolean = false
+
+    /**
+     * The number of particles each parallel task will update. Systems with fewer than twice this number of particles
+     * will be updated serially, since the overhead of splitting the work would outweigh the benefit.
+     */
+    var parallelChunkSize: Int = 1024
+
+    /**
+     * Whether to compile the [updateModules] into a single generated class after [configure] is called. This should be
+     * set in [configure].
+     *
+     * Compiling removes the interface calls and binding copies between modules for the built-in modules that support
+     * it (see [ParticleChainCompiler]), which lets the JIT optimize the whole chain at once. Other modules are still
+     * called normally, and if none of the modules can be compiled the system is updated normally. Since the chain is
+     * compiled once, the contents of any [ConstantBinding][com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding]s
+     * and the module list itself must not be changed after [configure].
+     */
+    var compiledUpdates: Boolean = false
+
+    /**
+     * The cull stage for this system, or null to render every particle. This should be set in [configure].
+     *
+     * The cull stage runs at the start of each frame and removes particles that are outside the view frustum or
+     * dropped by the level of detail policy, so they never run the [renderPrepModules] or reach the [renderModules].
+     */
+    var culling: ParticleCulling? = null
+
+    /**
+     * Whether this system's render modules should add their vertices to a batch shared by every particle system, which
+     * is drawn once per render type at the end of the frame. This should be set in [configure], and defaults to false.
+     *
+     * Batching greatly reduces the number of draw calls when many systems share render types, however it means the
+     * particles are drawn after every non-batched system and interleaved with other systems' particles. Only systems
+     * that don't rely on their draw order relative to other systems (e.g. depth sorted translucent particles) and don't
+     * set up special GL state in their render modules should enable batching.
+     */
+    var batchRendering: Boolean = false
+
+    /**
+     * Whether to prepare render records on a worker thread right after each update, so the render thread only has to
+     * apply partial-tick interpolation and emit vertices. This should be set in [configure].
+     *
+     * Pipelined rendering is only used when every render module is a [PipelinedParticleRenderModule], every render prep
+     * module is [thread-safe][ParticleUpdateModule.isThreadSafe], and no [culling] stage is set. Otherwise the system
+     * renders normally. When pipelining, the render prep modules run once per tick on the worker instead of once per
+     * frame, and particles spawned between the update and a frame are rendered normally until the next update.
+     *
+     * While the records are being prepared the system is treated as if it were updating, so new particles are queued.
+     * Bindings shared with other systems must be [thread-safe][ParticleBinding.isThreadSafe].
+     */
+    var pipelinedRendering: Boolean = false
+
+    /**
+     * The number of particles that can be queued to spawn while the system is updating or rendering before spawns
+     * start allocating. Changes take effect after the next [reload].
+     */
+    var spawnQueueCapacity: Int = 256
+
+    internal val rand = Random()
+    private var settingSpawnChance: Double = 1.0
+    private var throttleSpawnChance: Double = 1.0
+
+    /**
+     * The chance [addParticle] and [spawnBatch] keep each particle, taking [ignoreParticleSetting] into account
+     */
+    private val spawnChance: Double
+        get() = if(ignoreParticleSetting) throttleSpawnChance else settingSpawnChance * throttleSpawnChance
+
+    /**
+     * The spawn chance multiplier set by the [ParticleBudget] for the upcoming tick
+     */
+    internal var budgetSpawnChance: Double = 1.0
+    /**
+     * The number of particles the [ParticleBudget] requires the upcoming tick to evict
+     */
+    internal var budgetEvictions: Int = 0
+    private val evictionSelector = ParticleEvictionSelector()
+    /**
+     * The particle setting used in place of the client's when the system is [headless]
+     */
+    internal var headlessParticleStatus: ParticleStatus = ParticleStatus.ALL
 
     private var systemInitialized: Boolean = false
 
-    internal val queuedAdditions = ConcurrentLinkedQueue<DoubleArray>()
+    private var spawnQueue: ParticleSpawnQueue? = null
     internal val shouldQueue = AtomicBoolean(false)
     internal val particles: MutableList<DoubleArray> = GapList<DoubleArray>()
-    private val particlePool = ArrayDeque<DoubleArray>(poolSize)
+    internal var columns: ParticleColumns? = null
+        private set
+    private val particlePool = ParticlePool()
+    private var layoutGeneration = 0
     private var placeholderParticle = doubleArrayOf()
+    private var spawnRow = PerThread { doubleArrayOf() }
+    private var compiledChain: CompiledParticleChain? = null
+
+    private var pipeline: ForkJoinTask<*>? = null
+    private var preparedRecords = arrayOfNulls<Any>(0)
+    /**
+     * The number of particles covered by the [preparedRecords], or -1 if the records are invalid
+     */
+    @Volatile
+    private var preparedCount = -1
 
     /**
      * The built-in binding for particle lifetime. If the value in [age] is >= the value in [lifetime] the particle will
@@ -126,6 +333,12 @@ abstract class ParticleSystem {
     var fieldCount = 0
         private set
 
+    /**
+     * The number of particles currently alive in this system
+     */
+    val particleCount: Int
+        get() = columns?.size ?: particles.size
+
     private var canBind = false
 
     /**
@@ -157,13 +370,21 @@ abstract class ParticleSystem {
      * conjunction with [ignoreParticleSetting] to ensure [addParticle] doesn't ignore particles in addition to the
      * adjustment this method makes. This method should be called each time a new "batch" of particles is being spawned,
      * since it uses a random number generator to reflect the fractional component of the adjusted spawn count.
+     *
+     * The [ParticleBudget] throttle is included unless [ignoreParticleSetting] is true, in which case [addParticle] and
+     * [spawnBatch] apply it themselves.
      */
     fun adjustParticleCount(count: Int): Int {
-        if(currentSpawnChance == 1.0)
+        val chance = if(ignoreParticleSetting) settingSpawnChance else settingSpawnChance * throttleSpawnChance
+        return adjustCount(count, chance)
+    }
+
+    private fun adjustCount(count: Int, chance: Double): Int {
+        if(chance == 1.0)
             return count
         // adding a random value from [0, 1) means that when truncating to an int, the fractional component gets
         // transformed into a random +1
-        val adjusted = count * currentSpawnChance + rand.nextDouble()
+        val adjusted = count * chance + rand.nextDouble()
         return adjusted.toInt()
     }
 
@@ -186,44 +407,182 @@ abstract class ParticleSystem {
      * }
      * ```
      *
+     * If the system is currently updating or rendering, the particle will be queued and added at the start of the next
+     * update or frame. Queued particles and particles in systems using [columnar] storage are copied out of the
+     * returned array, so modifying it after this method returns has no effect.
+     *
      * @param lifetime the lifetime of the particle in ticks
      * @param params an array of values to initialize the particle array with.
      */
     fun addParticle(lifetime: Int, vararg params: Double): DoubleArray {
-        if (!systemInitialized) {
-            reload()
-            systemInitialized = true
+        return spawnParticle(lifetime, params, 0)
+    }
+
+    /**
+     * Spawns a particle that was recorded in a [ParticleSpawnTrace], just as the system's call to [addParticle] would
+     * have. [particle] contains the full particle, including its lifetime and age.
+     */
+    internal fun addRecordedParticle(particle: DoubleArray): DoubleArray {
+        return spawnParticle(particle[0].toInt(), particle, 2)
+    }
+
+    private fun spawnParticle(lifetime: Int, params: DoubleArray, paramOffset: Int): DoubleArray {
+        initialize()
+
+        val chance = spawnChance
+        val realSpawn = chance == 1.0 || rand.nextDouble() < chance
+        if(!realSpawn) {
+            fillParticle(placeholderParticle, lifetime, params, paramOffset)
+            return placeholderParticle
         }
 
-        val realSpawn = ignoreParticleSetting || currentSpawnChance == 1.0 || rand.nextDouble() < currentSpawnChance
+        val columns = this.columns
+        val queue = shouldQueue.get()
 
-        val particle = if(realSpawn)
-            particlePool.pollFirst() ?: DoubleArray(fieldCount)
+        val particle = if(queue || columns != null)
+            spawnRow.get()
         else
-            placeholderParticle
+            particlePool.take()
 
-        particle[0] = lifetime.toDouble()
-        particle[1] = 0.0
-        (2 until particle.size).forEach { i ->
-            if (i - 2 < params.size)
-                particle[i] = params[i - 2]
-            else
-                particle[i] = 0.0
+        fillParticle(particle, lifetime, params, paramOffset)
+        trace?.addSpawn(particle)
+        initParticle(particle)
+        metrics.spawnCount++
+
+        if (queue) {
+            spawnQueue!!.offer(particle)
+        } else if (columns != null) {
+            columns.add(particle)
+        } else {
+            particles.add(particle)
         }
+        return particle
+    }
 
-        if(!realSpawn)
-            return placeholderParticle
+    /**
+     * Creates a batch of particles with the same [lifetime]. This is equivalent to calling [addParticle] [count] times,
+     * however it avoids the varargs array and, if the system is currently updating or rendering, claims space in the
+     * spawn queue for the entire batch at once.
+     *
+     * [flatParams] should contain the params for each particle back-to-back, in the same order [addParticle] expects
+     * them. Each particle takes up `fieldCount - 2` elements, since the lifetime and age aren't included.
+     *
+     * The number of particles will be adjusted by the particle setting (unless [ignoreParticleSetting] is true) and the
+     * [ParticleBudget] throttle, skipping evenly spaced particles in the batch.
+     *
+     * @param count the number of particles in the batch
+     * @param lifetime the lifetime of each particle in ticks
+     * @param flatParams the initial values for each of the particles
+     * @return the number of particles that were actually spawned
+     * @throws IllegalArgumentException if [flatParams] is too small to contain [count] particles
+     */
+    fun spawnBatch(count: Int, lifetime: Int, flatParams: DoubleArray): Int {
+        initialize()
+
+        val stride = fieldCount - 2
+        if (flatParams.size < count * stride)
+            throw IllegalArgumentException("Batch params are too small. $count particles with $stride params each " +
+                "require ${count * stride} elements, but only ${flatParams.size} were passed")
+
+        val spawnCount = adjustCount(count, spawnChance)
+        if (spawnCount <= 0)
+            return 0
+
+        val columns = this.columns
+        val row = spawnRow.get()
+        val trace = this.trace
+        metrics.spawnCount += spawnCount
 
         if (shouldQueue.get()) {
-            queuedAdditions.add(particle)
+            val spawnQueue = this.spawnQueue!!
+            var spawned = 0
+            while (spawned < spawnCount) {
+                val chunkSize = min(spawnCount - spawned, spawnQueue.capacity)
+                val start = spawnQueue.claim(chunkSize)
+                var n = 0
+                try {
+                    while (n < chunkSize) {
+                        val particle = if (start < 0) DoubleArray(fieldCount) else row
+                        fillParticle(particle, lifetime, flatParams, batchParamOffset(spawned + n, count, spawnCount))
+                        trace?.addSpawn(particle)
+                        initParticle(particle)
+                        if (start < 0) {
+                            spawnQueue.offerOverflow(particle)
+                        } else {
+                            System.arraycopy(particle, 0, spawnQueue.slots, spawnQueue.offset(start + n), fieldCount)
+                            spawnQueue.publish(start + n)
+                        }
+                        n++
+                    }
+                } finally {
+                    // make sure we never leave claimed slots unpublished, or the queue will stall
+                    if (start >= 0) {
+                        while (n < chunkSize) {
+                            spawnQueue.abandon(start + n)
+                            n++
+                        }
+                    }
+                }
+                spawned += chunkSize
+            }
+        } else if (columns != null) {
+            columns.ensureCapacity(columns.size + spawnCount)
+            for (n in 0 until spawnCount) {
+                fillParticle(row, lifetime, flatParams, batchParamOffset(n, count, spawnCount))
+                trace?.addSpawn(row)
+                initParticle(row)
+                columns.add(row)
+            }
         } else {
-            particles.add(particle)
+            for (n in 0 until spawnCount) {
+                val particle = particlePool.take()
+                fillParticle(particle, lifetime, flatParams, batchParamOffset(n, count, spawnCount))
+                trace?.addSpawn(particle)
+                initParticle(particle)
+                particles.add(particle)
+            }
+        }
+        return spawnCount
+    }
+
+    /**
+     * Gets the offset in the flat params of the [n]th spawned particle, evenly spacing [spawnCount] particles across
+     * the [count] particles in the batch.
+     */
+    private fun batchParamOffset(n: Int, count: Int, spawnCount: Int): Int {
+        val index = if (spawnCount == count) n else (n.toLong() * count / spawnCount).toInt()
+        return index * (fieldCount - 2)
+    }
+
+    /**
+     * Initializes the lifetime and age of the passed particle, then copies the params starting at [paramOffset] into
+     * the rest of the particle, filling any missing values with 0.
+     */
+    private fun fillParticle(particle: DoubleArray, lifetime: Int, params: DoubleArray, paramOffset: Int) {
+        particle[0] = lifetime.toDouble()
+        particle[1] = 0.0
+        val count = min(particle.size - 2, params.size - paramOffset)
+        if (count > 0)
+            System.arraycopy(params, paramOffset, particle, 2, count)
+        for (i in 2 + max(count, 0) until particle.size) {
+            particle[i] = 0.0
         }
+    }
 
+    private fun initParticle(particle: DoubleArray) {
         for (i in 0 until updateModules.size) {
             updateModules[i].init(particle)
         }
-        return particle
+    }
+
+    /**
+     * Configures the system if it hasn't been configured yet
+     */
+    internal fun initialize() {
+        if (!systemInitialized) {
+            reload()
+            systemInitialized = true
+        }
     }
 
     /**
@@ -245,6 +604,9 @@ abstract class ParticleSystem {
      * re-bind values and rebuild the module lists.
      */
     fun reload() {
+        awaitPipeline()
+        this.preparedCount = -1
+        this.trace = null
        // this.particles.clear()
        // this.particlePool.clear()
         this.updateModules.clear()
@@ -257,20 +619,127 @@ abstract class ParticleSystem {
 
         this.lifetime = bind(1)
         this.age = bind(1)
+        this.columnar = false
+        this.parallel = false
+        this.compiledUpdates = false
+        this.culling = null
+        this.batchRendering = false
+        this.pipelinedRendering = false
         this.configure()
         this.placeholderParticle = DoubleArray(this.fieldCount)
+        val fieldCount = this.fieldCount
+        this.layoutGeneration++
+        this.particlePool.reset(layoutGeneration, fieldCount)
+        this.spawnRow = PerThread { DoubleArray(fieldCount) }
+        if (this.spawnQueue.let { it == null || it.fieldCount != fieldCount || it.capacity != spawnQueueCapacity })
+            this.spawnQueue = ParticleSpawnQueue(fieldCount, spawnQueueCapacity)
+        if (this.columnar) {
+            if (this.columns?.fieldCount != this.fieldCount)
+                this.columns = ParticleColumns(this.fieldCount)
+        } else {
+            this.columns = null
+        }
 
         this.canBind = false
+
+        this.compiledChain = if (this.compiledUpdates)
+            ParticleChainCompiler.compile(this.updateModules, javaClass.simpleName)
+        else
+            null
+
+        if (this.parallel) {
+            val unsafeModules = this.updateModules.filter { !it.isThreadSafe }
+            if (unsafeModules.isNotEmpty()) {
+                logger.warn("${javaClass.simpleName} requested parallel updates, however some of its update modules " +
+                    "aren't thread-safe (${unsafeModules.joinToString { it.javaClass.simpleName }}). The system will " +
+                    "be updated serially.")
+            }
+        }
+        if (this.pipelinedRendering) {
+            val reasons = mutableListOf<String>()
+            this.renderModules.filter { it !is PipelinedParticleRenderModule<*> }.also { modules ->
+                if (modules.isNotEmpty())
+                    reasons.add("some render modules don't support it (${modules.joinToString { it.javaClass.simpleName }})")
+            }
+            this.renderPrepModules.filter { !it.isThreadSafe }.also { modules ->
+                if (modules.isNotEmpty())
+                    reasons.add("some render prep modules aren't thread-safe (${modules.joinToString { it.javaClass.simpleName }})")
+            }
+            if (this.culling != null)
+                reasons.add("it has a cull stage")
+            if (reasons.isNotEmpty()) {
+                logger.warn("${javaClass.simpleName} requested pipelined rendering, however ${reasons.joinToString(" and ")}. " +
+                    "The system will be rendered normally.")
+            }
+        }
     }
 
     internal fun update() {
+        awaitPipeline()
+        trace?.endTick()
         shouldQueue.set(true)
-        while(true) {
-            particles.add(queuedAdditions.poll() ?: break)
+        preparedCount = -1
+        val timing = metrics.beginTick(updateModules.size, particlePool.hits)
+        val start = if (timing) System.nanoTime() else 0L
+        val columns = this.columns
+        val modulesTimed = if (columns != null) {
+            updateColumns(columns)
+        } else {
+            updateParticles()
+        }
+        if (timing)
+            metrics.endTick(System.nanoTime() - start, particleCount, modulesTimed)
+        if (shouldPipeline()) {
+            // keep queueing new particles until the records are prepared. the queue is drained when rendering
+            val renderParticles = columns?.rows ?: particles
+            val timePrepare = timing
+            pipeline = ParticleWorkerPool.pool.submit(Runnable {
+                val prepareStart = if (timePrepare) System.nanoTime() else 0L
+                prepareRecords(renderParticles)
+                if (timePrepare)
+                    metrics.recordPrepare(System.nanoTime() - prepareStart)
+            })
+        } else {
+            shouldQueue.set(false)
+        }
+        throttleSpawnChance = budgetSpawnChance
+        val particleStatus = if (headless) headlessParticleStatus else Client.minecraft.gameSettings.particles
+        @Suppress("WHEN_ENUM_CAN_BE_NULL_IN_JAVA")
+        settingSpawnChance = when(particleStatus) {
+            ParticleStatus.ALL -> 1.0
+            ParticleStatus.DECREASED -> decreasedSpawnChance
+            ParticleStatus.MINIMAL -> minimalSpawnChance
+        }
+    }
+
+    /**
+     * Updates the particles in the list storage, returning whether the update modules were individually timed
+     */
+    private fun updateParticles(): Boolean {
+        drainQueue()
+        val parallelUpdate = shouldUpdateInParallel(particles.size)
+
+        val count = particles.size
+        val evicting = budgetEvictions > 0
+        if (evicting) {
+            val ages = evictionSelector.reserve(count)
+            var live = 0
+            for (index in 0 until count) {
+                val particle = particles[index]
+                if (particle[age.index] < particle[lifetime.index])
+                    ages[live++] = particle[age.index]
+            }
+            evictionSelector.select(live, budgetEvictions)
+            budgetEvictions = 0
         }
-        val iter = particles.iterator()
 
-        for (particle in iter) {
+        val timeModules = !parallelUpdate && compiledChain == null && metrics.timingTick
+
+        // compact the live particles toward the front in a single pass and truncate the dead ones off the end, rather
+        // than paying to shift the list every time a particle is removed
+        var alive = 0
+        for (index in 0 until count) {
+            val particle = particles[index]
 
             this.lifetime.load(particle)
             this.age.load(particle)
@@ -278,43 +747,290 @@ abstract class ParticleSystem {
             val lifetime = this.lifetime.contents[0]
             val age = this.age.contents[0]
             if (age >= lifetime) {
-                iter.remove()
-                if (particlePool.size < poolSize)
-                    particlePool.addLast(particle)
+                metrics.deathCount++
+                particlePool.release(particle)
+                continue
+            }
+            if (evicting && evictionSelector.shouldEvict(age)) {
+                metrics.evictionCount++
+                particlePool.release(particle)
                 continue
             }
 
             this.age.contents[0] = age + 1
             this.age.store(particle)
-            update(particle)
+            if (alive != index)
+                particles[alive] = particle
+            if (!parallelUpdate) {
+                if (timeModules && metrics.shouldTimeModules(alive))
+                    metrics.updateTimed(updateModules, particle)
+                else
+                    update(particle)
+            }
+            alive++
         }
+        if (alive != count)
+            particles.subList(alive, count).clear()
+        particlePool.endTick(poolSize)
 
+        if (parallelUpdate) {
+            ParticleWorkerPool.pool.invoke(ParallelUpdate(0, alive))
+        }
+
+        val globalStart = if (metrics.timingTick) System.nanoTime() else 0L
         for (i in 0 until globalUpdateModules.size) {
             globalUpdateModules[i].update(particles)
         }
-        shouldQueue.set(false)
-        @Suppress("WHEN_ENUM_CAN_BE_NULL_IN_JAVA")
-        currentSpawnChance = when(Client.minecraft.gameSettings.particles) {
-            ParticleStatus.ALL -> 1.0
-            ParticleStatus.DECREASED -> decreasedSpawnChance
-            ParticleStatus.MINIMAL -> minimalSpawnChance
+        if (metrics.timingTick)
+            metrics.recordGlobalUpdate(System.nanoTime() - globalStart)
+        return timeModules
+    }
+
+    /**
+     * Updates the particles in the column storage, returning whether the update modules were individually timed
+     */
+    private fun updateColumns(columns: ParticleColumns): Boolean {
+        drainQueue()
+
+        val lifetimes = columns.column(lifetime.index)
+        val ages = columns.column(age.index)
+        val evicting = budgetEvictions > 0
+        if (evicting) {
+            val liveAges = evictionSelector.reserve(columns.size)
+            var live = 0
+            for (index in 0 until columns.size) {
+                if (ages[index] < lifetimes[index])
+                    liveAges[live++] = ages[index]
+            }
+            evictionSelector.select(live, budgetEvictions)
+            budgetEvictions = 0
+        }
+
+        // compact the live particles toward the front in a single sequential pass, aging them as we go
+        var alive = 0
+        for (index in 0 until columns.size) {
+            if (ages[index] >= lifetimes[index]) {
+                metrics.deathCount++
+                continue
+            }
+            if (evicting && evictionSelector.shouldEvict(ages[index])) {
+                metrics.evictionCount++
+                continue
+            }
+            if (alive != index)
+                columns.move(index, alive)
+            ages[alive] += 1
+            alive++
+        }
+        columns.truncate(alive)
+
+        val parallelUpdate = shouldUpdateInParallel(alive)
+        val timeModules = !parallelUpdate && compiledChain == null && metrics.timingTick
+        if (parallelUpdate) {
+            ParticleWorkerPool.pool.invoke(ParallelUpdate(0, alive))
+        } else if (timeModules) {
+            for (index in 0 until alive) {
+                if (metrics.shouldTimeModules(index)) {
+                    metrics.updateTimed(updateModules, columns, index)
+                } else {
+                    for (i in 0 until updateModules.size) {
+                        updateModules[i].update(columns, index)
+                    }
+                }
+            }
+        } else {
+            updateRange(0, alive)
+        }
+
+        val globalStart = if (metrics.timingTick) System.nanoTime() else 0L
+        for (i in 0 until globalUpdateModules.size) {
+            globalUpdateModules[i].update(columns)
+        }
+        if (metrics.timingTick)
+            metrics.recordGlobalUpdate(System.nanoTime() - globalStart)
+        return timeModules
+    }
+
+    /**
+     * Adds any particles that were queued while the system was updating or rendering
+     */
+    private fun drainQueue() {
+        val columns = this.columns
+        val fieldCount = this.fieldCount
+        spawnQueue?.drain { source, offset ->
+            if (columns != null) {
+                columns.add(source, offset)
+            } else {
+                val particle = particlePool.take()
+                System.arraycopy(source, offset, particle, 0, fieldCount)
+                particles.add(particle)
+            }
         }
     }
 
     private fun update(particle: DoubleArray) {
+        val compiledChain = this.compiledChain
+        if (compiledChain != null) {
+            compiledChain.update(particle)
+            return
+        }
         for (i in 0 until updateModules.size) {
             updateModules[i].update(particle)
         }
     }
 
-    internal fun render(stack: MatrixStack, projectionMatrix: Matrix4f) {
-        shouldQueue.set(true)
-        while(true) {
-            particles.add(queuedAdditions.poll() ?: break)
+    private fun shouldUpdateInParallel(count: Int): Boolean {
+        if (!parallel || count < parallelChunkSize * 2)
+            return false
+        for (i in 0 until updateModules.size) {
+            if (!updateModules[i].isThreadSafe)
+                return false
+        }
+        return true
+    }
+
+    /**
+     * Runs the update modules on the particles in the range [[start], [end])
+     */
+    private fun updateRange(start: Int, end: Int) {
+        val columns = this.columns
+        val compiledChain = this.compiledChain
+        if (columns != null && compiledChain != null) {
+            for (index in start until end) {
+                compiledChain.update(columns, index)
+            }
+        } else if (columns != null) {
+            for (index in start until end) {
+                for (i in 0 until updateModules.size) {
+                    updateModules[i].update(columns, index)
+                }
+            }
+        } else {
+            for (index in start until end) {
+                update(particles[index])
+            }
+        }
+    }
+
+    /**
+     * Recursively splits the particle range in half until it's at most [parallelChunkSize] particles long, then runs
+     * the update modules on that chunk.
+     */
+    private inner class ParallelUpdate(val start: Int, val end: Int): RecursiveAction() {
+        override fun compute() {
+            if (end - start <= parallelChunkSize.coerceAtLeast(1)) {
+                updateRange(start, end)
+            } else {
+                val middle = (start + end) ushr 1
+                invokeAll(ParallelUpdate(start, middle), ParallelUpdate(middle, end))
+            }
+        }
+    }
+
+    private fun shouldPipeline(): Boolean {
+        if (!pipelinedRendering || culling != null)
+            return false
+        for (i in 0 until renderModules.size) {
+            if (renderModules[i] !is PipelinedParticleRenderModule<*>)
+                return false
+        }
+        for (i in 0 until renderPrepModules.size) {
+            if (!renderPrepModules[i].isThreadSafe)
+                return false
         }
+        return true
+    }
+
+    /**
+     * Prepares the render records for each render module. Called on a worker thread.
+     */
+    private fun prepareRecords(particles: List<DoubleArray>) {
+        if (preparedRecords.size != renderModules.size)
+            preparedRecords = arrayOfNulls(renderModules.size)
         for (i in 0 until renderModules.size) {
-            renderModules[i].render(stack, projectionMatrix, particles, renderPrepModules)
+            @Suppress("UNCHECKED_CAST")
+            val module = renderModules[i] as PipelinedParticleRenderModule<Any>
+            preparedRecords[i] = module.prepare(particles, renderPrepModules, preparedRecords[i])
+        }
+        preparedCount = particles.size
+    }
+
+    /**
+     * Waits for any render records being prepared and stops queueing spawns. Once a system is removed from the game it
+     * isn't updated or rendered, so nothing else would wait for the pipeline or drain the spawn queue.
+     */
+    internal fun detach() {
+        awaitPipeline()
+        shouldQueue.set(false)
+        drainQueue()
+    }
+
+    /**
+     * Removes every particle, including any queued to spawn
+     */
+    internal fun clearParticles() {
+        detach()
+        particles.clear()
+        columns?.clear()
+        preparedCount = -1
+    }
+
+    /**
+     * Waits for any render records currently being prepared
+     */
+    private fun awaitPipeline() {
+        val task = pipeline ?: return
+        pipeline = null
+        try {
+            task.join()
+            metrics.endPipeline()
+        } catch (e: Exception) {
+            logger.error("Error preparing render records for ${javaClass.simpleName}", e)
+            preparedCount = -1
+        }
+    }
+
+    internal fun render(stack: MatrixStack, projectionMatrix: Matrix4f) {
+        awaitPipeline()
+        shouldQueue.set(true)
+        val timing = metrics.beginFrame()
+        val start = if (timing) System.nanoTime() else 0L
+        ParticleSystemMetrics.current = metrics
+        val columns = this.columns
+        val culling = this.culling
+        val renderPrepModules = if (timing) metrics.timedPrepModules(renderPrepModules) else renderPrepModules
+        drainQueue()
+        val preparedCount = this.preparedCount
+        val pipelined = preparedCount >= 0 && preparedRecords.size == renderModules.size && shouldPipeline()
+        if (pipelined) {
+            // particles are only ever appended between updates, so any particles after the prepared ones are new
+            val particles = columns?.rows ?: particles
+            val newParticles = particles.subList(preparedCount, particles.size)
+            for (i in 0 until renderModules.size) {
+                @Suppress("UNCHECKED_CAST")
+                val module = renderModules[i] as PipelinedParticleRenderModule<Any>
+                module.renderPrepared(stack, projectionMatrix, preparedRecords[i]!!)
+                if (newParticles.isNotEmpty())
+                    module.render(stack, projectionMatrix, newParticles, renderPrepModules)
+            }
+        } else if (columns != null && culling != null) {
+            val visible = culling.cull(stack, projectionMatrix, columns)
+            val visibleCount = culling.visibleCount
+            for (i in 0 until renderModules.size) {
+                renderModules[i].render(stack, projectionMatrix, columns, visible, visibleCount, renderPrepModules)
+            }
+        } else if (columns != null) {
+            for (i in 0 until renderModules.size) {
+                renderModules[i].render(stack, projectionMatrix, columns, renderPrepModules)
+            }
+        } else {
+            val visible = culling?.cull(stack, projectionMatrix, particles) ?: particles
+            for (i in 0 until renderModules.size) {
+                renderModules[i].render(stack, projectionMatrix, visible, renderPrepModules)
+            }
         }
+        ParticleSystemMetrics.current = null
+        metrics.endFrame(if (timing) System.nanoTime() - start else 0L, pipelined)
         shouldQueue.set(false)
     }
 }
@@ -8,6 +8,7 @@ import com.teamwizardry.librarianlib.math.MutableMatrix4d
 import net.minecraft.client.Minecraft
 import net.minecraft.client.renderer.Vector3f
 import net.minecraft.client.renderer.Vector4f
+import net.minecraft.client.settings.KeyBinding
 import net.minecraft.profiler.IProfiler
 import net.minecraft.resources.IResourceManager
 import net.minecraftforge.api.distmarker.Dist
@@ -17,6 +18,7 @@ import net.minecraftforge.event.TickEvent
 import net.minecraftforge.event.world.WorldEvent
 import net.minecraftforge.eventbus.api.SubscribeEvent
 import net.minecraftforge.fml.common.Mod
+import org.lwjgl.glfw.GLFW
 import java.util.ConcurrentModificationException
 
 /**
@@ -28,6 +30,29 @@ internal object ParticleSystemManager: ISimpleReloadListener<Unit> {
 
     val systems: MutableList<ParticleSystem> = mutableListOf()
 
+    /**
+     * The batch that collects the vertices of every [batching][ParticleSystem.batchRendering] system each frame
+     */
+    private val renderBatch = ParticleRenderBatch()
+
+    /**
+     * The batch render modules should write their vertices into, or null if the system currently being rendered has
+     * opted out of batching and render modules should draw immediately.
+     */
+    var currentBatch: ParticleRenderBatch? = null
+        private set
+
+    /**
+     * The key that toggles [metrics collection][ParticleSystemMetrics.enabled] and the metrics breakdown in the debug
+     * screen. Unbound by default.
+     */
+    val metricsKey = KeyBinding("key.librarianlib.glitter.metrics", GLFW.GLFW_KEY_UNKNOWN, "key.categories.librarianlib")
+
+    /**
+     * The maximum number of systems listed in the metrics breakdown
+     */
+    private const val METRICS_LINES = 8
+
     init {
         Client.resourceReloadHandler.register(this)
     }
@@ -39,13 +64,19 @@ internal object ParticleSystemManager: ISimpleReloadListener<Unit> {
     }
 
     fun remove(system: ParticleSystem) {
-        systems.remove(system)
+        if(systems.remove(system))
+            system.detach()
     }
 
     @SubscribeEvent
     fun tick(event: TickEvent.ClientTickEvent) {
         if (event.phase != TickEvent.Phase.START)
             return
+        while (metricsKey.isPressed) {
+            ParticleSystemMetrics.enabled = !ParticleSystemMetrics.enabled
+            if (ParticleSystemMetrics.enabled)
+                systems.forEach { it.metrics.reset() }
+        }
         if (Minecraft.getInstance().currentScreen?.isPauseScreen == true)
             return
         if (Minecraft.getInstance().world == null)
@@ -53,13 +84,16 @@ internal object ParticleSystemManager: ISimpleReloadListener<Unit> {
 
         val profiler = Minecraft.getInstance().profiler
         profiler.startSection("liblib_particles")
+        val start = System.nanoTime()
         try {
+            ParticleBudget.plan(systems)
             systems.forEach {
                 it.update()
             }
         } catch (e: ConcurrentModificationException) {
             e.printStackTrace()
         }
+        ParticleBudget.recordUpdate(System.nanoTime() - start)
         profiler.endSection()
     }
 
@@ -72,12 +106,40 @@ internal object ParticleSystemManager: ISimpleReloadListener<Unit> {
             event.left.add("LibrarianLib Glitter:")
             var total = 0
             systems.forEach { system ->
-                if (system.particles.isNotEmpty()) {
-                    event.left.add(" - ${system.javaClass.simpleName}: ${system.particles.size}")
-                    total += system.particles.size
+                val count = system.particleCount
+                if (count != 0) {
+                    event.left.add(" - ${system.javaClass.simpleName}: $count")
+                    total += count
                 }
             }
-            event.left.add(" - $total")
+            event.left.add(" - $total / ${ParticleBudget.effectiveLimit}")
+
+            if (ParticleSystemMetrics.enabled)
+                addMetrics(event.left)
+        }
+    }
+
+    /**
+     * Adds the systems with the highest update and render times to the debug screen, along with their slowest update
+     * module
+     */
+    private fun addMetrics(lines: MutableList<String>) {
+        val ranked = systems.sortedByDescending { it.metrics.updateTime + it.metrics.renderTime }
+        lines.add("Glitter metrics (update/global/prep/render ms, spawns/deaths/evictions, vertices):")
+        for (system in ranked.take(METRICS_LINES)) {
+            val metrics = system.metrics
+            lines.add(String.format(" - %s: %.2f/%.2f/%.2f/%.2f, %.0f/%.0f/%.0f, %.0f",
+                system.javaClass.simpleName,
+                metrics.updateTime / 1e6, metrics.globalUpdateTime / 1e6,
+                metrics.renderPrepTime / 1e6, metrics.renderTime / 1e6,
+                metrics.spawns, metrics.deaths, metrics.evictions, metrics.vertices
+            ))
+            val moduleTimes = metrics.moduleUpdateTimes
+            val slowest = moduleTimes.indices.maxBy { moduleTimes[it] }
+            if (slowest != null && moduleTimes[slowest] > 0 && slowest < system.updateModules.size) {
+                lines.add(String.format("   slowest: %s %.2f ms",
+                    system.updateModules[slowest].javaClass.simpleName, moduleTimes[slowest] / 1e6))
+            }
         }
     }
 
@@ -86,6 +148,7 @@ internal object ParticleSystemManager: ISimpleReloadListener<Unit> {
         val profiler = Minecraft.getInstance().profiler
 
         profiler.startSection("liblib_glitter")
+        val start = System.nanoTime()
 
         event.matrixStack.push()
         val viewPos = Client.minecraft.gameRenderer.activeRenderInfo.projectedView
@@ -96,13 +159,18 @@ internal object ParticleSystemManager: ISimpleReloadListener<Unit> {
         if (entity != null) {
             try {
                 systems.forEach {
+                    currentBatch = if (it.batchRendering) renderBatch else null
                     it.render(event.matrixStack, event.projectionMatrix)
                 }
             } catch (e: ConcurrentModificationException) {
                 e.printStackTrace()
+            } finally {
+                currentBatch = null
             }
+            renderBatch.flush()
         }
         event.matrixStack.pop()
+        ParticleBudget.recordRender(System.nanoTime() - start)
 
         profiler.endSection()
     }
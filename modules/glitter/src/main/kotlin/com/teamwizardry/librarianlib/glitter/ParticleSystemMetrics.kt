@@ -0,0 +1,358 @@
+package com.teamwizardry.librarianlib.glitter
+
+/**
+ * Performance metrics for a single [ParticleSystem], collected while [enabled].
+ *
+ * The counters (spawns, deaths, pool hits, and vertices) are tallied every tick or frame, but to keep the overhead low
+ * the timings are only measured once every [sampleInterval] ticks or frames. Per-module timings are further estimated
+ * by only timing every [moduleSampleStride]th particle and scaling the result up. Each metric is an exponential moving
+ * average over the samples, so short spikes are smoothed out.
+ *
+ * Update module timings are only measured when the system is updated serially and without [compiled
+ * updates][ParticleSystem.compiledUpdates], since the modules aren't called individually otherwise. The total
+ * [updateTime] is always measured.
+ */
+class ParticleSystemMetrics internal constructor() {
+    /**
+     * The average nanoseconds per tick spent updating the system, including aging, removing dead particles, and the
+     * [globalUpdateTime]
+     */
+    var updateTime: Double = 0.0
+        private set
+
+    /**
+     * The estimated average nanoseconds per tick spent in each of the system's update modules, in the same order as
+     * [ParticleSystem.updateModules]. Modules that haven't been timed have a time of 0.
+     */
+    var moduleUpdateTimes: DoubleArray = DoubleArray(0)
+        private set
+
+    /**
+     * The average nanoseconds per tick spent in the system's global update modules
+     */
+    var globalUpdateTime: Double = 0.0
+        private set
+
+    /**
+     * The estimated average nanoseconds per frame spent in the system's render prep modules. For systems using
+     * [pipelined rendering][ParticleSystem.pipelinedRendering], this is the time spent preparing the render records on
+     * the worker thread each tick.
+     */
+    var renderPrepTime: Double = 0.0
+        private set
+
+    /**
+     * The average nanoseconds per frame spent rendering the system, including the [renderPrepTime] of non-pipelined
+     * systems. This only includes the time spent emitting vertices for batched systems, since the batch is drawn once
+     * for every system.
+     */
+    var renderTime: Double = 0.0
+        private set
+
+    /**
+     * The average number of particles spawned per tick
+     */
+    var spawns: Double = 0.0
+        private set
+
+    /**
+     * The average number of particles that reached the end of their lifetime per tick
+     */
+    var deaths: Double = 0.0
+        private set
+
+    /**
+     * The average number of particles evicted by the [ParticleBudget] per tick
+     */
+    var evictions: Double = 0.0
+        private set
+
+    /**
+     * The average number of spawns per tick that reused a pooled particle array
+     */
+    var poolHits: Double = 0.0
+        private set
+
+    /**
+     * The average number of vertices emitted per frame
+     */
+    var vertices: Double = 0.0
+        private set
+
+    @JvmField internal var spawnCount = 0
+    @JvmField internal var deathCount = 0
+    @JvmField internal var evictionCount = 0
+    @JvmField internal var vertexCount = 0
+    private var lastPoolHits = 0L
+
+    private var moduleTimeAccumulators = LongArray(0)
+    private var moduleSampledParticles = 0
+    private var moduleTotalParticles = 0
+    private var globalTime = 0L
+    private var prepTime = 0L
+    @Volatile
+    private var pipelinedPrepTime = -1L
+
+    private var tickCounter = 0
+    private var frameCounter = 0
+
+    /**
+     * Whether the current tick is being timed
+     */
+    internal var timingTick = false
+        private set
+
+    /**
+     * Whether the current frame is being timed
+     */
+    internal var timingFrame = false
+        private set
+
+    private var timedPrepSource: List<ParticleUpdateModule> = emptyList()
+    private var timedPrepModules: List<ParticleUpdateModule> = emptyList()
+
+    /**
+     * Starts a new tick, returning whether it should be timed
+     */
+    internal fun beginTick(moduleCount: Int, poolHits: Long): Boolean {
+        this.spawns += (spawnCount - this.spawns) * AVERAGE_FACTOR
+        this.deaths += (deathCount - this.deaths) * AVERAGE_FACTOR
+        this.evictions += (evictionCount - this.evictions) * AVERAGE_FACTOR
+        this.poolHits += (poolHits - lastPoolHits - this.poolHits) * AVERAGE_FACTOR
+        lastPoolHits = poolHits
+        spawnCount = 0
+        deathCount = 0
+        evictionCount = 0
+
+        if (moduleTimeAccumulators.size != moduleCount) {
+            moduleTimeAccumulators = LongArray(moduleCount)
+            moduleUpdateTimes = DoubleArray(moduleCount)
+        }
+        timingTick = enabled && ++tickCounter >= sampleInterval
+        if (timingTick) {
+            tickCounter = 0
+            moduleTimeAccumulators.fill(0)
+            moduleSampledParticles = 0
+            moduleTotalParticles = 0
+            globalTime = 0
+        }
+        return timingTick
+    }
+
+    /**
+     * Whether the passed particle, counted from the start of the tick, should have its update modules timed
+     */
+    internal fun shouldTimeModules(index: Int): Boolean {
+        return timingTick && index % moduleSampleStride == 0
+    }
+
+    /**
+     * Runs the update modules on the passed particle, timing each one
+     */
+    internal fun updateTimed(modules: List<ParticleUpdateModule>, particle: DoubleArray) {
+        var last = System.nanoTime()
+        for (i in 0 until modules.size) {
+            modules[i].update(particle)
+            val now = System.nanoTime()
+            moduleTimeAccumulators[i] += now - last
+            last = now
+        }
+        moduleSampledParticles++
+    }
+
+    /**
+     * Runs the update modules on the particle at [index] in [columns], timing each one
+     */
+    internal fun updateTimed(modules: List<ParticleUpdateModule>, columns: ParticleColumns, index: Int) {
+        var last = System.nanoTime()
+        for (i in 0 until modules.size) {
+            modules[i].update(columns, index)
+            val now = System.nanoTime()
+            moduleTimeAccumulators[i] += now - last
+            last = now
+        }
+        moduleSampledParticles++
+    }
+
+    internal fun recordGlobalUpdate(nanos: Long) {
+        globalTime += nanos
+    }
+
+    /**
+     * Ends a timed tick
+     *
+     * @param updatedParticles the number of particles the update modules ran on
+     * @param modulesTimed whether the update modules were individually timed
+     */
+    internal fun endTick(nanos: Long, updatedParticles: Int, modulesTimed: Boolean) {
+        updateTime += (nanos - updateTime) * AVERAGE_FACTOR
+        globalUpdateTime += (globalTime - globalUpdateTime) * AVERAGE_FACTOR
+        if (modulesTimed && moduleSampledParticles != 0) {
+            val scale = updatedParticles.toDouble() / moduleSampledParticles
+            for (i in moduleUpdateTimes.indices) {
+                moduleUpdateTimes[i] += (moduleTimeAccumulators[i] * scale - moduleUpdateTimes[i]) * AVERAGE_FACTOR
+            }
+        }
+        timingTick = false
+    }
+
+    /**
+     * Records the time spent preparing pipelined render records. Called from the worker thread, so the sample is held
+     * until [endPipeline] folds it into the [renderPrepTime].
+     */
+    internal fun recordPrepare(nanos: Long) {
+        pipelinedPrepTime = nanos
+    }
+
+    /**
+     * Folds the pipelined preparation sample, if one was recorded, into the [renderPrepTime]. Called on the main thread
+     * once the worker has finished.
+     */
+    internal fun endPipeline() {
+        val nanos = pipelinedPrepTime
+        if (nanos < 0)
+            return
+        pipelinedPrepTime = -1
+        renderPrepTime += (nanos - renderPrepTime) * AVERAGE_FACTOR
+    }
+
+    /**
+     * Starts a new frame, returning whether it should be timed
+     */
+    internal fun beginFrame(): Boolean {
+        timingFrame = enabled && ++frameCounter >= sampleInterval
+        if (timingFrame) {
+            frameCounter = 0
+            prepTime = 0
+        }
+        vertexCount = 0
+        return timingFrame
+    }
+
+    /**
+     * Wraps the passed render prep modules so their time is recorded in the [renderPrepTime]. The wrappers are reused
+     * as long as the list of modules doesn't change.
+     */
+    internal fun timedPrepModules(modules: List<ParticleUpdateModule>): List<ParticleUpdateModule> {
+        if (modules.isEmpty())
+            return modules
+        if (timedPrepModules.size != modules.size || timedPrepSource.indices.any { timedPrepSource[it] !== modules[it] }) {
+            timedPrepSource = modules.toList()
+            timedPrepModules = modules.map { TimedPrepModule(it) }
+        }
+        return timedPrepModules
+    }
+
+    /**
+     * Ends the current frame, updating the averages if it was timed
+     */
+    internal fun endFrame(nanos: Long, pipelined: Boolean) {
+        vertices += (vertexCount - vertices) * AVERAGE_FACTOR
+        vertexCount = 0
+        if (!timingFrame)
+            return
+        renderTime += (nanos - renderTime) * AVERAGE_FACTOR
+        // pipelined systems fold their preparation time in when the worker finishes, in endPipeline
+        if (!pipelined)
+            renderPrepTime += (prepTime - renderPrepTime) * AVERAGE_FACTOR
+        timingFrame = false
+    }
+
+    /**
+     * Resets every metric to zero
+     */
+    fun reset() {
+        updateTime = 0.0
+        moduleUpdateTimes.fill(0.0)
+        globalUpdateTime = 0.0
+        renderPrepTime = 0.0
+        renderTime = 0.0
+        spawns = 0.0
+        deaths = 0.0
+        evictions = 0.0
+        poolHits = 0.0
+        vertices = 0.0
+    }
+
+    /**
+     * Times every [moduleSampleStride]th call to a render prep module
+     */
+    private inner class TimedPrepModule(val module: ParticleUpdateModule): ParticleUpdateModule {
+        private var calls = 0
+
+        override val isThreadSafe: Boolean
+            get() = module.isThreadSafe
+
+        override fun init(particle: DoubleArray) {
+            module.init(particle)
+        }
+
+        override fun update(particle: DoubleArray) {
+            if (++calls < moduleSampleStride) {
+                module.update(particle)
+                return
+            }
+            calls = 0
+            val start = System.nanoTime()
+            module.update(particle)
+            prepTime += (System.nanoTime() - start) * moduleSampleStride
+        }
+
+        override fun update(columns: ParticleColumns, index: Int) {
+            if (++calls < moduleSampleStride) {
+                module.update(columns, index)
+                return
+            }
+            calls = 0
+            val start = System.nanoTime()
+            module.update(columns, index)
+            prepTime += (System.nanoTime() - start) * moduleSampleStride
+        }
+    }
+
+    companion object {
+        private const val AVERAGE_FACTOR = 0.2
+
+        /**
+         * Whether metrics are being collected. This is toggled along with the metrics overlay in the debug screen.
+         */
+        @JvmStatic
+        var enabled: Boolean = false
+
+        /**
+         * The number of ticks or frames between timing samples. Counters are collected every tick or frame regardless.
+         */
+        @JvmStatic
+        var sampleInterval: Int = 10
+            set(value) {
+                if (value < 1)
+                    throw IllegalArgumentException("Sample interval must be at least 1, not $value")
+                field = value
+            }
+
+        /**
+         * The interval between the particles whose modules are individually timed in sampled ticks and frames
+         */
+        @JvmStatic
+        var moduleSampleStride: Int = 16
+            set(value) {
+                if (value < 1)
+                    throw IllegalArgumentException("Module sample stride must be at least 1, not $value")
+                field = value
+            }
+
+        /**
+         * The metrics of the system currently being rendered
+         */
+        internal var current: ParticleSystemMetrics? = null
+
+        /**
+         * Adds the passed number of vertices to the metrics of the system currently being rendered. Render modules
+         * should call this after emitting their vertices.
+         */
+        @JvmStatic
+        fun addVertices(count: Int) {
+            current?.let { it.vertexCount += count }
+        }
+    }
+}
@@ -24,7 +24,30 @@ interface ParticleUpdateModule {
      */
     fun update(particle: DoubleArray)
 
+    /**
+     * Run on the particle at [index] in [columns]. This is used instead of [update] by systems using
+     * [columnar storage][ParticleSystem.columnar]. The default implementation gathers the particle into a scratch row,
+     * calls [update], and writes the row back, so modules should override this and use the column-aware
+     * [ReadParticleBinding.load] and [WriteParticleBinding.store] methods where possible.
+     */
+    @JvmDefault
+    fun update(columns: ParticleColumns, index: Int) {
+        val row = columns.gather(index)
+        update(row)
+        columns.write(index, row)
+    }
+
     fun init(particle: DoubleArray) {}
+
+    /**
+     * Whether this module can be run on multiple particles from multiple threads at once. Thread-safe modules must
+     * keep any scratch state per-thread (e.g. using [PerThread]) and should generally only report being thread-safe if
+     * all their bindings are [thread-safe][ParticleBinding.isThreadSafe]. Only systems whose update modules are all
+     * thread-safe can use [parallel updates][ParticleSystem.parallel].
+     */
+    @JvmDefault
+    val isThreadSafe: Boolean
+        get() = false
 }
 
 /**
@@ -38,4 +61,17 @@ interface ParticleGlobalUpdateModule {
      * Run on the passed particle list.
      */
     fun update(particles: MutableList<DoubleArray>)
+
+    /**
+     * Run on the particles in the passed column storage. This is used instead of [update] by systems using
+     * [columnar storage][ParticleSystem.columnar]. The default implementation copies the particles into a pooled list
+     * of arrays (see [ParticleColumns.copyRows]), calls [update], and copies the resulting list back into the columns,
+     * so modules should override this to operate on the columns directly where possible.
+     */
+    @JvmDefault
+    fun update(columns: ParticleColumns) {
+        val particles = columns.copyRows()
+        update(particles)
+        columns.setRows(particles)
+    }
 }
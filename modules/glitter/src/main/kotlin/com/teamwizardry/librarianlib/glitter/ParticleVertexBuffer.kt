@@ -0,0 +1,165 @@
+package com.teamwizardry.librarianlib.glitter
+
+import com.teamwizardry.librarianlib.core.util.GlResourceGc
+import net.minecraft.client.renderer.RenderType
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats
+import org.lwjgl.opengl.GL11
+import org.lwjgl.opengl.GL15
+import org.lwjgl.system.MemoryUtil
+import java.nio.ByteOrder
+
+/**
+ * A streaming vertex buffer for particle quads using the [DefaultVertexFormats.POSITION_COLOR_TEX] format.
+ *
+ * Vertices are written with raw memory stores into an off-heap staging buffer that persists between frames, then
+ * uploaded into a VBO whose storage is orphaned each frame so the driver never has to wait for the previous frame's
+ * draw to finish. Compared to a [BufferBuilder][net.minecraft.client.renderer.BufferBuilder], this avoids the chain of
+ * virtual calls for every vertex element and the copy out of the builder's heap-side state.
+ *
+ * Both the staging memory and the VBO are released when the buffer is garbage collected.
+ */
+internal class ParticleVertexBuffer {
+    private val glBuffer = GlResourceGc.Value(0)
+    private val memory = GlResourceGc.Value(0L)
+    private var capacity = 0L
+    private var glCapacity = 0L
+    private var position = 0L
+
+    /**
+     * The number of vertices written since the last call to [reset] or [begin]
+     */
+    var vertexCount: Int = 0
+        private set
+
+    init {
+        val glBuffer = glBuffer
+        val memory = memory
+        GlResourceGc.track(this) {
+            if (glBuffer.value != 0)
+                GL15.glDeleteBuffers(glBuffer.value)
+            if (memory.value != 0L)
+                MemoryUtil.nmemFree(memory.value)
+        }
+    }
+
+    /**
+     * Discards the current vertices and makes sure there's space for at least [quadCount] quads.
+     */
+    fun begin(quadCount: Int) {
+        reset()
+        reserve(quadCount)
+    }
+
+    /**
+     * Discards the current vertices
+     */
+    fun reset() {
+        position = 0
+        vertexCount = 0
+    }
+
+    /**
+     * Makes sure there's space for at least [quadCount] more quads, keeping any existing vertices.
+     */
+    fun reserve(quadCount: Int) {
+        val required = position + quadCount.toLong() * 4 * VERTEX_SIZE
+        if (required > capacity) {
+            val newCapacity = required + (required shr 1)
+            val newMemory = MemoryUtil.nmemRealloc(memory.value, newCapacity)
+            if (newMemory == 0L)
+                throw OutOfMemoryError("Unable to allocate $newCapacity bytes for particle vertices")
+            memory.value = newMemory
+            capacity = newCapacity
+        }
+    }
+
+    /**
+     * Writes a quad centered at ([x], [y], [z]) with the passed half-size right and up vectors. The color is packed
+     * using [packColor].
+     */
+    fun quad(
+        x: Double, y: Double, z: Double,
+        rightX: Double, rightY: Double, rightZ: Double,
+        upX: Double, upY: Double, upZ: Double,
+        color: Int, minU: Float, minV: Float, maxU: Float, maxV: Float
+    ) {
+        vertex(x - rightX - upX, y - rightY - upY, z - rightZ - upZ, color, minU, maxV)
+        vertex(x + rightX - upX, y + rightY - upY, z + rightZ - upZ, color, maxU, maxV)
+        vertex(x + rightX + upX, y + rightY + upY, z + rightZ + upZ, color, maxU, minV)
+        vertex(x - rightX + upX, y - rightY + upY, z - rightZ + upZ, color, minU, minV)
+    }
+
+    /**
+     * Writes a single vertex. Since the buffer is drawn as quads, vertices should be written in groups of four, and
+     * space for them should be [reserved][reserve] in advance.
+     */
+    fun vertex(x: Double, y: Double, z: Double, color: Int, u: Float, v: Float) {
+        val address = memory.value + position
+        MemoryUtil.memPutFloat(address, x.toFloat())
+        MemoryUtil.memPutFloat(address + 4, y.toFloat())
+        MemoryUtil.memPutFloat(address + 8, z.toFloat())
+        MemoryUtil.memPutInt(address + 12, color)
+        MemoryUtil.memPutFloat(address + 16, u)
+        MemoryUtil.memPutFloat(address + 20, v)
+        position += VERTEX_SIZE
+        vertexCount++
+    }
+
+    /**
+     * Uploads the vertices and draws them using the passed render type, which must use the
+     * [DefaultVertexFormats.POSITION_COLOR_TEX] format.
+     */
+    fun draw(renderType: RenderType) {
+        if (vertexCount == 0)
+            return
+        if (glBuffer.value == 0)
+            glBuffer.value = GL15.glGenBuffers()
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, glBuffer.value)
+        // orphan the previous frame's storage instead of overwriting it, so we don't stall waiting for it to be drawn
+        if (capacity > glCapacity)
+            glCapacity = capacity
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, glCapacity, GL15.GL_STREAM_DRAW)
+        GL15.nglBufferSubData(GL15.GL_ARRAY_BUFFER, 0, position, memory.value)
+
+        renderType.setupRenderState()
+        renderType.vertexFormat.setupBufferState(0L)
+        GL11.glDrawArrays(renderType.drawMode, 0, vertexCount)
+        renderType.vertexFormat.clearBufferState()
+        renderType.clearRenderState()
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0)
+    }
+
+    companion object {
+        /**
+         * The size of a [DefaultVertexFormats.POSITION_COLOR_TEX] vertex in bytes
+         */
+        const val VERTEX_SIZE = 24
+
+        private val bigEndian = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN
+
+        /**
+         * Returns true if the passed render type can be drawn using a particle vertex buffer
+         */
+        @JvmStatic
+        fun supports(renderType: RenderType): Boolean {
+            return renderType.vertexFormat == DefaultVertexFormats.POSITION_COLOR_TEX && renderType.drawMode == GL11.GL_QUADS
+        }
+
+        /**
+         * Packs the passed color into the byte order the vertex format expects
+         */
+        @JvmStatic
+        fun packColor(r: Float, g: Float, b: Float, a: Float): Int {
+            val red = (r * 255).toInt().coerceIn(0, 255)
+            val green = (g * 255).toInt().coerceIn(0, 255)
+            val blue = (b * 255).toInt().coerceIn(0, 255)
+            val alpha = (a * 255).toInt().coerceIn(0, 255)
+            return if (bigEndian)
+                (red shl 24) or (green shl 16) or (blue shl 8) or alpha
+            else
+                red or (green shl 8) or (blue shl 16) or (alpha shl 24)
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.teamwizardry.librarianlib.glitter
+
+import java.util.concurrent.ForkJoinPool
+import kotlin.math.max
+
+/**
+ * The pool used to run [parallel updates][ParticleSystem.parallel] and prepare
+ * [pipelined render records][ParticleSystem.pipelinedRendering]. The client thread blocks while the pool is running
+ * parallel updates, however the pool is sized to leave a core free for the game's other threads (e.g. chunk building).
+ *
+ * This is kept separate from the [ParticleSystemManager] so [headless][ParticleSystem.headless] systems can use it
+ * without a running game.
+ */
+internal object ParticleWorkerPool {
+    val pool: ForkJoinPool = ForkJoinPool(
+        max(1, Runtime.getRuntime().availableProcessors() - 1),
+        ForkJoinPool.ForkJoinWorkerThreadFactory { pool ->
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool).also {
+                it.name = "Glitter Worker ${it.poolIndex}"
+                it.contextClassLoader = ParticleWorkerPool::class.java.classLoader
+            }
+        },
+        null, false
+    )
+}
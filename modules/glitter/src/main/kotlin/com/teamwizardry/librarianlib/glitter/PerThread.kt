@@ -0,0 +1,22 @@
+package com.teamwizardry.librarianlib.glitter
+
+/**
+ * A per-thread value optimized for the common case of being used from the thread that created it.
+ *
+ * Bindings and modules use this to hold their scratch state (e.g. [ParticleBinding.contents]) so they can be used by
+ * [parallel updates][ParticleSystem.parallel]. The thread that creates the object (almost always the client thread,
+ * since bindings and modules are created in [ParticleSystem.configure]) gets a dedicated value that can be accessed
+ * with a simple thread comparison, while any other thread falls back to a [ThreadLocal].
+ */
+class PerThread<T>(private val initial: () -> T) {
+    private val owner: Thread = Thread.currentThread()
+    private val ownerValue: T = initial()
+    private val local: ThreadLocal<T> = ThreadLocal.withInitial { initial() }
+
+    /**
+     * Get the value for the current thread, creating it if necessary
+     */
+    fun get(): T {
+        return if (Thread.currentThread() === owner) ownerValue else local.get()
+    }
+}
@@ -0,0 +1,31 @@
+package com.teamwizardry.librarianlib.glitter
+
+import com.mojang.blaze3d.matrix.MatrixStack
+import net.minecraft.client.renderer.Matrix4f
+
+/**
+ * A render module that splits its work into an interpolation-independent [prepare] step and a [renderPrepared] step
+ * that only applies partial-tick interpolation and emits vertices.
+ *
+ * When a system enables [pipelined rendering][ParticleSystem.pipelinedRendering], [prepare] is run on a worker thread
+ * right after the system updates, while the client carries on with the rest of the tick, and the render thread only
+ * runs [renderPrepared] for each frame until the next update. The plain [render] method should be equivalent to
+ * calling [prepare] followed by [renderPrepared].
+ *
+ * @param R the type of the prepared render records
+ */
+interface PipelinedParticleRenderModule<R: Any>: ParticleRenderModule {
+    /**
+     * Runs the [prepModules] on the passed particles and builds the render records for them. This may be called from a
+     * worker thread, however the particles and this module's bindings won't be modified until it returns.
+     *
+     * @param previous the records returned by the last call to this method, which may be reused to avoid allocating,
+     * or null on the first call
+     */
+    fun prepare(particles: List<DoubleArray>, prepModules: List<ParticleUpdateModule>, previous: R?): R
+
+    /**
+     * Renders the records produced by [prepare] into the world. This is always called on the render thread.
+     */
+    fun renderPrepared(matrixStack: MatrixStack, projectionMatrix: Matrix4f, records: R)
+}
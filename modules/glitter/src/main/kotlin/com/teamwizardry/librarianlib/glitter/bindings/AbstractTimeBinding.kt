@@ -1,7 +1,9 @@
 package com.teamwizardry.librarianlib.glitter.bindings
 
 import com.teamwizardry.librarianlib.math.Easing
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
 import com.teamwizardry.librarianlib.glitter.ParticleSystem
+import com.teamwizardry.librarianlib.glitter.PerThread
 import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
 
 abstract class AbstractTimeBinding(
@@ -24,15 +26,43 @@ abstract class AbstractTimeBinding(
          */
         open val offset: ReadParticleBinding? = ConstantBinding(0.0),
         /**
-         * The easing to use if you want one to manipulate the binding.
+         * The easing to use if you want one to manipulate the binding. Complex easings (e.g. bezier or compound
+         * easings) can be [compiled][Easing.compile] so they only cost a table lookup per particle.
          */
         open val easing: Easing = Easing.linear
 ) : ReadParticleBinding {
-    protected var time = 0.0
+    private val perThreadTime = PerThread { DoubleArray(1) }
+
+    /**
+     * The most recently computed time. Each thread has its own value, so subclasses can be thread-safe.
+     */
+    protected var time: Double
+        get() = perThreadTime.get()[0]
+        set(value) {
+            perThreadTime.get()[0] = value
+        }
 
     override fun load(particle: DoubleArray) {
         age.load(particle)
         lifetime.load(particle)
+        timescale?.load(particle)
+        offset?.load(particle)
+        computeTime()
+    }
+
+    /**
+     * Computes [time] for the particle at [index] in [columns]. Subclasses that can compute their value without the
+     * particle array should call this from their [load] override.
+     */
+    protected fun loadTime(columns: ParticleColumns, index: Int) {
+        age.load(columns, index)
+        lifetime.load(columns, index)
+        timescale?.load(columns, index)
+        offset?.load(columns, index)
+        computeTime()
+    }
+
+    private fun computeTime() {
         var t = age.contents[0] / lifetime.contents[0]
 
         if (easing != Easing.linear) t = easing.ease(t.toFloat()).toDouble()
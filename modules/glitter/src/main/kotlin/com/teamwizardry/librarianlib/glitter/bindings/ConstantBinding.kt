@@ -1,5 +1,6 @@
 package com.teamwizardry.librarianlib.glitter.bindings
 
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
 import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
 
 /**
@@ -12,7 +13,17 @@ class ConstantBinding(
          */
         override vararg val contents: Double
 ): ReadParticleBinding {
+    /**
+     * Constant bindings are thread-safe as long as [contents] isn't modified during an update.
+     */
+    override val isThreadSafe: Boolean
+        get() = true
+
     override fun load(particle: DoubleArray) {
         // nop
     }
+
+    override fun load(columns: ParticleColumns, index: Int) {
+        // nop
+    }
 }
\ No newline at end of file
@@ -1,11 +1,16 @@
 package com.teamwizardry.librarianlib.glitter.bindings
 
 import com.teamwizardry.librarianlib.math.Easing
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
 import com.teamwizardry.librarianlib.glitter.ParticleSystem
+import com.teamwizardry.librarianlib.glitter.PerThread
 import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
 
 /**
  * A 1D binding that generates its value by passing its normalized age (0–1) into an InterpFunction<Float>
+ *
+ * Complex easings can be [compiled][Easing.compile] into a lookup table before being passed in, so they only cost a
+ * table lookup per particle.
  */
 class EaseBinding @JvmOverloads constructor(
         /**
@@ -48,7 +53,19 @@ class EaseBinding @JvmOverloads constructor(
         @JvmField var target: ReadParticleBinding = ConstantBinding(*DoubleArray(bindingSize) { 1.0 })
 ) : AbstractTimeBinding(lifetime, age, timescale, offset, easing) {
 
-    override val contents: DoubleArray = DoubleArray(bindingSize)
+    private val perThreadContents = PerThread { DoubleArray(bindingSize) }
+
+    override val contents: DoubleArray
+        get() = perThreadContents.get()
+
+    /**
+     * Ease bindings are thread-safe if all their input bindings are thread-safe and their easing can be evaluated
+     * concurrently, which every built-in and compiled easing can.
+     */
+    override val isThreadSafe: Boolean
+        get() = lifetime.isThreadSafe && age.isThreadSafe &&
+            timescale?.isThreadSafe != false && offset?.isThreadSafe != false &&
+            origin.isThreadSafe && target.isThreadSafe
 
     init {
         lifetime.require(1)
@@ -61,6 +78,19 @@ class EaseBinding @JvmOverloads constructor(
         super.load(particle)
         origin.load(particle)
         target.load(particle)
+        interpolate()
+    }
+
+    override fun load(columns: ParticleColumns, index: Int) {
+        loadTime(columns, index)
+        origin.load(columns, index)
+        target.load(columns, index)
+        interpolate()
+    }
+
+    private fun interpolate() {
+        val contents = this.contents
+        val time = this.time
         for(i in 0 until bindingSize) {
             contents[i] = (origin.contents[i] * (1 - time)) + (target.contents[i] * time)
         }
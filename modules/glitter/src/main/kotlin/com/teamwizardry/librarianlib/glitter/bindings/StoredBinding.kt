@@ -1,6 +1,8 @@
 package com.teamwizardry.librarianlib.glitter.bindings
 
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
 import com.teamwizardry.librarianlib.glitter.ParticleSystem
+import com.teamwizardry.librarianlib.glitter.PerThread
 import com.teamwizardry.librarianlib.glitter.ReadWriteParticleBinding
 
 /**
@@ -16,7 +18,13 @@ class StoredBinding internal constructor(
          */
         val size: Int
 ): ReadWriteParticleBinding {
-    override val contents: DoubleArray = DoubleArray(size)
+    private val perThreadContents = PerThread { DoubleArray(size) }
+
+    override val contents: DoubleArray
+        get() = perThreadContents.get()
+
+    override val isThreadSafe: Boolean
+        get() = true
 
     override fun load(particle: DoubleArray) {
         particle.copyInto(contents, 0, index, index+size)
@@ -26,6 +34,20 @@ class StoredBinding internal constructor(
         contents.copyInto(particle, index)
     }
 
+    override fun load(columns: ParticleColumns, index: Int) {
+        val contents = this.contents
+        for(i in 0 until size) {
+            contents[i] = columns.column(this.index + i)[index]
+        }
+    }
+
+    override fun store(columns: ParticleColumns, index: Int) {
+        val contents = this.contents
+        for(i in 0 until size) {
+            columns.column(this.index + i)[index] = contents[i]
+        }
+    }
+
     /**
      * Set all the values of this binding in the passed particle at once using the passed [values]
      *
@@ -1,5 +1,6 @@
 package com.teamwizardry.librarianlib.glitter.bindings
 
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
 import com.teamwizardry.librarianlib.glitter.ReadWriteParticleBinding
 
 /**
@@ -20,4 +21,12 @@ class VariableBinding(
     override fun store(particle: DoubleArray) {
         //nop
     }
+
+    override fun load(columns: ParticleColumns, index: Int) {
+        //nop
+    }
+
+    override fun store(columns: ParticleColumns, index: Int) {
+        //nop
+    }
 }
\ No newline at end of file
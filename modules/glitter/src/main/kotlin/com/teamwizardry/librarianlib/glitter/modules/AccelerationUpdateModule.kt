@@ -1,5 +1,6 @@
 package com.teamwizardry.librarianlib.glitter.modules
 
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
 import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
 import com.teamwizardry.librarianlib.glitter.ParticleUpdateModule
 import com.teamwizardry.librarianlib.glitter.ReadWriteParticleBinding
@@ -24,11 +25,24 @@ class AccelerationUpdateModule(
         acceleration.require(3)
     }
 
+    override val isThreadSafe: Boolean
+        get() = velocity.isThreadSafe && acceleration.isThreadSafe
+
     override fun update(particle: DoubleArray) {
         velocity.load(particle)
+        acceleration.load(particle)
         for(i in 0 until 3) {
             velocity.contents[i] += acceleration.contents[i]
         }
         velocity.store(particle)
     }
+
+    override fun update(columns: ParticleColumns, index: Int) {
+        velocity.load(columns, index)
+        acceleration.load(columns, index)
+        for(i in 0 until 3) {
+            velocity.contents[i] += acceleration.contents[i]
+        }
+        velocity.store(columns, index)
+    }
 }
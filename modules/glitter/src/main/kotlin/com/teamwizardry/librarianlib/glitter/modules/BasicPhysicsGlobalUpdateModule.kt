@@ -0,0 +1,279 @@
+package com.teamwizardry.librarianlib.glitter.modules
+
+import com.teamwizardry.librarianlib.glitter.*
+import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+import java.lang.Math.abs
+
+/**
+ * A variant of [BasicPhysicsUpdateModule] that simulates every particle at once as a global update module, which lets
+ * it trace all the particles' collisions using a single [batch collision][GlitterWorldCollider.collideBatch].
+ *
+ * The simulation is identical to that of [BasicPhysicsUpdateModule], however each step is run for every particle
+ * before moving on to the next step, and since global update modules run after the [update modules]
+ * [ParticleSystem.updateModules], this module should be used *instead of* a [BasicPhysicsUpdateModule] and be added
+ * to the [global update modules][ParticleSystem.globalUpdateModules] before any that depend on the particles' final
+ * positions (e.g. a [DepthSortModule]).
+ *
+ * This module is most effective with collision enabled. Without collision it's no faster than the per-particle
+ * module.
+ */
+class BasicPhysicsGlobalUpdateModule @JvmOverloads constructor(
+        /**
+         * The position of the particle.
+         */
+        @JvmField val position: ReadWriteParticleBinding,
+        /**
+         * The previous position of the particle. Populated so renderers can properly position the particle between ticks.
+         */
+        @JvmField val previousPosition: WriteParticleBinding,
+        /**
+         * The velocity of the particle. If the binding is a [ReadWriteParticleBinding] the final velocity will be
+         * stored in this binding.
+         *
+         * Velocity is set, not added.
+         */
+        @JvmField val velocity: ReadParticleBinding,
+        /**
+         * If enabled, will allow the particle to collide with blocks in the world
+         */
+        @JvmField val enableCollision: Boolean = false,
+        /**
+         * The acceleration of gravity. See [BasicPhysicsUpdateModule.gravity]
+         */
+        @JvmField val gravity: ReadParticleBinding = ConstantBinding(0.04),
+        /**
+         * The fraction of velocity conserved upon impact. See [BasicPhysicsUpdateModule.bounciness]
+         */
+        @JvmField val bounciness: ReadParticleBinding = ConstantBinding(0.2),
+        /**
+         * The friction of the particle upon impact. See [BasicPhysicsUpdateModule.friction]
+         */
+        @JvmField val friction: ReadParticleBinding = ConstantBinding(0.2),
+        /**
+         * The damping, or "drag" of the particle. See [BasicPhysicsUpdateModule.damping]
+         */
+        @JvmField val damping: ReadParticleBinding = ConstantBinding(0.01)
+) : ParticleGlobalUpdateModule {
+    init {
+        position.require(3)
+        previousPosition.require(3)
+        velocity.require(3)
+        gravity.require(1)
+        bounciness.require(1)
+        friction.require(1)
+        damping.require(1)
+    }
+
+    private var capacity = 0
+    private var posX = DoubleArray(0)
+    private var posY = DoubleArray(0)
+    private var posZ = DoubleArray(0)
+    private var velX = DoubleArray(0)
+    private var velY = DoubleArray(0)
+    private var velZ = DoubleArray(0)
+    private var bounce = DoubleArray(0)
+    private var fric = DoubleArray(0)
+    private var remaining = DoubleArray(0)
+    private var active = IntArray(0)
+    private var rayPosX = DoubleArray(0)
+    private var rayPosY = DoubleArray(0)
+    private var rayPosZ = DoubleArray(0)
+    private var rayX = DoubleArray(0)
+    private var rayY = DoubleArray(0)
+    private var rayZ = DoubleArray(0)
+    private val hits = RayHitBatch()
+
+    override fun update(particles: MutableList<DoubleArray>) {
+        val count = particles.size
+        ensureCapacity(count)
+        for (i in 0 until count) {
+            val particle = particles[i]
+            position.load(particle)
+            velocity.load(particle)
+            gravity.load(particle)
+            bounciness.load(particle)
+            friction.load(particle)
+            damping.load(particle)
+            load(i)
+            previousPosition.store(particle)
+        }
+
+        simulate(count)
+
+        for (i in 0 until count) {
+            val particle = particles[i]
+            store(i)
+            position.store(particle)
+            if (velocity is WriteParticleBinding) {
+                velocity.store(particle)
+            }
+        }
+    }
+
+    override fun update(columns: ParticleColumns) {
+        val count = columns.size
+        ensureCapacity(count)
+        for (i in 0 until count) {
+            position.load(columns, i)
+            velocity.load(columns, i)
+            gravity.load(columns, i)
+            bounciness.load(columns, i)
+            friction.load(columns, i)
+            damping.load(columns, i)
+            load(i)
+            previousPosition.store(columns, i)
+        }
+
+        simulate(count)
+
+        for (i in 0 until count) {
+            store(i)
+            position.store(columns, i)
+            if (velocity is WriteParticleBinding) {
+                velocity.store(columns, i)
+            }
+        }
+    }
+
+    /**
+     * Copies the loaded binding contents into the simulation arrays, then applies the per-particle steps that come
+     * before collision: storing the previous position, dampening, and accelerating.
+     */
+    private fun load(i: Int) {
+        posX[i] = position.contents[0]
+        posY[i] = position.contents[1]
+        posZ[i] = position.contents[2]
+
+        // (1. in BasicPhysicsUpdateModule docs)
+        previousPosition.contents[0] = posX[i]
+        previousPosition.contents[1] = posY[i]
+        previousPosition.contents[2] = posZ[i]
+
+        // (2. in BasicPhysicsUpdateModule docs)
+        val damping = damping.contents[0]
+        velX[i] = velocity.contents[0] * (1 - damping)
+        velY[i] = velocity.contents[1] * (1 - damping)
+        velZ[i] = velocity.contents[2] * (1 - damping)
+
+        // (3. in BasicPhysicsUpdateModule docs)
+        velY[i] -= gravity.contents[0]
+
+        bounce[i] = bounciness.contents[0]
+        fric[i] = friction.contents[0]
+    }
+
+    /**
+     * Copies the simulation results into the binding contents to be stored
+     */
+    private fun store(i: Int) {
+        position.contents[0] = posX[i]
+        position.contents[1] = posY[i]
+        position.contents[2] = posZ[i]
+
+        velocity.contents[0] = velX[i]
+        velocity.contents[1] = velY[i]
+        velocity.contents[2] = velZ[i]
+    }
+
+    private fun simulate(count: Int) {
+        if (!enableCollision) {
+            for (i in 0 until count) {
+                posX[i] += velX[i]
+                posY[i] += velY[i]
+                posZ[i] += velZ[i]
+            }
+            return
+        }
+
+        // (4. in BasicPhysicsUpdateModule docs)
+        for (i in 0 until count) {
+            active[i] = i
+            remaining[i] = 1.0
+        }
+        collide(count)
+
+        // (5. in BasicPhysicsUpdateModule docs)
+        var activeCount = 0
+        for (n in 0 until count) {
+            val fraction = hits.collisionFraction[n]
+            if (fraction < 1.0) {
+                val i = active[n]
+                active[activeCount++] = i
+                remaining[i] = 1 - fraction
+            }
+        }
+        if (activeCount != 0)
+            collide(activeCount)
+    }
+
+    /**
+     * Traces the velocity of the first [count] particles in [active], scaled by their [remaining] fraction, and applies
+     * the collision response. The result for `active[n]` is stored at index `n` in the [hits].
+     */
+    private fun collide(count: Int) {
+        for (n in 0 until count) {
+            val i = active[n]
+            rayPosX[n] = posX[i]
+            rayPosY[n] = posY[i]
+            rayPosZ[n] = posZ[i]
+            rayX[n] = velX[i] * remaining[i]
+            rayY[n] = velY[i] * remaining[i]
+            rayZ[n] = velZ[i] * remaining[i]
+        }
+
+        // (4.1 in BasicPhysicsUpdateModule docs)
+        GlitterWorldCollider.collideBatch(hits, count, rayPosX, rayPosY, rayPosZ, rayX, rayY, rayZ)
+
+        for (n in 0 until count) {
+            val i = active[n]
+            val fraction = hits.collisionFraction[n]
+
+            // (4.2 in BasicPhysicsUpdateModule docs)
+            posX[i] += rayX[n] * fraction
+            posY[i] += rayY[n] * fraction
+            posZ[i] += rayZ[n] * fraction
+
+            // (4.3 in BasicPhysicsUpdateModule docs)
+            if (fraction >= 1.0)
+                continue
+
+            val axisX = abs(hits.collisionNormalX[n])
+            val axisY = abs(hits.collisionNormalY[n])
+            val axisZ = abs(hits.collisionNormalZ[n])
+
+            // (4.4 in BasicPhysicsUpdateModule docs)
+            velX[i] *= 1 - axisX * (1.0 + bounce[i])
+            velY[i] *= 1 - axisY * (1.0 + bounce[i])
+            velZ[i] *= 1 - axisZ * (1.0 + bounce[i])
+
+            // (4.5 in BasicPhysicsUpdateModule docs)
+            velX[i] *= 1 - (1 - axisX) * fric[i]
+            velY[i] *= 1 - (1 - axisY) * fric[i]
+            velZ[i] *= 1 - (1 - axisZ) * fric[i]
+        }
+    }
+
+    private fun ensureCapacity(count: Int) {
+        if (count <= capacity)
+            return
+        val newCapacity = count + (count shr 1)
+        posX = DoubleArray(newCapacity)
+        posY = DoubleArray(newCapacity)
+        posZ = DoubleArray(newCapacity)
+        velX = DoubleArray(newCapacity)
+        velY = DoubleArray(newCapacity)
+        velZ = DoubleArray(newCapacity)
+        bounce = DoubleArray(newCapacity)
+        fric = DoubleArray(newCapacity)
+        remaining = DoubleArray(newCapacity)
+        active = IntArray(newCapacity)
+        rayPosX = DoubleArray(newCapacity)
+        rayPosY = DoubleArray(newCapacity)
+        rayPosZ = DoubleArray(newCapacity)
+        rayX = DoubleArray(newCapacity)
+        rayY = DoubleArray(newCapacity)
+        rayZ = DoubleArray(newCapacity)
+        hits.ensureCapacity(newCapacity)
+        capacity = newCapacity
+    }
+}
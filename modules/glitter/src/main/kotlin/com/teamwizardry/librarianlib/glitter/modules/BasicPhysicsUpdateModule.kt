@@ -106,114 +106,150 @@ class BasicPhysicsUpdateModule @JvmOverloads constructor(
         damping.require(1)
     }
 
-    private var posX: Double = 0.0
-    private var posY: Double = 0.0
-    private var posZ: Double = 0.0
-    private var velX: Double = 0.0
-    private var velY: Double = 0.0
-    private var velZ: Double = 0.0
-    private val rayHit = RayHitResult()
+    override val isThreadSafe: Boolean
+        get() = position.isThreadSafe && previousPosition.isThreadSafe && velocity.isThreadSafe &&
+            gravity.isThreadSafe && bounciness.isThreadSafe && friction.isThreadSafe && damping.isThreadSafe
+
+    private val simulation = PerThread { Simulation() }
 
     override fun update(particle: DoubleArray) {
         position.load(particle)
-        posX = position.contents[0]
-        posY = position.contents[1]
-        posZ = position.contents[2]
-
         velocity.load(particle)
-        velX = velocity.contents[0]
-        velY = velocity.contents[1]
-        velZ = velocity.contents[2]
-
-        // (1. in class docs)
-        previousPosition.contents[0] = posX
-        previousPosition.contents[1] = posY
-        previousPosition.contents[2] = posZ
-        previousPosition.store(particle)
-
         gravity.load(particle)
         bounciness.load(particle)
         friction.load(particle)
         damping.load(particle)
 
-        // (2. in class docs)
-        dampen()
+        simulation.get().simulate()
 
-        // (3. in class docs)
-        accelerate()
-
-        if(enableCollision) {
-            // (4. in class docs)
-            collide()
-
-            // (5. in class docs)
-            if (rayHit.collisionFraction < 1.0) {
-                collide(velocityMultiplier = 1 - rayHit.collisionFraction)
-            }
-        } else {
-            posX += velX
-            posY += velY
-            posZ += velZ
-        }
-
-        position.contents[0] = posX
-        position.contents[1] = posY
-        position.contents[2] = posZ
+        previousPosition.store(particle)
         position.store(particle)
-
-        velocity.contents[0] = velX
-        velocity.contents[1] = velY
-        velocity.contents[2] = velZ
         if (velocity is WriteParticleBinding) {
             velocity.store(particle)
         }
     }
 
-    private fun dampen() {
-        val damping = this.damping.contents[0]
-        velX *= 1 - damping
-        velY *= 1 - damping
-        velZ *= 1 - damping
-    }
+    override fun update(columns: ParticleColumns, index: Int) {
+        position.load(columns, index)
+        velocity.load(columns, index)
+        gravity.load(columns, index)
+        bounciness.load(columns, index)
+        friction.load(columns, index)
+        damping.load(columns, index)
 
-    private fun accelerate() {
-        val gravity = this.gravity.contents[0]
-        velY -= gravity
+        simulation.get().simulate()
+
+        previousPosition.store(columns, index)
+        position.store(columns, index)
+        if (velocity is WriteParticleBinding) {
+            velocity.store(columns, index)
+        }
     }
 
-    private fun collide(velocityMultiplier: Double = 1.0) {
-        // (4.1 in class docs)
-        GlitterWorldCollider.collide(rayHit,
-                posX, posY, posZ,
-                velX * velocityMultiplier, velY * velocityMultiplier, velZ * velocityMultiplier
-        )
-
-        // (4.2 in class docs)
-        posX += velX * rayHit.collisionFraction * velocityMultiplier
-        posY += velY * rayHit.collisionFraction * velocityMultiplier
-        posZ += velZ * rayHit.collisionFraction * velocityMultiplier
-
-        // (4.3 in class docs)
-        if (rayHit.collisionFraction >= 1.0) {
-            return
+    /**
+     * The scratch state for the simulation. Each thread gets its own instance so the module can be used in parallel.
+     */
+    private inner class Simulation {
+        private var posX: Double = 0.0
+        private var posY: Double = 0.0
+        private var posZ: Double = 0.0
+        private var velX: Double = 0.0
+        private var velY: Double = 0.0
+        private var velZ: Double = 0.0
+        private val rayHit = RayHitResult()
+
+        /**
+         * Runs the simulation using the loaded binding contents, leaving the results in the binding contents to be
+         * stored
+         */
+        fun simulate() {
+            posX = position.contents[0]
+            posY = position.contents[1]
+            posZ = position.contents[2]
+
+            velX = velocity.contents[0]
+            velY = velocity.contents[1]
+            velZ = velocity.contents[2]
+
+            // (1. in class docs)
+            previousPosition.contents[0] = posX
+            previousPosition.contents[1] = posY
+            previousPosition.contents[2] = posZ
+
+            // (2. in class docs)
+            dampen()
+
+            // (3. in class docs)
+            accelerate()
+
+            if(enableCollision) {
+                // (4. in class docs)
+                collide()
+
+                // (5. in class docs)
+                if (rayHit.collisionFraction < 1.0) {
+                    collide(velocityMultiplier = 1 - rayHit.collisionFraction)
+                }
+            } else {
+                posX += velX
+                posY += velY
+                posZ += velZ
+            }
+
+            position.contents[0] = posX
+            position.contents[1] = posY
+            position.contents[2] = posZ
+
+            velocity.contents[0] = velX
+            velocity.contents[1] = velY
+            velocity.contents[2] = velZ
+        }
+
+        private fun dampen() {
+            val damping = this@BasicPhysicsUpdateModule.damping.contents[0]
+            velX *= 1 - damping
+            velY *= 1 - damping
+            velZ *= 1 - damping
         }
 
-        val axisX = abs(rayHit.collisionNormalX)
-        val axisY = abs(rayHit.collisionNormalY)
-        val axisZ = abs(rayHit.collisionNormalZ)
+        private fun accelerate() {
+            val gravity = this@BasicPhysicsUpdateModule.gravity.contents[0]
+            velY -= gravity
+        }
 
-        val bounciness = this.bounciness.contents[0]
-        val friction = this.friction.contents[0]
+        private fun collide(velocityMultiplier: Double = 1.0) {
+            // (4.1 in class docs)
+            GlitterWorldCollider.collide(rayHit,
+                    posX, posY, posZ,
+                    velX * velocityMultiplier, velY * velocityMultiplier, velZ * velocityMultiplier
+            )
+
+            // (4.2 in class docs)
+            posX += velX * rayHit.collisionFraction * velocityMultiplier
+            posY += velY * rayHit.collisionFraction * velocityMultiplier
+            posZ += velZ * rayHit.collisionFraction * velocityMultiplier
+
+            // (4.3 in class docs)
+            if (rayHit.collisionFraction >= 1.0) {
+                return
+            }
 
-        // (4.4 in class docs)
-        velX *= 1 - axisX * (1.0 + bounciness)
-        velY *= 1 - axisY * (1.0 + bounciness)
-        velZ *= 1 - axisZ * (1.0 + bounciness)
+            val axisX = abs(rayHit.collisionNormalX)
+            val axisY = abs(rayHit.collisionNormalY)
+            val axisZ = abs(rayHit.collisionNormalZ)
 
-        // (4.5 in class docs)
-        velX *= 1 - (1 - axisX) * friction
-        velY *= 1 - (1 - axisY) * friction
-        velZ *= 1 - (1 - axisZ) * friction
-    }
+            val bounciness = this@BasicPhysicsUpdateModule.bounciness.contents[0]
+            val friction = this@BasicPhysicsUpdateModule.friction.contents[0]
 
-}
\ No newline at end of file
+            // (4.4 in class docs)
+            velX *= 1 - axisX * (1.0 + bounciness)
+            velY *= 1 - axisY * (1.0 + bounciness)
+            velZ *= 1 - axisZ * (1.0 + bounciness)
+
+            // (4.5 in class docs)
+            velX *= 1 - (1 - axisX) * friction
+            velY *= 1 - (1 - axisY) * friction
+            velZ *= 1 - (1 - axisZ) * friction
+        }
+    }
+}
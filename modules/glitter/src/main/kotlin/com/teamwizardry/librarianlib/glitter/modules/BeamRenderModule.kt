@@ -0,0 +1,388 @@
+package com.teamwizardry.librarianlib.glitter.modules
+
+import com.mojang.blaze3d.matrix.MatrixStack
+import com.mojang.blaze3d.systems.RenderSystem
+import com.teamwizardry.librarianlib.core.bridge.IMatrix4f
+import com.teamwizardry.librarianlib.core.rendering.BlendMode
+import com.teamwizardry.librarianlib.core.util.Client
+import com.teamwizardry.librarianlib.core.util.DefaultRenderStates
+import com.teamwizardry.librarianlib.glitter.ParticleRenderModule
+import com.teamwizardry.librarianlib.glitter.ParticleSystem
+import com.teamwizardry.librarianlib.glitter.ParticleSystemManager
+import com.teamwizardry.librarianlib.glitter.ParticleSystemMetrics
+import com.teamwizardry.librarianlib.glitter.ParticleUpdateModule
+import com.teamwizardry.librarianlib.glitter.ParticleVertexBuffer
+import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
+import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+import net.minecraft.client.renderer.IRenderTypeBuffer
+import net.minecraft.client.renderer.Matrix4f
+import net.minecraft.client.renderer.RenderState
+import net.minecraft.client.renderer.RenderType
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats
+import net.minecraft.util.ResourceLocation
+import org.lwjgl.opengl.GL11
+import kotlin.math.max
+import kotlin.math.sqrt
+
+/**
+ * A beam rendering module that connects the particles with camera-facing ribbons.
+ *
+ * This is mainly designed as an example of how different renderers can interpret the particle array differently. In
+ * this case the renderer connects each particle to the last until it reaches one with a non-zero value in [isEnd], at
+ * which point it breaks the chain and uses the next particle as the start of the next chain.
+ *
+ * Each chain is drawn as a strip of quads [width] blocks wide, turned to face the camera along its length. The width,
+ * color, and alpha are read from each particle, so beams can taper and fade along their length. Where two segments
+ * meet they're joined with a miter, which is limited to [miterLimit] times the width at sharp corners.
+ *
+ * Like the [SpriteRenderModule], when the [renderType] uses the [DefaultVertexFormats.POSITION_COLOR_TEX] format and
+ * draws quads (as the [simpleRenderType] does), vertices are written directly into a persistent off-heap buffer, and
+ * if the system has enabled [batching][ParticleSystem.batchRendering], they're added to a batch that's drawn once per
+ * render type after every system has rendered. Across each ribbon the U coordinate goes from 0 to 1, and along
+ * each segment the V coordinate goes from 0 to 1.
+ */
+class BeamRenderModule @JvmOverloads constructor(
+    /**
+     * The render type to draw the beams with. Using the same render type for several systems (e.g. by using
+     * [simpleRenderType], which caches its render types) allows them to be drawn in a single batch.
+     */
+    @JvmField var renderType: RenderType,
+    /**
+     * When this binding is non-zero the chain will be broken, this particle being the end of the current chain and the
+     * next being the start of the next chain.
+     */
+    @JvmField val isEnd: ReadParticleBinding,
+    /**
+     * The previous position binding. This is used to interpolate between ticks. If null, the particles won't be
+     * interpolated.
+     */
+    @JvmField val previousPosition: ReadParticleBinding?,
+    /**
+     * The current position binding.
+     */
+    @JvmField val position: ReadParticleBinding,
+    /**
+     * The color of the beam at each particle
+     */
+    @JvmField val color: ReadParticleBinding = ConstantBinding(1.0, 1.0, 1.0, 1.0),
+    /**
+     * The width of the beam at each particle in blocks
+     */
+    @JvmField val width: ReadParticleBinding = ConstantBinding(0.1),
+    /**
+     * The alpha multiplier for the color. Defaults to 1 if not present.
+     */
+    @JvmField val alphaMultiplier: ReadParticleBinding = ConstantBinding(1.0),
+    /**
+     * The maximum length of a miter join, as a multiple of the beam's width. Sharper corners have their miters
+     * shortened to this length.
+     */
+    @JvmField val miterLimit: Double = 4.0
+): ParticleRenderModule {
+    init {
+        isEnd.require(1)
+        previousPosition?.require(3)
+        position.require(3)
+        color.require(4)
+        width.require(1)
+        alphaMultiplier.require(1)
+        if(miterLimit < 1)
+            throw IllegalArgumentException("Miter limit must be at least 1, not $miterLimit")
+    }
+
+    private val vertexBuffer = ParticleVertexBuffer()
+
+    // the current chain, in view space
+    private var capacity = 0
+    private var chainX = DoubleArray(0)
+    private var chainY = DoubleArray(0)
+    private var chainZ = DoubleArray(0)
+    private var chainHalfWidth = DoubleArray(0)
+    private var chainColor = IntArray(0)
+    private var chainR = FloatArray(0)
+    private var chainG = FloatArray(0)
+    private var chainB = FloatArray(0)
+    private var chainA = FloatArray(0)
+    // the side vector of each segment, then the offset of each point's edges from its center
+    private var sideX = DoubleArray(0)
+    private var sideY = DoubleArray(0)
+    private var sideZ = DoubleArray(0)
+    private var offsetX = DoubleArray(0)
+    private var offsetY = DoubleArray(0)
+    private var offsetZ = DoubleArray(0)
+
+    @Suppress("CAST_NEVER_SUCCEEDS")
+    override fun render(matrixStack: MatrixStack, projectionMatrix: Matrix4f, particles: List<DoubleArray>, prepModules: List<ParticleUpdateModule>) {
+        val transformMatrix = matrixStack.last.matrix as IMatrix4f
+        val tm00 = transformMatrix.m00.toDouble()
+        val tm01 = transformMatrix.m01.toDouble()
+        val tm02 = transformMatrix.m02.toDouble()
+        val tm03 = transformMatrix.m03.toDouble()
+        val tm10 = transformMatrix.m10.toDouble()
+        val tm11 = transformMatrix.m11.toDouble()
+        val tm12 = transformMatrix.m12.toDouble()
+        val tm13 = transformMatrix.m13.toDouble()
+        val tm20 = transformMatrix.m20.toDouble()
+        val tm21 = transformMatrix.m21.toDouble()
+        val tm22 = transformMatrix.m22.toDouble()
+        val tm23 = transformMatrix.m23.toDouble()
+
+        val renderType = this.renderType
+        val direct = ParticleVertexBuffer.supports(renderType)
+        val buffer = Client.minecraft.renderTypeBuffers.bufferSource
+        val batch = ParticleSystemManager.currentBatch
+        val vertices = if(batch != null && direct) batch.buffer(renderType) else vertexBuffer
+        if(direct) {
+            if(batch == null)
+                vertices.reset()
+            // each particle starts at most one segment
+            vertices.reserve(particles.size)
+        }
+
+        ensureCapacity(particles.size)
+        var length = 0
+        var vertexCount = 0
+        for(index in 0 until particles.size) {
+            val particle = particles[index]
+            for(i in 0 until prepModules.size) {
+                prepModules[i].update(particle)
+            }
+
+            previousPosition?.load(particle)
+            position.load(particle)
+            color.load(particle)
+            width.load(particle)
+            alphaMultiplier.load(particle)
+            isEnd.load(particle)
+
+            var x = position.contents[0]
+            var y = position.contents[1]
+            var z = position.contents[2]
+            if(previousPosition != null) {
+                x = Client.worldTime.interp(previousPosition.contents[0], x)
+                y = Client.worldTime.interp(previousPosition.contents[1], y)
+                z = Client.worldTime.interp(previousPosition.contents[2], z)
+            }
+
+            chainX[length] = tm00 * x + tm01 * y + tm02 * z + tm03
+            chainY[length] = tm10 * x + tm11 * y + tm12 * z + tm13
+            chainZ[length] = tm20 * x + tm21 * y + tm22 * z + tm23
+            chainHalfWidth[length] = width.contents[0] / 2
+            val r = color.contents[0].toFloat()
+            val g = color.contents[1].toFloat()
+            val b = color.contents[2].toFloat()
+            val a = (color.contents[3] * alphaMultiplier.contents[0]).toFloat()
+            if(direct) {
+                chainColor[length] = ParticleVertexBuffer.packColor(r, g, b, a)
+            } else {
+                chainR[length] = r
+                chainG[length] = g
+                chainB[length] = b
+                chainA[length] = a
+            }
+            length++
+
+            if(isEnd.contents[0] != 0.0 || index == particles.size - 1) {
+                if(computeOffsets(length)) {
+                    vertexCount += (length - 1) * 4
+                    if(direct) {
+                        emitDirect(vertices, length)
+                    } else {
+                        emitBuilder(buffer, length)
+                    }
+                }
+                length = 0
+            }
+        }
+
+        ParticleSystemMetrics.addVertices(vertexCount)
+
+        // batched vertices are drawn by the batch once every system has rendered
+        if(batch == null) {
+            if(direct) {
+                vertices.draw(renderType)
+            } else {
+                buffer.finish()
+            }
+        }
+    }
+
+    /**
+     * Computes the offset of each point's edges in the current chain, returning false if the chain can't be drawn
+     * because it has less than two points or is entirely degenerate.
+     */
+    private fun computeOffsets(length: Int): Boolean {
+        if(length < 2)
+            return false
+
+        // each segment's side vector is perpendicular to both the segment and the direction from the eye, which is
+        // at the origin in view space, to the segment's midpoint
+        var firstValid = -1
+        for(i in 0 until length - 1) {
+            val dx = chainX[i + 1] - chainX[i]
+            val dy = chainY[i + 1] - chainY[i]
+            val dz = chainZ[i + 1] - chainZ[i]
+            val mx = (chainX[i + 1] + chainX[i]) / 2
+            val my = (chainY[i + 1] + chainY[i]) / 2
+            val mz = (chainZ[i + 1] + chainZ[i]) / 2
+            val cx = dy * mz - dz * my
+            val cy = dz * mx - dx * mz
+            val cz = dx * my - dy * mx
+            val len = sqrt(cx * cx + cy * cy + cz * cz)
+            if(len > EPSILON) {
+                sideX[i] = cx / len
+                sideY[i] = cy / len
+                sideZ[i] = cz / len
+                if(firstValid == -1)
+                    firstValid = i
+            } else if(firstValid != -1) {
+                // zero-length segments or segments pointing at the eye keep the previous segment's orientation
+                sideX[i] = sideX[i - 1]
+                sideY[i] = sideY[i - 1]
+                sideZ[i] = sideZ[i - 1]
+            }
+        }
+        if(firstValid == -1)
+            return false
+        for(i in 0 until firstValid) {
+            sideX[i] = sideX[firstValid]
+            sideY[i] = sideY[firstValid]
+            sideZ[i] = sideZ[firstValid]
+        }
+
+        offsetX[0] = sideX[0] * chainHalfWidth[0]
+        offsetY[0] = sideY[0] * chainHalfWidth[0]
+        offsetZ[0] = sideZ[0] * chainHalfWidth[0]
+        val last = length - 1
+        offsetX[last] = sideX[last - 1] * chainHalfWidth[last]
+        offsetY[last] = sideY[last - 1] * chainHalfWidth[last]
+        offsetZ[last] = sideZ[last - 1] * chainHalfWidth[last]
+
+        val minCos = 1 / miterLimit
+        for(i in 1 until last) {
+            // the miter points halfway between the two segments' sides, and is lengthened so the edges of both
+            // segments meet on it
+            var mx = sideX[i - 1] + sideX[i]
+            var my = sideY[i - 1] + sideY[i]
+            var mz = sideZ[i - 1] + sideZ[i]
+            val len = sqrt(mx * mx + my * my + mz * mz)
+            if(len <= EPSILON) {
+                // the beam doubles back on itself
+                mx = sideX[i]
+                my = sideY[i]
+                mz = sideZ[i]
+            } else {
+                mx /= len
+                my /= len
+                mz /= len
+            }
+            val cos = mx * sideX[i] + my * sideY[i] + mz * sideZ[i]
+            val scale = chainHalfWidth[i] / max(cos, minCos)
+            offsetX[i] = mx * scale
+            offsetY[i] = my * scale
+            offsetZ[i] = mz * scale
+        }
+        return true
+    }
+
+    private fun emitDirect(vertices: ParticleVertexBuffer, length: Int) {
+        for(i in 0 until length - 1) {
+            val j = i + 1
+            vertices.vertex(chainX[i] - offsetX[i], chainY[i] - offsetY[i], chainZ[i] - offsetZ[i], chainColor[i], 0f, 0f)
+            vertices.vertex(chainX[j] - offsetX[j], chainY[j] - offsetY[j], chainZ[j] - offsetZ[j], chainColor[j], 0f, 1f)
+            vertices.vertex(chainX[j] + offsetX[j], chainY[j] + offsetY[j], chainZ[j] + offsetZ[j], chainColor[j], 1f, 1f)
+            vertices.vertex(chainX[i] + offsetX[i], chainY[i] + offsetY[i], chainZ[i] + offsetZ[i], chainColor[i], 1f, 0f)
+        }
+    }
+
+    private fun emitBuilder(buffer: IRenderTypeBuffer.Impl, length: Int) {
+        val builder = buffer.getBuffer(renderType)
+        for(i in 0 until length - 1) {
+            val j = i + 1
+            builder.pos(chainX[i] - offsetX[i], chainY[i] - offsetY[i], chainZ[i] - offsetZ[i])
+                .color(chainR[i], chainG[i], chainB[i], chainA[i]).tex(0f, 0f).endVertex()
+            builder.pos(chainX[j] - offsetX[j], chainY[j] - offsetY[j], chainZ[j] - offsetZ[j])
+                .color(chainR[j], chainG[j], chainB[j], chainA[j]).tex(0f, 1f).endVertex()
+            builder.pos(chainX[j] + offsetX[j], chainY[j] + offsetY[j], chainZ[j] + offsetZ[j])
+                .color(chainR[j], chainG[j], chainB[j], chainA[j]).tex(1f, 1f).endVertex()
+            builder.pos(chainX[i] + offsetX[i], chainY[i] + offsetY[i], chainZ[i] + offsetZ[i])
+                .color(chainR[i], chainG[i], chainB[i], chainA[i]).tex(1f, 0f).endVertex()
+        }
+    }
+
+    private fun ensureCapacity(count: Int) {
+        if(count <= capacity)
+            return
+        val newCapacity = count + (count shr 1)
+        chainX = DoubleArray(newCapacity)
+        chainY = DoubleArray(newCapacity)
+        chainZ = DoubleArray(newCapacity)
+        chainHalfWidth = DoubleArray(newCapacity)
+        chainColor = IntArray(newCapacity)
+        chainR = FloatArray(newCapacity)
+        chainG = FloatArray(newCapacity)
+        chainB = FloatArray(newCapacity)
+        chainA = FloatArray(newCapacity)
+        sideX = DoubleArray(newCapacity)
+        sideY = DoubleArray(newCapacity)
+        sideZ = DoubleArray(newCapacity)
+        offsetX = DoubleArray(newCapacity)
+        offsetY = DoubleArray(newCapacity)
+        offsetZ = DoubleArray(newCapacity)
+        capacity = newCapacity
+    }
+
+    companion object {
+        private const val EPSILON = 1e-9
+
+        private data class RenderTypeKey(val texture: ResourceLocation?, val blendMode: BlendMode?, val writeDepth: Boolean)
+        private val renderTypes = mutableMapOf<RenderTypeKey, RenderType>()
+
+        /**
+         * Gets a render type for beams. Render types are cached, so every beam module using the same parameters will
+         * share a render type and can be drawn in a single batch.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun simpleRenderType(
+            /**
+             * The texture to stretch over each segment, or null to draw solid colors
+             */
+            texture: ResourceLocation? = null,
+            /**
+             * The OpenGL source/dest enableBlend factors. A null value disables blending.
+             */
+            blendMode: BlendMode? = BlendMode.NORMAL,
+            /**
+             * Whether to write to the depth buffer
+             */
+            writeDepth: Boolean = true
+        ): RenderType {
+            return renderTypes.getOrPut(RenderTypeKey(texture, blendMode, writeDepth)) {
+                val renderState = RenderType.State.getBuilder()
+                    .texture(if(texture == null) DefaultRenderStates.NO_TEXTURE else RenderState.TextureState(texture, false, false))
+                    .cull(DefaultRenderStates.CULL_DISABLED)
+                    .alpha(DefaultRenderStates.DEFAULT_ALPHA)
+
+                if(blendMode != null) {
+                    renderState.transparency(RenderState.TransparencyState("beam_transparency", Runnable {
+                        RenderSystem.enableBlend()
+                        blendMode.glApply()
+                    }, Runnable {
+                        RenderSystem.disableBlend()
+                        RenderSystem.defaultBlendFunc()
+                    }))
+                }
+
+                if(!writeDepth) {
+                    renderState.writeMask(DefaultRenderStates.COLOR_WRITE)
+                }
+
+                @Suppress("INACCESSIBLE_TYPE")
+                RenderType.makeType(
+                    "beam_type", DefaultVertexFormats.POSITION_COLOR_TEX, GL11.GL_QUADS, 256, false, false, renderState.build(false)
+                )
+            }
+        }
+    }
+}
@@ -1,47 +1,87 @@
 package com.teamwizardry.librarianlib.glitter.modules
 
-//class AccelerationUpdateModule(
-//        val velocity: ParticleBinding,
-//        val acceleration: ParticleBinding
-//): ParticleUpdateModule {
-//    override fun update(particle: DoubleArray) {
-//        update(particle, 0)
-//        update(particle, 1)
-//        update(particle, 2)
-//    }
-//
-//    private fun update(particle: DoubleArray, index: Int) {
-//        val vel = velocity.get(particle, index)
-//        velocity.set(particle, index, vel + acceleration.get(particle, index))
-//    }
-//}
-/*
-ofVec3f    ComputeCurl(float    x,    float    y,    float    z)
-{
-                float    eps    =    1.0;
-                float    n1,    n2,    a,    b;
-                ofVec3f    curl;
-                n1    =    noise(x,    y    +    eps,    z);
-                n2    =    noise(x,    y    -­‐    eps,    z);
-                a    =    (n1    -­‐    n2)/(2    *    eps);
-                n1    =    noise(x,    y,    z    +    eps);
-                n2    =    noise(x,    y,    z    -­‐    eps);
-                b    =    (n1    -­‐    n2)/(2    *    eps);
-                curl.x    =    a    -­‐    b;
-                n1    =    noise(x,    y,    z    +    eps);
-                n2    =    noise(x,    y,    z    -­‐    eps);
-                a    =    (n1    -­‐    n2)/(2    *    eps);
-                n1    =    noise(x    +    eps,    y,    z);
-                n2    =    noise(x    +    eps,    y,    z);
-                b    =    (n1    -­‐    n2)/(2    *    eps);
-                curl.y    =    a    -­‐    b;
-                n1    =    noise(x    +    eps,    y,    z);
-                n2    =    noise(x    -­‐    eps,    y,    z);
-                a    =    (n1    -­‐    n2)/(2    *    eps);
-                n1    =    noise(x,    y    +    eps,    z);
-                n2    =    noise(x,    y    -­‐    eps,    z);
-                b    =    (n1    -­‐    n2)/(2    *    eps);
-                curl.z    =    a    -­‐    b;
-                return    curl;
+import com.teamwizardry.librarianlib.core.util.Client
+import com.teamwizardry.librarianlib.glitter.CurlNoiseField
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
+import com.teamwizardry.librarianlib.glitter.ParticleUpdateModule
+import com.teamwizardry.librarianlib.glitter.PerThread
+import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
+import com.teamwizardry.librarianlib.glitter.ReadWriteParticleBinding
+import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+
+/**
+ * Accelerates particles using curl noise, giving them swirling, smoke-like motion.
+ *
+ * Each tick the module samples the [field] at the particle's [position] and adds the result, multiplied by
+ * [strength], to the particle's [velocity]. The field is precomputed, so sampling it only costs a trilinear
+ * interpolation (two if the field evolves over time), and the same field can be shared between any number of modules.
+ */
+class CurlAccelerationUpdateModule @JvmOverloads constructor(
+        /**
+         * The noise field to sample
+         */
+        @JvmField val field: CurlNoiseField,
+        /**
+         * The position to sample the field at
+         */
+        @JvmField val position: ReadParticleBinding,
+        /**
+         * The velocity to be accelerated
+         */
+        @JvmField val velocity: ReadWriteParticleBinding,
+        /**
+         * The strength of the acceleration. The field's vectors have an average magnitude of about 1, so this is
+         * roughly the average acceleration in blocks/tick².
+         */
+        @JvmField val strength: ReadParticleBinding = ConstantBinding(0.01),
+        /**
+         * How fast the field evolves in [frames][CurlNoiseField.frames] per tick. This has no effect if the field only
+         * has one frame.
+         */
+        @JvmField val speed: Double = 0.05,
+        /**
+         * The time in ticks to sample the field at. If this is null the [world time][Client.worldTime] is used.
+         */
+        @JvmField val time: ReadParticleBinding? = null
+): ParticleUpdateModule {
+    init {
+        position.require(3)
+        velocity.require(3)
+        strength.require(1)
+        time?.require(1)
+    }
+
+    private val sample = PerThread { DoubleArray(3) }
+
+    override val isThreadSafe: Boolean
+        get() = position.isThreadSafe && velocity.isThreadSafe && strength.isThreadSafe &&
+            (time?.isThreadSafe ?: true)
+
+    override fun update(particle: DoubleArray) {
+        position.load(particle)
+        velocity.load(particle)
+        strength.load(particle)
+        time?.load(particle)
+        accelerate()
+        velocity.store(particle)
+    }
+
+    override fun update(columns: ParticleColumns, index: Int) {
+        position.load(columns, index)
+        velocity.load(columns, index)
+        strength.load(columns, index)
+        time?.load(columns, index)
+        accelerate()
+        velocity.store(columns, index)
+    }
+
+    private fun accelerate() {
+        val ticks = if(time != null) time.contents[0] else Client.worldTime.ticks.toDouble()
+        val sample = sample.get()
+        field.sample(position.contents[0], position.contents[1], position.contents[2], ticks * speed, sample)
+        val strength = strength.contents[0]
+        for(i in 0 until 3) {
+            velocity.contents[i] += sample[i] * strength
+        }
+    }
 }
- */
\ No newline at end of file
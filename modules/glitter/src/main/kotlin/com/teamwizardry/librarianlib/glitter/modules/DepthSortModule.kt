@@ -1,6 +1,7 @@
 package com.teamwizardry.librarianlib.glitter.modules
 
 import com.teamwizardry.librarianlib.core.util.Client
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
 import com.teamwizardry.librarianlib.glitter.ParticleGlobalUpdateModule
 import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
 import com.teamwizardry.librarianlib.glitter.bindings.StoredBinding
@@ -11,6 +12,11 @@ import net.minecraft.client.Minecraft
  *
  * The sort first stores the depth in the provided [depth] binding, allowing the depth to be calculated once per
  * particle and not repeatedly with each comparison, then sorts based upon the values in that binding.
+ *
+ * Rather than sorting the particles themselves, the module sorts an array of indices keyed by the depths' float bits
+ * and then moves each particle once. Since the particles are left in sorted order, the next tick's particles are
+ * usually nearly sorted already, so the module first tries an insertion sort and only falls back to a radix sort if
+ * the order has changed significantly.
  */
 class DepthSortModule(
         /**
@@ -28,25 +34,254 @@ class DepthSortModule(
         depth.require(1)
     }
 
+    private var keys = IntArray(0)
+    private var order = IntArray(0)
+    private var keyScratch = IntArray(0)
+    private var orderScratch = IntArray(0)
+    private val counts = IntArray(256)
+    private var particleScratch = arrayOfNulls<DoubleArray>(0)
+
+    private var eyeX = 0.0
+    private var eyeY = 0.0
+    private var eyeZ = 0.0
+    private var normalX = 0.0
+    private var normalY = 0.0
+    private var normalZ = 0.0
+
     override fun update(particles: MutableList<DoubleArray>) {
-        val player = Minecraft.getInstance().player!!
-        val normal = player.lookVec
-        val eyeX = Client.worldTime.interp(player.prevPosX, player.posX)
-        val eyeY = Client.worldTime.interp(player.prevPosY, player.posY) + player.eyeHeight
-        val eyeZ = Client.worldTime.interp(player.prevPosZ, player.posZ)
+        loadPlayerView()
+        sortParticles(particles)
+    }
+
+    override fun update(columns: ParticleColumns) {
+        loadPlayerView()
+        sortParticles(columns)
+    }
+
+    /**
+     * Sorts the particles based on the passed eye position and look vector instead of the player's. This doesn't
+     * need a running game, so it can be used to sort particles in tests and benchmarks.
+     */
+    fun update(
+        particles: MutableList<DoubleArray>,
+        eyeX: Double, eyeY: Double, eyeZ: Double,
+        normalX: Double, normalY: Double, normalZ: Double
+    ) {
+        setView(eyeX, eyeY, eyeZ, normalX, normalY, normalZ)
+        sortParticles(particles)
+    }
+
+    /**
+     * Sorts the particles based on the passed eye position and look vector instead of the player's. This doesn't
+     * need a running game, so it can be used to sort particles in tests and benchmarks.
+     */
+    fun update(
+        columns: ParticleColumns,
+        eyeX: Double, eyeY: Double, eyeZ: Double,
+        normalX: Double, normalY: Double, normalZ: Double
+    ) {
+        setView(eyeX, eyeY, eyeZ, normalX, normalY, normalZ)
+        sortParticles(columns)
+    }
+
+    private fun sortParticles(particles: MutableList<DoubleArray>) {
+        val count = particles.size
+        prepare(count)
 
         //dot(particle-eye,normal)
 
-        for(particle in particles) {
+        for(i in 0 until count) {
+            val particle = particles[i]
             position.load(particle)
-            val distance = (position.contents[0]-eyeX)*normal.x +
-                    (position.contents[1]-eyeY)*normal.y +
-                    (position.contents[2]-eyeZ)*normal.z
+            val distance = (position.contents[0]-eyeX)*normalX +
+                    (position.contents[1]-eyeY)*normalY +
+                    (position.contents[2]-eyeZ)*normalZ
             particle[depth.index] = distance
+            keys[i] = sortKey(distance)
+        }
+
+        if(!sort(count))
+            return
+
+        val particleScratch = this.particleScratch
+        for(i in 0 until count) {
+            particleScratch[i] = particles[order[i]]
+        }
+        for(i in 0 until count) {
+            particles[i] = particleScratch[i]!!
+            particleScratch[i] = null
+        }
+    }
+
+    private fun sortParticles(columns: ParticleColumns) {
+        val count = columns.size
+        prepare(count)
+
+        val depths = columns.column(depth.index)
+        for(i in 0 until count) {
+            position.load(columns, i)
+            val distance = (position.contents[0]-eyeX)*normalX +
+                    (position.contents[1]-eyeY)*normalY +
+                    (position.contents[2]-eyeZ)*normalZ
+            depths[i] = distance
+            keys[i] = sortKey(distance)
+        }
+
+        if(sort(count))
+            columns.permute(order)
+    }
+
+    /**
+     * Sets the view to the player's eye position and look vector
+     */
+    private fun loadPlayerView() {
+        val player = Minecraft.getInstance().player!!
+        val normal = player.lookVec
+        setView(
+            Client.worldTime.interp(player.prevPosX, player.posX),
+            Client.worldTime.interp(player.prevPosY, player.posY) + player.eyeHeight,
+            Client.worldTime.interp(player.prevPosZ, player.posZ),
+            normal.x, normal.y, normal.z
+        )
+    }
+
+    private fun setView(eyeX: Double, eyeY: Double, eyeZ: Double, normalX: Double, normalY: Double, normalZ: Double) {
+        this.eyeX = eyeX
+        this.eyeY = eyeY
+        this.eyeZ = eyeZ
+        this.normalX = normalX
+        this.normalY = normalY
+        this.normalZ = normalZ
+    }
+
+    /**
+     * Makes sure the sort buffers can hold [count] particles and resets the order
+     */
+    private fun prepare(count: Int) {
+        if(keys.size < count) {
+            val capacity = count + (count shr 1)
+            keys = IntArray(capacity)
+            order = IntArray(capacity)
+            keyScratch = IntArray(capacity)
+            orderScratch = IntArray(capacity)
+            particleScratch = arrayOfNulls(capacity)
+        }
+        for(i in 0 until count) {
+            order[i] = i
+        }
+    }
+
+    /**
+     * Sorts the first [count] elements of [order] by their [keys], returning false if the particles were already in
+     * order.
+     */
+    private fun sort(count: Int): Boolean {
+        val budget = if(count < INSERTION_THRESHOLD) Long.MAX_VALUE else count.toLong() * INSERTION_SHIFTS_PER_PARTICLE
+        val shifts = insertionSort(count, budget)
+        if(shifts < 0) {
+            // the insertion sort gave up, but it's stable so the radix sort can pick up where it left off
+            radixSort(count)
+            return true
+        }
+        return shifts != 0L
+    }
+
+    /**
+     * Insertion sorts [keys] and [order], returning the number of shifts performed or -1 if sorting would require more
+     * than [budget] shifts.
+     */
+    private fun insertionSort(count: Int, budget: Long): Long {
+        val keys = this.keys
+        val order = this.order
+        var shifts = 0L
+        for(i in 1 until count) {
+            val key = keys[i]
+            if(keys[i - 1] <= key)
+                continue
+            val index = order[i]
+            var j = i - 1
+            while(j >= 0 && keys[j] > key) {
+                keys[j + 1] = keys[j]
+                order[j + 1] = order[j]
+                j--
+            }
+            keys[j + 1] = key
+            order[j + 1] = index
+            shifts += i - 1 - j
+            if(shifts > budget)
+                return -1
         }
+        return shifts
+    }
+
+    /**
+     * Performs a stable least-significant-digit radix sort on [keys] and [order], one byte per pass. Passes where every
+     * key has the same byte are skipped.
+     */
+    private fun radixSort(count: Int) {
+        var keys = this.keys
+        var order = this.order
+        var keysOut = this.keyScratch
+        var orderOut = this.orderScratch
+        val counts = this.counts
+
+        for(pass in 0 until 4) {
+            val shift = pass * 8
+            // the keys are signed, so flip the sign bit in the top byte to sort negative keys first
+            val flip = if(pass == 3) 0x80 else 0
 
-        particles.sortByDescending {
-            it[depth.index]
+            counts.fill(0)
+            for(i in 0 until count) {
+                counts[((keys[i] ushr shift) and 0xFF) xor flip]++
+            }
+            if(counts[((keys[0] ushr shift) and 0xFF) xor flip] == count)
+                continue
+
+            var total = 0
+            for(bucket in 0 until 256) {
+                val bucketCount = counts[bucket]
+                counts[bucket] = total
+                total += bucketCount
+            }
+            for(i in 0 until count) {
+                val key = keys[i]
+                val target = counts[((key ushr shift) and 0xFF) xor flip]++
+                keysOut[target] = key
+                orderOut[target] = order[i]
+            }
+
+            val swapKeys = keys
+            keys = keysOut
+            keysOut = swapKeys
+            val swapOrder = order
+            order = orderOut
+            orderOut = swapOrder
+        }
+
+        this.keys = keys
+        this.order = order
+        this.keyScratch = keysOut
+        this.orderScratch = orderOut
+    }
+
+    private companion object {
+        /**
+         * Below this many particles the insertion sort is never abandoned
+         */
+        const val INSERTION_THRESHOLD = 64
+        /**
+         * The average number of shifts per particle the insertion sort may perform before falling back to the radix sort
+         */
+        const val INSERTION_SHIFTS_PER_PARTICLE = 8
+
+        /**
+         * Converts the passed depth to an int key whose signed order sorts the farthest particles first.
+         */
+        @JvmStatic
+        fun sortKey(depth: Double): Int {
+            val bits = java.lang.Float.floatToIntBits(-depth.toFloat())
+            // flipping the magnitude bits of negative floats makes their bits sort in the same order as the floats
+            return bits xor ((bits shr 31) and 0x7FFFFFFF)
         }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.teamwizardry.librarianlib.glitter.modules
 
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
 import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
 import com.teamwizardry.librarianlib.glitter.WriteParticleBinding
 import com.teamwizardry.librarianlib.glitter.ParticleUpdateModule
@@ -27,9 +28,18 @@ class SetValueUpdateModule(
         }
     }
 
+    override val isThreadSafe: Boolean
+        get() = source.isThreadSafe && target.isThreadSafe
+
     override fun update(particle: DoubleArray) {
         source.load(particle)
         source.contents.copyInto(target.contents)
         target.store(particle)
     }
+
+    override fun update(columns: ParticleColumns, index: Int) {
+        source.load(columns, index)
+        source.contents.copyInto(target.contents)
+        target.store(columns, index)
+    }
 }
\ No newline at end of file
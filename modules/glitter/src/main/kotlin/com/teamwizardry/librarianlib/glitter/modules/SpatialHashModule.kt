@@ -0,0 +1,364 @@
+package com.teamwizardry.librarianlib.glitter.modules
+
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
+import com.teamwizardry.librarianlib.glitter.ParticleGlobalUpdateModule
+import com.teamwizardry.librarianlib.glitter.PerThread
+import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
+import kotlin.math.floor
+
+/**
+ * Builds a uniform grid spatial hash of the particles' positions every tick, allowing other modules to efficiently
+ * find the particles near a point using [neighbors].
+ *
+ * The hash is rebuilt from scratch each time this module runs, so it reflects the particles' positions at the point
+ * this module is in the [global update modules][com.teamwizardry.librarianlib.glitter.ParticleSystem.globalUpdateModules].
+ * Since global update modules run after the [update modules]
+ * [com.teamwizardry.librarianlib.glitter.ParticleSystem.updateModules], update modules that query the hash will see
+ * the positions from the end of the previous tick, and particles spawned since then won't be included.
+ *
+ * The hash is stored in flat primitive arrays sorted by cell, so building it is a linear-time counting sort and
+ * querying it allocates nothing. Queries are most efficient when their radius is no more than the [cellSize].
+ *
+ * ```kotlin
+ * val neighbors = hash.neighbors(x, y, z, radius)
+ * while(neighbors.next()) {
+ *     // neighbors.x, neighbors.y, neighbors.z, neighbors.distanceSq, neighbors.data(i), etc.
+ * }
+ * ```
+ */
+class SpatialHashModule @JvmOverloads constructor(
+        /**
+         * The position to hash the particles by
+         */
+        @JvmField val position: ReadParticleBinding,
+        /**
+         * The size of each grid cell in blocks. This should generally be close to the radius of the queries.
+         */
+        @JvmField val cellSize: Double,
+        /**
+         * An optional binding whose value is copied into the hash along with each particle's position, which can be
+         * accessed using [Neighbors.data]. Reading the neighbors' values from the hash (as opposed to reading them from
+         * the particles themselves) keeps them consistent while the particles are being updated.
+         */
+        @JvmField val data: ReadParticleBinding? = null
+): ParticleGlobalUpdateModule {
+    init {
+        position.require(3)
+        if(cellSize <= 0 || !cellSize.isFinite())
+            throw IllegalArgumentException("Cell size must be positive and finite, not $cellSize")
+    }
+
+    private val inverseCellSize = 1 / cellSize
+    private val dataSize = data?.contents?.size ?: 0
+
+    /**
+     * The number of particles in the hash
+     */
+    var size: Int = 0
+        private set
+
+    private var capacity = 0
+    private var tableMask = 0
+    // bucket `b` contains the entries from `bucketStart[b]` to `bucketStart[b + 1]`
+    private var bucketStart = IntArray(1)
+
+    // the entries, sorted by bucket
+    private var entryX = DoubleArray(0)
+    private var entryY = DoubleArray(0)
+    private var entryZ = DoubleArray(0)
+    private var entryCellX = IntArray(0)
+    private var entryCellY = IntArray(0)
+    private var entryCellZ = IntArray(0)
+    private var entryIndex = IntArray(0)
+    private var entryData = DoubleArray(0)
+    private var entryParticle = arrayOfNulls<DoubleArray>(0)
+
+    // the unsorted values, indexed by particle
+    private var particleBucket = IntArray(0)
+    private var particleX = DoubleArray(0)
+    private var particleY = DoubleArray(0)
+    private var particleZ = DoubleArray(0)
+    private var particleData = DoubleArray(0)
+
+    private val cursors = PerThread { Neighbors() }
+
+    override fun update(particles: MutableList<DoubleArray>) {
+        val count = particles.size
+        prepare(count)
+        for(i in 0 until count) {
+            val particle = particles[i]
+            position.load(particle)
+            data?.load(particle)
+            load(i)
+        }
+        build(count, particles)
+    }
+
+    override fun update(columns: ParticleColumns) {
+        val count = columns.size
+        prepare(count)
+        for(i in 0 until count) {
+            position.load(columns, i)
+            data?.load(columns, i)
+            load(i)
+        }
+        build(count, null)
+    }
+
+    /**
+     * Starts a query for the particles within [radius] blocks of the passed point and returns the current thread's
+     * [Neighbors] cursor, which can be used to iterate over the results. The cursor is reused by subsequent queries on
+     * the same thread, so nested queries aren't supported.
+     *
+     * This is safe to call from multiple threads at once, as long as the hash isn't being rebuilt at the same time.
+     */
+    fun neighbors(x: Double, y: Double, z: Double, radius: Double): Neighbors {
+        val cursor = cursors.get()
+        cursor.start(x, y, z, radius)
+        return cursor
+    }
+
+    private fun prepare(count: Int) {
+        if(count > capacity) {
+            val newCapacity = count + (count shr 1)
+            entryX = DoubleArray(newCapacity)
+            entryY = DoubleArray(newCapacity)
+            entryZ = DoubleArray(newCapacity)
+            entryCellX = IntArray(newCapacity)
+            entryCellY = IntArray(newCapacity)
+            entryCellZ = IntArray(newCapacity)
+            entryIndex = IntArray(newCapacity)
+            entryData = DoubleArray(newCapacity * dataSize)
+            entryParticle = arrayOfNulls(newCapacity)
+            particleBucket = IntArray(newCapacity)
+            particleX = DoubleArray(newCapacity)
+            particleY = DoubleArray(newCapacity)
+            particleZ = DoubleArray(newCapacity)
+            particleData = DoubleArray(newCapacity * dataSize)
+            capacity = newCapacity
+        }
+
+        // keep the table at least twice the particle count, so buckets rarely contain more than one cell
+        var tableSize = MIN_TABLE_SIZE
+        while(tableSize < count * 2)
+            tableSize = tableSize shl 1
+        if(bucketStart.size < tableSize + 1)
+            bucketStart = IntArray(tableSize + 1)
+        else
+            bucketStart.fill(0, 0, tableSize + 1)
+        tableMask = tableSize - 1
+    }
+
+    /**
+     * Copies the loaded binding values for particle [i] and counts it in its bucket
+     */
+    private fun load(i: Int) {
+        val x = position.contents[0]
+        val y = position.contents[1]
+        val z = position.contents[2]
+        particleX[i] = x
+        particleY[i] = y
+        particleZ[i] = z
+        if(data != null)
+            System.arraycopy(data.contents, 0, particleData, i * dataSize, dataSize)
+        val bucket = bucket(cell(x), cell(y), cell(z))
+        particleBucket[i] = bucket
+        bucketStart[bucket]++
+    }
+
+    /**
+     * Sorts the loaded particles into their buckets
+     */
+    private fun build(count: Int, particles: List<DoubleArray>?) {
+        val bucketStart = bucketStart
+        // make each bucket's counter point to the end of its range, then fill each range from the end
+        var total = 0
+        val tableSize = tableMask + 1
+        for(bucket in 0 until tableSize) {
+            total += bucketStart[bucket]
+            bucketStart[bucket] = total
+        }
+        bucketStart[tableSize] = total
+
+        for(i in count - 1 downTo 0) {
+            val entry = --bucketStart[particleBucket[i]]
+            val x = particleX[i]
+            val y = particleY[i]
+            val z = particleZ[i]
+            entryX[entry] = x
+            entryY[entry] = y
+            entryZ[entry] = z
+            entryCellX[entry] = cell(x)
+            entryCellY[entry] = cell(y)
+            entryCellZ[entry] = cell(z)
+            entryIndex[entry] = i
+            entryParticle[entry] = particles?.get(i)
+            if(dataSize != 0)
+                System.arraycopy(particleData, i * dataSize, entryData, entry * dataSize, dataSize)
+        }
+        // clear any particles from a previous, larger build so they can be garbage collected
+        for(i in count until size) {
+            entryParticle[i] = null
+        }
+        size = count
+    }
+
+    private fun cell(value: Double): Int {
+        return floor(value * inverseCellSize).toInt()
+    }
+
+    private fun bucket(cellX: Int, cellY: Int, cellZ: Int): Int {
+        val hash = cellX * -0x61c88647 xor cellY * -0x3d4d51cb xor cellZ * 0x27d4eb2f
+        return (hash xor (hash ushr 15)) and tableMask
+    }
+
+    /**
+     * A cursor over the results of a [neighbors] query. Each call to [next] advances to the next particle within the
+     * query radius, whose values are then available in the cursor's properties. Particles are visited in no particular
+     * order, and a query from a particle's own position will include that particle at a distance of zero.
+     */
+    inner class Neighbors internal constructor() {
+        /**
+         * The X coordinate of the current particle
+         */
+        var x: Double = 0.0
+            private set
+        /**
+         * The Y coordinate of the current particle
+         */
+        var y: Double = 0.0
+            private set
+        /**
+         * The Z coordinate of the current particle
+         */
+        var z: Double = 0.0
+            private set
+        /**
+         * The squared distance from the query point to the current particle
+         */
+        var distanceSq: Double = 0.0
+            private set
+        /**
+         * The index of the current particle when the hash was built. Particles die and may be reordered after the hash
+         * is built, so this should only be used to identify particles, not to look them up.
+         */
+        var index: Int = 0
+            private set
+        /**
+         * The current particle, or null if the system uses [columnar storage]
+         * [com.teamwizardry.librarianlib.glitter.ParticleSystem.columnar]. The particle may have died since the hash
+         * was built, and modules running in
+         * [parallel][com.teamwizardry.librarianlib.glitter.ParticleSystem.parallel] shouldn't read the particle's
+         * values, since it may be being updated by another thread. Use [data] instead.
+         */
+        var particle: DoubleArray? = null
+            private set
+
+        private var entry = 0
+
+        /**
+         * Gets element [i] of the current particle's [data][SpatialHashModule.data]
+         */
+        fun data(i: Int): Double {
+            if(i < 0 || i >= dataSize)
+                throw IndexOutOfBoundsException("Data index $i is out of bounds for data size $dataSize")
+            return entryData[entry * dataSize + i]
+        }
+
+        private var queryX = 0.0
+        private var queryY = 0.0
+        private var queryZ = 0.0
+        private var radiusSq = 0.0
+        private var minCellX = 0
+        private var minCellY = 0
+        private var maxCellX = 0
+        private var maxCellY = 0
+        private var maxCellZ = 0
+        private var cellX = 0
+        private var cellY = 0
+        private var cellZ = 0
+        private var nextEntry = 0
+        private var endEntry = 0
+
+        internal fun start(x: Double, y: Double, z: Double, radius: Double) {
+            queryX = x
+            queryY = y
+            queryZ = z
+            radiusSq = radius * radius
+            minCellX = cell(x - radius)
+            minCellY = cell(y - radius)
+            maxCellX = cell(x + radius)
+            maxCellY = cell(y + radius)
+            maxCellZ = cell(z + radius)
+            cellX = minCellX
+            cellY = minCellY
+            cellZ = cell(z - radius)
+            particle = null
+            if(size == 0) {
+                // nothing to find, so start past the last cell
+                cellX = maxCellX + 1
+                nextEntry = 0
+                endEntry = 0
+                return
+            }
+            seek()
+        }
+
+        /**
+         * Advances to the next particle within the query radius, returning false if there are none left.
+         */
+        fun next(): Boolean {
+            while(true) {
+                while(nextEntry < endEntry) {
+                    val entry = nextEntry++
+                    // buckets may be shared with other cells, so skip any particles from them
+                    if(entryCellX[entry] != cellX || entryCellY[entry] != cellY || entryCellZ[entry] != cellZ)
+                        continue
+                    val dx = entryX[entry] - queryX
+                    val dy = entryY[entry] - queryY
+                    val dz = entryZ[entry] - queryZ
+                    val distanceSq = dx * dx + dy * dy + dz * dz
+                    if(distanceSq > radiusSq)
+                        continue
+                    this.entry = entry
+                    this.x = entryX[entry]
+                    this.y = entryY[entry]
+                    this.z = entryZ[entry]
+                    this.distanceSq = distanceSq
+                    this.index = entryIndex[entry]
+                    this.particle = entryParticle[entry]
+                    return true
+                }
+
+                // advance to the next cell in x, then y, then z order
+                if(cellX > maxCellX)
+                    return false
+                cellX++
+                if(cellX > maxCellX) {
+                    cellX = minCellX
+                    cellY++
+                    if(cellY > maxCellY) {
+                        cellY = minCellY
+                        cellZ++
+                        if(cellZ > maxCellZ) {
+                            cellX = maxCellX + 1
+                            particle = null
+                            return false
+                        }
+                    }
+                }
+                seek()
+            }
+        }
+
+        private fun seek() {
+            val bucket = bucket(cellX, cellY, cellZ)
+            nextEntry = bucketStart[bucket]
+            endEntry = bucketStart[bucket + 1]
+        }
+    }
+
+    private companion object {
+        const val MIN_TABLE_SIZE = 16
+    }
+}
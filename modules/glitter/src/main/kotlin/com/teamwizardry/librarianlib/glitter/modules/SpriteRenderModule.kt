@@ -2,14 +2,20 @@ package com.teamwizardry.librarianlib.glitter.modules
 
 import com.mojang.blaze3d.matrix.MatrixStack
 import com.mojang.blaze3d.systems.RenderSystem
+import com.mojang.blaze3d.vertex.IVertexBuilder
 import com.teamwizardry.librarianlib.core.bridge.IMatrix4f
 import com.teamwizardry.librarianlib.core.util.Client
 import com.teamwizardry.librarianlib.core.util.DefaultRenderStates
 import com.teamwizardry.librarianlib.core.rendering.BlendMode
-import com.teamwizardry.librarianlib.glitter.ParticleRenderModule
+import com.teamwizardry.librarianlib.glitter.PipelinedParticleRenderModule
+import com.teamwizardry.librarianlib.glitter.ParticleSystem
+import com.teamwizardry.librarianlib.glitter.ParticleSystemManager
+import com.teamwizardry.librarianlib.glitter.ParticleSystemMetrics
 import com.teamwizardry.librarianlib.glitter.ParticleUpdateModule
+import com.teamwizardry.librarianlib.glitter.ParticleVertexBuffer
 import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
 import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+import net.minecraft.client.renderer.IRenderTypeBuffer
 import net.minecraft.client.renderer.Matrix4f
 import net.minecraft.client.renderer.RenderState
 import net.minecraft.client.renderer.RenderType
@@ -19,6 +25,8 @@ import net.minecraft.util.ResourceLocation
 import net.minecraft.util.math.MathHelper
 import org.lwjgl.opengl.GL11
 import java.lang.IllegalArgumentException
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
 
 /**
  * The bread-and-butter render module, a simple billboarded sprite.
@@ -29,6 +37,12 @@ import java.lang.IllegalArgumentException
  * One thing of note is that for some particle effects, particularly ones that should look consistent,
  * disabling interpolation by passing the current position for both [previousPosition] and [position] can make
  * the particles rock solid in their positions as opposed to jittering about slightly.
+ *
+ * When the [renderType] uses the [DefaultVertexFormats.POSITION_COLOR_TEX] format and draws quads (as the
+ * [simpleRenderType] does), vertices are written directly into a persistent off-heap buffer and streamed to the GPU,
+ * bypassing the vanilla buffer builders. Other render types are drawn using the vanilla buffers. If the system has
+ * enabled [batching][ParticleSystem.batchRendering], the vertices are added to a batch that's drawn once per
+ * render type after every system has rendered.
  */
 class SpriteRenderModule @JvmOverloads constructor(
     /**
@@ -67,8 +81,13 @@ class SpriteRenderModule @JvmOverloads constructor(
     /**
      * The sprite index (indexed left-to-right, top-to-bottom)
      */
-    @JvmField val spriteIndex: ReadParticleBinding = ConstantBinding(0.0)
-) : ParticleRenderModule {
+    @JvmField val spriteIndex: ReadParticleBinding = ConstantBinding(0.0),
+    /**
+     * The size multiplier. Defaults to 1 if not present. This is often the
+     * [lodScale][com.teamwizardry.librarianlib.glitter.ParticleCulling.lodScale] of the system's cull stage.
+     */
+    @JvmField val sizeMultiplier: ReadParticleBinding = ConstantBinding(1.0)
+) : PipelinedParticleRenderModule<SpriteRenderModule.Records> {
     init {
         previousPosition?.require(3)
         position.require(3)
@@ -77,31 +96,218 @@ class SpriteRenderModule @JvmOverloads constructor(
         facingVector?.require(3)
         alphaMultiplier.require(1)
         spriteIndex.require(1)
+        sizeMultiplier.require(1)
 
         if(spriteSheetSize and (spriteSheetSize - 1) != 0) {
             throw IllegalArgumentException("Sprite sheet size $spriteSheetSize is not a power of 2")
         }
     }
 
-    @Suppress("CAST_NEVER_SUCCEEDS", "LocalVariableName")
+    private val vertexBuffer = ParticleVertexBuffer()
+    /**
+     * The record for the particle currently being drawn by [render], which draws each particle as soon as its record
+     * is computed
+     */
+    private val immediateRecord = DoubleArray(STRIDE)
+    private val quadOutput = QuadOutput()
+
+    private val spriteSize = 1.0 / spriteSheetSize
+    private val spriteIndexMask = spriteSheetSize - 1
+    private val spriteSheetBits = MathHelper.log2(spriteSheetSize)
+
+    /**
+     * The interpolation-independent render data for a list of particles. This is an opaque object produced by
+     * [prepare] and consumed by [renderPrepared].
+     */
+    class Records internal constructor() {
+        /**
+         * The number of particles in these records
+         */
+        var count: Int = 0
+            internal set
+        internal var data: DoubleArray = DoubleArray(0)
+    }
+
     override fun render(matrixStack: MatrixStack, projectionMatrix: Matrix4f, particles: List<DoubleArray>, prepModules: List<ParticleUpdateModule>) {
-        val modelViewMatrix = matrixStack.last.matrix
-        val buffer = Client.minecraft.renderTypeBuffers.bufferSource
-        val builder = buffer.getBuffer(renderType)
+        val view = loadView(matrixStack.last.matrix)
+        val output = beginQuads(particles.size)
+        val record = immediateRecord
+        for(index in particles.indices) {
+            prepareRecord(particles[index], prepModules, record, 0)
+            recordQuad(record, 0, view) { x, y, z, rightX, rightY, rightZ, upX, upY, upZ, r, g, b, a, minU, minV, maxU, maxV ->
+                output.quad(x, y, z, rightX, rightY, rightZ, upX, upY, upZ, r, g, b, a, minU, minV, maxU, maxV)
+            }
+        }
+        output.end(particles.size)
+    }
+
+    override fun prepare(particles: List<DoubleArray>, prepModules: List<ParticleUpdateModule>, previous: Records?): Records {
+        val records = previous ?: Records()
+        val count = particles.size
+        if(records.data.size < count * STRIDE)
+            records.data = DoubleArray((count + (count shr 1)) * STRIDE)
+        val data = records.data
+
+        for(index in 0 until count) {
+            prepareRecord(particles[index], prepModules, data, index * STRIDE)
+        }
+        records.count = count
+        return records
+    }
+
+    /**
+     * Runs the [prepModules] on the particle and writes its record into [data] at [offset]
+     */
+    private fun prepareRecord(particle: DoubleArray, prepModules: List<ParticleUpdateModule>, data: DoubleArray, offset: Int) {
+        for (i in prepModules.indices) {
+            prepModules[i].update(particle)
+        }
+
+        data[offset + HAS_FACING] = 0.0
+        if (facingVector != null) {
+            facingVector.load(particle)
+            val facingX = facingVector.contents[0]
+            val facingY = facingVector.contents[1]
+            val facingZ = facingVector.contents[2]
+            if(!facingX.isNaN() && !facingY.isNaN() && !facingZ.isNaN()) {
+                var rightX: Double
+                var rightY: Double
+                var rightZ: Double
+                var upX: Double
+                var upY: Double
+                var upZ: Double
+                // x axis, facing • (0, 1, 0)
+                if(facingX == 0.0 && facingZ == 0.0) {
+                    rightX = 1.0
+                    rightY = 0.0
+                    rightZ = 0.0
+
+                    upX = 0.0
+                    upY = 0.0
+                    upZ = 1.0
+                } else {
+                    rightX = -facingZ
+                    rightY = 0.0
+                    rightZ = facingX
+                    val rightInvLength = MathHelper.fastInvSqrt(rightX * rightX + rightY * rightY + rightZ * rightZ)
+                    rightX *= -rightInvLength
+                    rightY *= -rightInvLength
+                    rightZ *= -rightInvLength
+
+                    // y axis, facing • right
+                    upX = facingY * facingX
+                    upY = facingZ * -facingZ - facingX * facingX
+                    upZ = facingY * facingZ
+                    val upInvLength = MathHelper.fastInvSqrt(upX * upX + upY * upY + upZ * upZ)
+                    upX *= -upInvLength
+                    upY *= -upInvLength
+                    upZ *= -upInvLength
+                }
+
+                data[offset + HAS_FACING] = 1.0
+                data[offset + RIGHT] = rightX
+                data[offset + RIGHT + 1] = rightY
+                data[offset + RIGHT + 2] = rightZ
+                data[offset + UP] = upX
+                data[offset + UP + 1] = upY
+                data[offset + UP + 2] = upZ
+            }
+        }
+
+        size.load(particle)
+        sizeMultiplier.load(particle)
+        data[offset + SIZE] = this.size.contents[0] * sizeMultiplier.contents[0] / 2
+
+        position.load(particle)
+        data[offset + POSITION] = position.contents[0]
+        data[offset + POSITION + 1] = position.contents[1]
+        data[offset + POSITION + 2] = position.contents[2]
+        val previousPos = previousPosition?.also { it.load(particle) } ?: position
+        data[offset + PREVIOUS_POSITION] = previousPos.contents[0]
+        data[offset + PREVIOUS_POSITION + 1] = previousPos.contents[1]
+        data[offset + PREVIOUS_POSITION + 2] = previousPos.contents[2]
+
+        color.load(particle)
+        alphaMultiplier.load(particle)
+        data[offset + COLOR] = color.contents[0]
+        data[offset + COLOR + 1] = color.contents[1]
+        data[offset + COLOR + 2] = color.contents[2]
+        data[offset + COLOR + 3] = color.contents[3] * alphaMultiplier.contents[0]
+
+        if(spriteSheetSize > 1) {
+            spriteIndex.load(particle)
+            val sheetIndex = spriteIndex.contents[0].toInt()
+            val uIndex = sheetIndex and spriteIndexMask
+            val vIndex = sheetIndex ushr spriteSheetBits
+            data[offset + UV] = spriteSize * uIndex
+            data[offset + UV + 1] = spriteSize * vIndex
+            data[offset + UV + 2] = spriteSize * (uIndex + 1)
+            data[offset + UV + 3] = spriteSize * (vIndex + 1)
+        } else {
+            data[offset + UV] = 0.0
+            data[offset + UV + 1] = 0.0
+            data[offset + UV + 2] = 1.0
+            data[offset + UV + 3] = 1.0
+        }
+    }
+
+    /**
+     * The camera state used to generate vertices from [Records]. [renderPrepared] fills this in from the game each
+     * frame, but it can also be set up manually to generate vertices without a running game using [writeVertices].
+     */
+    class View {
+        // the first three rows of the model view matrix
+        @JvmField var m00: Double = 1.0
+        @JvmField var m01: Double = 0.0
+        @JvmField var m02: Double = 0.0
+        @JvmField var m03: Double = 0.0
+        @JvmField var m10: Double = 0.0
+        @JvmField var m11: Double = 1.0
+        @JvmField var m12: Double = 0.0
+        @JvmField var m13: Double = 0.0
+        @JvmField var m20: Double = 0.0
+        @JvmField var m21: Double = 0.0
+        @JvmField var m22: Double = 1.0
+        @JvmField var m23: Double = 0.0
+
+        /**
+         * The view-space vector pointing to the right of billboarded particles
+         */
+        @JvmField var rightX: Double = -1.0
+        @JvmField var rightY: Double = 0.0
+        @JvmField var rightZ: Double = 0.0
 
+        /**
+         * The view-space vector pointing to the top of billboarded particles
+         */
+        @JvmField var upX: Double = 0.0
+        @JvmField var upY: Double = 1.0
+        @JvmField var upZ: Double = 0.0
+
+        /**
+         * The fraction of a tick used to interpolate between the particles' previous and current positions
+         */
+        @JvmField var partialTicks: Double = 0.0
+    }
+
+    private val view = View()
+
+    @Suppress("CAST_NEVER_SUCCEEDS")
+    private fun loadView(modelViewMatrix: Matrix4f): View {
+        val view = this.view
         val transformMatrix = modelViewMatrix as IMatrix4f
-        val tm00 = transformMatrix.m00
-        val tm01 = transformMatrix.m01
-        val tm02 = transformMatrix.m02
-        val tm03 = transformMatrix.m03
-        val tm10 = transformMatrix.m10
-        val tm11 = transformMatrix.m11
-        val tm12 = transformMatrix.m12
-        val tm13 = transformMatrix.m13
-        val tm20 = transformMatrix.m20
-        val tm21 = transformMatrix.m21
-        val tm22 = transformMatrix.m22
-        val tm23 = transformMatrix.m23
+        view.m00 = transformMatrix.m00.toDouble()
+        view.m01 = transformMatrix.m01.toDouble()
+        view.m02 = transformMatrix.m02.toDouble()
+        view.m03 = transformMatrix.m03.toDouble()
+        view.m10 = transformMatrix.m10.toDouble()
+        view.m11 = transformMatrix.m11.toDouble()
+        view.m12 = transformMatrix.m12.toDouble()
+        view.m13 = transformMatrix.m13.toDouble()
+        view.m20 = transformMatrix.m20.toDouble()
+        view.m21 = transformMatrix.m21.toDouble()
+        view.m22 = transformMatrix.m22.toDouble()
+        view.m23 = transformMatrix.m23.toDouble()
 
         // `w = 0` means we won't apply translation when we use the matrix later
         val lookRightVec = Vector4f(-1f, 0f, 0f, 0f)
@@ -116,140 +322,242 @@ class SpriteRenderModule @JvmOverloads constructor(
         lookRightVec.transform(billboardedMatrix)
         lookUpVec.transform(billboardedMatrix)
 
-        val lookRightX = lookRightVec.x.toDouble()
-        val lookRightY = lookRightVec.y.toDouble()
-        val lookRightZ = lookRightVec.z.toDouble()
+        view.rightX = lookRightVec.x.toDouble()
+        view.rightY = lookRightVec.y.toDouble()
+        view.rightZ = lookRightVec.z.toDouble()
+        view.upX = lookUpVec.x.toDouble()
+        view.upY = lookUpVec.y.toDouble()
+        view.upZ = lookUpVec.z.toDouble()
+        view.partialTicks = Client.worldTime.partialTicks.toDouble()
+        return view
+    }
+
+    override fun renderPrepared(matrixStack: MatrixStack, projectionMatrix: Matrix4f, records: Records) {
+        val view = loadView(matrixStack.last.matrix)
+        val output = beginQuads(records.count)
+        forEachQuad(records, view) { x, y, z, rightX, rightY, rightZ, upX, upY, upZ, r, g, b, a, minU, minV, maxU, maxV ->
+            output.quad(x, y, z, rightX, rightY, rightZ, upX, upY, upZ, r, g, b, a, minU, minV, maxU, maxV)
+        }
+        output.end(records.count)
+    }
 
-        val lookUpX = lookUpVec.x.toDouble()
-        val lookUpY = lookUpVec.y.toDouble()
-        val lookUpZ = lookUpVec.z.toDouble()
+    /**
+     * Sets up the [quadOutput] to receive [count] quads using the current [renderType]
+     */
+    private fun beginQuads(count: Int): QuadOutput {
+        val output = quadOutput
+        val renderType = this.renderType
+        val direct = ParticleVertexBuffer.supports(renderType)
+        val batch = ParticleSystemManager.currentBatch
+        output.renderType = renderType
+        output.batched = batch != null
+        output.buffer = Client.minecraft.renderTypeBuffers.bufferSource
+        output.builder = if(direct) null else output.buffer.getBuffer(renderType)
+        output.vertices = if(batch != null && direct) batch.buffer(renderType) else vertexBuffer
+        if(direct) {
+            if(batch == null)
+                output.vertices.reset()
+            output.vertices.reserve(count)
+        }
+        return output
+    }
 
-        val spriteSize = 1f / spriteSheetSize
-        val spriteIndexMask = spriteSheetSize - 1
-        val spriteSheetBits = MathHelper.log2(spriteSheetSize)
+    /**
+     * Writes quads into either the off-heap vertex buffer or, for render types it doesn't support, the vanilla buffers
+     */
+    private class QuadOutput {
+        lateinit var renderType: RenderType
+        lateinit var buffer: IRenderTypeBuffer.Impl
+        lateinit var vertices: ParticleVertexBuffer
+        var builder: IVertexBuilder? = null
+        var batched: Boolean = false
 
-        particles.forEach { particle ->
-            for (i in prepModules.indices) {
-                prepModules[i].update(particle)
+        fun quad(
+            x: Double, y: Double, z: Double,
+            rightX: Double, rightY: Double, rightZ: Double,
+            upX: Double, upY: Double, upZ: Double,
+            r: Float, g: Float, b: Float, a: Float,
+            minU: Float, minV: Float, maxU: Float, maxV: Float
+        ) {
+            val builder = this.builder
+            if(builder == null) {
+                vertices.quad(
+                    x, y, z,
+                    rightX, rightY, rightZ,
+                    upX, upY, upZ,
+                    ParticleVertexBuffer.packColor(r, g, b, a), minU, minV, maxU, maxV
+                )
+            } else {
+                builder.pos(x - rightX - upX, y - rightY - upY, z - rightZ - upZ).color(r, g, b, a).tex(minU, maxV).endVertex()
+                builder.pos(x + rightX - upX, y + rightY - upY, z + rightZ - upZ).color(r, g, b, a).tex(maxU, maxV).endVertex()
+                builder.pos(x + rightX + upX, y + rightY + upY, z + rightZ + upZ).color(r, g, b, a).tex(maxU, minV).endVertex()
+                builder.pos(x - rightX + upX, y - rightY + upY, z - rightZ + upZ).color(r, g, b, a).tex(minU, minV).endVertex()
             }
-            var rightX = lookRightX
-            var rightY = lookRightY
-            var rightZ = lookRightZ
-
-            var upX = lookUpX
-            var upY = lookUpY
-            var upZ = lookUpZ
-
-            if (facingVector != null) {
-                facingVector.load(particle)
-                val facingX = facingVector.contents[0]
-                val facingY = facingVector.contents[1]
-                val facingZ = facingVector.contents[2]
-                if(!facingX.isNaN() && !facingY.isNaN() && !facingZ.isNaN()) {
-                    // x axis, facing • (0, 1, 0)
-                    if(facingX == 0.0 && facingZ == 0.0) {
-                        rightX = 1.0
-                        rightY = 0.0
-                        rightZ = 0.0
-
-                        upX = 0.0
-                        upY = 0.0
-                        upZ = 1.0
-                    } else {
-                        rightX = -facingZ
-                        rightY = 0.0
-                        rightZ = facingX
-                        val rightInvLength = MathHelper.fastInvSqrt(rightX * rightX + rightY * rightY + rightZ * rightZ)
-                        rightX *= -rightInvLength
-                        rightY *= -rightInvLength
-                        rightZ *= -rightInvLength
-
-                        // y axis, facing • right
-                        upX = facingY * facingX
-                        upY = facingZ * -facingZ - facingX * facingX
-                        upZ = facingY * facingZ
-                        val upInvLength = MathHelper.fastInvSqrt(upX * upX + upY * upY + upZ * upZ)
-                        upX *= -upInvLength
-                        upY *= -upInvLength
-                        upZ *= -upInvLength
-                    }
-
-                    val _rightX = rightX
-                    val _rightY = rightY
-                    val _rightZ = rightZ
-                    rightX = tm00 * _rightX + tm01 * _rightY + tm02 * _rightZ
-                    rightY = tm10 * _rightX + tm11 * _rightY + tm12 * _rightZ
-                    rightZ = tm20 * _rightX + tm21 * _rightY + tm22 * _rightZ
-
-                    val _upX = upX
-                    val _upY = upY
-                    val _upZ = upZ
-                    upX = tm00 * _upX + tm01 * _upY + tm02 * _upZ
-                    upY = tm10 * _upX + tm11 * _upY + tm12 * _upZ
-                    upZ = tm20 * _upX + tm21 * _upY + tm22 * _upZ
+        }
+
+        /**
+         * Draws the quads, unless they're batched, in which case the batch draws them once every system has rendered
+         */
+        fun end(count: Int) {
+            ParticleSystemMetrics.addVertices(count * 4)
+            if(!batched) {
+                if(builder == null) {
+                    vertices.draw(renderType)
+                } else {
+                    buffer.finish()
                 }
             }
+            builder = null
+        }
+    }
 
-            size.load(particle)
-            val size = this.size.contents[0] / 2
-            val localRightX = rightX * size
-            val localRightY = rightY * size
-            val localRightZ = rightZ * size
-            val localUpX = upX * size
-            val localUpY = upY * size
-            val localUpZ = upZ * size
-
-            position.load(particle)
-            var x = position.contents[0]
-            var y = position.contents[1]
-            var z = position.contents[2]
-            if(previousPosition != null) {
-                previousPosition.load(particle)
-                x = Client.worldTime.interp(previousPosition.contents[0], x)
-                y = Client.worldTime.interp(previousPosition.contents[1], y)
-                z = Client.worldTime.interp(previousPosition.contents[2], z)
-            }
+    /**
+     * Writes the quads for the passed records into [buffer] using the [DefaultVertexFormats.POSITION_COLOR_TEX] format,
+     * starting at the buffer's position and advancing it. Each particle is written as four vertices of
+     * [ParticleVertexBuffer.VERTEX_SIZE] bytes.
+     *
+     * This doesn't need a running game, so it can be used to generate vertices in tests and benchmarks.
+     *
+     * @throws BufferOverflowException if the buffer doesn't have enough space remaining for every particle
+     */
+    fun writeVertices(records: Records, view: View, buffer: ByteBuffer) {
+        if(buffer.remaining() < records.count.toLong() * 4 * ParticleVertexBuffer.VERTEX_SIZE)
+            throw BufferOverflowException()
+        forEachQuad(records, view) { x, y, z, rightX, rightY, rightZ, upX, upY, upZ, r, g, b, a, minU, minV, maxU, maxV ->
+            putVertex(buffer, x - rightX - upX, y - rightY - upY, z - rightZ - upZ, r, g, b, a, minU, maxV)
+            putVertex(buffer, x + rightX - upX, y + rightY - upY, z + rightZ - upZ, r, g, b, a, maxU, maxV)
+            putVertex(buffer, x + rightX + upX, y + rightY + upY, z + rightZ + upZ, r, g, b, a, maxU, minV)
+            putVertex(buffer, x - rightX + upX, y - rightY + upY, z - rightZ + upZ, r, g, b, a, minU, minV)
+        }
+    }
 
-            val _x = x
-            val _y = y
-            val _z = z
-            x = tm00 * _x + tm01 * _y + tm02 * _z + tm03 * 1
-            y = tm10 * _x + tm11 * _y + tm12 * _z + tm13 * 1
-            z = tm20 * _x + tm21 * _y + tm22 * _z + tm23 * 1
-
-            color.load(particle)
-            alphaMultiplier.load(particle)
-            val r = color.contents[0].toFloat()
-            val g = color.contents[1].toFloat()
-            val b = color.contents[2].toFloat()
-            val a = color.contents[3].toFloat() * alphaMultiplier.contents[0].toFloat()
-
-            var minU = 0f
-            var minV = 0f
-            var maxU = 1f
-            var maxV = 1f
-
-            if(spriteSheetSize > 1) {
-                spriteIndex.load(particle)
-                val index = spriteIndex.contents[0].toInt()
-                val uIndex = index and spriteIndexMask
-                val vIndex = index ushr spriteSheetBits
-                minU = spriteSize * uIndex
-                minV = spriteSize * vIndex
-                maxU = spriteSize * (uIndex + 1)
-                maxV = spriteSize * (vIndex + 1)
-            }
+    private fun putVertex(
+        buffer: ByteBuffer, x: Double, y: Double, z: Double,
+        r: Float, g: Float, b: Float, a: Float, u: Float, v: Float
+    ) {
+        buffer.putFloat(x.toFloat())
+        buffer.putFloat(y.toFloat())
+        buffer.putFloat(z.toFloat())
+        // the color is stored as four bytes in RGBA order regardless of the buffer's byte order
+        buffer.put((r * 255).toInt().coerceIn(0, 255).toByte())
+        buffer.put((g * 255).toInt().coerceIn(0, 255).toByte())
+        buffer.put((b * 255).toInt().coerceIn(0, 255).toByte())
+        buffer.put((a * 255).toInt().coerceIn(0, 255).toByte())
+        buffer.putFloat(u)
+        buffer.putFloat(v)
+    }
 
-            builder.pos(x - localRightX - localUpX, y - localRightY - localUpY, z - localRightZ - localUpZ).color(r, g, b, a).tex(minU, maxV).endVertex()
-            builder.pos(x + localRightX - localUpX, y + localRightY - localUpY, z + localRightZ - localUpZ).color(r, g, b, a).tex(maxU, maxV).endVertex()
-            builder.pos(x + localRightX + localUpX, y + localRightY + localUpY, z + localRightZ + localUpZ).color(r, g, b, a).tex(maxU, minV).endVertex()
-            builder.pos(x - localRightX + localUpX, y - localRightY + localUpY, z - localRightZ + localUpZ).color(r, g, b, a).tex(minU, minV).endVertex()
+    /**
+     * Computes the interpolated, view-space quad for each particle in the records, passing the quad's center, its
+     * half-size right and up vectors, its color, and its UVs to [quad].
+     */
+    private inline fun forEachQuad(
+        records: Records, view: View,
+        quad: (
+            x: Double, y: Double, z: Double,
+            rightX: Double, rightY: Double, rightZ: Double,
+            upX: Double, upY: Double, upZ: Double,
+            r: Float, g: Float, b: Float, a: Float,
+            minU: Float, minV: Float, maxU: Float, maxV: Float
+        ) -> Unit
+    ) {
+        val data = records.data
+        for(index in 0 until records.count) {
+            recordQuad(data, index * STRIDE, view, quad)
         }
+    }
 
-        buffer.finish()
+    /**
+     * Computes the interpolated, view-space quad for the record at [offset] in [data], passing the quad's center, its
+     * half-size right and up vectors, its color, and its UVs to [quad].
+     */
+    @Suppress("LocalVariableName")
+    private inline fun recordQuad(
+        data: DoubleArray, offset: Int, view: View,
+        quad: (
+            x: Double, y: Double, z: Double,
+            rightX: Double, rightY: Double, rightZ: Double,
+            upX: Double, upY: Double, upZ: Double,
+            r: Float, g: Float, b: Float, a: Float,
+            minU: Float, minV: Float, maxU: Float, maxV: Float
+        ) -> Unit
+    ) {
+        val tm00 = view.m00
+        val tm01 = view.m01
+        val tm02 = view.m02
+        val tm03 = view.m03
+        val tm10 = view.m10
+        val tm11 = view.m11
+        val tm12 = view.m12
+        val tm13 = view.m13
+        val tm20 = view.m20
+        val tm21 = view.m21
+        val tm22 = view.m22
+        val tm23 = view.m23
+
+        var rightX = view.rightX
+        var rightY = view.rightY
+        var rightZ = view.rightZ
+
+        var upX = view.upX
+        var upY = view.upY
+        var upZ = view.upZ
+
+        if(data[offset + HAS_FACING] != 0.0) {
+            val _rightX = data[offset + RIGHT]
+            val _rightY = data[offset + RIGHT + 1]
+            val _rightZ = data[offset + RIGHT + 2]
+            rightX = tm00 * _rightX + tm01 * _rightY + tm02 * _rightZ
+            rightY = tm10 * _rightX + tm11 * _rightY + tm12 * _rightZ
+            rightZ = tm20 * _rightX + tm21 * _rightY + tm22 * _rightZ
+
+            val _upX = data[offset + UP]
+            val _upY = data[offset + UP + 1]
+            val _upZ = data[offset + UP + 2]
+            upX = tm00 * _upX + tm01 * _upY + tm02 * _upZ
+            upY = tm10 * _upX + tm11 * _upY + tm12 * _upZ
+            upZ = tm20 * _upX + tm21 * _upY + tm22 * _upZ
+        }
+
+        val size = data[offset + SIZE]
+
+        val previousX = data[offset + PREVIOUS_POSITION]
+        val previousY = data[offset + PREVIOUS_POSITION + 1]
+        val previousZ = data[offset + PREVIOUS_POSITION + 2]
+        val partialTicks = view.partialTicks
+        val _x = previousX + (data[offset + POSITION] - previousX) * partialTicks
+        val _y = previousY + (data[offset + POSITION + 1] - previousY) * partialTicks
+        val _z = previousZ + (data[offset + POSITION + 2] - previousZ) * partialTicks
+
+        quad(
+            tm00 * _x + tm01 * _y + tm02 * _z + tm03,
+            tm10 * _x + tm11 * _y + tm12 * _z + tm13,
+            tm20 * _x + tm21 * _y + tm22 * _z + tm23,
+            rightX * size, rightY * size, rightZ * size,
+            upX * size, upY * size, upZ * size,
+            data[offset + COLOR].toFloat(),
+            data[offset + COLOR + 1].toFloat(),
+            data[offset + COLOR + 2].toFloat(),
+            data[offset + COLOR + 3].toFloat(),
+            data[offset + UV].toFloat(),
+            data[offset + UV + 1].toFloat(),
+            data[offset + UV + 2].toFloat(),
+            data[offset + UV + 3].toFloat()
+        )
     }
 
     companion object {
+        // the layout of each particle's records
+        private const val POSITION = 0
+        private const val PREVIOUS_POSITION = 3
+        private const val SIZE = 6
+        private const val COLOR = 7
+        private const val UV = 11
+        private const val HAS_FACING = 15
+        private const val RIGHT = 16
+        private const val UP = 19
+        private const val STRIDE = 22
+
         @JvmStatic
         @JvmOverloads
         fun simpleRenderType(
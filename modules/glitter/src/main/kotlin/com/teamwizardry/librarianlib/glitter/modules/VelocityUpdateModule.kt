@@ -28,6 +28,9 @@ class VelocityUpdateModule(
         previousPosition?.require(3)
     }
 
+    override val isThreadSafe: Boolean
+        get() = position.isThreadSafe && velocity.isThreadSafe && previousPosition?.isThreadSafe != false
+
     override fun update(particle: DoubleArray) {
         position.load(particle)
         if(previousPosition != null) {
@@ -39,4 +42,16 @@ class VelocityUpdateModule(
         }
         position.store(particle)
     }
+
+    override fun update(columns: ParticleColumns, index: Int) {
+        position.load(columns, index)
+        if(previousPosition != null) {
+            position.contents.copyInto(previousPosition.contents)
+        }
+        velocity.load(columns, index)
+        for(i in 0 until 3) {
+            position.contents[i] += velocity.contents[i]
+        }
+        position.store(columns, index)
+    }
 }
\ No newline at end of file
@@ -0,0 +1,312 @@
+package com.teamwizardry.librarianlib.glitter.paths
+
+import com.teamwizardry.librarianlib.glitter.ParticlePath
+import net.minecraft.util.math.Vec3d
+import kotlin.math.sqrt
+
+/**
+ * A path backed by a precomputed table of positions, which are linearly interpolated between. Evaluating a baked path
+ * only costs a table lookup, regardless of how expensive the path it was created from is.
+ *
+ * Baked paths are created using the factory methods in the companion object:
+ * - [bake] samples an existing path, such as a [BezierPath]
+ * - [polyline] creates a path of straight lines through a list of points
+ * - [catmullRom] creates a smooth Catmull-Rom spline through a list of points
+ *
+ * Baked paths also support arc-length parameterization (see [Parameterization.ARC_LENGTH]), which moves particles
+ * along the path at a constant speed.
+ *
+ * Since the table is computed once, a baked path is the same for every particle. Per-particle offsets and scales can be
+ * applied using [PathBinding][com.teamwizardry.librarianlib.glitter.bindings.PathBinding]'s origin and target.
+ */
+class BakedPath private constructor(
+    /**
+     * The number of elements in each position
+     */
+    @JvmField val dimensions: Int,
+    /**
+     * The parameterization of the path
+     */
+    @JvmField val parameterization: Parameterization,
+    private val positions: DoubleArray
+) : ParticlePath {
+    /**
+     * How the path's `t` values map to positions along the path
+     */
+    enum class Parameterization {
+        /**
+         * Each sample in the table covers an equal span of `t`. For a sampled path this follows the source path's
+         * parameterization, and for point-based paths each segment takes an equal amount of time regardless of its
+         * length.
+         */
+        UNIFORM,
+        /**
+         * `t` is proportional to the distance along the path, so particles move along it at a constant speed.
+         */
+        ARC_LENGTH
+    }
+
+    override val value: DoubleArray = DoubleArray(dimensions)
+
+    /**
+     * The number of samples in the table
+     */
+    val samples: Int = positions.size / dimensions
+
+    /**
+     * The total length of the path, measured along the table's line segments
+     */
+    val length: Double
+
+    // the derivative of the position with respect to `t` under the uniform parameterization
+    private val tangents = DoubleArray(positions.size)
+    // the fractional sample index at evenly spaced distances along the path
+    private val arcTable = DoubleArray(samples)
+
+    init {
+        if (samples < 2)
+            throw IllegalArgumentException("A baked path needs at least 2 samples, not $samples")
+
+        val cumulativeLength = DoubleArray(samples)
+        for (i in 1 until samples) {
+            cumulativeLength[i] = cumulativeLength[i - 1] + distance(i - 1, i)
+        }
+        length = cumulativeLength[samples - 1]
+
+        val lastIndex = samples - 1
+        for (i in 0 until samples) {
+            val previous = if (i == 0) 0 else i - 1
+            val next = if (i == lastIndex) lastIndex else i + 1
+            // the difference spans (next - previous) samples, each of which is 1/lastIndex of `t`
+            val scale = lastIndex.toDouble() / (next - previous)
+            for (d in 0 until dimensions) {
+                tangents[i * dimensions + d] =
+                    (positions[next * dimensions + d] - positions[previous * dimensions + d]) * scale
+            }
+        }
+
+        var segment = 0
+        for (k in 0 until samples) {
+            val target = length * k / lastIndex
+            while (segment < lastIndex - 1 && cumulativeLength[segment + 1] < target)
+                segment++
+            val segmentLength = cumulativeLength[segment + 1] - cumulativeLength[segment]
+            val fraction = if (segmentLength == 0.0) 0.0 else (target - cumulativeLength[segment]) / segmentLength
+            arcTable[k] = segment + fraction.coerceIn(0.0, 1.0)
+        }
+    }
+
+    /**
+     * Computes the position at the passed fraction [t] along the path. The particle is ignored.
+     */
+    override fun computePosition(particle: DoubleArray, t: Double) {
+        val position = sampleIndex(t)
+        val index = position.toInt().coerceAtMost(samples - 2)
+        val fraction = position - index
+        val start = index * dimensions
+        for (d in 0 until dimensions) {
+            val a = positions[start + d]
+            value[d] = a + (positions[start + dimensions + d] - a) * fraction
+        }
+    }
+
+    /**
+     * Computes the tangent at the passed fraction [t] along the path. The particle is ignored.
+     *
+     * The tangent's length is the distance traveled per unit of `t`, so for an [arc length][Parameterization.ARC_LENGTH]
+     * path it's always equal to the path's [length].
+     */
+    override fun computeTangent(particle: DoubleArray, t: Double) {
+        val position = sampleIndex(t)
+        val index = position.toInt().coerceAtMost(samples - 2)
+        val fraction = position - index
+        val start = index * dimensions
+        var lengthSq = 0.0
+        for (d in 0 until dimensions) {
+            val a = tangents[start + d]
+            val tangent = a + (tangents[start + dimensions + d] - a) * fraction
+            value[d] = tangent
+            lengthSq += tangent * tangent
+        }
+        if (parameterization == Parameterization.ARC_LENGTH && lengthSq != 0.0) {
+            val scale = length / sqrt(lengthSq)
+            for (d in 0 until dimensions) {
+                value[d] *= scale
+            }
+        }
+    }
+
+    /**
+     * Converts the passed `t` value to a fractional index in the sample table
+     */
+    private fun sampleIndex(t: Double): Double {
+        val lastIndex = samples - 1
+        val clamped = if (t < 0) 0.0 else if (t > 1) 1.0 else t
+        if (parameterization == Parameterization.UNIFORM)
+            return clamped * lastIndex
+
+        val position = clamped * lastIndex
+        val index = position.toInt()
+        if (index >= lastIndex)
+            return arcTable[lastIndex]
+        val a = arcTable[index]
+        return a + (arcTable[index + 1] - a) * (position - index)
+    }
+
+    private fun distance(a: Int, b: Int): Double {
+        var distanceSq = 0.0
+        for (d in 0 until dimensions) {
+            val delta = positions[b * dimensions + d] - positions[a * dimensions + d]
+            distanceSq += delta * delta
+        }
+        return sqrt(distanceSq)
+    }
+
+    companion object {
+        /**
+         * Creates a baked path by sampling the passed path at [samples] evenly spaced `t` values.
+         *
+         * The tangents are computed from the sampled positions, not using [ParticlePath.computeTangent].
+         *
+         * @param particle The particle passed to the path while sampling it. Since the path is only sampled once, it
+         * shouldn't depend on the particle's values (e.g. its bindings should be constant).
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun bake(
+            path: ParticlePath, samples: Int = 64,
+            parameterization: Parameterization = Parameterization.UNIFORM,
+            particle: DoubleArray = DoubleArray(0)
+        ): BakedPath {
+            if (samples < 2)
+                throw IllegalArgumentException("A baked path needs at least 2 samples, not $samples")
+            val dimensions = path.value.size
+            val positions = DoubleArray(samples * dimensions)
+            for (i in 0 until samples) {
+                path.computePosition(particle, i / (samples - 1.0))
+                path.value.copyInto(positions, i * dimensions, 0, dimensions)
+            }
+            return BakedPath(dimensions, parameterization, positions)
+        }
+
+        /**
+         * Creates a path of straight lines between the passed points.
+         *
+         * @param points The points, with [dimensions] elements per point
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun polyline(
+            points: DoubleArray, dimensions: Int = 3,
+            parameterization: Parameterization = Parameterization.ARC_LENGTH
+        ): BakedPath {
+            checkPoints(points, dimensions)
+            return BakedPath(dimensions, parameterization, points.copyOf())
+        }
+
+        /**
+         * Creates a path of straight lines between the passed points.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun polyline(
+            points: List<Vec3d>,
+            parameterization: Parameterization = Parameterization.ARC_LENGTH
+        ): BakedPath {
+            return polyline(flatten(points), 3, parameterization)
+        }
+
+        /**
+         * Creates a Catmull-Rom spline that smoothly passes through each of the passed points, sampled [segmentSamples]
+         * times between each pair of points.
+         *
+         * @param points The points, with [dimensions] elements per point
+         * @param closed Whether the path should loop back around to the first point
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun catmullRom(
+            points: DoubleArray, dimensions: Int = 3, segmentSamples: Int = 16, closed: Boolean = false,
+            parameterization: Parameterization = Parameterization.ARC_LENGTH
+        ): BakedPath {
+            checkPoints(points, dimensions)
+            if (segmentSamples < 1)
+                throw IllegalArgumentException("Segment sample count must be at least 1, not $segmentSamples")
+
+            val pointCount = points.size / dimensions
+            val segments = if (closed) pointCount else pointCount - 1
+            val samples = segments * segmentSamples + 1
+            val positions = DoubleArray(samples * dimensions)
+
+            // the point at the passed index, clamped or wrapped based on whether the path is closed
+            fun point(index: Int, d: Int): Double {
+                val wrapped = if (closed)
+                    Math.floorMod(index, pointCount)
+                else
+                    index.coerceIn(0, pointCount - 1)
+                return points[wrapped * dimensions + d]
+            }
+
+            for (segment in 0 until segments) {
+                for (s in 0 until segmentSamples) {
+                    val t = s.toDouble() / segmentSamples
+                    val t2 = t * t
+                    val t3 = t2 * t
+                    val target = (segment * segmentSamples + s) * dimensions
+                    for (d in 0 until dimensions) {
+                        val p0 = point(segment - 1, d)
+                        val p1 = point(segment, d)
+                        val p2 = point(segment + 1, d)
+                        val p3 = point(segment + 2, d)
+                        positions[target + d] = 0.5 * (
+                            2 * p1 +
+                                (p2 - p0) * t +
+                                (2 * p0 - 5 * p1 + 4 * p2 - p3) * t2 +
+                                (3 * p1 - p0 - 3 * p2 + p3) * t3
+                            )
+                    }
+                }
+            }
+            for (d in 0 until dimensions) {
+                positions[(samples - 1) * dimensions + d] = point(segments, d)
+            }
+
+            return BakedPath(dimensions, parameterization, positions)
+        }
+
+        /**
+         * Creates a Catmull-Rom spline that smoothly passes through each of the passed points, sampled [segmentSamples]
+         * times between each pair of points.
+         *
+         * @param closed Whether the path should loop back around to the first point
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun catmullRom(
+            points: List<Vec3d>, segmentSamples: Int = 16, closed: Boolean = false,
+            parameterization: Parameterization = Parameterization.ARC_LENGTH
+        ): BakedPath {
+            return catmullRom(flatten(points), 3, segmentSamples, closed, parameterization)
+        }
+
+        private fun checkPoints(points: DoubleArray, dimensions: Int) {
+            if (dimensions < 1)
+                throw IllegalArgumentException("Dimension count must be at least 1, not $dimensions")
+            if (points.size % dimensions != 0)
+                throw IllegalArgumentException("Point array size (${points.size}) isn't a multiple of the dimension " +
+                    "count ($dimensions)")
+            if (points.size / dimensions < 2)
+                throw IllegalArgumentException("A path needs at least 2 points, not ${points.size / dimensions}")
+        }
+
+        private fun flatten(points: List<Vec3d>): DoubleArray {
+            val flat = DoubleArray(points.size * 3)
+            points.forEachIndexed { i, point ->
+                flat[i * 3] = point.x
+                flat[i * 3 + 1] = point.y
+                flat[i * 3 + 2] = point.z
+            }
+            return flat
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.teamwizardry.librarianlib.glitter.testmod.modules
+
+import com.teamwizardry.librarianlib.glitter.ParticleColumns
+import com.teamwizardry.librarianlib.glitter.ParticleUpdateModule
+import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
+import com.teamwizardry.librarianlib.glitter.ReadWriteParticleBinding
+import com.teamwizardry.librarianlib.glitter.modules.SpatialHashModule
+
+/**
+ * Accelerates each particle toward the average position of the other particles within [radius] blocks of it, causing
+ * the particles to clump together.
+ */
+class CohesionUpdateModule(
+    /**
+     * The spatial hash to find the particle's neighbors in
+     */
+    @JvmField val hash: SpatialHashModule,
+    /**
+     * The position of the particle
+     */
+    @JvmField val position: ReadParticleBinding,
+    /**
+     * The velocity to accelerate
+     */
+    @JvmField val velocity: ReadWriteParticleBinding,
+    /**
+     * The radius to look for neighbors in
+     */
+    @JvmField val radius: Double,
+    /**
+     * The fraction of the distance to the neighbors' center to accelerate by each tick
+     */
+    @JvmField val strength: Double
+): ParticleUpdateModule {
+    init {
+        position.require(3)
+        velocity.require(3)
+    }
+
+    override val isThreadSafe: Boolean
+        get() = position.isThreadSafe && velocity.isThreadSafe
+
+    override fun update(particle: DoubleArray) {
+        position.load(particle)
+        velocity.load(particle)
+        cohere()
+        velocity.store(particle)
+    }
+
+    override fun update(columns: ParticleColumns, index: Int) {
+        position.load(columns, index)
+        velocity.load(columns, index)
+        cohere()
+        velocity.store(columns, index)
+    }
+
+    private fun cohere() {
+        val x = position.contents[0]
+        val y = position.contents[1]
+        val z = position.contents[2]
+        var sumX = 0.0
+        var sumY = 0.0
+        var sumZ = 0.0
+        var count = 0
+
+        val neighbors = hash.neighbors(x, y, z, radius)
+        while(neighbors.next()) {
+            if(neighbors.distanceSq == 0.0)
+                continue // most likely this particle
+            sumX += neighbors.x
+            sumY += neighbors.y
+            sumZ += neighbors.z
+            count++
+        }
+        if(count == 0)
+            return
+
+        velocity.contents[0] += (sumX / count - x) * strength
+        velocity.contents[1] += (sumY / count - y) * strength
+        velocity.contents[2] += (sumZ / count - z) * strength
+    }
+}
@@ -0,0 +1,140 @@
+package com.teamwizardry.librarianlib.glitter.testmod.systems
+
+import com.teamwizardry.librarianlib.glitter.ParticlePath
+import com.teamwizardry.librarianlib.glitter.ReadParticleBinding
+import com.teamwizardry.librarianlib.glitter.bindings.AbstractTimeBinding
+import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+import com.teamwizardry.librarianlib.glitter.bindings.PathBinding
+import com.teamwizardry.librarianlib.glitter.modules.SpriteRenderModule
+import com.teamwizardry.librarianlib.glitter.paths.BakedPath
+import com.teamwizardry.librarianlib.glitter.paths.BakedPath.Parameterization
+import com.teamwizardry.librarianlib.glitter.paths.EllipsePath
+import net.minecraft.entity.Entity
+import net.minecraft.util.ResourceLocation
+import kotlin.math.cos
+import kotlin.math.sin
+
+object BakedPathSystem: TestSystem("baked_path") {
+    // unevenly spaced points, so a uniform parameterization visibly speeds up on the long segments
+    private val loopPoints = run {
+        val angles = doubleArrayOf(0.0, 0.3, 0.6, 2.0, 2.4, 3.8, 4.5, 5.2)
+        val points = DoubleArray(angles.size * 3)
+        angles.forEachIndexed { i, angle ->
+            val radius = if (i % 2 == 0) 1.5 else 0.75
+            points[i * 3] = cos(angle) * radius
+            points[i * 3 + 2] = sin(angle) * radius
+        }
+        points
+    }
+
+    private val paths = listOf(
+        BakedPath.catmullRom(loopPoints, closed = true, parameterization = Parameterization.UNIFORM),
+        BakedPath.catmullRom(loopPoints, closed = true, parameterization = Parameterization.ARC_LENGTH),
+        BakedPath.polyline(loopPoints + loopPoints.copyOf(3), parameterization = Parameterization.ARC_LENGTH),
+        BakedPath.bake(
+            EllipsePath(
+                majorAxis = ConstantBinding(1.0, 0.0, 0.0),
+                minorAxis = ConstantBinding(0.0, 0.0, 1.0),
+                majorRadius = ConstantBinding(1.5),
+                minorRadius = ConstantBinding(0.5)
+            ),
+            parameterization = Parameterization.ARC_LENGTH
+        )
+    )
+    private val pathColors = listOf(
+        doubleArrayOf(1.0, 0.3, 0.3, 1.0),
+        doubleArrayOf(0.3, 0.5, 1.0, 1.0),
+        doubleArrayOf(0.3, 1.0, 0.3, 1.0),
+        doubleArrayOf(1.0, 1.0, 0.3, 1.0)
+    )
+
+    override fun configure() {
+        val origin = bind(3)
+        val pathIndex = bind(1)
+        val pathOffset = bind(1)
+        val color = bind(4)
+
+        val path = SelectedPath(pathIndex, paths)
+
+        renderModules.add(SpriteRenderModule(
+            renderType = SpriteRenderModule.simpleRenderType(
+                sprite = ResourceLocation("minecraft", "textures/item/clay_ball.png")
+            ),
+            position = PathBinding(
+                lifetime = lifetime,
+                age = age,
+                offset = pathOffset,
+                path = path,
+                origin = origin,
+                target = ConstantBinding(1.0, 1.0, 1.0)
+            ),
+            color = color,
+            size = ConstantBinding(0.15),
+            facingVector = TangentBinding(lifetime, age, pathOffset, path)
+        ))
+    }
+
+    override fun spawn(player: Entity) {
+        val eyePos = player.getEyePosition(0f)
+        val look = player.lookVec
+        val particlesPerPath = 24
+
+        for(index in paths.indices) {
+            val color = pathColors[index]
+            for(i in 0 until particlesPerPath) {
+                this.addParticle(100,
+                    // origin
+                    eyePos.x + look.x * 4,
+                    eyePos.y + look.y * 4 - 0.75 + index * 0.5,
+                    eyePos.z + look.z * 4,
+                    // pathIndex
+                    index.toDouble(),
+                    // pathOffset
+                    i.toDouble() / particlesPerPath,
+                    // color
+                    color[0], color[1], color[2], color[3]
+                )
+            }
+        }
+    }
+
+    /**
+     * Delegates to one of several paths based on the particle's path index
+     */
+    private class SelectedPath(val index: ReadParticleBinding, val paths: List<ParticlePath>): ParticlePath {
+        override val value: DoubleArray = DoubleArray(3)
+
+        override fun computePosition(particle: DoubleArray, t: Double) {
+            val path = select(particle)
+            path.computePosition(particle, t)
+            path.value.copyInto(value)
+        }
+
+        override fun computeTangent(particle: DoubleArray, t: Double) {
+            val path = select(particle)
+            path.computeTangent(particle, t)
+            path.value.copyInto(value)
+        }
+
+        private fun select(particle: DoubleArray): ParticlePath {
+            index.load(particle)
+            return paths[index.contents[0].toInt()]
+        }
+    }
+
+    /**
+     * The tangent of the path at the same point [PathBinding] computes the position of
+     */
+    private class TangentBinding(
+        lifetime: ReadParticleBinding, age: ReadParticleBinding, offset: ReadParticleBinding,
+        val path: ParticlePath
+    ): AbstractTimeBinding(lifetime, age, null, offset) {
+        override val contents: DoubleArray = DoubleArray(3)
+
+        override fun load(particle: DoubleArray) {
+            super.load(particle)
+            path.computeTangent(particle, time)
+            path.value.copyInto(contents)
+        }
+    }
+}
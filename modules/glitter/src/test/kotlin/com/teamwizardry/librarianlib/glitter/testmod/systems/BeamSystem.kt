@@ -0,0 +1,53 @@
+package com.teamwizardry.librarianlib.glitter.testmod.systems
+
+import com.teamwizardry.librarianlib.core.rendering.BlendMode
+import com.teamwizardry.librarianlib.glitter.modules.BeamRenderModule
+import net.minecraft.entity.Entity
+
+object BeamSystem: TestSystem("beam") {
+    override fun configure() {
+        val position = bind(3)
+        val color = bind(4)
+        val width = bind(1)
+        val isEnd = bind(1)
+
+        renderModules.add(BeamRenderModule(
+            renderType = BeamRenderModule.simpleRenderType(
+                blendMode = BlendMode.ADDITIVE,
+                writeDepth = false
+            ),
+            isEnd = isEnd,
+            previousPosition = null,
+            position = position,
+            color = color,
+            width = width
+        ))
+    }
+
+    override fun spawn(player: Entity) {
+        val eyePos = player.getEyePosition(0f)
+        val look = player.lookVec
+        val segments = 20
+        val length = 8.0
+
+        var x = eyePos.x + look.x * 2
+        var y = eyePos.y + look.y * 2
+        var z = eyePos.z + look.z * 2
+        for(i in 0..segments) {
+            val fraction = i.toDouble() / segments
+            this.addParticle(10,
+                // position
+                x, y, z,
+                // color
+                0.5, 0.6, 1.0, 1.0,
+                // width
+                0.15 * (1 - fraction) + 0.02,
+                // isEnd
+                if(i == segments) 1.0 else 0.0
+            )
+            x += look.x * length / segments + (Math.random() - 0.5) * 0.6
+            y += look.y * length / segments + (Math.random() - 0.5) * 0.6
+            z += look.z * length / segments + (Math.random() - 0.5) * 0.6
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.teamwizardry.librarianlib.glitter.testmod.systems
+
+import com.teamwizardry.librarianlib.core.rendering.BlendMode
+import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+import com.teamwizardry.librarianlib.glitter.modules.BasicPhysicsUpdateModule
+import com.teamwizardry.librarianlib.glitter.modules.SpatialHashModule
+import com.teamwizardry.librarianlib.glitter.modules.SpriteRenderModule
+import com.teamwizardry.librarianlib.glitter.testmod.modules.CohesionUpdateModule
+import net.minecraft.entity.Entity
+import net.minecraft.util.ResourceLocation
+
+object CohesionSystem: TestSystem("cohesion") {
+    override fun configure() {
+        parallel = true
+
+        val position = bind(3)
+        val previousPosition = bind(3)
+        val velocity = bind(3)
+        val color = bind(4)
+
+        val hash = SpatialHashModule(position, 1.0)
+
+        updateModules.add(CohesionUpdateModule(
+            hash = hash,
+            position = position,
+            velocity = velocity,
+            radius = 1.0,
+            strength = 0.02
+        ))
+        updateModules.add(BasicPhysicsUpdateModule(
+            position = position,
+            previousPosition = previousPosition,
+            velocity = velocity,
+            enableCollision = true,
+            gravity = ConstantBinding(0.0),
+            bounciness = ConstantBinding(0.5),
+            friction = ConstantBinding(0.1),
+            damping = ConstantBinding(0.05)
+        ))
+        globalUpdateModules.add(hash)
+
+        renderModules.add(SpriteRenderModule(
+            renderType = SpriteRenderModule.simpleRenderType(
+                sprite = ResourceLocation("librarianlib-glitter-test:textures/glitter/glow.png"),
+                blendMode = BlendMode.ADDITIVE,
+                writeDepth = false,
+                blur = true
+            ),
+            previousPosition = previousPosition,
+            position = position,
+            color = color,
+            size = ConstantBinding(0.5)
+        ))
+    }
+
+    override fun spawn(player: Entity) {
+        val eyePos = player.getEyePosition(0f)
+        val look = player.lookVec
+        val spawnDistance = 8
+
+        repeat(500) {
+            val x = eyePos.x + look.x * spawnDistance + (Math.random() - 0.5) * 8
+            val y = eyePos.y + look.y * spawnDistance + (Math.random() - 0.5) * 8
+            val z = eyePos.z + look.z * spawnDistance + (Math.random() - 0.5) * 8
+            this.addParticle(400,
+                // position
+                x, y, z,
+                // previous position
+                x, y, z,
+                // velocity
+                (Math.random() - 0.5) * 0.05,
+                (Math.random() - 0.5) * 0.05,
+                (Math.random() - 0.5) * 0.05,
+                // color
+                Math.random() * 0.1,
+                Math.random() * 0.1,
+                Math.random() * 0.1,
+                1.0
+            )
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.teamwizardry.librarianlib.glitter.testmod.systems
+
+import com.teamwizardry.librarianlib.core.rendering.BlendMode
+import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+import com.teamwizardry.librarianlib.glitter.modules.BasicPhysicsUpdateModule
+import com.teamwizardry.librarianlib.glitter.modules.SpriteRenderModule
+import net.minecraft.entity.Entity
+import net.minecraft.util.ResourceLocation
+import net.minecraft.util.math.MathHelper
+import net.minecraft.util.math.Vec3d
+
+object ColumnarSystem: TestSystem("columnar") {
+    override fun configure() {
+        columnar = true
+        pipelinedRendering = true
+
+        val position = bind(3)
+        val previousPosition = bind(3)
+        val velocity = bind(3)
+        val color = bind(4)
+
+        updateModules.add(BasicPhysicsUpdateModule(
+            position = position,
+            previousPosition = previousPosition,
+            velocity = velocity,
+            enableCollision = true,
+            gravity = ConstantBinding(0.02),
+            bounciness = ConstantBinding(0.8),
+            friction = ConstantBinding(0.02),
+            damping = ConstantBinding(0.01)
+        ))
+
+        renderModules.add(SpriteRenderModule(
+            renderType = SpriteRenderModule.simpleRenderType(
+                sprite = ResourceLocation("librarianlib-glitter-test:textures/glitter/glow.png"),
+                blendMode = BlendMode.ADDITIVE,
+                writeDepth = false,
+                blur = true
+            ),
+            previousPosition = previousPosition,
+            position = position,
+            color = color,
+            size = ConstantBinding(2.0)
+        ))
+    }
+
+    override fun spawn(player: Entity) {
+        val eyePos = player.getEyePosition(0f)
+
+        val count = 200
+        val stride = fieldCount - 2
+        val params = DoubleArray(count * stride)
+        for(i in 0 until count) {
+            val look = getVectorForRotation(
+                player.rotationPitch + (Math.random() - 0.5).toFloat() * 40,
+                player.rotationYaw + (Math.random() - 0.5).toFloat() * 180
+            )
+            writeParams(params, i * stride, eyePos, look)
+        }
+        this.spawnBatch(count, 200, params)
+    }
+
+    fun writeParams(params: DoubleArray, offset: Int, pos: Vec3d, look: Vec3d) {
+        val spawnDistance = 2
+        val spawnVelocity = 1.0
+
+        doubleArrayOf(
+            // position
+            pos.x + look.x * spawnDistance,
+            pos.y + look.y * spawnDistance,
+            pos.z + look.z * spawnDistance,
+            // previous position
+            pos.x + look.x * spawnDistance,
+            pos.y + look.y * spawnDistance,
+            pos.z + look.z * spawnDistance,
+            // velocity
+            look.x * spawnVelocity,
+            look.y * spawnVelocity,
+            look.z * spawnVelocity,
+            // color
+            Math.random() * 0.1,
+            Math.random() * 0.1,
+            Math.random() * 0.1,
+            1.0
+        ).copyInto(params, offset)
+    }
+
+    fun getVectorForRotation(pitch: Float, yaw: Float): Vec3d {
+        val f = pitch * (Math.PI.toFloat() / 180f)
+        val f1 = -yaw * (Math.PI.toFloat() / 180f)
+        val f2 = MathHelper.cos(f1)
+        val f3 = MathHelper.sin(f1)
+        val f4 = MathHelper.cos(f)
+        val f5 = MathHelper.sin(f)
+        return Vec3d((f3 * f4).toDouble(), (-f5).toDouble(), (f2 * f4).toDouble())
+    }
+}
@@ -0,0 +1,75 @@
+package com.teamwizardry.librarianlib.glitter.testmod.systems
+
+import com.teamwizardry.librarianlib.core.rendering.BlendMode
+import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+import com.teamwizardry.librarianlib.glitter.modules.AccelerationUpdateModule
+import com.teamwizardry.librarianlib.glitter.modules.SetValueUpdateModule
+import com.teamwizardry.librarianlib.glitter.modules.SpriteRenderModule
+import com.teamwizardry.librarianlib.glitter.modules.VelocityUpdateModule
+import net.minecraft.entity.Entity
+import net.minecraft.util.ResourceLocation
+
+object CompiledSystem: TestSystem("compiled") {
+    override fun configure() {
+        compiledUpdates = true
+
+        val position = bind(3)
+        val previousPosition = bind(3)
+        val velocity = bind(3)
+        val color = bind(4)
+
+        updateModules.add(SetValueUpdateModule(
+            target = previousPosition,
+            source = position
+        ))
+        updateModules.add(AccelerationUpdateModule(
+            velocity = velocity,
+            acceleration = ConstantBinding(0.0, -0.01, 0.0)
+        ))
+        updateModules.add(VelocityUpdateModule(
+            position = position,
+            velocity = velocity
+        ))
+
+        renderModules.add(SpriteRenderModule(
+            renderType = SpriteRenderModule.simpleRenderType(
+                sprite = ResourceLocation("librarianlib-glitter-test:textures/glitter/glow.png"),
+                blendMode = BlendMode.ADDITIVE,
+                writeDepth = false,
+                blur = true
+            ),
+            previousPosition = previousPosition,
+            position = position,
+            color = color,
+            size = ConstantBinding(0.5)
+        ))
+    }
+
+    override fun spawn(player: Entity) {
+        val eyePos = player.getEyePosition(0f)
+        val look = player.lookVec
+        val spawnDistance = 2
+        val spawnVelocity = 0.5
+
+        repeat(50) {
+            val x = eyePos.x + look.x * spawnDistance
+            val y = eyePos.y + look.y * spawnDistance
+            val z = eyePos.z + look.z * spawnDistance
+            this.addParticle(100,
+                // position
+                x, y, z,
+                // previous position
+                x, y, z,
+                // velocity
+                look.x * spawnVelocity + (Math.random() - 0.5) * 0.2,
+                look.y * spawnVelocity + (Math.random() - 0.5) * 0.2,
+                look.z * spawnVelocity + (Math.random() - 0.5) * 0.2,
+                // color
+                Math.random() * 0.2,
+                Math.random() * 0.1,
+                Math.random() * 0.05,
+                1.0
+            )
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.teamwizardry.librarianlib.glitter.testmod.systems
+
+import com.teamwizardry.librarianlib.core.rendering.BlendMode
+import com.teamwizardry.librarianlib.glitter.CurlNoiseField
+import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
+import com.teamwizardry.librarianlib.glitter.modules.BasicPhysicsUpdateModule
+import com.teamwizardry.librarianlib.glitter.modules.CurlAccelerationUpdateModule
+import com.teamwizardry.librarianlib.glitter.modules.SpriteRenderModule
+import net.minecraft.entity.Entity
+import net.minecraft.util.ResourceLocation
+
+object CurlSystem: TestSystem("curl") {
+    private val field = CurlNoiseField(size = 32.0, octaves = 2, frames = 8)
+
+    override fun configure() {
+        parallel = true
+
+        val position = bind(3)
+        val previousPosition = bind(3)
+        val velocity = bind(3)
+        val color = bind(4)
+
+        updateModules.add(CurlAccelerationUpdateModule(
+            field = field,
+            position = position,
+            velocity = velocity,
+            strength = ConstantBinding(0.01),
+            speed = 0.02
+        ))
+        updateModules.add(BasicPhysicsUpdateModule(
+            position = position,
+            previousPosition = previousPosition,
+            velocity = velocity,
+            enableCollision = true,
+            gravity = ConstantBinding(-0.002),
+            bounciness = ConstantBinding(0.2),
+            friction = ConstantBinding(0.1),
+            damping = ConstantBinding(0.1)
+        ))
+
+        renderModules.add(SpriteRenderModule(
+            renderType = SpriteRenderModule.simpleRenderType(
+                sprite = ResourceLocation("librarianlib-glitter-test:textures/glitter/glow.png"),
+                blendMode = BlendMode.ADDITIVE,
+                writeDepth = false,
+                blur = true
+            ),
+            previousPosition = previousPosition,
+            position = position,
+            color = color,
+            size = ConstantBinding(0.5)
+        ))
+    }
+
+    override fun spawn(player: Entity) {
+        val eyePos = player.getEyePosition(0f)
+        val look = player.lookVec
+        val spawnDistance = 4
+
+        repeat(100) {
+            val x = eyePos.x + look.x * spawnDistance + (Math.random() - 0.5)
+            val y = eyePos.y + look.y * spawnDistance + (Math.random() - 0.5)
+            val z = eyePos.z + look.z * spawnDistance + (Math.random() - 0.5)
+            this.addParticle(200,
+                // position
+                x, y, z,
+                // previous position
+                x, y, z,
+                // velocity
+                0.0, 0.0, 0.0,
+                // color
+                Math.random() * 0.05,
+                Math.random() * 0.1,
+                Math.random() * 0.2,
+                1.0
+            )
+        }
+    }
+}
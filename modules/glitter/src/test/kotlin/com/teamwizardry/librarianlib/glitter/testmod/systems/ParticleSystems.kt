@@ -16,7 +16,15 @@ object ParticleSystems {
         IgnoreParticleSettingSystem,
         ShowOnMinimalSystem,
         SpawnCountAdjustmentSystem,
-        PartialTickLerpSystem
+        PartialTickLerpSystem,
+        ColumnarSystem,
+        ParallelSystem,
+        CohesionSystem,
+        CurlSystem,
+        CompiledSystem,
+        BeamSystem,
+        BakedPathSystem,
+        GlobalPhysicsSystem
     )
     private val systemMap = systems.associateBy { it.id }
 
@@ -3,13 +3,14 @@ package com.teamwizardry.librarianlib.glitter.testmod.systems
 import com.teamwizardry.librarianlib.glitter.ParticleSystem
 import com.teamwizardry.librarianlib.glitter.bindings.ConstantBinding
 import com.teamwizardry.librarianlib.glitter.modules.BasicPhysicsUpdateModule
-import com.teamwizardry.librarianlib.glitter.modules.GlLineBeamRenderModule
 import com.teamwizardry.librarianlib.glitter.modules.SpriteRenderModule
 import net.minecraft.entity.Entity
 import net.minecraft.util.ResourceLocation
 
 object PhysicsSystem: TestSystem("physics") {
     override fun configure() {
+        batchRendering = true
+
         val position = bind(3)
         val previousPosition = bind(3)
         val velocity = bind(3)
@@ -8,6 +8,8 @@ import net.minecraft.util.ResourceLocation
 
 object StaticSystem: TestSystem("static") {
     override fun configure() {
+        batchRendering = true
+
         val pos = bind(3)
         val color = bind(4)
 
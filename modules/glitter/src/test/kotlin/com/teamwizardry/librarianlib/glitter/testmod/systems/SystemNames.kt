@@ -69,6 +69,54 @@ object SystemNames {
             """
                 Spawns particles at a high, static velocity in order to test lerping
             """.trimIndent()
+        ),
+        System("columnar",
+            "Spray Columnar Physics Particles",
+            """
+                Sprays a large number of physics particles stored using columnar storage
+            """.trimIndent()
+        ),
+        System("parallel",
+            "Spray Parallel Physics Particles",
+            """
+                Sprays a large number of physics particles that are updated in parallel
+            """.trimIndent()
+        ),
+        System("cohesion",
+            "Spawn Cohesive Particles",
+            """
+                Spawns a cloud of particles that clump together using a spatial hash to find their neighbors
+            """.trimIndent()
+        ),
+        System("curl",
+            "Spawn Curl Noise Particles",
+            """
+                Spawns particles that swirl around in an evolving curl noise field
+            """.trimIndent()
+        ),
+        System("compiled",
+            "Spray Compiled Particles",
+            """
+                Sprays particles whose update modules are compiled into a single generated class
+            """.trimIndent()
+        ),
+        System("beam",
+            "Spawn Lightning Beam",
+            """
+                Spawns a jagged, tapering beam drawn as camera-facing ribbons with mitered joins
+            """.trimIndent()
+        ),
+        System("baked_path",
+            "Spawn Baked Path Particles",
+            """
+                Spawns particles looping around baked paths, stacked bottom to top: a uniform Catmull-Rom loop, an arc-length Catmull-Rom loop, an arc-length polyline loop, and an arc-length baked ellipse
+            """.trimIndent()
+        ),
+        System("global_physics",
+            "Spray Global Physics Particles",
+            """
+                Sprays randomly colored physics particles that are simulated together by a global update module, which traces all their collisions in one batch
+            """.trimIndent()
         )
     )
 
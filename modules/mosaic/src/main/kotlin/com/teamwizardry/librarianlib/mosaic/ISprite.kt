@@ -1,6 +1,7 @@
 package com.teamwizardry.librarianlib.mosaic
 
 import com.teamwizardry.librarianlib.core.util.Client
+import com.teamwizardry.librarianlib.core.util.IFlushableRenderTypeBuffer
 import com.teamwizardry.librarianlib.math.Matrix3d
 import net.minecraft.client.renderer.IRenderTypeBuffer
 import net.minecraft.client.renderer.RenderType
@@ -185,6 +186,27 @@ interface ISprite {
         buffer.finish()
     }
 
+    /**
+     * Draws the sprite into the passed buffer with a custom width and height. The buffer isn't finished, so this can be
+     * used to batch multiple sprites into a single draw call.
+     *
+     * Sprites opt into batching by overriding this method. By default the buffer is flushed (if it's an
+     * [IFlushableRenderTypeBuffer] or [IRenderTypeBuffer.Impl]) and the sprite is drawn using the unbatched [draw]
+     * method, so sprites that only override that method are still drawn correctly.
+     * @param x The x position to draw at
+     * @param y The y position to draw at
+     * @param width The width to draw the sprite
+     * @param height The height to draw the sprite
+     */
+    @JvmDefault
+    fun draw(matrix: Matrix3d, buffer: IRenderTypeBuffer, x: Float, y: Float, width: Float, height: Float, animTicks: Int, tint: Color) {
+        when(buffer) {
+            is IFlushableRenderTypeBuffer -> buffer.flush()
+            is IRenderTypeBuffer.Impl -> buffer.finish()
+        }
+        draw(matrix, x, y, width, height, animTicks, tint)
+    }
+
     @JvmDefault
     fun pinnedWrapper(top: Boolean, bottom: Boolean, left: Boolean, right: Boolean): ISprite {
         return PinnedWrapper(this, top, bottom, left, right)
@@ -5,6 +5,8 @@ import com.teamwizardry.librarianlib.core.util.AWTTextureUtil
 import com.teamwizardry.librarianlib.core.util.Client
 import com.teamwizardry.librarianlib.core.util.DefaultRenderStates
 import com.teamwizardry.librarianlib.core.util.kotlin.toRl
+import com.teamwizardry.librarianlib.math.Matrix3d
+import net.minecraft.client.renderer.IRenderTypeBuffer
 import net.minecraft.client.renderer.RenderState
 import net.minecraft.client.renderer.RenderType
 import net.minecraft.client.renderer.texture.NativeImage
@@ -73,6 +75,10 @@ class Java2DSprite(override val width: Int, override val height: Int) : ISprite
     override val vSize: Float = 1f
     override val frameCount = 1
 
+    override fun draw(matrix: Matrix3d, buffer: IRenderTypeBuffer, x: Float, y: Float, width: Float, height: Float, animTicks: Int, tint: Color) {
+        DrawingUtil.draw(this, buffer.getBuffer(renderType), matrix, x, y, width, height, animTicks, tint)
+    }
+
     fun finalize() {
         if(deleted) return
         val id = texID
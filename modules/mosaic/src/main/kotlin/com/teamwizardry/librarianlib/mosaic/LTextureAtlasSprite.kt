@@ -8,9 +8,12 @@ package com.teamwizardry.librarianlib.mosaic
 
 import com.teamwizardry.librarianlib.core.util.Client
 import com.teamwizardry.librarianlib.core.util.SimpleRenderTypes
+import com.teamwizardry.librarianlib.math.Matrix3d
+import net.minecraft.client.renderer.IRenderTypeBuffer
 import net.minecraft.client.renderer.RenderType
 import net.minecraft.client.renderer.texture.AtlasTexture
 import net.minecraft.client.renderer.texture.TextureAtlasSprite
+import java.awt.Color
 
 /**
  * [ISprite] wrapper for [TextureAtlasSprite].
@@ -43,4 +46,8 @@ class LTextureAtlasSprite(private val tas: TextureAtlasSprite) : ISprite {
         get() = tas.maxU - tas.minU
     override val vSize: Float
         get() = tas.maxV - tas.minV
+
+    override fun draw(matrix: Matrix3d, buffer: IRenderTypeBuffer, x: Float, y: Float, width: Float, height: Float, animTicks: Int, tint: Color) {
+        DrawingUtil.draw(this, buffer.getBuffer(renderType), matrix, x, y, width, height, animTicks, tint)
+    }
 }
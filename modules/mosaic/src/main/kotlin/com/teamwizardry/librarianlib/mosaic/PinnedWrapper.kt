@@ -1,6 +1,7 @@
 package com.teamwizardry.librarianlib.mosaic
 
 import com.teamwizardry.librarianlib.math.Matrix3d
+import net.minecraft.client.renderer.IRenderTypeBuffer
 import net.minecraft.client.renderer.RenderType
 import java.awt.Color
 
@@ -27,6 +28,9 @@ class PinnedWrapper(
     override fun draw(matrix: Matrix3d, x: Float, y: Float, width: Float, height: Float, animTicks: Int, tint: Color) {
         wrapped.draw(matrix, x, y, width, height, animTicks, tint)
     }
+    override fun draw(matrix: Matrix3d, buffer: IRenderTypeBuffer, x: Float, y: Float, width: Float, height: Float, animTicks: Int, tint: Color) {
+        wrapped.draw(matrix, buffer, x, y, width, height, animTicks, tint)
+    }
 
     override fun pinnedWrapper(top: Boolean, bottom: Boolean, left: Boolean, right: Boolean): ISprite {
         return wrapped.pinnedWrapper(top, bottom, left, right)
@@ -1,6 +1,9 @@
 package com.teamwizardry.librarianlib.mosaic
 
+import com.teamwizardry.librarianlib.math.Matrix3d
+import net.minecraft.client.renderer.IRenderTypeBuffer
 import net.minecraft.client.renderer.RenderType
+import java.awt.Color
 import java.awt.image.BufferedImage
 
 /**
@@ -104,6 +107,10 @@ class Sprite internal constructor(private val mosaic: Mosaic, val name: String)
         return definition.texV(definition.frameUVs[animFrames % frameCount].y + definition.size.y)
     }
 
+    override fun draw(matrix: Matrix3d, buffer: IRenderTypeBuffer, x: Float, y: Float, width: Float, height: Float, animTicks: Int, tint: Color) {
+        DrawingUtil.draw(this, buffer.getBuffer(renderType), matrix, x, y, width, height, animTicks, tint)
+    }
+
     override fun toString(): String {
         return "Sprite(texture=${mosaic.location}, name=$name)"
     }
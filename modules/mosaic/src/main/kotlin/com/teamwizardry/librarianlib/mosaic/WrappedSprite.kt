@@ -3,6 +3,7 @@ package com.teamwizardry.librarianlib.mosaic
 import com.teamwizardry.librarianlib.core.util.DefaultRenderStates
 import com.teamwizardry.librarianlib.core.util.kotlin.toRl
 import com.teamwizardry.librarianlib.math.Matrix3d
+import net.minecraft.client.renderer.IRenderTypeBuffer
 import net.minecraft.client.renderer.RenderState
 import net.minecraft.client.renderer.RenderType
 import net.minecraft.client.renderer.vertex.DefaultVertexFormats
@@ -39,6 +40,9 @@ abstract class WrappedSprite: ISprite {
     override fun draw(matrix: Matrix3d, x: Float, y: Float, width: Float, height: Float, animTicks: Int, tint: Color) {
         wrapped?.draw(matrix, x, y, width, height, animTicks, tint)
     }
+    override fun draw(matrix: Matrix3d, buffer: IRenderTypeBuffer, x: Float, y: Float, width: Float, height: Float, animTicks: Int, tint: Color) {
+        wrapped?.draw(matrix, buffer, x, y, width, height, animTicks, tint)
+    }
 
     private companion object {
         @Suppress("INACCESSIBLE_TYPE")